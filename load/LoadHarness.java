@@ -0,0 +1,551 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * a reproducible load harness for the thermostat server, behaving like many browsers running {@code index.js}
+ *
+ * run with the JDK single-file launcher - it has no dependencies beyond the JDK:
+ *
+ * <pre>
+ * java load/LoadHarness.java --server-jar target/thermostat-server-runner.jar \
+ *      --mongo mongodb://localhost:27017 --devices 20 --clients 200 --duration 10m
+ * </pre>
+ *
+ * with {@code --server-jar} the server is started against the given MongoDB and stopped afterwards,
+ * otherwise the harness drives the server already running at {@code --url}
+ *
+ * with {@code --devices} each simulated thermostat is a pseudo-terminal pair created by {@code socat} -
+ * the server is registered on one end while the harness answers on the other using the ASCII protocol,
+ * reporting every {@code --report-interval} and whenever asked, with the ambient temperature drifting
+ * towards the desired temperature while the heater is on - simulated thermostats are removed afterwards
+ *
+ * each client lists the thermostats, opens an update websocket per thermostat, polls six hours of
+ * temperature history per thermostat every {@code --history-interval}, and changes the desired
+ * temperature of a random thermostat every {@code --setpoint-interval} - start times are staggered
+ *
+ * at the end it reports p50/p99/p99.9 latency per endpoint, websocket delivery lag (receipt time less
+ * the {@code lastUpdate} of the delivered state, so the harness and server must share a clock), and
+ * when the server process is known ({@code --server-jar} or {@code --server-pid}) its heap, GC and
+ * thread counts sampled with {@code jstat} and {@code /proc}
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+public class LoadHarness {
+
+	private static final Pattern ID = Pattern.compile("\"id\":\"([0-9a-f]{24})\"");
+	private static final Pattern LAST_UPDATE = Pattern.compile("\"lastUpdate\":\"([^\"]+)\"");
+	private static final String WEBSOCKET_LAG = "websocket delivery lag";
+
+	private final Options options;
+	private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+	private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(8, runnable -> {
+		var thread = new Thread(runnable, "load");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final Latencies latencies = new Latencies();
+	private final List<SimulatedDevice> devices = new ArrayList<>();
+	private final List<WebSocket> sockets = new CopyOnWriteArrayList<>();
+	private final List<String> createdIds = new ArrayList<>();
+	private final ServerProbe probe = new ServerProbe();
+
+	private Process server;
+
+	/*
+	 * command line options
+	 */
+	private static class Options {
+		String url = "http://localhost:8080";
+		String serverJar;
+		long serverPid;
+		String mongo = "mongodb://localhost:27017";
+		List<String> serverArgs = new ArrayList<>();
+		int devices;
+		int clients = 10;
+		Duration duration = Duration.ofMinutes(5);
+		Duration historyInterval = Duration.ofMinutes(1);
+		Duration setpointInterval = Duration.ofSeconds(30);
+		Duration reportInterval = Duration.ofSeconds(5);
+
+		static Options parse(String[] args) {
+			var options = new Options();
+			for (int i = 0; i < args.length; ++i) {
+				var value = i + 1 < args.length ? args[i + 1] : null;
+				switch (args[i]) {
+					case "--url":               options.url = value; break;
+					case "--server-jar":        options.serverJar = value; break;
+					case "--server-pid":        options.serverPid = Long.parseLong(value); break;
+					case "--server-arg":        options.serverArgs.add(value); break;
+					case "--mongo":             options.mongo = value; break;
+					case "--devices":           options.devices = Integer.parseInt(value); break;
+					case "--clients":           options.clients = Integer.parseInt(value); break;
+					case "--duration":          options.duration = duration(value); break;
+					case "--history-interval":  options.historyInterval = duration(value); break;
+					case "--setpoint-interval": options.setpointInterval = duration(value); break;
+					case "--report-interval":   options.reportInterval = duration(value); break;
+					default:
+						throw new IllegalArgumentException("unknown option " + args[i]);
+				}
+				++i;
+			}
+			return options;
+		}
+
+		/*
+		 * parses durations written like the server configuration - e.g. 500ms, 30s, 10m, 1h
+		 */
+		static Duration duration(String value) {
+			var matcher = Pattern.compile("(\\d+)(ms|s|m|h)").matcher(value);
+			if (!matcher.matches()) {
+				return Duration.parse(value);
+			}
+			var amount = Long.parseLong(matcher.group(1));
+			switch (matcher.group(2)) {
+				case "ms": return Duration.ofMillis(amount);
+				case "s":  return Duration.ofSeconds(amount);
+				case "m":  return Duration.ofMinutes(amount);
+				default:   return Duration.ofHours(amount);
+			}
+		}
+	}
+
+	private LoadHarness(Options options) {
+		this.options = options;
+	}
+
+	public static void main(String[] args) throws Exception {
+		new LoadHarness(Options.parse(args)).run();
+	}
+
+	private void run() throws Exception {
+		try {
+			if (options.serverJar != null) {
+				startServer();
+			}
+			awaitServer();
+			for (int i = 0; i < options.devices; ++i) {
+				addDevice(i);
+			}
+			var ids = listThermostats();
+			if (ids.isEmpty()) {
+				throw new IllegalStateException("no thermostats to load - use --devices or configure some");
+			}
+			log("driving %d clients against %d thermostats for %s", options.clients, ids.size(), options.duration);
+			var pid = server != null ? server.pid() : options.serverPid;
+			if (pid > 0) {
+				scheduler.scheduleAtFixedRate(() -> probe.sample(pid), 0, 5, TimeUnit.SECONDS);
+			}
+			for (int i = 0; i < options.clients; ++i) {
+				startClient(ids);
+			}
+			Thread.sleep(options.duration.toMillis());
+			report();
+		} finally {
+			scheduler.shutdownNow();
+			sockets.forEach(socket -> socket.abort());
+			for (var id : createdIds) {
+				try {
+					send(HttpRequest.newBuilder(uri("/api/thermostats/" + id)).DELETE(), null);
+				} catch (Exception e) {
+					log("problem removing simulated thermostat %s: %s", id, e);
+				}
+			}
+			devices.forEach(SimulatedDevice::close);
+			if (server != null) {
+				server.destroy();
+				server.waitFor(30, TimeUnit.SECONDS);
+			}
+		}
+	}
+
+	private void startServer() throws IOException {
+		var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+		var command = new ArrayList<>(List.of(java,
+				"-Dquarkus.mongodb.connection-string=" + options.mongo,
+				"-Dquarkus.http.port=" + URI.create(options.url).getPort()));
+		options.serverArgs.forEach(arg -> command.add(arg));
+		command.addAll(List.of("-jar", options.serverJar));
+		var log = new File("load-server.log");
+		server = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+		log("started server (pid %d) logging to %s", server.pid(), log);
+	}
+
+	private void awaitServer() throws Exception {
+		var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+		while (true) {
+			try {
+				var response = http.send(HttpRequest.newBuilder(uri("/api/connections")).build(),
+						HttpResponse.BodyHandlers.discarding());
+				if (response.statusCode() == 200) {
+					return;
+				}
+			} catch (IOException e) {
+				if (System.nanoTime() > deadline) {
+					throw e;
+				}
+			}
+			if (server != null && !server.isAlive()) {
+				throw new IllegalStateException("server exited with " + server.exitValue());
+			}
+			Thread.sleep(500);
+		}
+	}
+
+	private void addDevice(int index) throws Exception {
+		var device = new SimulatedDevice(index, options.reportInterval);
+		devices.add(device);
+		var body = String.format("{\"label\":\"load-sim-%d\",\"port\":\"%s\"}", index, device.serverPort);
+		var response = send(HttpRequest.newBuilder(uri("/api/thermostats"))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(body)), null);
+		var matcher = ID.matcher(response.body());
+		if (response.statusCode() / 100 != 2 || !matcher.find()) {
+			throw new IllegalStateException("failed to register simulated thermostat: " + response.body());
+		}
+		createdIds.add(matcher.group(1));
+	}
+
+	private List<String> listThermostats() throws Exception {
+		var response = send(HttpRequest.newBuilder(uri("/api/thermostats")), "GET /api/thermostats");
+		var ids = new ArrayList<String>();
+		for (Matcher matcher = ID.matcher(response.body()); matcher.find();) {
+			ids.add(matcher.group(1));
+		}
+		return ids;
+	}
+
+	/*
+	 * starts the periodic work of one browser-like client
+	 */
+	private void startClient(List<String> ids) {
+		var random = ThreadLocalRandom.current();
+		timed(HttpRequest.newBuilder(uri("/api/thermostats")), "GET /api/thermostats");
+		for (var id : ids) {
+			http.newWebSocketBuilder()
+					.buildAsync(URI.create(options.url.replaceFirst("^http", "ws") + "/api/thermostats/" + id + "/updates"),
+							new UpdateListener())
+					.thenAccept(sockets::add)
+					.exceptionally(e -> {
+						latencies.error(WEBSOCKET_LAG);
+						return null;
+					});
+			var history = options.historyInterval.toMillis();
+			scheduler.scheduleAtFixedRate(() -> {
+				var to = Instant.now();
+				var from = to.minus(Duration.ofHours(6));
+				timed(HttpRequest.newBuilder(uri("/api/thermostats/" + id + "/temperature/history?from=" + from + "&to=" + to)),
+						"GET /api/thermostats/{id}/temperature/history");
+			}, random.nextLong(history), history, TimeUnit.MILLISECONDS);
+		}
+		var setpoint = options.setpointInterval.toMillis();
+		scheduler.scheduleAtFixedRate(() -> {
+			var id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+			var desired = 18 + ThreadLocalRandom.current().nextInt(13) * 0.5;
+			timed(HttpRequest.newBuilder(uri("/api/thermostats/" + id))
+					.header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers.ofString("{\"desiredTemperature\":" + desired + "}")),
+					"POST /api/thermostats/{id}");
+		}, random.nextLong(setpoint), setpoint, TimeUnit.MILLISECONDS);
+	}
+
+	/*
+	 * records websocket delivery lag for each state received
+	 */
+	private class UpdateListener implements WebSocket.Listener {
+		private final StringBuilder text = new StringBuilder();
+
+		@Override
+		public CompletionStage<?> onText(WebSocket socket, CharSequence data, boolean last) {
+			text.append(data);
+			if (last) {
+				var matcher = LAST_UPDATE.matcher(text);
+				if (matcher.find()) {
+					var lag = Duration.between(Instant.parse(matcher.group(1)), Instant.now());
+					latencies.record(WEBSOCKET_LAG, lag.toNanos());
+				}
+				text.setLength(0);
+			}
+			socket.request(1);
+			return null;
+		}
+
+		@Override
+		public void onError(WebSocket socket, Throwable error) {
+			latencies.error(WEBSOCKET_LAG);
+		}
+	}
+
+	private void timed(HttpRequest.Builder request, String endpoint) {
+		var start = System.nanoTime();
+		http.sendAsync(request.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.discarding())
+				.whenComplete((response, e) -> {
+					if (e != null || response.statusCode() / 100 != 2) {
+						latencies.error(endpoint);
+					} else {
+						latencies.record(endpoint, System.nanoTime() - start);
+					}
+				});
+	}
+
+	private HttpResponse<String> send(HttpRequest.Builder request, String endpoint) throws Exception {
+		var start = System.nanoTime();
+		var response = http.send(request.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString());
+		if (endpoint != null) {
+			latencies.record(endpoint, System.nanoTime() - start);
+		}
+		return response;
+	}
+
+	private void report() {
+		System.out.println();
+		System.out.printf(Locale.ROOT, "%-48s %9s %7s %9s %9s %9s %9s%n",
+				"endpoint", "count", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+		latencies.snapshot().forEach((endpoint, values) -> System.out.printf(Locale.ROOT,
+				"%-48s %9d %7d %9.1f %9.1f %9.1f %9.1f%n", endpoint, values.length, latencies.errors(endpoint),
+				percentile(values, 0.5), percentile(values, 0.99), percentile(values, 0.999), percentile(values, 1)));
+		probe.report();
+	}
+
+	private static double percentile(long[] sorted, double quantile) {
+		if (sorted.length == 0) {
+			return Double.NaN;
+		}
+		var index = (int) Math.ceil(quantile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+	}
+
+	private URI uri(String path) {
+		return URI.create(options.url + path);
+	}
+
+	private static void log(String format, Object... args) {
+		System.out.printf(Locale.ROOT, "%s " + format + "%n", prepend(Instant.now(), args));
+	}
+
+	private static Object[] prepend(Object first, Object[] rest) {
+		var all = new Object[rest.length + 1];
+		all[0] = first;
+		System.arraycopy(rest, 0, all, 1, rest.length);
+		return all;
+	}
+
+	/*
+	 * latency samples and error counts per endpoint
+	 */
+	private static class Latencies {
+		private final Map<String, long[]> samples = new TreeMap<>();
+		private final Map<String, Integer> counts = new TreeMap<>();
+		private final Map<String, Integer> errors = new TreeMap<>();
+
+		synchronized void record(String endpoint, long nanos) {
+			var values = samples.computeIfAbsent(endpoint, key -> new long[1024]);
+			var count = counts.getOrDefault(endpoint, 0);
+			if (count == values.length) {
+				values = Arrays.copyOf(values, count * 2);
+				samples.put(endpoint, values);
+			}
+			values[count] = nanos;
+			counts.put(endpoint, count + 1);
+		}
+
+		synchronized void error(String endpoint) {
+			errors.merge(endpoint, 1, Integer::sum);
+			samples.computeIfAbsent(endpoint, key -> new long[1024]);
+		}
+
+		synchronized int errors(String endpoint) {
+			return errors.getOrDefault(endpoint, 0);
+		}
+
+		synchronized Map<String, long[]> snapshot() {
+			var sorted = new TreeMap<String, long[]>();
+			samples.forEach((endpoint, values) -> {
+				var copy = Arrays.copyOf(values, counts.getOrDefault(endpoint, 0));
+				Arrays.sort(copy);
+				sorted.put(endpoint, copy);
+			});
+			return sorted;
+		}
+	}
+
+	/*
+	 * samples heap, GC and thread counts of the server process
+	 */
+	private static class ServerProbe {
+		private double maxHeapMb;
+		private double lastHeapMb;
+		private int maxThreads;
+		private double[] firstGc;           // young count, young seconds, full count, full seconds
+		private double[] lastGc;
+		private boolean failed;
+
+		synchronized void sample(long pid) {
+			if (failed) {
+				return;
+			}
+			try {
+				var jstat = new ProcessBuilder("jstat", "-gc", Long.toString(pid)).start();
+				var lines = new String(jstat.getInputStream().readAllBytes(), StandardCharsets.US_ASCII).trim().split("\n");
+				jstat.waitFor();
+				var header = List.of(lines[0].trim().split("\\s+"));
+				var values = lines[1].trim().split("\\s+");
+				var heap = 0.0;
+				for (var column : List.of("S0U", "S1U", "EU", "OU")) {
+					heap += Double.parseDouble(values[header.indexOf(column)]);
+				}
+				lastHeapMb = heap / 1024;
+				maxHeapMb = Math.max(maxHeapMb, lastHeapMb);
+				lastGc = new double[] {
+						Double.parseDouble(values[header.indexOf("YGC")]), Double.parseDouble(values[header.indexOf("YGCT")]),
+						Double.parseDouble(values[header.indexOf("FGC")]), Double.parseDouble(values[header.indexOf("FGCT")]) };
+				if (firstGc == null) {
+					firstGc = lastGc;
+				}
+				for (var line : Files.readAllLines(Path.of("/proc", Long.toString(pid), "status"))) {
+					if (line.startsWith("Threads:")) {
+						maxThreads = Math.max(maxThreads, Integer.parseInt(line.substring(8).trim()));
+					}
+				}
+			} catch (Exception e) {
+				failed = true;
+				log("server sampling unavailable: %s", e);
+			}
+		}
+
+		synchronized void report() {
+			if (lastGc == null) {
+				return;
+			}
+			System.out.println();
+			System.out.printf(Locale.ROOT, "server heap used: %.1f MB at end, %.1f MB peak%n", lastHeapMb, maxHeapMb);
+			System.out.printf(Locale.ROOT, "server GC during run: %.0f young (%.3f s), %.0f full (%.3f s)%n",
+					lastGc[0] - firstGc[0], lastGc[1] - firstGc[1], lastGc[2] - firstGc[2], lastGc[3] - firstGc[3]);
+			System.out.printf(Locale.ROOT, "server threads: %d peak%n", maxThreads);
+		}
+	}
+
+	/*
+	 * a thermostat speaking the ASCII protocol on one end of a socat pseudo-terminal pair
+	 */
+	private static class SimulatedDevice {
+		private final Process socat;
+		private final String serverPort;
+		private final InputStream input;
+		private final OutputStream output;
+		private final Thread reader;
+		private final Thread reporter;
+
+		private double desired = 20;
+		private double ambient = 18 + ThreadLocalRandom.current().nextDouble(4);
+		private boolean heaterOn;
+
+		SimulatedDevice(int index, Duration reportInterval) throws Exception {
+			var directory = Files.createTempDirectory("load-sim-" + index);
+			var serverLink = directory.resolve("server");
+			var deviceLink = directory.resolve("device");
+			socat = new ProcessBuilder("socat", "pty,raw,echo=0,link=" + serverLink, "pty,raw,echo=0,link=" + deviceLink)
+					.redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+			for (int i = 0; i < 50 && !(Files.exists(serverLink) && Files.exists(deviceLink)); ++i) {
+				Thread.sleep(100);
+			}
+			if (!Files.exists(deviceLink)) {
+				socat.destroy();
+				throw new IllegalStateException("socat did not create a pseudo-terminal pair");
+			}
+			serverPort = serverLink.toString();
+			input = new FileInputStream(deviceLink.toFile());
+			output = new FileOutputStream(deviceLink.toFile());
+			reader = new Thread(this::read, "load-sim-read-" + index);
+			reader.setDaemon(true);
+			reader.start();
+			reporter = new Thread(() -> {
+				try {
+					while (true) {
+						Thread.sleep(reportInterval.toMillis());
+						report();
+					}
+				} catch (InterruptedException e) {
+					// closed
+				}
+			}, "load-sim-report-" + index);
+			reporter.setDaemon(true);
+			reporter.start();
+		}
+
+		private void read() {
+			var line = new StringBuilder();
+			try {
+				int b;
+				while ((b = input.read()) >= 0) {
+					if (b != '\n') {
+						line.append((char) b);
+						continue;
+					}
+					var command = line.toString();
+					line.setLength(0);
+					if (command.startsWith("D:")) {
+						synchronized (this) {
+							desired = Double.parseDouble(command.substring(2));
+						}
+						report();
+					} else if (command.equals("U")) {
+						report();
+					}                                          // binary framing offers are ignored
+				}
+			} catch (IOException | RuntimeException e) {
+				// closed
+			}
+		}
+
+		private synchronized void report() {
+			heaterOn = ambient < desired - 0.5 || (heaterOn && ambient < desired + 0.5);
+			ambient += (heaterOn ? 0.05 : -0.02) + ThreadLocalRandom.current().nextGaussian() * 0.01;
+			var message = String.format(Locale.ROOT, "D:%f,A:%f,H:%d,L:0\n", desired, ambient, heaterOn ? 1 : 0);
+			try {
+				output.write(message.getBytes(StandardCharsets.US_ASCII));
+				output.flush();
+			} catch (IOException e) {
+				// closed
+			}
+		}
+
+		void close() {
+			reporter.interrupt();
+			socat.destroy();
+			try {
+				input.close();
+				output.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package edu.snhu.erik.mattheis.thermostat.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.snhu.erik.mattheis.thermostat.archive.SampleCodec.SampleConsumer;
+import edu.snhu.erik.mattheis.thermostat.db.Temperature;
+
+/**
+ * the archived samples of all thermostats for one closed day, in a segment file of compressed blocks
+ * (see {@link SampleCodec}) and an index file locating the block of each thermostat
+ *
+ * the index is laid out as:
+ *
+ * <pre>
+ * [ version: int ][ entries: int ]
+ * then for each thermostat:
+ * [ id length: short ][ id: UTF-8 ][ offset: long ][ length: int ][ count: int ][ first: long ][ last: long ]
+ * </pre>
+ *
+ * both files are written under temporary names and the index is renamed last, so a day
+ * with an index is complete - the segment file is memory-mapped for reading
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class ArchiveSegment {
+
+	static final String SEGMENT_SUFFIX = ".gorilla";
+	static final String INDEX_SUFFIX = ".idx";
+
+	private static final int VERSION = 1;
+
+	private final ByteBuffer buffer;
+	private final Map<String, Entry> entries;
+
+	/*
+	 * the location of the block of one thermostat
+	 */
+	private static final class Entry {
+		final long offset;
+		final int length;
+		final int count;
+		final long first;
+		final long last;
+
+		Entry(long offset, int length, int count, long first, long last) {
+			this.offset = offset;
+			this.length = length;
+			this.count = count;
+			this.first = first;
+			this.last = last;
+		}
+	}
+
+	private ArchiveSegment(ByteBuffer buffer, Map<String, Entry> entries) {
+		this.buffer = buffer;
+		this.entries = entries;
+	}
+
+	/**
+	 * opens the archive of a day, mapping its segment file
+	 *
+	 * @param directory the archive directory
+	 * @param day       the day
+	 * @return the opened segment
+	 * @throws IOException if the files cannot be read
+	 */
+	static ArchiveSegment open(Path directory, LocalDate day) throws IOException {
+		var entries = new HashMap<String, Entry>();
+		try (var in = new DataInputStream(Files.newInputStream(index(directory, day)))) {
+			var version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("unknown archive index version " + version + " for " + day);
+			}
+			for (var i = in.readInt(); i > 0; --i) {
+				var id = new byte[in.readUnsignedShort()];
+				in.readFully(id);
+				entries.put(new String(id, StandardCharsets.UTF_8),
+						new Entry(in.readLong(), in.readInt(), in.readInt(), in.readLong(), in.readLong()));
+			}
+		}
+		try (var channel = FileChannel.open(segment(directory, day), StandardOpenOption.READ)) {
+			return new ArchiveSegment(channel.map(MapMode.READ_ONLY, 0, channel.size()), entries);
+		}
+	}
+
+	/**
+	 * reads the samples of a thermostat within a period
+	 *
+	 * @param thermostatId the ID of the thermostat
+	 * @param from         the start of the period
+	 * @param to           the end of the period
+	 * @param consumer     receives each sample within the period in timestamp order
+	 */
+	void read(String thermostatId, Instant from, Instant to, SampleConsumer consumer) {
+		var entry = entries.get(thermostatId);
+		var start = from.toEpochMilli();
+		var end = to.toEpochMilli();
+		if (entry == null || entry.last < start || entry.first >= end) {
+			return;
+		}
+		SampleCodec.decode(buffer, (int) entry.offset, entry.count,
+				(timestamp, temperature, duration, heaterOn, desiredTemperature) -> {
+					if (timestamp >= start && timestamp < end) {
+						consumer.accept(timestamp, temperature, duration, heaterOn, desiredTemperature);
+					}
+				});
+	}
+
+	/**
+	 * gets the index file of a day
+	 *
+	 * @param directory the archive directory
+	 * @param day       the day
+	 * @return the path of the index file
+	 */
+	static Path index(Path directory, LocalDate day) {
+		return directory.resolve(day + INDEX_SUFFIX);
+	}
+
+	private static Path segment(Path directory, LocalDate day) {
+		return directory.resolve(day + SEGMENT_SUFFIX);
+	}
+
+	/**
+	 * writes the archive of one day, taking the samples of one thermostat at a time so a day is never held in memory
+	 */
+	static class Writer implements Closeable {
+		private final Path directory;
+		private final LocalDate day;
+		private final Path segmentFile;
+		private final OutputStream segment;
+		private final List<Temperature> block = new ArrayList<>();
+		private final Map<String, Entry> written = new HashMap<>();
+		private String thermostatId;
+		private long offset;
+		private long samples;
+		private boolean complete;
+
+		/**
+		 * starts writing the archive of a day
+		 *
+		 * @param directory the archive directory
+		 * @param day       the day
+		 * @throws IOException if the segment file cannot be created
+		 */
+		Writer(Path directory, LocalDate day) throws IOException {
+			this.directory = directory;
+			this.day = day;
+			this.segmentFile = temporary(segment(directory, day));
+			this.segment = new BufferedOutputStream(Files.newOutputStream(segmentFile));
+		}
+
+		/**
+		 * adds a sample - samples must be grouped by thermostat and in timestamp order within each thermostat
+		 *
+		 * @param sample the sample, ignored if it has no temperature
+		 * @throws IOException if the segment cannot be written
+		 */
+		void add(Temperature sample) throws IOException {
+			if (sample.temperature == null || sample.timestamp == null) {
+				return;
+			}
+			if (!sample.thermostatId.equals(thermostatId)) {
+				flush();
+				thermostatId = sample.thermostatId;
+			}
+			block.add(sample);
+		}
+
+		/**
+		 * gets the number of samples written so far
+		 *
+		 * @return the number of samples
+		 */
+		long getSamples() {
+			return samples;
+		}
+
+		/**
+		 * gets the number of bytes of compressed samples written so far
+		 *
+		 * @return the size of the segment
+		 */
+		long getSize() {
+			return offset;
+		}
+
+		/**
+		 * writes the index, then moves both files into place
+		 *
+		 * @throws IOException if the files cannot be written
+		 */
+		void commit() throws IOException {
+			flush();
+			segment.close();
+			var indexFile = temporary(index(directory, day));
+			try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile)))) {
+				out.writeInt(VERSION);
+				out.writeInt(written.size());
+				for (var entry : written.entrySet()) {
+					var id = entry.getKey().getBytes(StandardCharsets.UTF_8);
+					out.writeShort(id.length);
+					out.write(id);
+					out.writeLong(entry.getValue().offset);
+					out.writeInt(entry.getValue().length);
+					out.writeInt(entry.getValue().count);
+					out.writeLong(entry.getValue().first);
+					out.writeLong(entry.getValue().last);
+				}
+			}
+			force(segmentFile);
+			force(indexFile);
+			Files.move(segmentFile, segment(directory, day), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			Files.move(indexFile, index(directory, day), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			complete = true;
+		}
+
+		/**
+		 * discards the files unless committed
+		 *
+		 * @throws IOException if the files cannot be removed
+		 */
+		@Override
+		public void close() throws IOException {
+			if (!complete) {
+				segment.close();
+				Files.deleteIfExists(segmentFile);
+				Files.deleteIfExists(temporary(index(directory, day)));
+			}
+		}
+
+		private void flush() throws IOException {
+			if (block.isEmpty()) {
+				return;
+			}
+			var bytes = SampleCodec.encode(block);
+			segment.write(bytes);
+			written.put(thermostatId, new Entry(offset, bytes.length, block.size(),
+					block.get(0).timestamp.toEpochMilli(), block.get(block.size() - 1).timestamp.toEpochMilli()));
+			offset += bytes.length;
+			samples += block.size();
+			block.clear();
+		}
+
+		private static Path temporary(Path file) {
+			return file.resolveSibling(file.getFileName() + ".tmp");
+		}
+
+		private static void force(Path file) throws IOException {
+			try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+		}
+	}
+}
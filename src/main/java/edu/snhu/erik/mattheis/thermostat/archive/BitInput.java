@@ -0,0 +1,57 @@
+package edu.snhu.erik.mattheis.thermostat.archive;
+
+import java.nio.ByteBuffer;
+
+/**
+ * reads a stream of bits, most significant bit first, from a buffer written by {@link BitOutput}
+ *
+ * reads use absolute positions, so the buffer may be shared with other readers
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class BitInput {
+
+	private final ByteBuffer buffer;
+	private final int offset;
+	private long bits;   // number of bits read
+
+	/**
+	 * creates a reader of the bytes from the given offset
+	 *
+	 * @param buffer the buffer to read
+	 * @param offset the position of the first byte
+	 */
+	BitInput(ByteBuffer buffer, int offset) {
+		this.buffer = buffer;
+		this.offset = offset;
+	}
+
+	/**
+	 * reads a single bit
+	 *
+	 * @return the bit read
+	 */
+	boolean readBit() {
+		return readBits(1) != 0;
+	}
+
+	/**
+	 * reads bits into the low bits of a value
+	 *
+	 * @param count the number of bits to read, from 0 to 64
+	 * @return the bits read
+	 */
+	long readBits(int count) {
+		long value = 0;
+		while (count > 0) {
+			var current = buffer.get(offset + (int) (bits >>> 3)) & 0xff;
+			var available = 8 - (int) (bits & 7);            // bits left in the current byte
+			var take = Math.min(available, count);
+			var chunk = (current >>> (available - take)) & ((1 << take) - 1);
+			value = (value << take) | chunk;
+			bits += take;
+			count -= take;
+		}
+		return value;
+	}
+}
@@ -0,0 +1,53 @@
+package edu.snhu.erik.mattheis.thermostat.archive;
+
+import java.util.Arrays;
+
+/**
+ * writes a stream of bits, most significant bit first, into a growing byte array
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class BitOutput {
+
+	private byte[] bytes = new byte[256];
+	private long bits;   // number of bits written
+
+	/**
+	 * writes a single bit
+	 *
+	 * @param bit the bit to write
+	 */
+	void writeBit(boolean bit) {
+		writeBits(bit ? 1 : 0, 1);
+	}
+
+	/**
+	 * writes the low bits of a value
+	 *
+	 * @param value the value holding the bits to write
+	 * @param count the number of low bits to write, from 0 to 64
+	 */
+	void writeBits(long value, int count) {
+		while (count > 0) {
+			var index = (int) (bits >>> 3);
+			if (index == bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			var free = 8 - (int) (bits & 7);                 // bits left in the current byte
+			var take = Math.min(free, count);
+			var chunk = (int) (value >>> (count - take)) & ((1 << take) - 1);
+			bytes[index] |= chunk << (free - take);
+			bits += take;
+			count -= take;
+		}
+	}
+
+	/**
+	 * copies the bits written, padding the last byte with zeros
+	 *
+	 * @return the written bytes
+	 */
+	byte[] toByteArray() {
+		return Arrays.copyOf(bytes, (int) ((bits + 7) >>> 3));
+	}
+}
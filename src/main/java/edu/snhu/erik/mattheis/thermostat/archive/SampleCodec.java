@@ -0,0 +1,260 @@
+package edu.snhu.erik.mattheis.thermostat.archive;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import edu.snhu.erik.mattheis.thermostat.db.Temperature;
+
+/**
+ * compresses the temperature samples of one thermostat in the style of Facebook's Gorilla, one column
+ * after another so that each column is compressed against its own previous values
+ *
+ * <pre>
+ * timestamps:           first as 64 bits, then the delta of the delta from the previous timestamp
+ * temperatures:         first as 32 bits, then XOR with the previous value
+ * durations:            delta from the previous duration, of the duration + 1 (0 if unknown)
+ * heater on durations:  delta from the previous heater on duration, of the duration + 1 (0 if unknown)
+ * desired temperatures: first as 32 bits, then XOR with the previous value (NaN if unknown)
+ * </pre>
+ *
+ * deltas are written with a variable length prefix:
+ *
+ * <pre>
+ * 0                  - zero
+ * 10   + 7 bits      - from -64 to 63
+ * 110  + 12 bits     - from -2048 to 2047
+ * 1110 + 20 bits     - from -524288 to 524287
+ * 1111 + 64 bits     - anything else
+ * </pre>
+ *
+ * XORs of floats are written as:
+ *
+ * <pre>
+ * 0                                           - equal to the previous value
+ * 10 + meaningful bits                        - within the previous window of leading and trailing zeros
+ * 11 + 5 bits leading zeros + 5 bits length-1 - a new window, followed by the meaningful bits
+ * </pre>
+ *
+ * samples which sample a steady temperature at a steady interval cost a few bits each
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+final class SampleCodec {
+
+	private static final int NAN = Float.floatToIntBits(Float.NaN);
+
+	/**
+	 * receives the decoded samples
+	 */
+	@FunctionalInterface
+	interface SampleConsumer {
+		/**
+		 * accepts a single sample
+		 *
+		 * @param timestamp          epoch milliseconds
+		 * @param temperature        the temperature
+		 * @param duration           milliseconds covered, or -1 if unknown
+		 * @param heaterOn           milliseconds the heater was on, or -1 if unknown
+		 * @param desiredTemperature the desired temperature, or NaN if unknown
+		 */
+		void accept(long timestamp, float temperature, long duration, long heaterOn, float desiredTemperature);
+	}
+
+	private SampleCodec() {
+	}
+
+	/**
+	 * compresses samples in timestamp order
+	 *
+	 * @param samples the samples, all with a timestamp and temperature
+	 * @return the compressed bytes
+	 */
+	static byte[] encode(List<Temperature> samples) {
+		var out = new BitOutput();
+		long previous = 0;
+		long delta = 0;
+		for (var i = 0; i < samples.size(); ++i) {
+			var timestamp = samples.get(i).timestamp.toEpochMilli();
+			if (i == 0) {
+				out.writeBits(timestamp, 64);
+			} else {
+				var next = timestamp - previous;
+				writeDelta(out, next - delta);
+				delta = next;
+			}
+			previous = timestamp;
+		}
+		var floats = new FloatWriter(out);
+		samples.forEach(sample -> floats.write(Float.floatToIntBits(sample.temperature)));
+		writeLongs(out, samples, true);
+		writeLongs(out, samples, false);
+		var desired = new FloatWriter(out);
+		samples.forEach(sample -> desired.write(sample.desiredTemperature == null
+				? NAN
+				: Float.floatToIntBits(sample.desiredTemperature)));
+		return out.toByteArray();
+	}
+
+	/**
+	 * decompresses samples
+	 *
+	 * @param buffer   the buffer holding the compressed bytes
+	 * @param offset   the position of the compressed bytes in the buffer
+	 * @param count    the number of samples
+	 * @param consumer receives each sample in timestamp order
+	 */
+	static void decode(ByteBuffer buffer, int offset, int count, SampleConsumer consumer) {
+		var in = new BitInput(buffer, offset);
+		var timestamps = new long[count];
+		long delta = 0;
+		for (var i = 0; i < count; ++i) {
+			if (i == 0) {
+				timestamps[i] = in.readBits(64);
+			} else {
+				delta += readDelta(in);
+				timestamps[i] = timestamps[i - 1] + delta;
+			}
+		}
+		var temperatures = new FloatReader(in).read(count);
+		var durations = readLongs(in, count);
+		var heaterOn = readLongs(in, count);
+		var desired = new FloatReader(in).read(count);
+		for (var i = 0; i < count; ++i) {
+			consumer.accept(timestamps[i], Float.intBitsToFloat(temperatures[i]), durations[i], heaterOn[i],
+					Float.intBitsToFloat(desired[i]));
+		}
+	}
+
+	/*
+	 * writes durations or heater on durations as deltas of the value + 1, so unknown is 0
+	 */
+	private static void writeLongs(BitOutput out, List<Temperature> samples, boolean durations) {
+		long previous = 0;
+		for (var sample : samples) {
+			var value = durations ? sample.duration : sample.heaterOnDuration;
+			var next = value == null ? 0 : value + 1;
+			writeDelta(out, next - previous);
+			previous = next;
+		}
+	}
+
+	private static long[] readLongs(BitInput in, int count) {
+		var values = new long[count];
+		long previous = 0;
+		for (var i = 0; i < count; ++i) {
+			previous += readDelta(in);
+			values[i] = previous - 1;
+		}
+		return values;
+	}
+
+	private static void writeDelta(BitOutput out, long delta) {
+		if (delta == 0) {
+			out.writeBit(false);
+		} else if (delta >= -64 && delta < 64) {
+			out.writeBits(0b10, 2);
+			out.writeBits(delta, 7);
+		} else if (delta >= -2048 && delta < 2048) {
+			out.writeBits(0b110, 3);
+			out.writeBits(delta, 12);
+		} else if (delta >= -524288 && delta < 524288) {
+			out.writeBits(0b1110, 4);
+			out.writeBits(delta, 20);
+		} else {
+			out.writeBits(0b1111, 4);
+			out.writeBits(delta, 64);
+		}
+	}
+
+	private static long readDelta(BitInput in) {
+		if (!in.readBit()) {
+			return 0;
+		} else if (!in.readBit()) {
+			return signed(in.readBits(7), 7);
+		} else if (!in.readBit()) {
+			return signed(in.readBits(12), 12);
+		} else if (!in.readBit()) {
+			return signed(in.readBits(20), 20);
+		}
+		return in.readBits(64);
+	}
+
+	private static long signed(long value, int bits) {
+		return (value << (64 - bits)) >> (64 - bits);  // sign extend
+	}
+
+	/*
+	 * writes the bits of floats as XORs with the previous value
+	 */
+	private static final class FloatWriter {
+		private final BitOutput out;
+		private boolean first = true;
+		private int previous;
+		private int leading = -1;   // the current window, -1 if none
+		private int trailing;
+
+		FloatWriter(BitOutput out) {
+			this.out = out;
+		}
+
+		void write(int bits) {
+			if (first) {
+				out.writeBits(bits, 32);
+				first = false;
+			} else {
+				var xor = bits ^ previous;
+				if (xor == 0) {
+					out.writeBit(false);
+				} else {
+					var lead = Math.min(Integer.numberOfLeadingZeros(xor), 31);
+					var trail = Integer.numberOfTrailingZeros(xor);
+					if (leading >= 0 && lead >= leading && trail >= trailing) {
+						out.writeBits(0b10, 2);
+						out.writeBits(xor >>> trailing, 32 - leading - trailing);
+					} else {
+						leading = lead;
+						trailing = trail;
+						var length = 32 - lead - trail;
+						out.writeBits(0b11, 2);
+						out.writeBits(lead, 5);
+						out.writeBits(length - 1, 5);
+						out.writeBits(xor >>> trail, length);
+					}
+				}
+			}
+			previous = bits;
+		}
+	}
+
+	/*
+	 * reads floats written by FloatWriter
+	 */
+	private static final class FloatReader {
+		private final BitInput in;
+
+		FloatReader(BitInput in) {
+			this.in = in;
+		}
+
+		int[] read(int count) {
+			var values = new int[count];
+			var leading = 0;
+			var trailing = 0;
+			for (var i = 0; i < count; ++i) {
+				if (i == 0) {
+					values[i] = (int) in.readBits(32);
+				} else if (!in.readBit()) {
+					values[i] = values[i - 1];
+				} else {
+					if (in.readBit()) {
+						leading = (int) in.readBits(5);
+						trailing = 32 - leading - ((int) in.readBits(5) + 1);
+					}
+					var xor = (int) in.readBits(32 - leading - trailing) << trailing;
+					values[i] = values[i - 1] ^ xor;
+				}
+			}
+			return values;
+		}
+	}
+}
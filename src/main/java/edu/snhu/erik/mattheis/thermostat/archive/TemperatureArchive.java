@@ -0,0 +1,151 @@
+package edu.snhu.erik.mattheis.thermostat.archive;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.snhu.erik.mattheis.thermostat.db.Temperature;
+import edu.snhu.erik.mattheis.thermostat.db.TemperatureBins;
+
+/**
+ * a local archive of raw temperature samples, kept for audits long after MongoDB has expired them
+ *
+ * the samples of each closed day (UTC) are compressed into one segment file with a small index locating each
+ * thermostat (see {@link ArchiveSegment}) - segments are memory-mapped when first read and stay mapped
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@ApplicationScoped
+public class TemperatureArchive {
+
+	/**
+	 * writes the samples of one day
+	 */
+	@FunctionalInterface
+	public interface SampleSource {
+		/**
+		 * passes every sample of the day to the sink, grouped by thermostat and in timestamp order within each
+		 *
+		 * @param sink receives the samples
+		 * @throws IOException if the sink cannot write a sample
+		 */
+		void forEach(SampleSink sink) throws IOException;
+	}
+
+	/**
+	 * receives the samples of one day
+	 */
+	@FunctionalInterface
+	public interface SampleSink {
+		/**
+		 * accepts a single sample
+		 *
+		 * @param sample the sample
+		 * @throws IOException if the sample cannot be written
+		 */
+		void accept(Temperature sample) throws IOException;
+	}
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final NavigableSet<LocalDate> days = new ConcurrentSkipListSet<>();        // archived days
+	private final Map<LocalDate, ArchiveSegment> opened = new ConcurrentHashMap<>(); // mapped on first read
+
+	@ConfigProperty(name = "thermostat.archive.directory", defaultValue = "archive")
+	Path directory;
+
+	/**
+	 * finds the archived days, without reading them
+	 */
+	@PostConstruct
+	void init() {
+		try {
+			Files.createDirectories(directory);
+			try (var files = Files.list(directory)) {
+				files.map(file -> file.getFileName().toString())
+						.filter(name -> name.endsWith(ArchiveSegment.INDEX_SUFFIX))
+						.map(name -> LocalDate.parse(name.substring(0, name.length() - ArchiveSegment.INDEX_SUFFIX.length())))
+						.forEach(days::add);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("problem opening temperature archive", e);
+		}
+	}
+
+	/**
+	 * determines whether a day has been archived
+	 *
+	 * @param day the day
+	 * @return {@code true} if the day has been archived
+	 */
+	public boolean isArchived(LocalDate day) {
+		return days.contains(day);
+	}
+
+	/**
+	 * archives the samples of a closed day, replacing any earlier archive of the day
+	 *
+	 * @param day     the day
+	 * @param samples the samples of the day
+	 * @return the number of samples archived
+	 * @throws IOException if the archive cannot be written
+	 */
+	public long archive(LocalDate day, SampleSource samples) throws IOException {
+		try (var writer = new ArchiveSegment.Writer(directory, day)) {
+			samples.forEach(writer::add);
+			writer.commit();
+			opened.remove(day);
+			days.add(day);
+			log.info("archived {} temperature samples of {} in {} bytes", writer.getSamples(), day, writer.getSize());
+			return writer.getSamples();
+		}
+	}
+
+	/**
+	 * adds the archived samples within a period to the bins of each thermostat
+	 *
+	 * @param from the start of the period
+	 * @param to   the end of the period
+	 * @param bins the bins of each thermostat to report on, keyed by thermostat ID
+	 */
+	public void addHistory(Instant from, Instant to, Map<String, TemperatureBins> bins) {
+		if (!from.isBefore(to)) {
+			return;
+		}
+		var first = LocalDate.ofInstant(from, ZoneOffset.UTC);
+		var last = LocalDate.ofInstant(to.minusMillis(1), ZoneOffset.UTC);
+		for (var day : days.subSet(first, true, last, true)) {
+			var segment = open(day);
+			bins.forEach((thermostatId, thermostatBins) -> segment.read(thermostatId, from, to,
+					(timestamp, temperature, duration, heaterOn, desiredTemperature) ->
+							thermostatBins.addSample(Instant.ofEpochMilli(timestamp), temperature,
+									duration < 0 ? 1 : duration,                   // weighted as in MongoDB
+									heaterOn < 0 ? null : heaterOn,
+									Float.isNaN(desiredTemperature) ? null : desiredTemperature)));
+		}
+	}
+
+	private ArchiveSegment open(LocalDate day) {
+		return opened.computeIfAbsent(day, key -> {
+			try {
+				return ArchiveSegment.open(directory, key);
+			} catch (IOException e) {
+				throw new UncheckedIOException("problem reading temperature archive of " + key, e);
+			}
+		});
+	}
+}
@@ -0,0 +1,121 @@
+package edu.snhu.erik.mattheis.thermostat.archive;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.snhu.erik.mattheis.thermostat.db.TemperatureRepository;
+import edu.snhu.erik.mattheis.thermostat.db.TemperatureTier;
+import edu.snhu.erik.mattheis.thermostat.store.StorageProducer;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+
+/**
+ * background job which copies the raw temperature samples of each closed day into the {@link TemperatureArchive}
+ *
+ * a day is archived once it has been over for {@code thermostat.archive.lag}, allowing for late samples,
+ * and only while all of it is still within the raw retention period - a day which was not archived in
+ * time (e.g. because the server was down for longer than the raw retention period) is left out
+ *
+ * archiving only runs when thermostats are stored in MongoDB
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@ApplicationScoped
+public class TemperatureArchiver {
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final Timer timer = new Timer("temperature-archive", true);
+
+	private volatile TimerTask archiver;
+	private volatile boolean running;
+
+	@Inject
+	TemperatureRepository repository;
+
+	@Inject
+	TemperatureArchive archive;
+
+	@ConfigProperty(name = "thermostat.storage", defaultValue = StorageProducer.MONGO)
+	String storage;
+
+	@ConfigProperty(name = "thermostat.archive.interval", defaultValue = "1h")
+	Duration interval;
+
+	@ConfigProperty(name = "thermostat.archive.lag", defaultValue = "1h")
+	Duration lag;
+
+	/**
+	 * starts a task to archive closed days at the configured interval
+	 *
+	 * @param startup the Quarkus startup event
+	 */
+	void onStartup(@Observes StartupEvent startup) {
+		if (!StorageProducer.MONGO.equals(storage)) {
+			return;
+		}
+		running = true;
+		archiver = new TimerTask() {
+			@Override
+			public void run() {
+				Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+				try {
+					archive();
+				} catch (Exception e) {
+					log.error("problem archiving temperature history", e);
+				}
+			}
+		};
+		timer.schedule(archiver, interval.toMillis(), interval.toMillis());
+	}
+
+	/**
+	 * cancels the archive task, stopping a run in progress after its current day
+	 *
+	 * @param shutdown the Quarkus shutdown event
+	 */
+	void onShutdown(@Observes ShutdownEvent shutdown) {
+		running = false;
+		if (archiver != null) {
+			archiver.cancel();
+		}
+		timer.cancel();
+	}
+
+	/**
+	 * archives each closed day still wholly within the raw retention period which has not been archived yet
+	 *
+	 * @throws IOException if the archive cannot be written
+	 */
+	void archive() throws IOException {
+		if (!repository.isBootstrapped()) {
+			return;
+		}
+		var now = Instant.now();
+		var first = LocalDate.ofInstant(now.minus(repository.retention(TemperatureTier.RAW)), ZoneOffset.UTC).plusDays(1);
+		var last = LocalDate.ofInstant(now.minus(lag), ZoneOffset.UTC).minusDays(1);
+		for (var day = first; running && !day.isAfter(last); day = day.plusDays(1)) {
+			if (!archive.isArchived(day)) {
+				var from = day.atStartOfDay(ZoneOffset.UTC).toInstant();
+				var to = day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+				archive.archive(day, sink -> {
+					for (var sample : repository.listSamples(from, to)) {
+						sink.accept(sample);
+					}
+				});
+			}
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package edu.snhu.erik.mattheis.thermostat.comm;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * constants and helpers for the compact binary framing of the serial protocol
+ *
+ * binary framing is negotiated when connecting - the server sends the ASCII line {@code F:B}
+ * and a thermostat which supports binary framing answers with the same line, after which it
+ * sends reports as binary frames - a thermostat which does not answer keeps using ASCII
+ *
+ * each frame is laid out as:
+ *
+ * <pre>
+ * [ sync: 0xA5 ][ length: uint8 ][ type: uint8 ][ payload: length bytes ][ crc16: uint16 ]
+ * </pre>
+ *
+ * where the CRC-16/CCITT-FALSE checksum covers the length, type and payload and all multi-byte
+ * values are big-endian - temperatures are signed 16-bit fixed-point values in hundredths of a degree C
+ *
+ * the frame types are:
+ *
+ * <pre>
+ * 0x01 report                  (thermostat to server) desired: int16, ambient: int16, flags: uint8
+ *                                                     where flag 0x01 = heater on and 0x02 = remote lock
+ * 0x10 request update          (server to thermostat) no payload
+ * 0x11 set desired temperature (server to thermostat) desired: int16
+ * </pre>
+ *
+ * a report frame is 10 bytes where the equivalent ASCII message is around 33
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+final class BinaryFrame {
+
+	static final byte SYNC = (byte) 0xA5;
+	static final int HEADER = 3;                // sync, length and type
+	static final int TRAILER = 2;               // crc16
+	static final int MAX_PAYLOAD = 0xFF;
+
+	static final int REPORT = 0x01;
+	static final int REQUEST_UPDATE = 0x10;
+	static final int SET_DESIRED_TEMPERATURE = 0x11;
+
+	static final int FLAG_HEATER_ON = 0x01;
+	static final int FLAG_REMOTE_LOCK = 0x02;
+
+	/**
+	 * the line sent to offer binary framing and echoed by a thermostat accepting it
+	 */
+	static final String NEGOTIATE = "F:B";
+
+	private static final float SCALE = 100f;
+	private static final int[] CRC_TABLE = new int[256];
+
+	static {
+		for (int i = 0; i < 256; ++i) {
+			var crc = i << 8;
+			for (int bit = 0; bit < 8; ++bit) {
+				crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+			}
+			CRC_TABLE[i] = crc & 0xFFFF;
+		}
+	}
+
+	private BinaryFrame() {
+	}
+
+	/**
+	 * encodes the line offering binary framing
+	 *
+	 * @return the ASCII bytes of the line including the trailing line-feed
+	 */
+	static byte[] negotiate() {
+		return (NEGOTIATE + "\n").getBytes(US_ASCII);
+	}
+
+	/**
+	 * encodes a request for an immediate update
+	 *
+	 * @return the frame bytes
+	 */
+	static byte[] requestUpdate() {
+		return encode(REQUEST_UPDATE);
+	}
+
+	/**
+	 * encodes a command to set the desired temperature
+	 *
+	 * @param desiredTemperature the desired temperature (degrees C)
+	 * @return the frame bytes
+	 */
+	static byte[] setDesiredTemperature(float desiredTemperature) {
+		var fixed = toFixed(desiredTemperature);
+		return encode(SET_DESIRED_TEMPERATURE, (byte) (fixed >> 8), (byte) fixed);
+	}
+
+	/**
+	 * encodes a frame of the given type
+	 *
+	 * @param type    the frame type
+	 * @param payload the frame payload
+	 * @return the frame bytes
+	 */
+	static byte[] encode(int type, byte... payload) {
+		if (payload.length > MAX_PAYLOAD) {
+			throw new IllegalArgumentException("payload too large");
+		}
+		var frame = new byte[HEADER + payload.length + TRAILER];
+		frame[0] = SYNC;
+		frame[1] = (byte) payload.length;
+		frame[2] = (byte) type;
+		System.arraycopy(payload, 0, frame, HEADER, payload.length);
+		var crc = crc16(frame, 1, frame.length - 1 - TRAILER);
+		frame[frame.length - 2] = (byte) (crc >> 8);
+		frame[frame.length - 1] = (byte) crc;
+		return frame;
+	}
+
+	/**
+	 * computes the CRC-16/CCITT-FALSE checksum of a range of bytes
+	 *
+	 * @param data   the bytes to check
+	 * @param offset the start of the range
+	 * @param length the length of the range
+	 * @return the checksum in the low 16 bits
+	 */
+	static int crc16(byte[] data, int offset, int length) {
+		var crc = 0xFFFF;
+		for (int i = offset; i < offset + length; ++i) {
+			crc = ((crc << 8) ^ CRC_TABLE[((crc >> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+		}
+		return crc;
+	}
+
+	/**
+	 * converts a temperature to fixed-point, clamping it to the representable range
+	 *
+	 * @param temperature the temperature (degrees C)
+	 * @return the temperature in hundredths of a degree
+	 */
+	static short toFixed(float temperature) {
+		var scaled = Math.round(temperature * SCALE);
+		return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, scaled));
+	}
+
+	/**
+	 * converts a fixed-point temperature back to degrees
+	 *
+	 * @param fixed the temperature in hundredths of a degree
+	 * @return the temperature (degrees C)
+	 */
+	static float fromFixed(short fixed) {
+		return fixed / SCALE;
+	}
+}
@@ -0,0 +1,235 @@
+package edu.snhu.erik.mattheis.thermostat.comm;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * an outbound command queue for a single thermostat
+ *
+ * pending commands are held in slots rather than a FIFO so that redundant commands collapse:
+ *
+ * <ul>
+ * <li>only the most recent desired temperature is sent (last writer wins)</li>
+ * <li>any number of update requests, user or polling, result in a single {@code U}</li>
+ * <li>desired temperature is sent before a user update request, which is sent before a polling update request</li>
+ * </ul>
+ *
+ * an offer of {@link BinaryFrame binary framing} is sent ahead of everything else - once the thermostat
+ * accepts it, commands are encoded as binary frames instead of ASCII lines
+ *
+ * commands are formatted and written by a dedicated sender thread which
+ * paces writes to stay within the configured link budget (bytes per second)
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class CommandQueue {
+
+	/**
+	 * the priority of a queued command
+	 */
+	enum Priority {
+		/**
+		 * a command issued on behalf of a user - sent ahead of polling
+		 */
+		USER,
+		/**
+		 * a command issued by the background poller
+		 */
+		POLL
+	}
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final Lock lock = new ReentrantLock();
+	private final Condition pending = lock.newCondition();
+	private final String name;
+	private final OutputStream output;
+	private final int bytesPerSecond;
+
+	// pending command slots - guarded by lock
+	private Float desiredTemperature;
+	private boolean userUpdate;
+	private boolean pollUpdate;
+	private boolean negotiate;
+
+	private volatile boolean binary;
+
+	// token bucket for the link budget - only accessed by the sender thread
+	private double tokens;
+	private long lastRefill;
+
+	private volatile Thread sender;
+
+	/**
+	 * creates a queue writing to the given output stream
+	 *
+	 * @param name           a descriptive name for the queue - used for the sender thread and logging
+	 * @param output         the stream to write commands to
+	 * @param bytesPerSecond the maximum number of bytes per second to write to the stream
+	 */
+	CommandQueue(String name, OutputStream output, int bytesPerSecond) {
+		if (bytesPerSecond <= 0) {
+			throw new IllegalArgumentException("bytesPerSecond must be positive");
+		}
+		this.name = name;
+		this.output = output;
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	/**
+	 * starts the sender thread
+	 */
+	void start() {
+		tokens = bytesPerSecond;
+		lastRefill = System.nanoTime();
+		sender = new Thread(this::send, "thermostat-commands-" + name);
+		sender.setDaemon(true);
+		sender.start();
+	}
+
+	/**
+	 * stops the sender thread, discarding any pending commands
+	 */
+	void stop() {
+		var thread = sender;
+		sender = null;
+		if (thread != null) {
+			thread.interrupt();
+		}
+		lock.lock();
+		try {
+			desiredTemperature = null;
+			userUpdate = false;
+			pollUpdate = false;
+			negotiate = false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * queues an offer of binary framing to the thermostat
+	 */
+	void negotiate() {
+		lock.lock();
+		try {
+			negotiate = true;
+			pending.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * switches between ASCII and binary encoding of commands, taking effect from the next command sent
+	 *
+	 * @param binary {@code true} to send commands as binary frames
+	 */
+	void setBinary(boolean binary) {
+		this.binary = binary;
+	}
+
+	/**
+	 * queues a request for an immediate update, coalescing with any pending request
+	 *
+	 * @param priority the priority of the request
+	 */
+	void requestUpdate(Priority priority) {
+		lock.lock();
+		try {
+			if (priority == Priority.USER) {
+				userUpdate = true;
+			} else {
+				pollUpdate = true;
+			}
+			pending.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * queues a command to set the desired temperature, replacing any pending value
+	 *
+	 * @param desiredTemperature the desired temperature to set
+	 */
+	void setDesiredTemperature(float desiredTemperature) {
+		lock.lock();
+		try {
+			this.desiredTemperature = desiredTemperature;
+			pending.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void send() {
+		var self = Thread.currentThread();
+		while (sender == self) {
+			try {
+				var message = take();
+				awaitBudget(message.length);
+				output.write(message);
+				output.flush();
+			} catch (InterruptedException e) {
+				break;
+			} catch (IOException e) {
+				log.error("problem sending command to thermostat '{}'", name, e);
+			}
+		}
+	}
+
+	/*
+	 * waits for a pending command and formats it,
+	 * taking slots in priority order
+	 */
+	private byte[] take() throws InterruptedException {
+		lock.lock();
+		try {
+			while (!negotiate && desiredTemperature == null && !userUpdate && !pollUpdate) {
+				pending.await();
+			}
+			if (negotiate) {
+				negotiate = false;
+				return BinaryFrame.negotiate();
+			}
+			if (desiredTemperature != null) {
+				var value = desiredTemperature.floatValue();
+				desiredTemperature = null;
+				return binary
+						? BinaryFrame.setDesiredTemperature(value)
+						: String.format(Locale.ROOT, "D:%f\n", value).getBytes(US_ASCII);
+			}
+			userUpdate = false; // a single update request satisfies
+			pollUpdate = false; // both users and the poller
+			return binary ? BinaryFrame.requestUpdate() : "U\n".getBytes(US_ASCII);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * blocks until the token bucket holds enough bytes for the message
+	 */
+	private void awaitBudget(int bytes) throws InterruptedException {
+		while (true) {
+			var now = System.nanoTime();
+			tokens = Math.min(Math.max(bytesPerSecond, bytes), tokens + (now - lastRefill) * bytesPerSecond / 1e9);
+			lastRefill = now;
+			if (tokens >= bytes) {
+				tokens -= bytes;
+				return;
+			}
+			TimeUnit.NANOSECONDS.sleep((long) Math.ceil((bytes - tokens) * 1e9 / bytesPerSecond));
+		}
+	}
+}
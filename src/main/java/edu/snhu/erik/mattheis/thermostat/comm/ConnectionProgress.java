@@ -0,0 +1,129 @@
+package edu.snhu.erik.mattheis.thermostat.comm;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * tracks the progress of a round of thermostat connections
+ *
+ * <pre>
+ * {
+ *     "started": "2021-10-16T01:20:27.747Z",
+ *     "completed": "2021-10-16T01:20:29.112Z",
+ *     "total": 24,
+ *     "connected": 23,
+ *     "failed": 1,
+ *     "pending": 0,
+ *     "elapsedMillis": 1365
+ * }
+ * </pre>
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@JsonInclude(Include.NON_NULL)
+public class ConnectionProgress {
+
+	private final Instant started = Instant.now();
+	private final int total;
+	private final AtomicInteger connected = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+
+	private volatile Instant completed;
+
+	/**
+	 * creates an instance for a round of connections
+	 *
+	 * @param total the number of thermostats to connect
+	 */
+	ConnectionProgress(int total) {
+		this.total = total;
+		if (total == 0) {
+			completed = started;
+		}
+	}
+
+	/**
+	 * gets the time the round started
+	 *
+	 * @return the start time
+	 */
+	public Instant getStarted() {
+		return started;
+	}
+
+	/**
+	 * gets the time the last connection attempt in the round finished
+	 *
+	 * @return the completion time or {@code null} if still in progress
+	 */
+	public Instant getCompleted() {
+		return completed;
+	}
+
+	/**
+	 * gets the number of thermostats being connected in the round
+	 *
+	 * @return the total number of thermostats
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * gets the number of thermostats successfully connected so far
+	 *
+	 * @return the number of connected thermostats
+	 */
+	public int getConnected() {
+		return connected.get();
+	}
+
+	/**
+	 * gets the number of thermostats which failed or timed out connecting
+	 *
+	 * @return the number of failed thermostats
+	 */
+	public int getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * gets the number of thermostats still connecting
+	 *
+	 * @return the number of pending thermostats
+	 */
+	public int getPending() {
+		return total - connected.get() - failed.get();
+	}
+
+	/**
+	 * gets the time elapsed since the start of the round,
+	 * or the total duration of the round once completed
+	 *
+	 * @return the elapsed time in milliseconds
+	 */
+	public long getElapsedMillis() {
+		var end = completed;
+		return Duration.between(started, end == null ? Instant.now() : end).toMillis();
+	}
+
+	void connected() {
+		connected.incrementAndGet();
+		checkCompleted();
+	}
+
+	void failed() {
+		failed.incrementAndGet();
+		checkCompleted();
+	}
+
+	private void checkCompleted() {
+		if (getPending() == 0) {
+			completed = Instant.now();
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package edu.snhu.erik.mattheis.thermostat.comm;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * connects thermostat clients concurrently with bounded
+ * parallelism and a timeout for each connection attempt
+ *
+ * the timeout starts when an attempt begins rather than when it is submitted,
+ * so a backlog of queued attempts does not eat into each other's budgets -
+ * when an attempt times out it is reported as failed and the thread interrupted
+ * so that a stuck device holds up at most one of the connection threads - the
+ * client is disconnected once the attempt returns, so its port is never left open
+ *
+ * an attempt already in progress for a client is shared rather than repeated,
+ * so the poller and a hot-plug reconnect never race to open the same port
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class Connector {
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final ExecutorService connections;
+	private final ScheduledExecutorService watchdog;
+	private final Duration timeout;
+	private final Map<ThermostatClient, CompletableFuture<ThermostatClient>> pending = new ConcurrentHashMap<>();
+
+	/**
+	 * creates an instance with the given limits
+	 *
+	 * @param parallelism the maximum number of concurrent connection attempts
+	 * @param timeout     the maximum duration of a single connection attempt
+	 */
+	Connector(int parallelism, Duration timeout) {
+		this.connections = Executors.newFixedThreadPool(parallelism, daemonThreads("thermostat-connect-"));
+		this.watchdog = Executors.newSingleThreadScheduledExecutor(daemonThreads("thermostat-connect-watchdog-"));
+		this.timeout = timeout;
+	}
+
+	/**
+	 * connects all the given clients, recording the outcome of each attempt
+	 *
+	 * @param clients  the clients to connect
+	 * @param progress the progress to record outcomes on
+	 * @return a future completing when every attempt has succeeded, failed or timed out
+	 */
+	CompletableFuture<Void> connectAll(List<ThermostatClient> clients, ConnectionProgress progress) {
+		return CompletableFuture.allOf(clients.stream()
+				.map(client -> connect(client).handle((connected, e) -> {
+					if (e == null) {
+						progress.connected();
+					} else {
+						progress.failed();
+					}
+					return null;
+				}))
+				.toArray(CompletableFuture[]::new));
+	}
+
+	/**
+	 * connects a single client, or joins the attempt already in progress for it
+	 *
+	 * @param client the client to connect
+	 * @return a future completing when the client is connected, or exceptionally
+	 *         if the attempt failed or timed out
+	 */
+	CompletableFuture<ThermostatClient> connect(ThermostatClient client) {
+		var result = new CompletableFuture<ThermostatClient>();
+		var existing = pending.putIfAbsent(client, result);
+		if (existing != null) {
+			return existing;
+		}
+		result.whenComplete((connected, e) -> pending.remove(client, result));
+		connections.execute(() -> {
+			var label = client.getState().getLabel();
+			var finished = new AtomicBoolean();
+			var runner = Thread.currentThread();
+			var timer = watchdog.schedule(() -> {
+				if (finished.compareAndSet(false, true)) {
+					log.error("timed out connecting to thermostat '{}' after {}", label, timeout);
+					result.completeExceptionally(new IOException("timed out connecting to thermostat"));
+					runner.interrupt();
+				}
+			}, timeout.toMillis(), TimeUnit.MILLISECONDS);
+			try {
+				client.connect();
+				if (finished.compareAndSet(false, true)) {
+					result.complete(client);
+				} else {
+					client.disconnect(); // reported as timed out - close the port once the attempt has returned
+				}
+			} catch (Exception e) {
+				if (finished.compareAndSet(false, true)) {
+					log.error("problem connecting to thermostat '{}'", label, e);
+					result.completeExceptionally(e);
+				} else {
+					client.disconnect();
+				}
+			} finally {
+				timer.cancel(false);
+				Thread.interrupted(); // clear any interrupt from the watchdog before reuse
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * stops all connection threads, interrupting any attempts in progress
+	 */
+	void shutdown() {
+		connections.shutdownNow();
+		watchdog.shutdownNow();
+	}
+
+	static ThreadFactory daemonThreads(String prefix) {
+		var count = new AtomicInteger();
+		return runnable -> {
+			var thread = new Thread(runnable, prefix + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,51 @@
+package edu.snhu.erik.mattheis.thermostat.comm;
+
+import java.nio.charset.StandardCharsets;
+
+import edu.snhu.erik.mattheis.thermostat.db.ThermostatState;
+
+/**
+ * the state of a thermostat along with its JSON encoding,
+ * so that it is encoded once per change rather than once per read
+ * 
+ * the encoding must not be modified
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+public final class EncodedThermostat {
+
+	private final ThermostatState state;
+	private final byte[] json;
+
+	EncodedThermostat(ThermostatState state, byte[] json) {
+		this.state = state;
+		this.json = json;
+	}
+
+	/**
+	 * gets the thermostat state
+	 * 
+	 * @return the state
+	 */
+	public ThermostatState getState() {
+		return state;
+	}
+
+	/**
+	 * gets the UTF-8 JSON encoding of the state
+	 * 
+	 * @return the encoded state
+	 */
+	public byte[] getJson() {
+		return json;
+	}
+
+	/**
+	 * gets the JSON encoding of the state as text
+	 * 
+	 * @return the encoded state
+	 */
+	public String getJsonText() {
+		return new String(json, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,141 @@
+package edu.snhu.erik.mattheis.thermostat.comm;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * splits the bytes received from a thermostat into messages
+ *
+ * in ASCII mode messages are lines delimited by line-feeds - in binary mode messages are
+ * {@link BinaryFrame frames} which are checked against their CRC before being delivered
+ *
+ * a frame failing its check is dropped and the decoder resynchronizes on the next sync byte after
+ * the start of the bad frame - printable bytes found outside of frames which end with a line-feed
+ * are still delivered as lines, so a thermostat which reverts to ASCII (e.g. after a reset) is noticed
+ *
+ * instances are not thread-safe - bytes must be fed from a single thread or in order
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class FrameDecoder {
+
+	private static final byte LF = 0x0A;        // ASCII line-feed character
+	private static final int MAX_LINE = 256;     // longer lines are discarded
+
+	/**
+	 * receives the messages split out by the decoder
+	 */
+	interface Handler {
+		/**
+		 * handles a line of ASCII text
+		 *
+		 * @param line the line without its line-feed
+		 */
+		void line(String line);
+
+		/**
+		 * handles a binary frame which passed its check
+		 *
+		 * @param type    the frame type
+		 * @param payload the frame payload
+		 */
+		void frame(int type, ByteBuffer payload);
+
+		/**
+		 * notes a binary frame which failed its check
+		 */
+		void corrupt();
+	}
+
+	private final Handler handler;
+	private final byte[] frame = new byte[BinaryFrame.HEADER + BinaryFrame.MAX_PAYLOAD + BinaryFrame.TRAILER];
+	private final byte[] line = new byte[MAX_LINE];
+
+	private volatile boolean binary;
+	private int frameLength;                    // bytes of the current frame received so far
+	private int lineLength;                     // bytes of the current line received so far - -1 if discarding
+
+	/**
+	 * creates a decoder in ASCII mode
+	 *
+	 * @param handler the handler for decoded messages
+	 */
+	FrameDecoder(Handler handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * switches between ASCII and binary mode, taking effect from the next byte fed
+	 *
+	 * @param binary {@code true} to decode binary frames
+	 */
+	void setBinary(boolean binary) {
+		this.binary = binary;
+	}
+
+	/**
+	 * determines whether the decoder is in binary mode
+	 *
+	 * @return {@code true} if decoding binary frames
+	 */
+	boolean isBinary() {
+		return binary;
+	}
+
+	/**
+	 * decodes received bytes, calling the handler for each complete message
+	 *
+	 * @param data the received bytes
+	 */
+	void feed(byte[] data) {
+		for (var b : data) {
+			if (binary) {
+				frameByte(b);
+			} else {
+				lineByte(b);
+			}
+		}
+	}
+
+	private void frameByte(byte b) {
+		if (frameLength == 0 && b != BinaryFrame.SYNC) {
+			lineByte(b);
+			return;
+		}
+		frame[frameLength++] = b;
+		if (frameLength < BinaryFrame.HEADER) {
+			return;
+		}
+		var payload = frame[1] & 0xFF;
+		var total = BinaryFrame.HEADER + payload + BinaryFrame.TRAILER;
+		if (frameLength < total) {
+			return;
+		}
+		frameLength = 0;
+		var crc = ((frame[total - 2] & 0xFF) << 8) | (frame[total - 1] & 0xFF);
+		if (crc == BinaryFrame.crc16(frame, 1, total - 1 - BinaryFrame.TRAILER)) {
+			lineLength = 0;
+			handler.frame(frame[2] & 0xFF, ByteBuffer.wrap(Arrays.copyOfRange(frame, BinaryFrame.HEADER, total - BinaryFrame.TRAILER)));
+		} else {
+			handler.corrupt();
+			for (var rescan : Arrays.copyOfRange(frame, 1, total)) { // look for a frame starting inside the bad one
+				frameByte(rescan);
+			}
+		}
+	}
+
+	private void lineByte(byte b) {
+		if (b == LF) {
+			if (lineLength > 0) {
+				handler.line(new String(line, 0, lineLength, US_ASCII));
+			}
+			lineLength = 0;
+		} else if (lineLength < 0 || lineLength == MAX_LINE || (binary && (b < 0x20 || b > 0x7E))) {
+			lineLength = -1;                    // discard until the next line-feed
+		} else {
+			line[lineLength++] = b;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package edu.snhu.erik.mattheis.thermostat.comm;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+/**
+ * a cached inventory of the serial ports on the system
+ *
+ * enumerating serial ports is an expensive native scan, so the ports are scanned once and
+ * rescanned when the device directory changes (e.g. a board is plugged in or removed), with a
+ * periodic rescan as a fallback for platforms or devices the watcher does not notice - a burst
+ * of device directory events is coalesced into a single rescan once the devices have settled
+ *
+ * listeners are told which ports appeared and disappeared after each rescan which changed anything
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@ApplicationScoped
+public class PortInventory {
+
+	/**
+	 * receives changes to the inventory
+	 */
+	@FunctionalInterface
+	public interface Listener {
+		/**
+		 * called on the scanning thread after a rescan found changes
+		 *
+		 * @param added   the system names of ports which appeared
+		 * @param removed the system names of ports which disappeared
+		 */
+		void portsChanged(Set<String> added, Set<String> removed);
+	}
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+	private final AtomicBoolean rescanPending = new AtomicBoolean();
+
+	private volatile Map<String, AvailablePort> ports = Map.of(); // system port name -> port, replaced by each scan
+	private volatile ScheduledExecutorService scanner;
+	private volatile WatchService watchService;
+
+	@ConfigProperty(name = "thermostat.ports.rescan-interval", defaultValue = "30s")
+	Duration rescanInterval;
+
+	@ConfigProperty(name = "thermostat.ports.watch-directory", defaultValue = "/dev")
+	String watchDirectory;
+
+	@ConfigProperty(name = "thermostat.ports.settle-time", defaultValue = "250ms")
+	Duration settleTime;
+
+	/**
+	 * scans the ports, then starts the periodic rescan and the device directory watcher
+	 */
+	@PostConstruct
+	void start() {
+		scanner = Executors.newSingleThreadScheduledExecutor(Connector.daemonThreads("thermostat-ports-"));
+		rescan();
+		scanner.scheduleWithFixedDelay(this::rescan, rescanInterval.toMillis(), rescanInterval.toMillis(),
+				TimeUnit.MILLISECONDS);
+		var directory = Path.of(watchDirectory);
+		if (!Files.isDirectory(directory)) {
+			log.info("not watching {} for serial ports, relying on periodic rescans", directory);
+			return;
+		}
+		try {
+			watchService = directory.getFileSystem().newWatchService();
+			directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+			var watcher = Connector.daemonThreads("thermostat-ports-watch-").newThread(this::watch);
+			watcher.start();
+		} catch (IOException e) {
+			log.warn("problem watching {} for serial ports, relying on periodic rescans", directory, e);
+		}
+	}
+
+	/**
+	 * stops the watcher and periodic rescan
+	 */
+	@PreDestroy
+	void stop() {
+		scanner.shutdownNow();
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				log.warn("problem closing serial port watcher", e);
+			}
+		}
+	}
+
+	/**
+	 * gets the ports found by the latest scan, excluding the {@code tty.} call-in ports on MacOS
+	 *
+	 * @return the ports in scan order
+	 */
+	public Collection<AvailablePort> getPorts() {
+		return ports.values();
+	}
+
+	/**
+	 * registers a listener for changes to the inventory
+	 *
+	 * @param listener the listener to add
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * removes a previously registered listener
+	 *
+	 * @param listener the listener to remove
+	 */
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * requests a rescan once devices have settled, coalescing with any pending request
+	 */
+	public void requestRescan() {
+		if (rescanPending.compareAndSet(false, true)) {
+			scanner.schedule(this::rescan, settleTime.toMillis(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void watch() {
+		try {
+			while (true) {
+				var key = watchService.take();
+				key.pollEvents();                   // any change is worth a rescan - the scan decides what matters
+				key.reset();
+				requestRescan();
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// shutting down
+		}
+	}
+
+	/*
+	 * only called on the scanner thread
+	 */
+	private void rescan() {
+		rescanPending.set(false);
+		Map<String, AvailablePort> scanned = new LinkedHashMap<>();
+		try {
+			for (var port : SerialPort.getCommPorts()) {
+				if (!port.getSystemPortName().startsWith("tty.")) { // ignore the tty ports on Linux/MacOS
+					scanned.put(port.getSystemPortName(), AvailablePort.of(port));
+				}
+			}
+		} catch (Exception e) {
+			log.error("problem scanning serial ports", e);
+			return;
+		}
+		var previous = ports;
+		ports = scanned;
+		var added = new HashSet<>(scanned.keySet());
+		added.removeAll(previous.keySet());
+		var removed = new HashSet<>(previous.keySet());
+		removed.removeAll(scanned.keySet());
+		if (added.isEmpty() && removed.isEmpty()) {
+			return;
+		}
+		log.info("serial ports added: {}, removed: {}", added, removed);
+		for (var listener : listeners) {
+			try {
+				listener.portsChanged(Set.copyOf(added), Set.copyOf(removed));
+			} catch (Exception e) {
+				log.error("problem handling serial port changes", e);
+			}
+		}
+	}
+}
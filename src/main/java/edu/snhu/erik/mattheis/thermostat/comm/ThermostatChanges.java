@@ -0,0 +1,183 @@
+package edu.snhu.erik.mattheis.thermostat.comm;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.bson.types.ObjectId;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import edu.snhu.erik.mattheis.thermostat.db.ThermostatState;
+
+/**
+ * lets callers wait for or subscribe to changes in the state of thermostats without holding a thread
+ * 
+ * each waiter has its own future, registered against the thermostat it waits for - a change
+ * completes and removes the waiters it takes past the version they have seen, and a waiter
+ * which times out removes itself, so nothing is left behind by waiters which never see a change
+ * 
+ * subscribers are called with the new state of every change, and the most recent changes are kept
+ * in a bounded replay buffer so that a subscriber can resume from the last change it saw - each
+ * change is identified by its thermostat id and version
+ * 
+ * only appending to the replay buffer and taking a snapshot of the subscribers happens under the lock -
+ * subscribers are called after it is released, so one slow subscriber or device never holds up the
+ * changes of the others, and the changes of each thermostat still arrive in order since its client
+ * reports them one at a time
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@ApplicationScoped
+public class ThermostatChanges {
+
+	private final Map<ObjectId, Set<Waiter>> waiters = new ConcurrentHashMap<>();
+	private final Deque<ThermostatState> replay = new ArrayDeque<>();    // guarded by itself
+	private final Set<Consumer<ThermostatState>> subscribers = new CopyOnWriteArraySet<>(); // changed under replay
+
+	@ConfigProperty(name = "thermostat.events.replay-size", defaultValue = "1024")
+	int replaySize;
+
+	/**
+	 * notifies any waiters that the thermostat has changed - waiters are completed
+	 * asynchronously so that the caller is not held up responding to them
+	 * 
+	 * @param state the new state
+	 */
+	void changed(ThermostatState state) {
+		Iterator<Consumer<ThermostatState>> subscribed;
+		synchronized (replay) {
+			replay.addLast(state);
+			while (replay.size() > replaySize) {
+				replay.removeFirst();
+			}
+			subscribed = subscribers.iterator();          // a snapshot - later subscribers replay this change
+		}
+		subscribed.forEachRemaining(subscriber -> subscriber.accept(state));
+		var waiting = waiters.get(state.getId());
+		if (waiting != null) {
+			for (var waiter : waiting) {
+				if (state.getVersion() > waiter.afterVersion && waiting.remove(waiter)) {
+					waiter.future.completeAsync(() -> Optional.of(state));
+				}
+			}
+		}
+	}
+
+	/**
+	 * releases any waiters for a removed thermostat as if their wait had timed out
+	 * 
+	 * @param id the id of the removed thermostat
+	 */
+	void removed(ObjectId id) {
+		var waiting = waiters.remove(id);
+		if (waiting != null) {
+			waiting.forEach(waiter -> waiter.future.completeAsync(Optional::empty));
+		}
+	}
+
+	/**
+	 * waits for the thermostat to move past the given version
+	 * 
+	 * @param id the id of the thermostat
+	 * @param current supplies the current state of the thermostat, or {@code null} if it has been removed
+	 * @param afterVersion the latest version the caller has seen
+	 * @param timeout how long to wait for a change
+	 * @return a future completing with the first state after the given version,
+	 *         or {@link Optional#empty()} if there was no change before the timeout
+	 */
+	public CompletableFuture<Optional<ThermostatState>> awaitChange(ObjectId id, Supplier<ThermostatState> current,
+			long afterVersion, Duration timeout) {
+		var waiter = new Waiter(afterVersion);
+		waiters.compute(id, (key, waiting) -> {      // atomic with forget, which drops empty sets
+			var registered = waiting == null ? ConcurrentHashMap.<Waiter>newKeySet() : waiting;
+			registered.add(waiter);
+			return registered;
+		});
+		var state = current.get();                    // checked after registering, so a change cannot be missed
+		if (state != null && state.getVersion() > afterVersion) {
+			waiter.future.complete(Optional.of(state));
+		}
+		waiter.future.completeOnTimeout(Optional.empty(), timeout.toMillis(), TimeUnit.MILLISECONDS)
+				.whenComplete((changed, e) -> forget(id, waiter));
+		return waiter.future;
+	}
+
+	/**
+	 * subscribes to changes, first replaying any buffered changes made after the given one - if
+	 * there is no last change, or it is no longer buffered, the current states are sent instead
+	 * 
+	 * replayed changes are sent while holding a lock, and later changes on the thread reporting them,
+	 * so subscribers must not block - a subscriber may still be called with a change reported just
+	 * before it unsubscribed
+	 * 
+	 * @param subscriber receives the new state of each change
+	 * @param lastId the thermostat id of the last change seen, or {@code null} if none has been seen
+	 * @param lastVersion the version of the last change seen
+	 * @param current supplies the current states when changes cannot be replayed
+	 */
+	public void subscribe(Consumer<ThermostatState> subscriber, ObjectId lastId, long lastVersion,
+			Supplier<List<ThermostatState>> current) {
+		synchronized (replay) {
+			var found = false;
+			if (lastId != null) {
+				for (var change : replay) {
+					if (found) {
+						subscriber.accept(change);
+					} else if (change.getId().equals(lastId) && change.getVersion() == lastVersion) {
+						found = true;
+					}
+				}
+			}
+			if (!found) {
+				current.get().forEach(subscriber);
+			}
+			subscribers.add(subscriber);
+		}
+	}
+
+	/**
+	 * stops calling the given subscriber
+	 * 
+	 * @param subscriber a subscriber previously passed to {@link #subscribe(Consumer, ObjectId, long, Supplier)}
+	 */
+	public void unsubscribe(Consumer<ThermostatState> subscriber) {
+		synchronized (replay) {
+			subscribers.remove(subscriber);
+		}
+	}
+
+	/*
+	 * removes a completed waiter, and the set of waiters for the thermostat once it is empty
+	 */
+	private void forget(ObjectId id, Waiter waiter) {
+		waiters.computeIfPresent(id, (key, waiting) -> {
+			waiting.remove(waiter);
+			return waiting.isEmpty() ? null : waiting;
+		});
+	}
+
+	/*
+	 * a caller waiting for a thermostat to move past a version
+	 */
+	private static final class Waiter {
+		final long afterVersion;
+		final CompletableFuture<Optional<ThermostatState>> future = new CompletableFuture<>();
+
+		Waiter(long afterVersion) {
+			this.afterVersion = afterVersion;
+		}
+	}
+}
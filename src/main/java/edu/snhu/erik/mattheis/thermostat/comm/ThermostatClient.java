@@ -1,43 +1,49 @@
 package edu.snhu.erik.mattheis.thermostat.comm;
 
-import static java.nio.charset.StandardCharsets.US_ASCII;
-
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.Objects;
 import java.util.concurrent.TimeoutException;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fazecast.jSerialComm.SerialPort;
+import com.fazecast.jSerialComm.SerialPortDataListener;
 import com.fazecast.jSerialComm.SerialPortEvent;
-import com.fazecast.jSerialComm.SerialPortMessageListener;
 
-import edu.snhu.erik.mattheis.thermostat.db.Thermostat;
-import edu.snhu.erik.mattheis.thermostat.db.ThermostatRepository;
+import edu.snhu.erik.mattheis.thermostat.comm.CommandQueue.Priority;
+import edu.snhu.erik.mattheis.thermostat.db.ConnectionState;
+import edu.snhu.erik.mattheis.thermostat.db.ThermostatState;
+import edu.snhu.erik.mattheis.thermostat.trace.FrameEvent;
+import edu.snhu.erik.mattheis.thermostat.trace.UpdateTrace;
 
 /**
  * manages communication with a thermostat
  * 
+ * the live state of the thermostat is an immutable {@link ThermostatState} which is replaced
+ * as a whole for each update - writers are serialized so that states are stored in version
+ * order, while readers never wait and always see a consistent state
+ * 
  * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
  */
 public class ThermostatClient {
 	
-	private static final byte[] LF = { 0x0A }; // ASCII line-feed character
-
 	private final Logger log = LoggerFactory.getLogger(getClass());
-	private final ThermostatRepository repository;
-	private final Thermostat thermostat;
+	private final ThermostatRecorder recorder;
+	private final Object writeLock = new Object();
 	private final SerialPort serialPort;
-	
+	private final int linkBudget;
+	private final boolean binaryFraming;
+	private final AtomicLong corruptFrames = new AtomicLong();
+
 	/*
-	 * anonymous listener implementation for receiving messages from the thermostst
+	 * handler for messages from the thermostat
 	 * 
-	 * message are delimited by ASCII line-feeds and have the following format:
+	 * ASCII messages are delimited by line-feeds and have the following format:
 	 * 
 	 *     D:20.000000,A:25.187500,H:0,L:0
 	 *
@@ -47,68 +53,163 @@ public class ThermostatClient {
 	 *     A: ambient temperature (degrees C)
 	 *     H: heater state (0 = off, 1 = on)
 	 *     L: remote lock (0 = off, 1 = on)
+	 *
+	 * once binary framing is negotiated the same fields arrive in report frames - see BinaryFrame
 	 */
-	private final SerialPortMessageListener listener = new SerialPortMessageListener() {
-		public void serialEvent(SerialPortEvent event) {
+	private final FrameDecoder.Handler handler = new FrameDecoder.Handler() {
+		@Override
+		public void line(String message) {
+			if (BinaryFrame.NEGOTIATE.equals(message)) {
+				decoder.setBinary(true);
+				commands.setBinary(true);
+				log.info("thermostat '{}' accepted binary framing", state.getLabel());
+				return;
+			}
+			log.info("received message from thermostat '{}': {}", state.getLabel(), message);
+			var event = new FrameEvent();
+			event.begin();
+			var start = System.nanoTime();
+			Report report;
 			try {
-				// convert bytes to ASCII string discarding the trailing line-feed
-				var bytes = event.getReceivedData();
-				var message = new String(bytes, 0, bytes.length - 1, US_ASCII);
-				log.info("received message from thermostat '{}': {}", thermostat.label, message);
-				Stream.of(message.split(","))       // split message into fields  - e.g. [ "key1:value1", "key2:value2" ]
-				      .map(part -> part.split(":")) // split field into key/value - e.g. [ "key1", "value1" ]
-				      .forEach(keyValue -> {
-				          switch (keyValue[0]) {
-				              case "D":
-				                  thermostat.desiredTemperature = Float.valueOf(keyValue[1]);
-				                  break;
-				              case "A":
-				                  thermostat.ambientTemperature = Float.valueOf(keyValue[1]);
-				                  break;
-				              case "H":
-				                  thermostat.heaterOn = "1".equals(keyValue[1]);
-				                  break;
-				              case "L":
-				                  thermostat.remoteUpdateDisabled = "1".equals(keyValue[1]);
-				                  break;
-				          }
-				      });
-				thermostat.lastUpdate = Instant.now();
-				repository.update(thermostat);
-			} catch (Exception e) {
-				log.error("problem handling message from thermostat '{}'", thermostat.label, e);
+				report = Report.parse(message);
+			} catch (RuntimeException e) {
+				log.warn("discarding malformed message from thermostat '{}': {}", state.getLabel(), message);
+				return;
+			}
+			if (decoder.isBinary()) {                     // the thermostat has reverted to ASCII - likely a reset
+				log.warn("thermostat '{}' reverted to ASCII framing", state.getLabel());
+				decoder.setBinary(false);
+				commands.setBinary(false);
+				commands.negotiate();
 			}
+			event.size = message.length() + 1;
+			received(event, start, report);
 		}
 
 		@Override
-		public int getListeningEvents() {
-			return SerialPort.LISTENING_EVENT_DATA_RECEIVED;
+		public void frame(int type, ByteBuffer payload) {
+			if (type != BinaryFrame.REPORT || payload.remaining() < 5) {
+				log.warn("ignoring frame of type {} from thermostat '{}'", type, state.getLabel());
+				return;
+			}
+			var event = new FrameEvent();
+			event.begin();
+			var start = System.nanoTime();
+			event.binary = true;
+			event.size = BinaryFrame.HEADER + payload.remaining() + BinaryFrame.TRAILER;
+			var report = new Report();
+			report.desiredTemperature = BinaryFrame.fromFixed(payload.getShort());
+			report.ambientTemperature = BinaryFrame.fromFixed(payload.getShort());
+			var flags = payload.get();
+			report.heaterOn = (flags & BinaryFrame.FLAG_HEATER_ON) != 0;
+			report.remoteUpdateDisabled = (flags & BinaryFrame.FLAG_REMOTE_LOCK) != 0;
+			log.debug("received report from thermostat '{}'", state.getLabel());
+			received(event, start, report);
 		}
 
 		@Override
-		public byte[] getMessageDelimiter() {
-			return LF;
+		public void corrupt() {
+			log.warn("discarded corrupt frame from thermostat '{}' ({} so far)", state.getLabel(),
+					corruptFrames.incrementAndGet());
+		}
+	};
+
+	/*
+	 * anonymous listener implementation for receiving bytes from the thermostat
+	 */
+	private final SerialPortDataListener listener = new SerialPortDataListener() {
+		@Override
+		public void serialEvent(SerialPortEvent event) {
+			try {
+				decoder.feed(event.getReceivedData());
+			} catch (Exception e) {
+				log.error("problem handling message from thermostat '{}'", state.getLabel(), e);
+			}
 		}
 
 		@Override
-		public boolean delimiterIndicatesEndOfMessage() {
-			return true;
+		public int getListeningEvents() {
+			return SerialPort.LISTENING_EVENT_DATA_RECEIVED;
 		}
 	};
 
-	private volatile Writer writer;
+	private final FrameDecoder decoder = new FrameDecoder(handler);
+
+	private volatile CommandQueue commands;
+	private volatile ThermostatState state;
+
+	/*
+	 * the fields of a message from the thermostat, null if absent
+	 */
+	private static class Report {
+		private Float desiredTemperature;
+		private Float ambientTemperature;
+		private Boolean heaterOn;
+		private Boolean remoteUpdateDisabled;
+
+		/*
+		 * parses an ASCII message, rejecting anything which does not hold at least one well-formed field
+		 */
+		static Report parse(String message) {
+			var report = new Report();
+			var fields = 0;
+			for (var field : message.split(",")) {    // split message into fields  - e.g. [ "key1:value1", "key2:value2" ]
+				var keyValue = field.split(":");       // split field into key/value - e.g. [ "key1", "value1" ]
+				if (keyValue.length != 2) {
+					throw new IllegalArgumentException("malformed field: " + field);
+				}
+				switch (keyValue[0]) {
+					case "D":
+						report.desiredTemperature = Float.valueOf(keyValue[1]);
+						break;
+					case "A":
+						report.ambientTemperature = Float.valueOf(keyValue[1]);
+						break;
+					case "H":
+						report.heaterOn = flag(keyValue[1]);
+						break;
+					case "L":
+						report.remoteUpdateDisabled = flag(keyValue[1]);
+						break;
+					default:
+						continue;
+				}
+				++fields;
+			}
+			if (fields == 0) {
+				throw new IllegalArgumentException("no fields");
+			}
+			return report;
+		}
+
+		private static boolean flag(String value) {
+			switch (value) {
+				case "0":
+					return false;
+				case "1":
+					return true;
+				default:
+					throw new IllegalArgumentException("malformed flag: " + value);
+			}
+		}
+	}
 
 	/**
 	 * creates an instance for communicating with a thermostat
 	 * 
-	 * @param serialPort the serial port to connect on
-	 * @param thermostat the thermostat to update
-	 * @param repository the repository for updating the thermostat
+	 * @param serialPort    the serial port to connect on
+	 * @param state         the initial state of the thermostat
+	 * @param recorder      the recorder for storing updates to the thermostat
+	 * @param linkBudget    the maximum number of bytes per second to send to the thermostat
+	 * @param binaryFraming whether to offer binary framing to the thermostat when connecting
 	 */
-	public ThermostatClient(SerialPort serialPort, Thermostat thermostat, ThermostatRepository repository) {
+	public ThermostatClient(SerialPort serialPort, ThermostatState state, ThermostatRecorder recorder,
+			int linkBudget, boolean binaryFraming) {
 		this.serialPort = serialPort;
-		this.thermostat = thermostat;
-		this.repository = repository;
+		this.state = state;
+		this.recorder = recorder;
+		this.linkBudget = linkBudget;
+		this.binaryFraming = binaryFraming;
 	}
 
 	/**
@@ -116,13 +217,71 @@ public class ThermostatClient {
 	 * 
 	 * @return the thermostat state
 	 */
-	public Thermostat getThermostat() {
-		return thermostat;
+	public ThermostatState getState() {
+		return state;
+	}
+
+	/**
+	 * replaces the state of the thermostat with the result of the given change and a new version,
+	 * storing the new state before it becomes visible to readers and then publishing it
+	 * 
+	 * @param change produces the new state from the current state
+	 * @return the new state
+	 * @throws edu.snhu.erik.mattheis.thermostat.store.DuplicateThermostatException if the new label is in use,
+	 *         in which case the state is unchanged
+	 */
+	public ThermostatState update(UnaryOperator<ThermostatState> change) {
+		var trace = UpdateTrace.open();
+		try {
+			synchronized (writeLock) {
+				var current = state;
+				var updated = change.apply(current).withVersion(current.getVersion() + 1);
+				recorder.store(updated);
+				state = updated;
+				recorder.publish(updated);
+				return updated;
+			}
+		} finally {
+			UpdateTrace.close(trace);
+		}
+	}
+
+	/*
+	 * applies a parsed report under a new update id, recording the frame event once the update has been published
+	 */
+	private void received(FrameEvent event, long start, Report report) {
+		event.parseTime = System.nanoTime() - start;
+		var trace = UpdateTrace.open();
+		try {
+			apply(report);
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.updateId = UpdateTrace.current();
+				event.thermostatId = state.getId().toHexString();
+				event.commit();
+			}
+			UpdateTrace.close(trace);
+		}
+	}
+
+	/*
+	 * applies a report from the thermostat as a new state
+	 */
+	private void apply(Report report) {
+		var now = Instant.now();
+		update(current -> current.withReport(report.desiredTemperature, report.ambientTemperature,
+				report.heaterOn, report.remoteUpdateDisabled, now));
 	}
 
 	/**
 	 * connects to the thermostat, begins listening for updates, and request an initial update
 	 * 
+	 * when enabled, binary framing is offered ahead of the update request - the thermostat
+	 * keeps using ASCII unless it accepts the offer, so older firmware continues to work
+	 * 
+	 * the connection state of the thermostat becomes connected, or disconnected if the attempt fails
+	 * 
 	 * @throws IOException if a failure occurs communicating with the thermostat on the serial port
 	 * @throws IllegalStateException if already connected
 	 */
@@ -130,6 +289,16 @@ public class ThermostatClient {
 		if (isConnected()) {
 			throw new IllegalStateException("already connected");
 		}
+		try {
+			open();
+		} catch (IOException | RuntimeException e) {
+			setConnection(ConnectionState.DISCONNECTED);
+			throw e;
+		}
+		setConnection(ConnectionState.CONNECTED);
+	}
+
+	private void open() throws IOException {
 		serialPort.setBaudRate(115200);
 		serialPort.setNumDataBits(8);
 		serialPort.setParity(SerialPort.NO_PARITY);
@@ -137,22 +306,45 @@ public class ThermostatClient {
 		if (!serialPort.openPort()) {
 			throw new IOException("failed to open serial port " + serialPort.getSystemPortName());
 		}
+		decoder.setBinary(false);
+		commands = new CommandQueue(state.getLabel(), serialPort.getOutputStream(), linkBudget);
 		serialPort.addDataListener(listener);
-		writer = new OutputStreamWriter(serialPort.getOutputStream(), US_ASCII);
+		commands.start();
+		if (binaryFraming) {
+			commands.negotiate();
+		}
 		requestUpdate();
-		log.info("connected to thermostat '{}'", thermostat.label);
+		log.info("connected to thermostat '{}'", state.getLabel());
 	}
 
 	/**
-	 * stops listening for updates and disconnects from the thermostat
+	 * stops listening for updates and disconnects from the thermostat,
+	 * marking the thermostat as disconnected
 	 * 
-	 * does nothing if not connected
+	 * only updates the connection state if not connected - waits for a connection attempt in progress,
+	 * so the port it opens is closed rather than left open behind a failed attempt
 	 */
-	public void disconnect() {
+	public synchronized void disconnect() {
 		if (isConnected()) {
+			commands.stop();
 			serialPort.removeDataListener();
 			serialPort.closePort();
-			log.info("disconnected from thermostat '{}'", thermostat.label);
+			log.info("disconnected from thermostat '{}'", state.getLabel());
+		}
+		setConnection(ConnectionState.DISCONNECTED);
+	}
+
+	/*
+	 * records a change in connection state - unchanged states are not recorded again, and a failure
+	 * to record one is only logged so it never affects the connection itself
+	 */
+	private void setConnection(ConnectionState connection) {
+		if (state.getConnection() != connection) {
+			try {
+				update(current -> current.withConnection(connection));
+			} catch (RuntimeException e) {
+				log.error("problem recording connection state of thermostat '{}'", state.getLabel(), e);
+			}
 		}
 	}
 
@@ -166,49 +358,53 @@ public class ThermostatClient {
 	}
 
 	/**
-	 * sends a message to the thermostat requesting an immediate update
+	 * queues a message to the thermostat requesting an immediate update
+	 * 
+	 * the request is sent behind any pending user commands
+	 * and is coalesced with any pending update request
 	 * 
-	 * @throws IOException if a failure occurs communicating with the thermostat on the serial port
 	 * @throws IllegalStateException if not connected
 	 */
-	public void requestUpdate() throws IOException {
-		writeMessage("U");
+	public void requestUpdate() {
+		commandQueue().requestUpdate(Priority.POLL);
 	}
 
 	/**
-	 * sends a message to the thermostat to set the desired temperature,
+	 * queues a message to the thermostat to set the desired temperature,
 	 * then waits up to 5 seconds for a response, requesting an immediate update if necessary
 	 * 
+	 * the message is sent ahead of any pending polling requests and
+	 * replaces any desired temperature which has not yet been sent
+	 * 
 	 * @param desiredTemperature the desired temperature to set on the thermostat
 	 * @return the updated state of the thermostat
-	 * @throws IOException if a failure occurs communicating with the thermostat on the serial port
 	 * @throws IllegalStateException if not connected or remote updates are disabled on the thermostat
 	 * @throws TimeoutException if an update is not received within 5 seconds
 	 * @throws InterruptedException if the thread is interrupted while waiting for an update
 	 */
-	public Thermostat setDesiredTemperature(float desiredTemperature)
-			throws IOException, TimeoutException, InterruptedException {
-		if (thermostat.remoteUpdateDisabled != null && thermostat.remoteUpdateDisabled.booleanValue()) {
+	public ThermostatState setDesiredTemperature(float desiredTemperature)
+			throws TimeoutException, InterruptedException {
+		var before = state;
+		if (before.getRemoteUpdateDisabled() != null && before.getRemoteUpdateDisabled().booleanValue()) {
 			throw new IllegalStateException("remote updates are currently disabled by the thermostat");
 		}
-		var before = thermostat.lastUpdate;
-		writeMessage(String.format("D:%f", desiredTemperature));
+		var commands = commandQueue();
+		commands.setDesiredTemperature(desiredTemperature);
 		for (int i = 0; i < 10; ++i) {
 			Thread.sleep(500);
-			if (!Objects.equals(before, thermostat.lastUpdate)) {
-				return thermostat;
+			var after = state;
+			if (!Objects.equals(before.getLastUpdate(), after.getLastUpdate())) {
+				return after;
 			}
-			requestUpdate();
+			commands.requestUpdate(Priority.USER);
 		}
 		throw new TimeoutException("no update from thermostat within 5 seconds");
 	}
 
-	private synchronized void writeMessage(String message) throws IOException {
+	private CommandQueue commandQueue() {
 		if (!isConnected()) {
 			throw new IllegalStateException("not connected");
 		}
-		writer.write(message);
-		writer.write("\n");
-		writer.flush();
+		return commands;
 	}
 }
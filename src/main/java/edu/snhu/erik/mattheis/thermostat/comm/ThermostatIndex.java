@@ -0,0 +1,210 @@
+package edu.snhu.erik.mattheis.thermostat.comm;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+import org.bson.types.ObjectId;
+
+import edu.snhu.erik.mattheis.thermostat.comm.ThermostatQuery.Sort;
+import edu.snhu.erik.mattheis.thermostat.db.ThermostatState;
+
+/**
+ * secondary indexes of the encoded thermostats, so a page of a filtered and sorted list
+ * is found without scanning or sorting every thermostat
+ *
+ * each sortable field is indexed in a skip list keyed by the value and id, which also serves as the
+ * cursor - a page starts just after the key of the last thermostat of the previous page, so pages stay
+ * consistent while thermostats change, and a thermostat which moves is listed where it is found
+ *
+ * labels and ports are unique, so a label prefix is a range of the label index and a port is a direct lookup;
+ * stale thermostats are a range of the last update index - other criteria filter the index being walked
+ *
+ * updated only while holding the manager's snapshot lock, and read without locking
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+public final class ThermostatIndex {
+
+	private static final Comparator<Key> ORDER = Comparator
+			.comparing((Key key) -> key.value, Comparator.nullsFirst(Comparator.<Comparable<Object>>naturalOrder()))
+			.thenComparing(key -> key.id, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+	private final Map<Sort, NavigableMap<Key, EncodedThermostat>> sorted = Map.of(
+			Sort.LABEL, new ConcurrentSkipListMap<>(ORDER),
+			Sort.LAST_UPDATE, new ConcurrentSkipListMap<>(ORDER),
+			Sort.AMBIENT_TEMPERATURE, new ConcurrentSkipListMap<>(ORDER));
+	private final Map<String, EncodedThermostat> byPort = new ConcurrentHashMap<>();
+
+	/*
+	 * an index key - a null id sorts before every thermostat with the same value, marking the start of a range
+	 */
+	private static final class Key {
+		final Comparable<Object> value;
+		final ObjectId id;
+
+		@SuppressWarnings("unchecked")
+		Key(Comparable<?> value, ObjectId id) {
+			this.value = (Comparable<Object>) value;
+			this.id = id;
+		}
+	}
+
+	/**
+	 * replaces the indexed state of a thermostat
+	 *
+	 * @param previous the previously indexed thermostat, or {@code null} if not indexed
+	 * @param current  the thermostat to index
+	 */
+	void put(EncodedThermostat previous, EncodedThermostat current) {
+		if (previous != null) {
+			remove(previous);
+		}
+		var state = current.getState();
+		sorted.forEach((sort, index) -> index.put(key(sort, state), current));
+		if (state.getPort() != null) {
+			byPort.put(state.getPort(), current);
+		}
+	}
+
+	/**
+	 * removes a thermostat from the indexes
+	 *
+	 * @param previous the indexed thermostat
+	 */
+	void remove(EncodedThermostat previous) {
+		var state = previous.getState();
+		sorted.forEach((sort, index) -> index.remove(key(sort, state)));
+		if (state.getPort() != null) {
+			byPort.remove(state.getPort(), previous);
+		}
+	}
+
+	/**
+	 * lists a page of thermostats
+	 *
+	 * @param query the criteria, order and position of the page
+	 * @return the page
+	 * @throws IllegalArgumentException if the cursor is not one returned for the same order
+	 */
+	public ThermostatPage query(ThermostatQuery query) {
+		var sort = query.getSort();
+		var filter = filter(query);
+		var limit = query.getLimit() == null ? Integer.MAX_VALUE : query.getLimit();
+		if (query.getPort() != null) {                                    // at most one thermostat
+			var thermostat = byPort.get(query.getPort());
+			return new ThermostatPage(thermostat != null && query.getCursor() == null && limit > 0
+					&& filter.test(thermostat.getState()) ? List.of(thermostat) : List.of(), null);
+		}
+		var index = sorted.get(sort);
+		if (sort == Sort.LABEL && query.getLabelPrefix() != null) {       // a prefix is a range of labels
+			var prefix = query.getLabelPrefix();
+			var end = successor(prefix);
+			index = end == null
+					? index.tailMap(new Key(prefix, null), true)
+					: index.subMap(new Key(prefix, null), true, new Key(end, null), false);
+		} else if (sort == Sort.LAST_UPDATE && query.getStale() != null) { // stale is a range of last updates
+			var threshold = new Key(query.getStaleBefore(), null);
+			index = query.getStale() ? index.headMap(threshold, false) : index.tailMap(threshold, true);
+		}
+		if (query.isDescending()) {
+			index = index.descendingMap();
+		}
+		if (query.getCursor() != null) {
+			index = index.tailMap(decode(sort, query.getCursor()), false);
+		}
+		var thermostats = new ArrayList<EncodedThermostat>(Math.min(limit, 256));
+		Key last = null;
+		for (var entry : index.entrySet()) {
+			if (!filter.test(entry.getValue().getState())) {
+				continue;
+			}
+			if (thermostats.size() == limit) {
+				return new ThermostatPage(thermostats, encode(sort, last));
+			}
+			thermostats.add(entry.getValue());
+			last = entry.getKey();
+		}
+		return new ThermostatPage(thermostats, null);
+	}
+
+	private static Predicate<ThermostatState> filter(ThermostatQuery query) {
+		return state -> (query.getLabelPrefix() == null
+						|| (state.getLabel() != null && state.getLabel().startsWith(query.getLabelPrefix())))
+				&& (query.getHeaterOn() == null || query.getHeaterOn().equals(state.getHeaterOn()))
+				&& (query.getStale() == null || query.getStale() == stale(state, query.getStaleBefore()));
+	}
+
+	private static boolean stale(ThermostatState state, Instant staleBefore) {
+		return state.getLastUpdate() == null || state.getLastUpdate().isBefore(staleBefore);
+	}
+
+	private static Key key(Sort sort, ThermostatState state) {
+		switch (sort) {
+			case LAST_UPDATE:
+				return new Key(state.getLastUpdate(), state.getId());
+			case AMBIENT_TEMPERATURE:
+				return new Key(state.getAmbientTemperature(), state.getId());
+			default:
+				return new Key(state.getLabel(), state.getId());
+		}
+	}
+
+	/*
+	 * the first string after every string starting with the prefix
+	 */
+	private static String successor(String prefix) {
+		for (var i = prefix.length() - 1; i >= 0; --i) {
+			if (prefix.charAt(i) != Character.MAX_VALUE) {
+				return prefix.substring(0, i) + (char) (prefix.charAt(i) + 1);
+			}
+		}
+		return null;                    // nothing sorts after every string starting with the prefix
+	}
+
+	/*
+	 * cursor: base64url("<sort field>:<id>:<value>"), with an empty value for null and '=' before any other value
+	 */
+	private static String encode(Sort sort, Key key) {
+		var value = key.value == null ? "" : "=" + key.value;   // labels as they are, ISO-8601 instants, floats
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(
+				(sort.getField() + ":" + key.id.toHexString() + ":" + value).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static Key decode(Sort sort, String cursor) {
+		String[] parts;
+		try {
+			parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 3);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("invalid cursor", e);
+		}
+		if (parts.length != 3 || !sort.getField().equals(parts[0])) {
+			throw new IllegalArgumentException("cursor does not match the sort order");
+		}
+		try {
+			var id = new ObjectId(parts[1]);
+			if (parts[2].isEmpty()) {
+				return new Key(null, id);
+			}
+			var value = parts[2].substring(1);
+			switch (sort) {
+				case LAST_UPDATE:
+					return new Key(Instant.parse(value), id);
+				case AMBIENT_TEMPERATURE:
+					return new Key(Float.valueOf(value), id);
+				default:
+					return new Key(value, id);
+			}
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("invalid cursor", e);
+		}
+	}
+}
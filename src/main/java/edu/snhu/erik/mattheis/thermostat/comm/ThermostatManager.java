@@ -1,33 +1,51 @@
 package edu.snhu.erik.mattheis.thermostat.comm;
 
 import static java.time.Instant.now;
-import static java.time.temporal.ChronoUnit.MINUTES;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 
 import org.bson.types.ObjectId;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fazecast.jSerialComm.SerialPort;
 
+import edu.snhu.erik.mattheis.thermostat.db.ConnectionState;
+import edu.snhu.erik.mattheis.thermostat.db.Schedule;
 import edu.snhu.erik.mattheis.thermostat.db.Thermostat;
-import edu.snhu.erik.mattheis.thermostat.db.ThermostatRepository;
+import edu.snhu.erik.mattheis.thermostat.db.ThermostatState;
+import edu.snhu.erik.mattheis.thermostat.store.ThermostatStorage;
+import edu.snhu.erik.mattheis.thermostat.trace.BroadcastEvent;
+import edu.snhu.erik.mattheis.thermostat.trace.UpdateTrace;
+import edu.snhu.erik.mattheis.thermostat.websocket.ThermostatUpdateSocket;
 import io.quarkus.runtime.ShutdownEvent;
 import io.quarkus.runtime.StartupEvent;
 
@@ -40,67 +58,164 @@ import io.quarkus.runtime.StartupEvent;
 public class ThermostatManager {
 
 	private final Logger log = LoggerFactory.getLogger(getClass());
-	private final Map<ObjectId, ThermostatClient> thermostatClients = new HashMap<>();
+	private final Map<ObjectId, ThermostatClient> thermostatClients = new ConcurrentHashMap<>();
 	private final Lock clientLock = new ReentrantLock();
 	private final Timer timer = new Timer();
+	private final Timer samplingTimer = new Timer("thermostat-sampling", true);
 	
 	private volatile TimerTask poller;
+	private volatile TimerTask sampling;
+	private volatile UpdateSampler sampler;
+	private volatile Connector connector;
+	private volatile ExecutorService commandExecutor;
+	private volatile ConnectionProgress startupProgress;
+	private volatile ConnectionProgress lastProgress;
+	private volatile Duration timeUntilAllConnected;
+	private volatile Duration timeUntilRegistryLoaded;     // measured from JVM start
+	private volatile Duration timeUntilFirstUsefulResponse; // measured from JVM start
+	private volatile ThermostatSnapshot snapshot = ThermostatSnapshot.EMPTY; // replaced while holding snapshotLock
+	private final Object snapshotLock = new Object();
+	private final ThermostatIndex index = new ThermostatIndex();             // updated while holding snapshotLock
+	private final Consumer<ThermostatState> subscriber = this::changed;
+	private final PortInventory.Listener portListener = this::portsChanged;
 
 	@Inject
-	ThermostatRepository repository;
+	ThermostatStorage storage;
+
+	@Inject
+	ThermostatRecorder recorder;
+
+	@Inject
+	ThermostatChanges changes;
+
+	@Inject
+	ThermostatUpdateSocket updateSocket;
+
+	@Inject
+	ObjectMapper objectMapper;
+
+	@Inject
+	PortInventory portInventory;
+
+	@ConfigProperty(name = "thermostat.link-budget", defaultValue = "1152") // 10% of 115200 baud (8N1)
+	int linkBudget;
+
+	@ConfigProperty(name = "thermostat.serial.binary-framing", defaultValue = "true")
+	boolean binaryFraming;
+
+	@ConfigProperty(name = "thermostat.connect.parallelism", defaultValue = "8")
+	int connectParallelism;
+
+	@ConfigProperty(name = "thermostat.connect.timeout", defaultValue = "10s")
+	Duration connectTimeout;
+
+	@ConfigProperty(name = "thermostat.bulk.parallelism", defaultValue = "32")
+	int bulkParallelism;
+
+	@ConfigProperty(name = "thermostat.sampling.min-interval", defaultValue = "5s")
+	Duration samplingMinInterval;
+
+	@ConfigProperty(name = "thermostat.sampling.max-interval", defaultValue = "1m")
+	Duration samplingMaxInterval;
+
+	@ConfigProperty(name = "thermostat.sampling.rate-scale", defaultValue = "0.2") // degrees per minute
+	double samplingRateScale;
+
+	@ConfigProperty(name = "thermostat.sampling.time-constant", defaultValue = "2m")
+	Duration samplingTimeConstant;
+
+	@ConfigProperty(name = "thermostat.sampling.switch-window", defaultValue = "2m")
+	Duration samplingSwitchWindow;
+
+	@ConfigProperty(name = "thermostat.sampling.budget", defaultValue = "20")    // updates per second, all thermostats
+	double samplingBudget;
+
+	@ConfigProperty(name = "thermostat.sampling.tick", defaultValue = "1s")
+	Duration samplingTick;
 	
 	/**
-	 * starts a polling task to maintain connections to configured thermostats
-	 * running immediately and every minute thereafter
+	 * starts a polling task to maintain connections to configured thermostats running immediately
+	 * and every minute thereafter - its first run loads them into the registry as connecting, so their
+	 * last known state is served while the connections are made
+	 * 
+	 * the registry is loaded on the polling thread rather than during startup, so unavailable storage
+	 * never holds up startup - polling retries the load until storage is available
+	 * 
+	 * connections are made concurrently outside of the client lock,
+	 * the polling task waits for every attempt to finish or time out
+	 * 
+	 * updates are requested separately by a sampling task running every tick, which asks each connected
+	 * thermostat for an update as often as its temperature is changing within the overall budget
+	 * (see {@link UpdateSampler})
+	 * 
+	 * between polls, a thermostat is reconnected as soon as its port is plugged
+	 * back in and disconnected as soon as its port disappears
 	 *  
 	 * @param startup the Quarkus startup event
 	 */
 	void onStartup(@Observes StartupEvent startup) {
+		changes.subscribe(subscriber, null, 0, List::of);
+		connector = new Connector(connectParallelism, connectTimeout);
+		commandExecutor = Executors.newFixedThreadPool(bulkParallelism, Connector.daemonThreads("thermostat-command-"));
+		portInventory.addListener(portListener);
+		sampler = new UpdateSampler(samplingMinInterval, samplingMaxInterval, samplingRateScale, samplingTimeConstant,
+				samplingSwitchWindow, samplingBudget);
 		poller = new TimerTask() {
 			@Override
 			public void run() {
+				var disconnected = new ArrayList<ThermostatClient>();
 				clientLock.lock();
 				try {
-					repository.listAll().forEach(thermostat -> {           // for all thermostats in the database...
+					storage.listThermostats().forEach(thermostat -> {      // for all thermostats in storage...
 						var client = thermostatClients.get(thermostat.id); // get the associated client
 						if (client == null) {                              // if no client exists...
-							try {                                          //     create a new one and connect to the thermostat
-								var serialPort = SerialPort.getCommPort(thermostat.port);
-								client = new ThermostatClient(serialPort, thermostat, repository);
-								thermostatClients.put(thermostat.id, client);
-								client.connect();
+							try {                                          //     create a new one to connect
+								disconnected.add(register(thermostat));
 							} catch (Exception e) {
 								log.error("problem connecting to thermostat '{}'", thermostat.label, e);
 							}
 						} else if (!client.isConnected()) {                 // else if the client is disconnected... 
-							try {                                           //     try to reconnect to the thermostat
-								client.connect();
-							} catch (Exception e) {
-								log.error("problem reconnecting thermostat '{}'", thermostat.label, e);
-							}
-						} else if (!upToDate(client.getThermostat())) {     // else if the thermostat is not up to date...
-							try {                                           //     request an immediate update
-								client.requestUpdate();
-							} catch (Exception e) {
-								log.error("problem updating thermostat '{}'", thermostat.label, e);
-							}
+							disconnected.add(client);                       //     try to reconnect to the thermostat
 						}
 					});
+				} catch (Exception e) {
+					log.error("problem loading thermostats, will retry when polling", e);
+					return;
 				} finally {
 					clientLock.unlock();
 				}
+				if (timeUntilRegistryLoaded == null) {                     // the first successful poll
+					registryLoaded();
+				}
+				connectAll(disconnected);
 			}
 		};
 		timer.scheduleAtFixedRate(poller, 0, 60000);
+		sampling = new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					sampler.requestDue(now(), ThermostatManager.this::requestUpdate);
+				} catch (Exception e) {
+					log.error("problem requesting thermostat updates", e);
+				}
+			}
+		};
+		samplingTimer.scheduleAtFixedRate(sampling, samplingTick.toMillis(), samplingTick.toMillis());
 	}
 	
 	/**
-	 * cancels the polling task, then disconnects and discards all thermostat clients
+	 * cancels the polling and sampling tasks, then disconnects and discards all thermostat clients
 	 * 
 	 * @param shutdown the Quarkus shutdown event
 	 */
 	void onShutdown(@Observes ShutdownEvent shutdown) {
 		poller.cancel();
+		sampling.cancel();
+		portInventory.removeListener(portListener);
+		changes.unsubscribe(subscriber);
+		connector.shutdown();
+		commandExecutor.shutdownNow();
 		clientLock.lock();
 		try {
 			thermostatClients.values().forEach(ThermostatClient::disconnect);
@@ -113,14 +228,17 @@ public class ThermostatManager {
 	/**
 	 * gets the list of available ports for connecting to a thermostat
 	 * 
+	 * served from the cached {@link PortInventory} rather than enumerating the ports on every call
+	 * 
 	 * @return the list of available ports
 	 */
 	public List<AvailablePort> getAvailablePorts() {
-		return Stream.of(SerialPort.getCommPorts())                                // get all the serial ports
-		             .filter(port -> !port.getSystemPortName().startsWith("tty.")) // ignore the tty ports on Linux/MacOS
-		             .filter(port -> !portHasClient(port.getSystemPortName()))     // ignore ports with existing clients
-		             .map(AvailablePort::of)
-		             .collect(Collectors.toUnmodifiableList());
+		var used = thermostatClients.values().stream()                             // collect the ports with clients once
+		                            .map(client -> client.getState().getPort())
+		                            .collect(Collectors.toSet());
+		return portInventory.getPorts().stream()                                   // get the cached serial ports
+		                    .filter(port -> !used.contains(port.getPort()))        // ignore ports with existing clients
+		                    .collect(Collectors.toUnmodifiableList());
 	}
 
 	/**
@@ -130,9 +248,11 @@ public class ThermostatManager {
 	 * @param port  the system identifier for the port to connect to
 	 * @return the initial state of the newly connected thermostat
 	 * @throws IOException if a failure occurs communicating with the thermostat on the serial port
+	 *                     or the connection is not established within the connect timeout
 	 * @throws IllegalArgumentException if label or port is null or blank, or the port is unavailable
 	 */
-	public Thermostat connectThermostat(String label, String port) throws IOException {
+	public ThermostatState connectThermostat(String label, String port) throws IOException {
+		ThermostatClient thermostatClient;
 		clientLock.lock();
 		try {
 			if (label == null || label.isBlank()) {
@@ -144,36 +264,125 @@ public class ThermostatManager {
 			if (portHasClient(port)) {
 				throw new IllegalArgumentException("port unavailable");
 			}
-			var serialPort = SerialPort.getCommPort(port);
-			var thermostat = createThermostat(label, port);
-			var thermostatClient = new ThermostatClient(serialPort, thermostat, repository);
-			thermostatClients.put(thermostat.id, thermostatClient);
-			thermostatClient.connect();
-			return thermostat;
+			var serialPort = SerialPort.getCommPort(port); // fails before storing if the port is invalid
+			thermostatClient = register(createThermostat(label, port)); // reserves the port before releasing the lock
 		} finally {
 			clientLock.unlock();
 		}
+		try {
+			return connector.connect(thermostatClient).get().getState();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("problem connecting to thermostat", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted connecting to thermostat", e);
+		}
+	}
+
+	/**
+	 * gets the progress of connecting to thermostats configured at startup
+	 * 
+	 * @return the startup progress or {@link Optional#empty()} if the first poll has not yet run
+	 */
+	public Optional<ConnectionProgress> getStartupProgress() {
+		return Optional.ofNullable(startupProgress);
+	}
+
+	/**
+	 * gets the progress of the most recent round of connections made by the poller
+	 * 
+	 * @return the latest progress or {@link Optional#empty()} if the first poll has not yet run
+	 */
+	public Optional<ConnectionProgress> getLastProgress() {
+		return Optional.ofNullable(lastProgress);
+	}
+
+	/**
+	 * gets the time from startup until every configured thermostat was first connected
+	 * 
+	 * @return the elapsed time or {@link Optional#empty()} if not all thermostats have been connected yet
+	 */
+	public Optional<Duration> getTimeUntilAllConnected() {
+		return Optional.ofNullable(timeUntilAllConnected);
+	}
+
+	/**
+	 * gets the time from JVM start until the configured thermostats were loaded into the registry
+	 * 
+	 * @return the elapsed time or {@link Optional#empty()} if the registry has not been loaded
+	 */
+	public Optional<Duration> getTimeUntilRegistryLoaded() {
+		return Optional.ofNullable(timeUntilRegistryLoaded);
+	}
+
+	/**
+	 * gets the time from JVM start until the first list of thermostats was served from a loaded registry
+	 * 
+	 * @return the elapsed time or {@link Optional#empty()} if no such list has been served
+	 */
+	public Optional<Duration> getTimeUntilFirstUsefulResponse() {
+		return Optional.ofNullable(timeUntilFirstUsefulResponse);
+	}
+
+	/**
+	 * notes that a list of thermostats is being served, recording the time until the first
+	 * one served once the registry was loaded
+	 */
+	public void responding() {
+		if (timeUntilFirstUsefulResponse == null && timeUntilRegistryLoaded != null) {
+			synchronized (snapshotLock) {
+				if (timeUntilFirstUsefulResponse != null) {
+					return;
+				}
+				timeUntilFirstUsefulResponse = sinceJvmStart();
+			}
+			log.info("first thermostat list served {} ms after JVM start", timeUntilFirstUsefulResponse.toMillis());
+		}
 	}
 
 	/**
 	 * gets the state of all configured thermostats
 	 * 
-	 * @return the list of thermostat states 
+	 * @return the list of thermostat states
 	 */
-	public List<Thermostat> listThermostats() {
-		return thermostatClients.values().stream()
-				.map(ThermostatClient::getThermostat)
+	public List<ThermostatState> listThermostats() {
+		return snapshot.getThermostats().stream()
+				.map(EncodedThermostat::getState)
 				.collect(Collectors.toUnmodifiableList());
 	}
 
+	/**
+	 * gets an immutable snapshot of all configured thermostats along with their JSON encoding,
+	 * which is only rebuilt when the state of a thermostat changes
+	 * 
+	 * @return the latest snapshot
+	 */
+	public ThermostatSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * lists a page of thermostats from secondary indexes kept alongside the snapshot
+	 * 
+	 * @param query the criteria, order and position of the page
+	 * @return the page
+	 * @throws IllegalArgumentException if the cursor is invalid
+	 */
+	public ThermostatPage queryThermostats(ThermostatQuery query) {
+		return index.query(query);
+	}
+
 	/**
 	 * gets the state of a configured thermostat with the given id
 	 * 
 	 * @param id the id of the thermostat to get
 	 * @return the state of the matching thermostat or {@link Optional#empty()} if no thermostat matches the id
 	 */
-	public Optional<Thermostat> getThermostat(ObjectId id) {
-		return Optional.ofNullable(thermostatClients.get(id)).map(ThermostatClient::getThermostat);
+	public Optional<ThermostatState> getThermostat(ObjectId id) {
+		return Optional.ofNullable(thermostatClients.get(id)).map(ThermostatClient::getState);
 	}
 
 	/**
@@ -183,15 +392,58 @@ public class ThermostatManager {
 	 * @param label a descriptive name for the thermostat
 	 * @return the updated state of the matching thermostat or {@link Optional#empty()} if no thermostat matches the id
 	 */
-	public Optional<Thermostat> setThermostatLabel(ObjectId id, String label) {
+	public Optional<ThermostatState> setThermostatLabel(ObjectId id, String label) {
+		var client = thermostatClients.get(id);
+		if (client == null) {
+			return Optional.empty();
+		}
+		return Optional.of(client.update(state -> state.withLabel(label)));
+	}
+
+	/**
+	 * sets the temperature sampling policy of the thermostat with the given id
+	 * 
+	 * @param id the id of the thermostat to update
+	 * @param deadband the change in degrees C which causes a sample to be stored, or {@code null} for the default
+	 * @param heartbeatSeconds the maximum number of seconds between samples, or {@code null} for the default
+	 * @return the updated state of the matching thermostat or {@link Optional#empty()} if no thermostat matches the id
+	 */
+	public Optional<ThermostatState> setThermostatSampling(ObjectId id, Float deadband, Long heartbeatSeconds) {
+		var client = thermostatClients.get(id);
+		if (client == null) {
+			return Optional.empty();
+		}
+		return Optional.of(client.update(state -> state.withSampling(deadband, heartbeatSeconds)));
+	}
+
+	/**
+	 * moves the thermostat with the given id into a zone
+	 * 
+	 * @param id the id of the thermostat to update
+	 * @param zone the name of the zone, or {@code null} to remove it from its zone
+	 * @return the updated state of the matching thermostat or {@link Optional#empty()} if no thermostat matches the id
+	 */
+	public Optional<ThermostatState> setThermostatZone(ObjectId id, String zone) {
 		var client = thermostatClients.get(id);
 		if (client == null) {
 			return Optional.empty();
 		}
-		var thermostat = client.getThermostat();
-		thermostat.label = label;
-		repository.update(thermostat);
-		return Optional.of(thermostat);
+		return Optional.of(client.update(state -> state.withZone(zone)));
+	}
+
+	/**
+	 * sets the setpoint schedule of the thermostat with the given id
+	 * 
+	 * @param id the id of the thermostat to update
+	 * @param schedule the schedule, or {@code null} to remove it
+	 * @return the updated state of the matching thermostat or {@link Optional#empty()} if no thermostat matches the id
+	 */
+	public Optional<ThermostatState> setThermostatSchedule(ObjectId id, Schedule schedule) {
+		var client = thermostatClients.get(id);
+		if (client == null) {
+			return Optional.empty();
+		}
+		return Optional.of(client.update(state -> state.withSchedule(schedule)));
 	}
 
 	/**
@@ -200,13 +452,12 @@ public class ThermostatManager {
 	 * @param id the id of the thermostat to update
 	 * @param desiredTemperature the desired temperature to set on the thermostat
 	 * @return the updated state of the matching thermostat or {@link Optional#empty()} if no thermostat matches the id
-	 * @throws IOException if a failure occurs communicating with the thermostat on the serial port
 	 * @throws IllegalStateException if the client is not connected or remote updates are disabled on the thermostat
 	 * @throws TimeoutException if an update is not received from the thermostat within 5 seconds
 	 * @throws InterruptedException if the thread is interrupted while waiting for an update
 	 */
-	public Optional<Thermostat> setThermostatDesiredTemperature(ObjectId id, float desiredTemperature)
-			throws IOException, TimeoutException, InterruptedException {
+	public Optional<ThermostatState> setThermostatDesiredTemperature(ObjectId id, float desiredTemperature)
+			throws TimeoutException, InterruptedException {
 		var client = thermostatClients.get(id);
 		if (client == null) {
 			return Optional.empty();
@@ -214,6 +465,27 @@ public class ThermostatManager {
 		return Optional.of(client.setDesiredTemperature(desiredTemperature));
 	}
 
+	/**
+	 * sets the desired temperature of the thermostat with the given id without blocking the caller,
+	 * so that many thermostats can be updated concurrently - at most {@code thermostat.bulk.parallelism}
+	 * updates wait for their thermostat at once
+	 * 
+	 * @param id the id of the thermostat to update
+	 * @param desiredTemperature the desired temperature to set on the thermostat
+	 * @return a future completing with the result of {@link #setThermostatDesiredTemperature(ObjectId, float)},
+	 *         or exceptionally with the exception it throws wrapped in a {@link CompletionException}
+	 */
+	public CompletableFuture<Optional<ThermostatState>> setThermostatDesiredTemperatureAsync(ObjectId id,
+			float desiredTemperature) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return setThermostatDesiredTemperature(id, desiredTemperature);
+			} catch (TimeoutException | InterruptedException e) {
+				throw new CompletionException(e);
+			}
+		}, commandExecutor);
+	}
+
 	/**
 	 * disconnects from the thermostat with the given id and discards the configuration
 	 * 
@@ -223,30 +495,176 @@ public class ThermostatManager {
 	public boolean disconnectThermostat(ObjectId id) {
 		clientLock.lock();
 		try {
-			var client = thermostatClients.remove(id);
+			ThermostatClient client;
+			synchronized (snapshotLock) {
+				client = thermostatClients.remove(id);
+				snapshot.getThermostat(id).ifPresent(index::remove);
+				snapshot = snapshot.without(id);
+				sampler.remove(id);
+			}
 			if (client == null) {
 				return false;
 			}
-			repository.delete(client.getThermostat());
-			client.disconnect();
+			client.disconnect();                // before deleting, so its last update cannot recreate it
+			recorder.delete(client.getState());
 			return true;
 		} finally {
 			clientLock.unlock();
 		}
 	}
 
+	private void registryLoaded() {
+		timeUntilRegistryLoaded = sinceJvmStart();
+		log.info("loaded {} thermostats {} ms after JVM start", thermostatClients.size(),
+				timeUntilRegistryLoaded.toMillis());
+	}
+
+	/*
+	 * creates a client for a thermostat and publishes its stored state as connecting - the caller must hold the client lock
+	 */
+	private ThermostatClient register(Thermostat thermostat) {
+		var serialPort = SerialPort.getCommPort(thermostat.port);
+		var client = new ThermostatClient(serialPort, ThermostatState.of(thermostat).withConnection(ConnectionState.CONNECTING),
+				recorder, linkBudget, binaryFraming);
+		thermostatClients.put(thermostat.id, client);
+		publish(client.getState());
+		return client;
+	}
+
+	private static Duration sinceJvmStart() {
+		return Duration.between(Instant.ofEpochMilli(ManagementFactory.getRuntimeMXBean().getStartTime()), now());
+	}
+
+	/*
+	 * connects the given clients concurrently and records the progress,
+	 * waiting for every attempt to finish or time out
+	 */
+	private void connectAll(List<ThermostatClient> clients) {
+		var progress = new ConnectionProgress(clients.size());
+		if (startupProgress == null) {
+			startupProgress = progress;
+		} else if (clients.isEmpty()) {
+			return;                     // keep the last round which actually connected anything
+		}
+		lastProgress = progress;
+		connector.connectAll(clients, progress).join();
+		log.info("connected {} of {} thermostats in {} ms", progress.getConnected(), progress.getTotal(),
+				progress.getElapsedMillis());
+		if (timeUntilAllConnected == null && thermostatClients.values().stream().allMatch(ThermostatClient::isConnected)) {
+			timeUntilAllConnected = Duration.between(startupProgress.getStarted(), progress.getCompleted());
+			log.info("all thermostats connected {} ms after startup", timeUntilAllConnected.toMillis());
+		}
+	}
+
+	/*
+	 * called by the port inventory when ports appear or disappear - clients on removed ports are
+	 * disconnected so the port is reopened cleanly, and disconnected clients on added ports are
+	 * reconnected immediately rather than waiting for the next poll
+	 */
+	private void portsChanged(Set<String> added, Set<String> removed) {
+		var reconnect = new ArrayList<ThermostatClient>();
+		clientLock.lock();
+		try {
+			for (var client : thermostatClients.values()) {
+				var port = client.getState().getPort();
+				if (client.isConnected() && matches(removed, port)) {
+					log.info("port {} of thermostat '{}' removed", port, client.getState().getLabel());
+					client.disconnect();
+				} else if (!client.isConnected() && matches(added, port)) {
+					log.info("port {} of thermostat '{}' plugged in, reconnecting", port, client.getState().getLabel());
+					reconnect.add(client);
+				}
+			}
+		} finally {
+			clientLock.unlock();
+		}
+		reconnect.forEach(connector::connect); // outcomes are logged by the connector
+	}
+
+	/*
+	 * called with a snapshot of each recorded change on the thread reporting it, after ThermostatChanges
+	 * has released its lock - updates the snapshot and pushes the encoded state to any connected
+	 * front-end websockets, encoding and broadcasting outside of snapshotLock so the lock is only held
+	 * to swap in the new snapshot
+	 */
+	private void changed(ThermostatState state) {
+		var event = new BroadcastEvent();
+		event.begin();
+		var start = System.nanoTime();
+		var encoded = publish(state);
+		if (encoded != null) {
+			event.encodeTime = System.nanoTime() - start;
+			event.sessions = updateSocket.broadcast(encoded);
+			event.end();
+			if (event.shouldCommit()) {
+				event.updateId = UpdateTrace.current();
+				event.endpoint = "/api/thermostats/" + state.getId().toHexString() + "/updates";
+				event.size = encoded.getJson().length;
+				event.commit();
+			}
+		}
+	}
+
+	/*
+	 * encodes the thermostat state and adds it to the snapshot of all thermostats,
+	 * unless the thermostat has been removed - returns the encoded state or null if not added
+	 */
+	private EncodedThermostat publish(ThermostatState state) {
+		EncodedThermostat encoded;
+		try {
+			encoded = new EncodedThermostat(state, objectMapper.writeValueAsBytes(state));
+		} catch (JsonProcessingException e) {
+			log.error("problem encoding thermostat '{}'", state.getLabel(), e);
+			return null;
+		}
+		synchronized (snapshotLock) {
+			if (!thermostatClients.containsKey(state.getId())) {
+				return null;
+			}
+			var current = snapshot.getThermostat(state.getId());
+			if (current.isPresent() && current.get().getState().getVersion() > state.getVersion()) {
+				return null;                                           // never replace a newer state
+			}
+			snapshot = snapshot.with(encoded);
+			index.put(current.orElse(null), encoded);
+			sampler.add(state);
+		}
+		return encoded;
+	}
+
 	private Thermostat createThermostat(String label, String port) {
 		var thermostat = Thermostat.create(label, port);
-		repository.persist(thermostat);
+		storage.createThermostat(thermostat);
 		return thermostat;
 	}
 	
 	private boolean portHasClient(String port) {
-		return thermostatClients.values().stream().filter(client -> port.equals(client.getThermostat().port)).findAny()
+		return thermostatClients.values().stream().filter(client -> port.equals(client.getState().getPort())).findAny()
 				.isPresent();
 	}
 
-	private static boolean upToDate(Thermostat thermostat) {
-		return thermostat.lastUpdate.plus(1, MINUTES).isAfter(now());
+	/*
+	 * the inventory reports system port names, while a thermostat may be configured with a device path
+	 */
+	private static boolean matches(Set<String> systemPortNames, String port) {
+		return port != null && (systemPortNames.contains(port)
+				|| systemPortNames.contains(port.substring(port.lastIndexOf('/') + 1)));
+	}
+
+	/*
+	 * called by the sampler - returns false if the thermostat is not connected
+	 */
+	private boolean requestUpdate(ObjectId id) {
+		var client = thermostatClients.get(id);
+		if (client == null || !client.isConnected()) {
+			return false;
+		}
+		try {
+			client.requestUpdate();
+			return true;
+		} catch (Exception e) {
+			log.error("problem updating thermostat '{}'", client.getState().getLabel(), e);
+			return false;
+		}
 	}
 }
@@ -0,0 +1,37 @@
+package edu.snhu.erik.mattheis.thermostat.comm;
+
+import java.util.List;
+
+/**
+ * one page of thermostats listed by a {@link ThermostatQuery}
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+public class ThermostatPage {
+
+	private final List<EncodedThermostat> thermostats;
+	private final String next;
+
+	ThermostatPage(List<EncodedThermostat> thermostats, String next) {
+		this.thermostats = List.copyOf(thermostats);
+		this.next = next;
+	}
+
+	/**
+	 * gets the thermostats on the page, in order
+	 * 
+	 * @return the encoded thermostats
+	 */
+	public List<EncodedThermostat> getThermostats() {
+		return thermostats;
+	}
+
+	/**
+	 * gets the cursor to pass with the same query for the following page
+	 * 
+	 * @return the cursor, or {@code null} if this is the last page
+	 */
+	public String getNext() {
+		return next;
+	}
+}
@@ -0,0 +1,170 @@
+package edu.snhu.erik.mattheis.thermostat.comm;
+
+import java.time.Instant;
+
+/**
+ * selects, orders and pages thermostats listed from the {@link ThermostatIndex}
+ * 
+ * every criterion is optional - an empty query lists every thermostat by label
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+public class ThermostatQuery {
+
+	/**
+	 * the orders thermostats can be listed in, each with ties broken by id
+	 */
+	public enum Sort {
+		LABEL("label"),
+		LAST_UPDATE("lastUpdate"),
+		AMBIENT_TEMPERATURE("ambientTemperature");
+
+		private final String field;
+
+		Sort(String field) {
+			this.field = field;
+		}
+
+		/**
+		 * gets the name of the field sorted on, as it appears in JSON
+		 * 
+		 * @return the field name
+		 */
+		public String getField() {
+			return field;
+		}
+
+		/**
+		 * gets the order sorting on the named field
+		 * 
+		 * @param field the name of the field as it appears in JSON
+		 * @return the order
+		 * @throws IllegalArgumentException if thermostats cannot be sorted on the field
+		 */
+		public static Sort of(String field) {
+			for (var sort : values()) {
+				if (sort.field.equals(field)) {
+					return sort;
+				}
+			}
+			throw new IllegalArgumentException("cannot sort on " + field);
+		}
+	}
+
+	private final String labelPrefix;
+	private final String port;
+	private final Boolean heaterOn;
+	private final Boolean stale;
+	private final Instant staleBefore;
+	private final Sort sort;
+	private final boolean descending;
+	private final String cursor;
+	private final Integer limit;
+
+	/**
+	 * creates a new query with the given criteria
+	 * 
+	 * @param labelPrefix the prefix of the labels to select, or {@code null} for any label
+	 * @param port        the port to select, or {@code null} for any port
+	 * @param heaterOn    whether to select thermostats with the heater on or off, or {@code null} for either
+	 * @param stale       whether to select thermostats which are or are not stale, or {@code null} for either
+	 * @param staleBefore thermostats last updated before this instant, or never, are stale
+	 * @param sort        the order to list thermostats in
+	 * @param descending  {@code true} to reverse the order
+	 * @param cursor      the cursor returned with the previous page, or {@code null} for the first page
+	 * @param limit       the most thermostats to list, or {@code null} for all of them
+	 */
+	public ThermostatQuery(String labelPrefix, String port, Boolean heaterOn, Boolean stale, Instant staleBefore,
+			Sort sort, boolean descending, String cursor, Integer limit) {
+		this.labelPrefix = labelPrefix;
+		this.port = port;
+		this.heaterOn = heaterOn;
+		this.stale = stale;
+		this.staleBefore = staleBefore;
+		this.sort = sort;
+		this.descending = descending;
+		this.cursor = cursor;
+		this.limit = limit;
+	}
+
+	/**
+	 * gets the prefix of the labels to select
+	 * 
+	 * @return the label prefix, or {@code null} for any label
+	 */
+	public String getLabelPrefix() {
+		return labelPrefix;
+	}
+
+	/**
+	 * gets the port to select
+	 * 
+	 * @return the port, or {@code null} for any port
+	 */
+	public String getPort() {
+		return port;
+	}
+
+	/**
+	 * gets whether to select thermostats with the heater on or off
+	 * 
+	 * @return the heater state, or {@code null} for either
+	 */
+	public Boolean getHeaterOn() {
+		return heaterOn;
+	}
+
+	/**
+	 * gets whether to select thermostats which are or are not stale
+	 * 
+	 * @return whether stale, or {@code null} for either
+	 */
+	public Boolean getStale() {
+		return stale;
+	}
+
+	/**
+	 * gets the instant before which a thermostat last updated is stale
+	 * 
+	 * @return the instant
+	 */
+	public Instant getStaleBefore() {
+		return staleBefore;
+	}
+
+	/**
+	 * gets the order to list thermostats in
+	 * 
+	 * @return the order
+	 */
+	public Sort getSort() {
+		return sort;
+	}
+
+	/**
+	 * gets whether the order is reversed
+	 * 
+	 * @return {@code true} if reversed
+	 */
+	public boolean isDescending() {
+		return descending;
+	}
+
+	/**
+	 * gets the cursor returned with the previous page
+	 * 
+	 * @return the cursor, or {@code null} for the first page
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+
+	/**
+	 * gets the most thermostats to list
+	 * 
+	 * @return the limit, or {@code null} for all of them
+	 */
+	public Integer getLimit() {
+		return limit;
+	}
+}
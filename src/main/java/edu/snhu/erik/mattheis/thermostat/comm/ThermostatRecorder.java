@@ -0,0 +1,73 @@
+package edu.snhu.erik.mattheis.thermostat.comm;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import edu.snhu.erik.mattheis.thermostat.db.TemperatureSampler;
+import edu.snhu.erik.mattheis.thermostat.db.ThermostatState;
+import edu.snhu.erik.mattheis.thermostat.store.ThermostatStorage;
+import io.quarkus.runtime.ShutdownEvent;
+
+/**
+ * records thermostat updates regardless of the storage in use - sampling the ambient temperature,
+ * storing the state and sample, then publishing the change once it is visible (see {@link ThermostatChanges})
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@ApplicationScoped
+public class ThermostatRecorder {
+
+	@Inject
+	ThermostatStorage storage;
+
+	@Inject
+	TemperatureSampler sampler;
+
+	@Inject
+	ThermostatChanges changes;
+
+	/**
+	 * stores any held temperature readings before the storage is closed
+	 * 
+	 * @param shutdown the Quarkus shutdown event
+	 */
+	void onShutdown(@Observes ShutdownEvent shutdown) {
+		sampler.flush().forEach(storage::recordTemperature);
+	}
+
+	/**
+	 * store the latest state of the thermostat along with any temperature samples it produces -
+	 * samples closing earlier bins are recorded first and the latest is stored with the state
+	 * 
+	 * @param state the latest thermostat state
+	 * @throws edu.snhu.erik.mattheis.thermostat.store.DuplicateThermostatException if the label is in use
+	 */
+	public void store(ThermostatState state) {
+		var samples = sampler.sample(state);
+		var latest = samples.isEmpty() ? null : samples.get(samples.size() - 1);
+		samples.stream().limit(Math.max(samples.size() - 1, 0)).forEach(storage::recordTemperature);
+		storage.updateThermostat(state.toEntity(), latest);
+	}
+
+	/**
+	 * publish the latest state of the thermostat to subscribers and anyone waiting for a change
+	 * 
+	 * @param state the latest thermostat state, once visible to readers
+	 */
+	public void publish(ThermostatState state) {
+		changes.changed(state);
+	}
+
+	/**
+	 * remove the thermostat, discarding any temperature readings not yet sampled
+	 * and releasing anyone waiting for it to change
+	 * 
+	 * @param state the state of the thermostat to remove
+	 */
+	public void delete(ThermostatState state) {
+		storage.deleteThermostat(state.toEntity());
+		sampler.discard(state.getId());
+		changes.removed(state.getId());
+	}
+}
@@ -0,0 +1,101 @@
+package edu.snhu.erik.mattheis.thermostat.comm;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.bson.types.ObjectId;
+
+/**
+ * an immutable snapshot of every thermostat state - a new snapshot is built whenever a thermostat
+ * changes and published with a single volatile write, so readers never lock or copy
+ *
+ * the encoding of the whole list is assembled from the encoded states the first time it is read
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+public final class ThermostatSnapshot {
+
+	static final ThermostatSnapshot EMPTY = new ThermostatSnapshot(Map.of());
+
+	private final Map<ObjectId, EncodedThermostat> thermostats;
+
+	private volatile byte[] json;
+
+	private ThermostatSnapshot(Map<ObjectId, EncodedThermostat> thermostats) {
+		this.thermostats = thermostats;
+	}
+
+	/**
+	 * creates a copy of this snapshot with the given thermostat added or replaced
+	 *
+	 * @param thermostat the encoded thermostat
+	 * @return the new snapshot
+	 */
+	ThermostatSnapshot with(EncodedThermostat thermostat) {
+		var copy = new LinkedHashMap<>(thermostats);
+		copy.put(thermostat.getState().getId(), thermostat);
+		return new ThermostatSnapshot(Collections.unmodifiableMap(copy));
+	}
+
+	/**
+	 * creates a copy of this snapshot with the given thermostat removed
+	 *
+	 * @param id the id of the thermostat to remove
+	 * @return the new snapshot
+	 */
+	ThermostatSnapshot without(ObjectId id) {
+		if (!thermostats.containsKey(id)) {
+			return this;
+		}
+		var copy = new LinkedHashMap<>(thermostats);
+		copy.remove(id);
+		return new ThermostatSnapshot(Collections.unmodifiableMap(copy));
+	}
+
+	/**
+	 * gets every thermostat in the snapshot
+	 *
+	 * @return the encoded thermostats
+	 */
+	public Collection<EncodedThermostat> getThermostats() {
+		return thermostats.values();
+	}
+
+	/**
+	 * gets the thermostat with the given id
+	 *
+	 * @param id the id of the thermostat
+	 * @return the encoded thermostat or {@link Optional#empty()} if no thermostat matches the id
+	 */
+	public Optional<EncodedThermostat> getThermostat(ObjectId id) {
+		return Optional.ofNullable(thermostats.get(id));
+	}
+
+	/**
+	 * gets the UTF-8 JSON encoding of the list of every thermostat state
+	 *
+	 * @return the encoded list
+	 */
+	public byte[] getJson() {
+		var encoded = json;
+		if (encoded == null) {                                  // racing readers build identical encodings
+			var buffer = new ByteArrayOutputStream();
+			buffer.write('[');
+			var first = true;
+			for (var thermostat : thermostats.values()) {
+				if (!first) {
+					buffer.write(',');
+				}
+				buffer.writeBytes(thermostat.getJson());
+				first = false;
+			}
+			buffer.write(']');
+			json = encoded = buffer.toByteArray();
+		}
+		return encoded;
+	}
+}
@@ -0,0 +1,276 @@
+package edu.snhu.erik.mattheis.thermostat.comm;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import org.bson.types.ObjectId;
+
+import edu.snhu.erik.mattheis.thermostat.db.ThermostatState;
+
+/**
+ * decides when to request an update from each thermostat, so readings are taken often while a
+ * temperature is moving and rarely while it is steady
+ *
+ * each thermostat's interval between updates shrinks with the rate its temperature is changing,
+ * an exponentially weighted moving average of the absolute rate with a time constant (so irregularly
+ * spaced readings are weighted by the time between them):
+ *
+ * <pre>
+ * alpha    = 1 - exp(-dt / timeConstant)
+ * rate     = rate + alpha * (|reading - previous| / dt - rate)
+ * interval = clamp(maxInterval / (1 + rate / rateScale), minInterval, maxInterval)
+ * </pre>
+ *
+ * for a while after the heater switches on or off the interval is the minimum, to catch the
+ * response of the room before the rate has had time to rise
+ *
+ * every update received, whether requested or sent by the thermostat on its own, is taken from a
+ * single token bucket refilled at the budget (updates per second across all thermostats) - requests
+ * are only made while it holds tokens, most overdue first, so a busy fleet degrades to longer
+ * intervals rather than overrunning the serial links or storage
+ *
+ * a request takes its token when it is made, so the update answering it is not charged again - a
+ * request not answered within the thermostat's interval (e.g. its port was unplugged) is no longer
+ * outstanding, so later updates are charged as usual
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class UpdateSampler {
+
+	private final Map<ObjectId, Device> devices = new ConcurrentHashMap<>();
+	private final double timeConstant;    // milliseconds
+	private final double rateScale;       // degrees per minute
+	private final long minInterval;       // milliseconds
+	private final long maxInterval;       // milliseconds
+	private final long switchWindow;      // milliseconds
+	private final double budget;          // updates per second
+
+	// token bucket for the budget - guarded by this
+	private double tokens;
+	private long lastRefill;
+
+	/**
+	 * creates a sampler tracking no thermostats
+	 *
+	 * @param minInterval  the shortest interval between updates of a thermostat
+	 * @param maxInterval  the longest interval between updates of a steady thermostat
+	 * @param rateScale    the rate of change (degrees per minute) at which the interval is halved
+	 * @param timeConstant the time constant of the moving average of the rate of change
+	 * @param switchWindow how long after the heater switches to sample at the minimum interval
+	 * @param budget       the maximum updates per second across all thermostats
+	 */
+	UpdateSampler(Duration minInterval, Duration maxInterval, double rateScale, Duration timeConstant,
+			Duration switchWindow, double budget) {
+		if (minInterval.isNegative() || minInterval.compareTo(maxInterval) > 0) {
+			throw new IllegalArgumentException("minInterval must be between zero and maxInterval");
+		}
+		if (rateScale <= 0 || budget <= 0) {
+			throw new IllegalArgumentException("rateScale and budget must be positive");
+		}
+		this.minInterval = minInterval.toMillis();
+		this.maxInterval = maxInterval.toMillis();
+		this.rateScale = rateScale;
+		this.timeConstant = Math.max(timeConstant.toMillis(), 1);
+		this.switchWindow = switchWindow.toMillis();
+		this.budget = budget;
+		this.tokens = Math.max(budget, 1);
+		this.lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * adds the reading of a new state, taking a token from the budget if it holds a new reading which was
+	 * not requested - the first state of a thermostat is its last known state rather than an update, so it
+	 * is not counted, and a requested update was paid for by its request
+	 *
+	 * @param state the new state
+	 */
+	void add(ThermostatState state) {
+		if (devices.computeIfAbsent(state.getId(), id -> new Device()).add(state)) {
+			take(1);
+		}
+	}
+
+	/**
+	 * stops tracking a thermostat
+	 *
+	 * @param id the id of the thermostat
+	 */
+	void remove(ObjectId id) {
+		devices.remove(id);
+	}
+
+	/**
+	 * requests updates from the thermostats which are due, most overdue first, while the budget allows
+	 *
+	 * @param now     the current time
+	 * @param request requests an update from the thermostat with the given id, returning
+	 *                {@code false} if it could not be requested (e.g. it is not connected)
+	 * @return the number of updates requested
+	 */
+	int requestDue(Instant now, Predicate<ObjectId> request) {
+		var millis = now.toEpochMilli();
+		var due = new ArrayList<Due>();
+		devices.forEach((id, device) -> {
+			var overdue = device.overdue(millis);
+			if (overdue >= 1) {
+				due.add(new Due(id, device, overdue));
+			}
+		});
+		if (due.isEmpty()) {
+			return 0;
+		}
+		due.sort(Comparator.comparingDouble((Due next) -> next.overdue).reversed());
+		var requested = 0;
+		for (var next : due) {
+			if (!tryTake()) {
+				break;                                     // out of budget - the rest wait for the next round
+			}
+			var previous = next.device.requested(millis);  // before sending, so a quick answer is not charged
+			if (request.test(next.id)) {
+				++requested;
+			} else {
+				next.device.cancelled(previous);
+				take(-1);                                  // give back the token
+			}
+		}
+		return requested;
+	}
+
+	/*
+	 * takes a token if one is available, refilling the bucket first
+	 */
+	private synchronized boolean tryTake() {
+		refill();
+		if (tokens < 1) {
+			return false;
+		}
+		--tokens;
+		return true;
+	}
+
+	/*
+	 * takes (or returns) tokens regardless of the balance - unrequested updates may run the
+	 * bucket into debt, which holds back requests until it has been repaid
+	 */
+	private synchronized void take(int count) {
+		refill();
+		tokens = Math.max(-Math.max(budget, 1), tokens - count);
+	}
+
+	private void refill() {
+		var now = System.nanoTime();
+		tokens = Math.min(Math.max(budget, 1), tokens + (now - lastRefill) * budget / 1e9);
+		lastRefill = now;
+	}
+
+	/*
+	 * the sampling state of one thermostat
+	 */
+	private final class Device {
+		private long lastUpdate = Long.MIN_VALUE;     // milliseconds since epoch of the latest reading
+		private long lastRequest = Long.MIN_VALUE;    // milliseconds since epoch of the latest request
+		private long lastSwitch = Long.MIN_VALUE;     // milliseconds since epoch the heater last switched
+		private boolean outstanding;                  // requested and not yet answered
+		private Float reading;
+		private Boolean heaterOn;
+		private double rate;                          // absolute degrees per minute
+
+		/*
+		 * returns true if the new reading should be charged - false if the state holds no new
+		 * reading, is the first state seen or answers an outstanding request
+		 */
+		synchronized boolean add(ThermostatState state) {
+			var timestamp = state.getLastUpdate();
+			if (timestamp == null || timestamp.toEpochMilli() <= lastUpdate) {
+				return false;
+			}
+			var first = lastUpdate == Long.MIN_VALUE;
+			var millis = timestamp.toEpochMilli();
+			var answered = outstanding && millis - lastRequest < interval(millis);  // else it has expired
+			var ambient = state.getAmbientTemperature();
+			if (reading != null && ambient != null) {
+				var elapsed = Math.max(millis - lastUpdate, 1);
+				var alpha = 1 - Math.exp(-elapsed / timeConstant);
+				rate += alpha * (Math.abs(ambient - reading) * 60000.0 / elapsed - rate);
+			}
+			if (heaterOn != null && state.getHeaterOn() != null && !heaterOn.equals(state.getHeaterOn())) {
+				lastSwitch = millis;
+			}
+			if (ambient != null) {
+				reading = ambient;
+			}
+			if (state.getHeaterOn() != null) {
+				heaterOn = state.getHeaterOn();
+			}
+			lastUpdate = millis;
+			outstanding = false;
+			return !first && !answered;
+		}
+
+		/*
+		 * marks a request as made, returning the previous mark to restore if it cannot be made
+		 */
+		synchronized Mark requested(long now) {
+			var previous = new Mark(lastRequest, outstanding, lastUpdate);
+			lastRequest = now;
+			outstanding = true;
+			return previous;
+		}
+
+		/*
+		 * restores the mark from before a request which could not be made - an earlier request is
+		 * still outstanding unless an update has arrived since
+		 */
+		synchronized void cancelled(Mark previous) {
+			lastRequest = previous.lastRequest;
+			outstanding = previous.outstanding && lastUpdate == previous.lastUpdate;
+		}
+
+		synchronized long interval(long now) {
+			if (lastSwitch != Long.MIN_VALUE && now - lastSwitch < switchWindow) {
+				return minInterval;
+			}
+			return Math.max(minInterval, Math.min(maxInterval, (long) (maxInterval / (1 + rate / rateScale))));
+		}
+
+		/*
+		 * the time since the latest reading or request, as a fraction of the interval
+		 */
+		synchronized double overdue(long now) {
+			var since = Math.max(lastUpdate, lastRequest);
+			if (since == Long.MIN_VALUE) {
+				return Double.MAX_VALUE;                  // never heard from - ask right away
+			}
+			return (double) (now - since) / Math.max(interval(now), 1);
+		}
+	}
+
+	private static final class Mark {
+		final long lastRequest;
+		final boolean outstanding;
+		final long lastUpdate;
+
+		Mark(long lastRequest, boolean outstanding, long lastUpdate) {
+			this.lastRequest = lastRequest;
+			this.outstanding = outstanding;
+			this.lastUpdate = lastUpdate;
+		}
+	}
+
+	private static final class Due {
+		final ObjectId id;
+		final Device device;
+		final double overdue;
+
+		Due(ObjectId id, Device device, double overdue) {
+			this.id = id;
+			this.device = device;
+			this.overdue = overdue;
+		}
+	}
+}
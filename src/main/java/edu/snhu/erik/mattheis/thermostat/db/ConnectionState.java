@@ -0,0 +1,36 @@
+package edu.snhu.erik.mattheis.thermostat.db;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * whether the server is connected to a thermostat - part of the live state only, never stored
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+public enum ConnectionState {
+
+	/**
+	 * loaded from storage at startup and waiting for the first connection attempt
+	 */
+	CONNECTING,
+
+	/**
+	 * the serial port is open
+	 */
+	CONNECTED,
+
+	/**
+	 * the last connection attempt failed or the connection was closed
+	 */
+	DISCONNECTED;
+
+	/**
+	 * gets the name used in JSON
+	 * 
+	 * @return the lower case name
+	 */
+	@JsonValue
+	public String toJson() {
+		return name().toLowerCase();
+	}
+}
@@ -0,0 +1,396 @@
+package edu.snhu.erik.mattheis.thermostat.db;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Typed;
+import javax.inject.Inject;
+
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.types.ObjectId;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoException;
+import com.mongodb.MongoWriteException;
+
+import edu.snhu.erik.mattheis.thermostat.store.DuplicateThermostatException;
+import edu.snhu.erik.mattheis.thermostat.store.ThermostatStorage;
+import edu.snhu.erik.mattheis.thermostat.trace.StateWriteEvent;
+import edu.snhu.erik.mattheis.thermostat.trace.TemperatureInsertEvent;
+import edu.snhu.erik.mattheis.thermostat.trace.UpdateTrace;
+
+/**
+ * stores thermostats and temperature samples in MongoDB
+ *
+ * updates which cannot be written to MongoDB, or which are slow to write, are appended to a local
+ * write-ahead log instead - while the log holds any records every update is appended to it so that
+ * ordering is preserved, and a background task replays the log to MongoDB in batches until it is drained
+ *
+ * creating the collections and indexes is left to the same background task rather than holding up startup -
+ * updates are appended to the write-ahead log until it succeeds, and the few operations which rely on the
+ * schema (unique labels and ports, history queries using the compaction watermarks) wait a bounded time for it
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@ApplicationScoped
+@Typed(MongoStorage.class)
+public class MongoStorage implements ThermostatStorage {
+
+	private static final byte STATE = 1;  // write-ahead log record holding a thermostat document
+	private static final byte SAMPLE = 2; // write-ahead log record holding a temperature document
+
+	private static final String DIRECT = "direct";             // paths of writes in flight recorder events
+	private static final String BUFFERED = "write-ahead log";
+	private static final String REPLAY = "replay";
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final ReadWriteLock bufferLock = new ReentrantReadWriteLock();
+	private final Timer timer = new Timer("write-ahead-log-replay", true);
+	private final CountDownLatch bootstrapped = new CountDownLatch(1);
+
+	private volatile WriteAheadLog writeAheadLog;
+	private volatile boolean buffering = true;   // until the schema is bootstrapped
+	private volatile boolean bootstrapFailed;
+	private volatile long bootstrapStart;
+
+	@Inject
+	ThermostatRepository thermostatRepository;
+
+	@Inject
+	TemperatureRepository temperatureRepository;
+
+	@ConfigProperty(name = "thermostat.wal.directory", defaultValue = "wal")
+	Path walDirectory;
+
+	@ConfigProperty(name = "thermostat.wal.segment-size", defaultValue = "8388608")
+	int walSegmentSize;
+
+	@ConfigProperty(name = "thermostat.wal.max-segments", defaultValue = "64")
+	int walMaxSegments;
+
+	@ConfigProperty(name = "thermostat.wal.slow-write", defaultValue = "1s")
+	Duration walSlowWrite;
+
+	@ConfigProperty(name = "thermostat.wal.replay-interval", defaultValue = "1s")
+	Duration walReplayInterval;
+
+	@ConfigProperty(name = "thermostat.wal.batch-size", defaultValue = "500")
+	int walBatchSize;
+
+	@ConfigProperty(name = "thermostat.mongo.bootstrap-wait", defaultValue = "10s")
+	Duration bootstrapWait;
+
+	/**
+	 * open the write-ahead log and start bootstrapping the schema and replaying the log
+	 */
+	@PostConstruct
+	void init() {
+		try {
+			writeAheadLog = new WriteAheadLog(walDirectory, walSegmentSize, walMaxSegments);
+		} catch (IOException e) {
+			throw new UncheckedIOException("problem opening write-ahead log", e);
+		}
+		bootstrapStart = System.nanoTime();
+		timer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				replay();
+			}
+		}, 0, walReplayInterval.toMillis());
+	}
+
+	/**
+	 * stops replaying and closes the write-ahead log
+	 */
+	@PreDestroy
+	void destroy() {
+		timer.cancel();
+		writeAheadLog.close();
+	}
+
+	@Override
+	public List<Thermostat> listThermostats() {
+		return thermostatRepository.listAll();
+	}
+
+	@Override
+	public void createThermostat(Thermostat thermostat) {
+		awaitBootstrap(); // labels and ports are only unique once the indexes exist
+		try {
+			thermostatRepository.persist(thermostat);
+		} catch (MongoWriteException e) {
+			throw duplicateOrRethrow(e);
+		}
+	}
+
+	@Override
+	public void updateThermostat(Thermostat thermostat, Temperature sample) {
+		write(thermostat, sample);
+	}
+
+	@Override
+	public void deleteThermostat(Thermostat thermostat) {
+		thermostatRepository.delete(thermostat);
+	}
+
+	@Override
+	public void recordTemperature(Temperature sample) {
+		write(null, sample);
+	}
+
+	@Override
+	public TemperatureHistory getTemperatureHistory(String thermostatId, Instant from, Instant to) {
+		awaitBootstrap();
+		return temperatureRepository.getTemperatureHistory(thermostatId, from, to);
+	}
+
+	@Override
+	public Map<String, TemperatureHistory> getTemperatureHistories(Collection<String> thermostatIds, Instant from,
+			Instant to) {
+		awaitBootstrap();
+		return temperatureRepository.getTemperatureHistories(thermostatIds, from, to);
+	}
+
+	@Override
+	public CompletableFuture<Map<String, TemperatureHistory>> getTemperatureHistoriesAsync(
+			Collection<String> thermostatIds, Instant from, Instant to) {
+		awaitBootstrap();
+		return temperatureRepository.getTemperatureHistoriesAsync(thermostatIds, from, to);
+	}
+
+	/*
+	 * writes directly to MongoDB unless the write-ahead log is in use, switching
+	 * to the write-ahead log if the write fails or takes too long
+	 *
+	 * a duplicate label or port is the caller's problem rather than MongoDB's,
+	 * so it is reported instead of being buffered and retried forever
+	 */
+	private void write(Thermostat thermostat, Temperature sample) {
+		bufferLock.readLock().lock();
+		try {
+			if (!buffering) {
+				try {
+					var start = System.nanoTime();
+					if (thermostat != null) {
+						var event = stateWrite(thermostat, DIRECT);
+						thermostatRepository.update(thermostat);
+						thermostat = null; // written, so only the sample is appended if the insert fails
+						event.commit();
+					}
+					if (sample != null) {
+						var event = temperatureInsert(sample.thermostatId, 1, DIRECT);
+						temperatureRepository.persist(sample);
+						event.commit();
+					}
+					if (Duration.ofNanos(System.nanoTime() - start).compareTo(walSlowWrite) > 0) {
+						log.warn("slow write to MongoDB, buffering updates in write-ahead log");
+						buffering = true;
+					}
+					return;
+				} catch (MongoWriteException e) {
+					if (e.getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+						throw duplicateOrRethrow(e);
+					}
+					log.warn("problem writing to MongoDB, buffering updates in write-ahead log", e);
+					buffering = true;
+				} catch (MongoException e) {
+					log.warn("problem writing to MongoDB, buffering updates in write-ahead log", e);
+					buffering = true;
+				}
+			}
+			if (thermostat != null) {
+				var event = stateWrite(thermostat, BUFFERED);
+				append(STATE, thermostat, thermostatRepository.mongoCollection().getCodecRegistry().get(Thermostat.class));
+				event.commit();
+			}
+			if (sample != null) {
+				var event = temperatureInsert(sample.thermostatId, 1, BUFFERED);
+				append(SAMPLE, sample, temperatureRepository.mongoCollection().getCodecRegistry().get(Temperature.class));
+				event.commit();
+			}
+		} finally {
+			bufferLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * creates the collections and indexes, reporting whether the schema is ready - only called on the
+	 * replay thread, so a failed attempt is simply retried at the next replay
+	 */
+	private boolean bootstrap() {
+		if (bootstrapped.getCount() == 0) {
+			return true;
+		}
+		try {
+			thermostatRepository.bootstrap();
+			temperatureRepository.bootstrap();
+		} catch (MongoException e) {
+			if (!bootstrapFailed) {          // only log the first of what may be many retries
+				bootstrapFailed = true;
+				log.warn("problem creating MongoDB schema, buffering updates in write-ahead log until it succeeds", e);
+			}
+			return false;
+		}
+		bootstrapped.countDown();
+		log.info("MongoDB schema ready after {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - bootstrapStart));
+		return true;
+	}
+
+	/*
+	 * waits a bounded time for the schema, carrying on regardless if it is not ready by then
+	 */
+	private void awaitBootstrap() {
+		try {
+			if (!bootstrapped.await(bootstrapWait.toMillis(), TimeUnit.MILLISECONDS)) {
+				log.warn("MongoDB schema not ready after {}, carrying on without it", bootstrapWait);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/*
+	 * replays the write-ahead log to MongoDB in batches, switching back
+	 * to direct writes once the log has been drained
+	 */
+	private void replay() {
+		if (!buffering || !bootstrap()) {
+			return;
+		}
+		var thermostatCodec = thermostatRepository.mongoCollection().getCodecRegistry().get(Thermostat.class);
+		var temperatureCodec = temperatureRepository.mongoCollection().getCodecRegistry().get(Temperature.class);
+		try {
+			while (true) {
+				var batch = writeAheadLog.read(walBatchSize);
+				if (batch.records().isEmpty()) {
+					bufferLock.writeLock().lock();
+					try {
+						if (writeAheadLog.isEmpty()) {
+							buffering = false;
+							log.info("write-ahead log drained, resuming direct writes to MongoDB");
+							return;
+						}
+					} finally {
+						bufferLock.writeLock().unlock();
+					}
+					continue;
+				}
+				var states = new LinkedHashMap<ObjectId, Thermostat>(); // only the latest state of each thermostat matters
+				var samples = new ArrayList<Temperature>();
+				for (var record : batch.records()) {
+					var type = record.get(0);
+					var document = new RawBsonDocument(toArray(record.position(1)));
+					if (type == STATE) {
+						var thermostat = document.decode(thermostatCodec);
+						states.put(thermostat.id, thermostat);
+					} else if (type == SAMPLE) {
+						samples.add(document.decode(temperatureCodec));
+					}
+				}
+				if (!samples.isEmpty()) {
+					var event = temperatureInsert(null, samples.size(), REPLAY);
+					temperatureRepository.persist(samples);
+					event.commit();
+				}
+				for (var thermostat : states.values()) {
+					try {
+						var event = stateWrite(thermostat, REPLAY);
+						thermostatRepository.update(thermostat);
+						event.commit();
+					} catch (MongoWriteException e) {
+						if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+							throw e;
+						}
+						log.error("discarding buffered state of thermostat {}: {}", thermostat.id, e.getError().getMessage());
+					}
+				}
+				writeAheadLog.commit(batch);
+				log.info("replayed {} records from write-ahead log", batch.records().size());
+			}
+		} catch (MongoException e) {
+			log.warn("problem replaying write-ahead log to MongoDB, will retry", e);
+		} catch (Exception e) {
+			log.error("problem replaying write-ahead log", e);
+		} finally {
+			writeAheadLog.force();
+		}
+	}
+
+	/*
+	 * begins a flight recorder event for a state write, committed by the caller once the write succeeds
+	 */
+	private static StateWriteEvent stateWrite(Thermostat thermostat, String path) {
+		var event = new StateWriteEvent();
+		if (event.isEnabled()) {
+			event.updateId = UpdateTrace.current();
+			event.thermostatId = thermostat.id.toHexString();
+			event.version = thermostat.version == null ? 0 : thermostat.version;
+			event.path = path;
+			event.begin();
+		}
+		return event;
+	}
+
+	/*
+	 * begins a flight recorder event for a temperature insert, committed by the caller once the insert succeeds
+	 */
+	private static TemperatureInsertEvent temperatureInsert(String thermostatId, int samples, String path) {
+		var event = new TemperatureInsertEvent();
+		if (event.isEnabled()) {
+			event.updateId = UpdateTrace.current();
+			event.thermostatId = thermostatId;
+			event.samples = samples;
+			event.path = path;
+			event.begin();
+		}
+		return event;
+	}
+
+	private <T> void append(byte type, T entity, Codec<T> codec) {
+		var document = new RawBsonDocument(entity, codec).getByteBuffer().asNIO();
+		var payload = new byte[1 + document.remaining()];
+		payload[0] = type;
+		document.get(payload, 1, payload.length - 1);
+		try {
+			writeAheadLog.append(payload);
+		} catch (IOException e) {
+			log.error("problem appending to write-ahead log, update lost", e);
+		}
+	}
+
+	private static RuntimeException duplicateOrRethrow(MongoWriteException e) {
+		if (e.getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+			return new DuplicateThermostatException(e.getError().getMessage(), e);
+		}
+		return e;
+	}
+
+	private static byte[] toArray(ByteBuffer buffer) {
+		var bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,54 @@
+package edu.snhu.erik.mattheis.thermostat.db;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * the setpoint schedule of a thermostat, stored with the thermostat document
+ * 
+ * <pre>
+ * {
+ *     "zone": "America/New_York",
+ *     "weekly": [
+ *         { "days": [ "MONDAY", "TUESDAY", "WEDNESDAY", "THURSDAY", "FRIDAY" ], "time": "06:30", "desiredTemperature": 21.0 },
+ *         { "days": [ "MONDAY", "TUESDAY", "WEDNESDAY", "THURSDAY", "FRIDAY" ], "time": "22:00", "desiredTemperature": 17.0 },
+ *         { "days": [ "SATURDAY", "SUNDAY" ], "time": "08:00", "desiredTemperature": 20.0 }
+ *     ],
+ *     "overrides": [
+ *         { "from": "2021-12-24T05:00:00Z", "until": "2021-12-27T05:00:00Z", "desiredTemperature": 15.0 }
+ *     ]
+ * }
+ * </pre>
+ * 
+ * the weekly program repeats every week in the time zone of the schedule, while each override applies
+ * once - an override holds its desired temperature until the next program change, or when it has an
+ * {@code until} time, holds it until then and suppresses the program in between
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@JsonInclude(Include.NON_NULL)
+public class Schedule {
+
+	public String zone;                      // time zone ID - overrides thermostat.schedule.zone
+	public List<ScheduleEntry> weekly;
+	public List<ScheduleOverride> overrides;
+
+	/**
+	 * creates a deep copy of this schedule so that thermostat states can share it safely
+	 * 
+	 * @return a new instance with copies of the entries and overrides
+	 */
+	public Schedule copy() {
+		Schedule copy = new Schedule();
+
+		copy.zone = zone;
+		copy.weekly = weekly == null ? null : weekly.stream().map(ScheduleEntry::copy).collect(Collectors.toList());
+		copy.overrides = overrides == null ? null
+				: overrides.stream().map(ScheduleOverride::copy).collect(Collectors.toList());
+
+		return copy;
+	}
+}
@@ -0,0 +1,39 @@
+package edu.snhu.erik.mattheis.thermostat.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * a change of the desired temperature at a time of day on days of the week (see {@link Schedule})
+ * 
+ * <pre>
+ * { "days": [ "SATURDAY", "SUNDAY" ], "time": "08:00", "desiredTemperature": 20.0 }
+ * </pre>
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@JsonInclude(Include.NON_NULL)
+public class ScheduleEntry {
+
+	public List<String> days;        // names of java.time.DayOfWeek
+	public String time;              // local time of day, e.g. 22:00
+	public Float desiredTemperature;
+
+	/**
+	 * creates a copy of this entry
+	 * 
+	 * @return a new instance with the same field values
+	 */
+	public ScheduleEntry copy() {
+		ScheduleEntry copy = new ScheduleEntry();
+
+		copy.days = days == null ? null : new ArrayList<>(days);
+		copy.time = time;
+		copy.desiredTemperature = desiredTemperature;
+
+		return copy;
+	}
+}
@@ -0,0 +1,38 @@
+package edu.snhu.erik.mattheis.thermostat.db;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * a one-off change of the desired temperature (see {@link Schedule})
+ * 
+ * <pre>
+ * { "from": "2021-12-24T05:00:00Z", "until": "2021-12-27T05:00:00Z", "desiredTemperature": 15.0 }
+ * </pre>
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@JsonInclude(Include.NON_NULL)
+public class ScheduleOverride {
+
+	public Instant from;
+	public Instant until;            // resume the weekly program - null to hold until the next program change
+	public Float desiredTemperature;
+
+	/**
+	 * creates a copy of this override
+	 * 
+	 * @return a new instance with the same field values
+	 */
+	public ScheduleOverride copy() {
+		ScheduleOverride copy = new ScheduleOverride();
+
+		copy.from = from;
+		copy.until = until;
+		copy.desiredTemperature = desiredTemperature;
+
+		return copy;
+	}
+}
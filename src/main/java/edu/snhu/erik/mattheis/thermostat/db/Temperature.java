@@ -57,20 +57,32 @@ public class Temperature {
 	public String thermostatId;
 	public Instant timestamp;
 	public Float temperature;
+	public Long duration; // milliseconds of history represented by the temperature
+	public Long heaterOnDuration; // milliseconds of the duration the heater was on - null if unknown
+	public Float desiredTemperature; // time-weighted average desired temperature over the duration - null if unknown
 
 	/**
-	 * factory for creating documents from themostat state
+	 * factory for creating documents which summarize a period of readings
 	 * 
-	 * @param thermostat the themostat state to record
+	 * @param thermostatId the ID of the thermostat the readings are from
+	 * @param timestamp the end of the period
+	 * @param temperature the time-weighted average temperature over the period
+	 * @param duration the length of the period in milliseconds
+	 * @param heaterOnDuration the milliseconds of the period the heater was on, or {@code null} if unknown
+	 * @param desiredTemperature the time-weighted average desired temperature, or {@code null} if unknown
 	 * @return the document to store in MongoDB
 	 */
-	public static Temperature ambientOf(Thermostat thermostat) {
-		Temperature temperature = new Temperature();
+	public static Temperature of(String thermostatId, Instant timestamp, float temperature, long duration,
+			Long heaterOnDuration, Float desiredTemperature) {
+		Temperature document = new Temperature();
 		
-		temperature.thermostatId = thermostat.id.toHexString();
-		temperature.timestamp = thermostat.lastUpdate;
-		temperature.temperature = thermostat.ambientTemperature;
+		document.thermostatId = thermostatId;
+		document.timestamp = timestamp;
+		document.temperature = temperature;
+		document.duration = duration;
+		document.heaterOnDuration = heaterOnDuration;
+		document.desiredTemperature = desiredTemperature;
 		
-		return temperature;
+		return document;
 	}
 }
@@ -0,0 +1,115 @@
+package edu.snhu.erik.mattheis.thermostat.db;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * accumulates weighted temperature, heater and desired temperature totals into 15 minute bins for
+ * {@link TemperatureHistory}
+ *
+ * each bin is keyed by its end, matching the MongoDB aggregation which rounds timestamps
+ * up to the next 15 minute boundary, so results from different sources can be combined
+ *
+ * heater runtime and desired temperature are weighted only by the samples which carry them,
+ * so bins holding samples recorded before they were captured still report a temperature
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+public class TemperatureBins {
+
+	/**
+	 * the width of each bin
+	 */
+	public static final Duration WIDTH = Duration.ofMinutes(15);
+
+	// indexes of the totals of each bin
+	private static final int SUM = 0;                 // weighted sum of temperatures
+	private static final int WEIGHT = 1;              // total weight of temperatures
+	private static final int HEATER_ON = 2;           // milliseconds the heater was on
+	private static final int HEATER_WEIGHT = 3;       // milliseconds with a known heater state
+	private static final int DESIRED_SUM = 4;         // weighted sum of desired temperatures
+	private static final int DESIRED_WEIGHT = 5;      // total weight of desired temperatures
+
+	private final TreeMap<Instant, double[]> bins = new TreeMap<>(); // bin end -> totals
+
+	/**
+	 * gets the end of the bin containing the given instant
+	 *
+	 * @param timestamp the instant
+	 * @return the end of its bin, which is always after the instant
+	 */
+	public static Instant end(Instant timestamp) {
+		var width = WIDTH.toMillis();
+		return Instant.ofEpochMilli(Math.floorDiv(timestamp.toEpochMilli(), width) * width + width);
+	}
+
+	/**
+	 * adds a single sample to the bin containing its timestamp
+	 *
+	 * @param timestamp the time of the sample
+	 * @param temperature the temperature
+	 * @param weight the weight of the sample - milliseconds covered
+	 * @param heaterOn the milliseconds the heater was on, or {@code null} if unknown
+	 * @param desiredTemperature the desired temperature, or {@code null} if unknown
+	 */
+	public void addSample(Instant timestamp, double temperature, double weight, Long heaterOn,
+			Float desiredTemperature) {
+		add(end(timestamp), temperature * weight, weight,
+				heaterOn == null ? 0 : heaterOn, heaterOn == null ? 0 : weight,
+				desiredTemperature == null ? 0 : desiredTemperature * weight, desiredTemperature == null ? 0 : weight);
+	}
+
+	/**
+	 * adds pre-aggregated totals to the bin ending at the given instant
+	 *
+	 * @param end the end of the bin
+	 * @param sum the weighted sum of temperatures
+	 * @param weight the total weight
+	 * @param heaterOn the milliseconds the heater was on
+	 * @param heaterWeight the milliseconds covered by samples with a known heater state
+	 * @param desiredSum the weighted sum of desired temperatures
+	 * @param desiredWeight the total weight of samples with a known desired temperature
+	 */
+	public void add(Instant end, double sum, double weight, double heaterOn, double heaterWeight, double desiredSum,
+			double desiredWeight) {
+		var totals = bins.computeIfAbsent(end, key -> new double[6]);
+		totals[SUM] += sum;
+		totals[WEIGHT] += weight;
+		totals[HEATER_ON] += heaterOn;
+		totals[HEATER_WEIGHT] += heaterWeight;
+		totals[DESIRED_SUM] += desiredSum;
+		totals[DESIRED_WEIGHT] += desiredWeight;
+	}
+
+	/**
+	 * adds all the totals of the given bins, as if their samples had been added to these bins
+	 *
+	 * @param other the bins to add
+	 */
+	public void addAll(TemperatureBins other) {
+		other.bins.forEach((end, totals) -> add(end, totals[SUM], totals[WEIGHT], totals[HEATER_ON],
+				totals[HEATER_WEIGHT], totals[DESIRED_SUM], totals[DESIRED_WEIGHT]));
+	}
+
+	/**
+	 * produces the weighted averages of each bin in order
+	 *
+	 * @return the temperature history
+	 */
+	public TemperatureHistory toHistory() {
+		List<Instant> timestamps = new ArrayList<>(bins.size());
+		List<Double> temperatures = new ArrayList<>(bins.size());
+		List<Double> dutyCycles = new ArrayList<>(bins.size());
+		List<Double> desiredTemperatures = new ArrayList<>(bins.size());
+		bins.forEach((timestamp, totals) -> {
+			timestamps.add(timestamp);
+			temperatures.add(totals[SUM] / totals[WEIGHT]);
+			dutyCycles.add(totals[HEATER_WEIGHT] > 0 ? totals[HEATER_ON] / totals[HEATER_WEIGHT] : null);
+			desiredTemperatures.add(totals[DESIRED_WEIGHT] > 0 ? totals[DESIRED_SUM] / totals[DESIRED_WEIGHT] : null);
+		});
+		return TemperatureHistory.of(timestamps, temperatures, dutyCycles, desiredTemperatures);
+	}
+}
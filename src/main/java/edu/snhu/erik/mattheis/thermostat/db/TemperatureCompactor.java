@@ -0,0 +1,159 @@
+package edu.snhu.erik.mattheis.thermostat.db;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.snhu.erik.mattheis.thermostat.store.StorageProducer;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+
+/**
+ * background job which compacts the temperature history into coarser tiers
+ *
+ * each tier is compacted from the next finer one in batches, recording a watermark after
+ * every batch so that an interrupted run resumes where it left off - batches are separated
+ * by a pause and run on a low priority thread to stay out of the way of ingestion
+ *
+ * the expiry of each tier is held back until the next coarser tier has caught up,
+ * so data is never removed before it has been compacted
+ *
+ * compaction only runs when thermostats are stored in MongoDB
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@ApplicationScoped
+public class TemperatureCompactor {
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final Timer timer = new Timer("temperature-compaction", true);
+
+	private volatile TimerTask compactor;
+	private volatile boolean running;
+
+	@Inject
+	TemperatureRepository repository;
+
+	@ConfigProperty(name = "thermostat.storage", defaultValue = StorageProducer.MONGO)
+	String storage;
+
+	@ConfigProperty(name = "thermostat.compaction.interval", defaultValue = "5m")
+	Duration interval;
+
+	@ConfigProperty(name = "thermostat.compaction.pause", defaultValue = "1s")
+	Duration pause;
+
+	@ConfigProperty(name = "thermostat.compaction.lag", defaultValue = "5m")
+	Duration lag;
+
+	/**
+	 * starts a task to compact the temperature history at the configured interval
+	 *
+	 * @param startup the Quarkus startup event
+	 */
+	void onStartup(@Observes StartupEvent startup) {
+		if (!StorageProducer.MONGO.equals(storage)) {
+			return;
+		}
+		running = true;
+		compactor = new TimerTask() {
+			@Override
+			public void run() {
+				Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+				try {
+					compact();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (Exception e) {
+					log.error("problem compacting temperature history", e);
+				}
+			}
+		};
+		timer.schedule(compactor, interval.toMillis(), interval.toMillis());
+	}
+
+	/**
+	 * cancels the compaction task, stopping a run in progress after its current batch
+	 *
+	 * @param shutdown the Quarkus shutdown event
+	 */
+	void onShutdown(@Observes ShutdownEvent shutdown) {
+		running = false;
+		if (compactor != null) {
+			compactor.cancel();
+		}
+		timer.cancel();
+	}
+
+	/**
+	 * compacts each summary tier up to date, then adjusts the expiry of each tier
+	 *
+	 * @throws InterruptedException if interrupted while pausing between batches
+	 */
+	void compact() throws InterruptedException {
+		if (!repository.isBootstrapped()) {                          // the watermarks are not loaded yet
+			log.info("skipping temperature compaction until the MongoDB schema is ready");
+			return;
+		}
+		var now = Instant.now();
+		for (var tier : List.of(TemperatureTier.MINUTE, TemperatureTier.HOUR)) {
+			var source = tier.source();
+			var end = source == TemperatureTier.RAW
+					? now.minus(lag)                                 // allow for late samples
+					: repository.getWatermark(source).orElse(null);  // only compact complete bins
+			var watermark = repository.getWatermark(tier)
+					.or(() -> repository.getEarliest(source))
+					.map(tier::truncate)
+					.orElse(null);
+			if (end == null || watermark == null) {
+				continue;
+			}
+			end = tier.truncate(end);
+			var batches = 0;
+			while (running && watermark.isBefore(end)) {
+				var batchEnd = watermark.plus(tier.batch());
+				if (batchEnd.isAfter(end)) {
+					batchEnd = end;
+				}
+				repository.compact(tier, watermark, batchEnd);
+				repository.setWatermark(tier, batchEnd);
+				watermark = batchEnd;
+				++batches;
+				Thread.sleep(pause.toMillis());
+			}
+			if (batches > 0) {
+				log.info("compacted {} batches of {} temperature history up to {}", batches, tier, watermark);
+			}
+		}
+		for (var tier : List.of(TemperatureTier.RAW, TemperatureTier.MINUTE)) {
+			repository.setExpiry(tier, expiry(tier, now));
+		}
+		repository.setExpiry(TemperatureTier.HOUR, repository.retention(TemperatureTier.HOUR));
+	}
+
+	/*
+	 * gets the expiry for a tier - the configured retention, extended to cover
+	 * anything not yet compacted into the next coarser tier, rounded up to the hour
+	 */
+	private Duration expiry(TemperatureTier tier, Instant now) {
+		var coarser = TemperatureTier.values()[tier.ordinal() + 1];
+		var retention = repository.retention(tier);
+		var compacted = repository.getWatermark(coarser).or(() -> repository.getEarliest(tier));
+		if (compacted.isEmpty()) {
+			return retention;
+		}
+		var behind = Duration.between(compacted.get(), now).plus(coarser.batch());
+		var expiry = behind.compareTo(retention) > 0 ? behind : retention;
+		return Duration.ofHours(expiry.plusMinutes(59).toHours());
+	}
+}
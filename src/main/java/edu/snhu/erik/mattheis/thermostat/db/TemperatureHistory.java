@@ -5,26 +5,33 @@ import static com.fasterxml.jackson.annotation.JsonFormat.Shape.NUMBER_INT;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import org.bson.Document;
-
 import com.fasterxml.jackson.annotation.JsonFormat;
 
 /**
  * presents the result of a time-series query for temperature in
  * a format directly suitable for graphing on the front-end
  * 
+ * alongside each temperature is the fraction of the interval the heater was on (duty cycle)
+ * and the average desired temperature, either of which is {@code null} if it was not recorded
+ * 
  * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
  */
 public class TemperatureHistory {
 
 	private final List<Instant> timestamps;
 	private final List<Double> temperatures;
+	private final List<Double> dutyCycles;
+	private final List<Double> desiredTemperatures;
 
-	private TemperatureHistory(List<Instant> timestamps, List<Double> temperatures) {
+	private TemperatureHistory(List<Instant> timestamps, List<Double> temperatures, List<Double> dutyCycles,
+			List<Double> desiredTemperatures) {
 		this.timestamps = List.copyOf(timestamps);
 		this.temperatures = List.copyOf(temperatures);
+		this.dutyCycles = Collections.unmodifiableList(new ArrayList<>(dutyCycles));                   // may hold nulls
+		this.desiredTemperatures = Collections.unmodifiableList(new ArrayList<>(desiredTemperatures)); // may hold nulls
 	}
 
 	/**
@@ -46,20 +53,34 @@ public class TemperatureHistory {
 	}
 
 	/**
-	 * factory for creating instances from a MongoDB query
+	 * gets the fraction of each interval the heater was on
+	 * 
+	 * @return the list of duty cycles between 0 and 1, with {@code null} where unknown
+	 */
+	public List<Double> getDutyCycles() {
+		return dutyCycles;
+	}
+
+	/**
+	 * gets the average desired temperature of each interval
+	 * 
+	 * @return the list of desired temperatures, with {@code null} where unknown
+	 */
+	public List<Double> getDesiredTemperatures() {
+		return desiredTemperatures;
+	}
+
+	/**
+	 * factory for creating instances from parallel lists of values
 	 * 
-	 * @param documents the documents returned by the query 
-	 * @param timestampKey the name of the field containing the timestamp in each document
-	 * @param temperatureKey the name of the field containing the temperature in each document
-	 * @return a new instance with the timestamps and temperatures extract from the query results
+	 * @param timestamps the timestamps in ascending order
+	 * @param temperatures the temperature at each timestamp
+	 * @param dutyCycles the duty cycle at each timestamp, or {@code null} where unknown
+	 * @param desiredTemperatures the desired temperature at each timestamp, or {@code null} where unknown
+	 * @return a new instance with the given values
 	 */
-	public static TemperatureHistory of(Iterable<Document> documents, String timestampKey, String temperatureKey) {
-		List<Instant> timestamps = new ArrayList<>();
-		List<Double> temperatures = new ArrayList<>();
-		for (Document document : documents) {
-			timestamps.add(document.getDate(timestampKey).toInstant());
-			temperatures.add(document.getDouble(temperatureKey));
-		}
-		return new TemperatureHistory(timestamps, temperatures);
+	public static TemperatureHistory of(List<Instant> timestamps, List<Double> temperatures, List<Double> dutyCycles,
+			List<Double> desiredTemperatures) {
+		return new TemperatureHistory(timestamps, temperatures, dutyCycles, desiredTemperatures);
 	}
 }
@@ -1,115 +1,645 @@
 package edu.snhu.erik.mattheis.thermostat.db;
 
-import static com.mongodb.client.model.Accumulators.avg;
+import static com.mongodb.client.model.Accumulators.max;
+import static com.mongodb.client.model.Accumulators.min;
+import static com.mongodb.client.model.Accumulators.sum;
 import static com.mongodb.client.model.Aggregates.group;
 import static com.mongodb.client.model.Aggregates.match;
+import static com.mongodb.client.model.Aggregates.merge;
 import static com.mongodb.client.model.Aggregates.project;
 import static com.mongodb.client.model.Aggregates.sort;
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
 import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.in;
 import static com.mongodb.client.model.Filters.lt;
+import static com.mongodb.client.model.Filters.ne;
 import static com.mongodb.client.model.Projections.computed;
-import static com.mongodb.client.model.Projections.excludeId;
 import static com.mongodb.client.model.Projections.fields;
 import static com.mongodb.client.model.Projections.include;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
 
 import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BsonField;
 import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.MergeOptions;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
 
+import edu.snhu.erik.mattheis.thermostat.archive.TemperatureArchive;
 import io.quarkus.mongodb.panache.PanacheMongoRepository;
 
 /**
  * manages access to the temperature time-series collection in MongoDB
- * 
+ * and the summary collections it is compacted into
+ *
+ * history queries over long periods are split into chunks of {@code thermostat.history.chunk-size}, aligned to
+ * the 15 minute bins so that no bin spans two chunks, which are aggregated concurrently by at most
+ * {@code thermostat.history.parallelism} threads shared by all queries and merged in time order as they
+ * complete - a whole query is limited to {@code thermostat.history.max-time}, passed on to MongoDB as the
+ * {@code maxTimeMS} of each aggregation
+ *
+ * periods older than the hour tier keeps are read from the {@link TemperatureArchive}
+ *
  * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
  */
 @ApplicationScoped
 public class TemperatureRepository implements PanacheMongoRepository<Temperature> {
 
 	/**
-	 * ensure the collection is properly created and has the necessary indexes before use
+	 * the name of the collection storing the compaction watermark of each summary tier
+	 */
+	public static final String COMPACTION_COLLECTION = "temperature_compaction";
+
+	private static final int NAMESPACE_EXISTS = 48; // error code when another instance created the collection first
+
+	/*
+	 * the weight of a raw sample is the duration it covers in milliseconds - samples stored
+	 * before sampling was introduced have no duration and are weighted as one millisecond
+	 *
+	 * rawWeight: { $ifNull: [ "$duration", 1 ] }
+	 */
+	private static final Bson RAW_WEIGHT = new BasicDBObject("$ifNull", List.of("$duration", 1));
+	private static final Bson RAW_SUM = new BasicDBObject("$multiply", List.of("$temperature", RAW_WEIGHT));
+
+	/*
+	 * heater runtime and desired temperature are only weighted by samples which carry them,
+	 * as samples stored before they were captured have neither
+	 *
+	 * rawHeaterWeight:  { $cond: [ { $gt: [ "$heaterOnDuration", null ] }, rawWeight, 0 ] }
+	 * rawDesiredSum:    { $multiply: [ "$desiredTemperature", rawWeight ] }
+	 * rawDesiredWeight: { $cond: [ { $gt: [ "$desiredTemperature", null ] }, rawWeight, 0 ] }
+	 */
+	private static final Bson RAW_HEATER_WEIGHT = new BasicDBObject("$cond",
+			List.of(new BasicDBObject("$gt", Arrays.asList("$heaterOnDuration", null)), RAW_WEIGHT, 0));
+	private static final Bson RAW_DESIRED_SUM = new BasicDBObject("$multiply",
+			List.of("$desiredTemperature", RAW_WEIGHT));
+	private static final Bson RAW_DESIRED_WEIGHT = new BasicDBObject("$cond",
+			List.of(new BasicDBObject("$gt", Arrays.asList("$desiredTemperature", null)), RAW_WEIGHT, 0));
+
+	private final Map<TemperatureTier, Instant> watermarks = new ConcurrentHashMap<>();
+	private final Map<TemperatureTier, Long> expiries = new ConcurrentHashMap<>();
+
+	private volatile boolean bootstrapped;
+	private volatile ExecutorService historyExecutor;
+
+	@Inject
+	TemperatureArchive archive;
+
+	@ConfigProperty(name = "thermostat.retention.raw", defaultValue = "P7D")
+	Duration rawRetention;
+
+	@ConfigProperty(name = "thermostat.retention.minute", defaultValue = "P90D")
+	Duration minuteRetention;
+
+	@ConfigProperty(name = "thermostat.retention.hour", defaultValue = "P1825D")
+	Duration hourRetention;
+
+	@ConfigProperty(name = "thermostat.history.chunk-size", defaultValue = "P7D")
+	Duration historyChunkSize;
+
+	@ConfigProperty(name = "thermostat.history.parallelism", defaultValue = "4")
+	int historyParallelism;
+
+	@ConfigProperty(name = "thermostat.history.max-time", defaultValue = "30s")
+	Duration historyMaxTime;
+
+	/**
+	 * starts the threads which aggregate history chunks
 	 */
 	@PostConstruct
 	void init() {
+		var threads = new AtomicInteger();
+		historyExecutor = Executors.newFixedThreadPool(historyParallelism, runnable -> {
+			var thread = new Thread(runnable, "temperature-history-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * abandons any history chunks still waiting to be aggregated
+	 */
+	@PreDestroy
+	void destroy() {
+		historyExecutor.shutdownNow();
+	}
+
+	/**
+	 * ensure the collections are properly created and have the necessary indexes, then load the compaction
+	 * watermarks - safe to repeat, including concurrently with another instance of the server
+	 */
+	void bootstrap() {
 		MongoDatabase db = mongoDatabase();
 		if (!contains(db.listCollectionNames(), Temperature.COLLECTION)) {             // if the collection doesn't exist...
-			db.createCollection(Temperature.COLLECTION, new CreateCollectionOptions()  //     create it
-					.timeSeriesOptions(Temperature.TIME_SERIES_OPTIONS)                //     using the appropriate options
-					.expireAfter(365, TimeUnit.DAYS));                                 //     with documents expiring after one year
+			try {
+				db.createCollection(Temperature.COLLECTION, new CreateCollectionOptions() //  create it
+						.timeSeriesOptions(Temperature.TIME_SERIES_OPTIONS)            //     using the appropriate options
+						.expireAfter(rawRetention.toSeconds(), TimeUnit.SECONDS));      //     with documents expiring after the raw retention
+			} catch (MongoCommandException e) {
+				if (e.getErrorCode() != NAMESPACE_EXISTS) {                            //     unless someone else got there first
+					throw e;
+				}
+			}
 		}
 		mongoCollection().createIndexes(Temperature.INDEXES);                          // ensure the indexes are created
+		for (var tier : List.of(TemperatureTier.MINUTE, TemperatureTier.HOUR)) {       // for each summary tier...
+			var collection = db.getCollection(tier.collection());
+			collection.createIndexes(TemperatureTier.INDEXES);                         //     ensure the indexes are created
+			collection.createIndex(new BasicDBObject("timestamp", 1), new IndexOptions() //   along with a TTL index
+					.expireAfter(retention(tier).toSeconds(), TimeUnit.SECONDS));
+		}
+		compactionCollection().find().forEach(checkpoint -> watermarks.put(          // load the compaction watermarks
+				TemperatureTier.valueOf(checkpoint.getString("_id")), checkpoint.getDate("watermark").toInstant()));
+		bootstrapped = true;
+	}
+
+	/**
+	 * gets whether the collections have been created and the compaction watermarks loaded
+	 *
+	 * @return {@code true} once {@link #bootstrap()} has succeeded
+	 */
+	public boolean isBootstrapped() {
+		return bootstrapped;
+	}
+
+	/**
+	 * gets the configured retention period of the given tier
+	 *
+	 * @param tier the tier
+	 * @return the retention period
+	 */
+	public Duration retention(TemperatureTier tier) {
+		switch (tier) {
+			case RAW:
+				return rawRetention;
+			case MINUTE:
+				return minuteRetention;
+			default:
+				return hourRetention;
+		}
+	}
+
+	/**
+	 * gets the instant up to which the given summary tier has been compacted
+	 *
+	 * @param tier the summary tier
+	 * @return the watermark or {@link Optional#empty()} if compaction has not yet started
+	 */
+	public Optional<Instant> getWatermark(TemperatureTier tier) {
+		return Optional.ofNullable(watermarks.get(tier));
+	}
+
+	/**
+	 * records the instant up to which the given summary tier has been compacted
+	 *
+	 * @param tier the summary tier
+	 * @param watermark the end of the most recently compacted batch
+	 */
+	public void setWatermark(TemperatureTier tier, Instant watermark) {
+		compactionCollection().replaceOne(eq("_id", tier.name()),
+				new Document("_id", tier.name()).append("watermark", Date.from(watermark)),
+				new ReplaceOptions().upsert(true));
+		watermarks.put(tier, watermark);
+	}
+
+	/**
+	 * gets the timestamp of the earliest document in the given tier
+	 *
+	 * @param tier the tier
+	 * @return the earliest timestamp or {@link Optional#empty()} if the tier is empty
+	 */
+	public Optional<Instant> getEarliest(TemperatureTier tier) {
+		return Optional.ofNullable(collection(tier).find()
+				.sort(Sorts.ascending("timestamp"))
+				.projection(include("timestamp"))
+				.first())
+				.map(document -> document.getDate("timestamp").toInstant());
+	}
+
+	/**
+	 * lists the raw samples with a temperature within a period, for archiving
+	 *
+	 * @param from the start of the period
+	 * @param to the end of the period
+	 * @return the samples grouped by thermostat and in timestamp order within each, read lazily
+	 */
+	public Iterable<Temperature> listSamples(Instant from, Instant to) {
+		return mongoCollection().find(and(gte("timestamp", from), lt("timestamp", to), ne("temperature", null)))
+				.sort(Sorts.ascending("thermostatId", "timestamp"))
+				.allowDiskUse(true);
+	}
+
+	/**
+	 * summarizes the source tier of the given summary tier over the given period,
+	 * replacing any existing summaries so that a batch can be safely repeated
+	 *
+	 * @param tier the summary tier to write
+	 * @param from the start of the period to compact, aligned to the tier
+	 * @param to the end of the period to compact, aligned to the tier
+	 */
+	public void compact(TemperatureTier tier, Instant from, Instant to) {
+		var source = tier.source();
+		var raw = source == TemperatureTier.RAW;
+		/*
+		 * match all documents in the source tier within the period
+		 *
+		 * { $match: { timestamp: { $gte: from, $lt: to } } }
+		 */
+		var match = match(raw
+				? and(gte("timestamp", from), lt("timestamp", to), ne("temperature", null))
+				: and(gte("timestamp", from), lt("timestamp", to)));
+		/*
+		 * summarize by thermostat and the start of each bin in the tier,
+		 * weighting raw samples by duration (see rawWeight)
+		 *
+		 * { $group: { _id: { thermostatId: "$thermostatId",
+		 *                    timestamp: { $dateTrunc: { date: "$timestamp", unit: "minute" } } },
+		 *             sum: { $sum: { $multiply: [ "$temperature", rawWeight ] } },
+		 *             weight: { $sum: rawWeight },
+		 *             heaterOn: { $sum: "$heaterOnDuration" },
+		 *             heaterWeight: { $sum: rawHeaterWeight },
+		 *             desiredSum: { $sum: rawDesiredSum },
+		 *             desiredWeight: { $sum: rawDesiredWeight },
+		 *             min: { $min: "$temperature" },
+		 *             max: { $max: "$temperature" } } }
+		 */
+		var accumulators = new ArrayList<>(totals(raw));
+		accumulators.add(min("min", raw ? "$temperature" : "$min"));
+		accumulators.add(max("max", raw ? "$temperature" : "$max"));
+		var group = group(new BasicDBObject("thermostatId", "$thermostatId")
+				.append("timestamp", new BasicDBObject("$dateTrunc",
+						new BasicDBObject("date", "$timestamp").append("unit", tier.dateUnit()))),
+				accumulators);
+		/*
+		 * lift the thermostat and bin start out of the compound _id
+		 *
+		 * { $project: { thermostatId: "$_id.thermostatId", timestamp: "$_id.timestamp", sum: 1, weight: 1,
+		 *               heaterOn: 1, heaterWeight: 1, desiredSum: 1, desiredWeight: 1, min: 1, max: 1 } }
+		 */
+		var project = project(fields(computed("thermostatId", "$_id.thermostatId"),
+				computed("timestamp", "$_id.timestamp"), include("sum", "weight", "heaterOn", "heaterWeight",
+						"desiredSum", "desiredWeight", "min", "max")));
+		/*
+		 * replace any summaries from a previous attempt at the same batch
+		 *
+		 * { $merge: { into: "temperature_minute", on: "_id", whenMatched: "replace", whenNotMatched: "insert" } }
+		 */
+		var merge = merge(tier.collection(), new MergeOptions()
+				.whenMatched(MergeOptions.WhenMatched.REPLACE)
+				.whenNotMatched(MergeOptions.WhenNotMatched.INSERT));
+		collection(source).aggregate(List.of(match, group, project, merge)).toCollection();
+	}
+
+	/**
+	 * sets the period after which documents in the given tier expire
+	 *
+	 * does nothing if the tier already uses the given period
+	 *
+	 * @param tier the tier
+	 * @param expiry the period after which documents expire
+	 */
+	public void setExpiry(TemperatureTier tier, Duration expiry) {
+		var seconds = expiry.toSeconds();
+		if (Objects.equals(expiries.get(tier), seconds)) {
+			return;
+		}
+		var command = new Document("collMod", tier.collection());
+		if (tier == TemperatureTier.RAW) {
+			command.append("expireAfterSeconds", seconds);
+		} else {
+			command.append("index", new Document("keyPattern", new Document("timestamp", 1))
+					.append("expireAfterSeconds", seconds));
+		}
+		mongoDatabase().runCommand(command);
+		expiries.put(tier, seconds);
 	}
 
 	/**
-	 * queries aggregated temperature history from the time-series collection in MongoDB
-	 * using average temperatures over 15 minute intervals
-	 * 
+	 * queries aggregated temperature history using average temperatures over 15 minute intervals
+	 *
+	 * the period is split across the retention tiers so that each part is read from the
+	 * finest tier which still holds it - raw samples, then minute and hour summaries
+	 *
 	 * @param thermostatId the ID of the thermostat to report on
 	 * @param from the start fo the time period to report on
 	 * @param to the end of the time period to report on
-	 * @return the aggregated results in a format suitable for graphing on the front-end 
+	 * @return the aggregated results in a format suitable for graphing on the front-end
 	 */
 	public TemperatureHistory getTemperatureHistory(String thermostatId, Instant from, Instant to) {
+		return getTemperatureHistories(List.of(thermostatId), from, to).get(thermostatId);
+	}
+
+	/**
+	 * queries aggregated temperature history for several thermostats at once, running
+	 * a single aggregation per retention tier and chunk rather than one per thermostat
+	 *
+	 * @param thermostatIds the IDs of the thermostats to report on
+	 * @param from the start fo the time period to report on
+	 * @param to the end of the time period to report on
+	 * @return the aggregated results of each thermostat, in the order requested
+	 * @throws CompletionException holding a {@link TimeoutException} if the query takes longer than the maximum time
+	 */
+	public Map<String, TemperatureHistory> getTemperatureHistories(Collection<String> thermostatIds, Instant from,
+			Instant to) {
+		try {
+			return getTemperatureHistoriesAsync(thermostatIds, from, to).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * queries aggregated temperature history for several thermostats at once, aggregating the chunks of a long
+	 * period concurrently - a period covered by a single chunk is aggregated on the calling thread
+	 *
+	 * cancelling the returned future abandons chunks which have not started and stops reading those which have
+	 *
+	 * @param thermostatIds the IDs of the thermostats to report on
+	 * @param from the start fo the time period to report on
+	 * @param to the end of the time period to report on
+	 * @return the aggregated results of each thermostat in the order requested, completed exceptionally with
+	 *         a {@link TimeoutException} if the query takes longer than the maximum time
+	 */
+	public CompletableFuture<Map<String, TemperatureHistory>> getTemperatureHistoriesAsync(
+			Collection<String> thermostatIds, Instant from, Instant to) {
+		var now = Instant.now();
+		var rawStart = coverageStart(TemperatureTier.RAW, now);
+		var minuteStart = coverageStart(TemperatureTier.MINUTE, now);
+		var hourStart = coverageStart(TemperatureTier.HOUR, now);
+		var chunks = new ArrayList<HistoryChunk>();                                    // in time order
+		split(null, from, earliest(to, hourStart), chunks);                            // from the archive
+		split(TemperatureTier.HOUR, latest(from, hourStart), earliest(to, minuteStart), chunks);
+		split(TemperatureTier.MINUTE, latest(from, minuteStart), earliest(to, rawStart), chunks);
+		split(TemperatureTier.RAW, latest(from, rawStart), to, chunks);
+		var deadline = System.nanoTime() + historyMaxTime.toNanos();
+		var cancelled = new AtomicBoolean();
+		if (chunks.size() <= 1) {
+			try {
+				var bins = bins(thermostatIds);
+				for (var chunk : chunks) {
+					aggregateHistory(chunk, bins, cancelled, deadline);
+				}
+				return CompletableFuture.completedFuture(histories(bins));
+			} catch (CompletionException e) {
+				return CompletableFuture.failedFuture(e.getCause());
+			} catch (RuntimeException e) {
+				return CompletableFuture.failedFuture(e);
+			}
+		}
+		var parts = new ArrayList<CompletableFuture<Map<String, TemperatureBins>>>(chunks.size());
+		var merged = CompletableFuture.completedFuture(bins(thermostatIds));
+		for (var chunk : chunks) {
+			var part = CompletableFuture.supplyAsync(() -> {
+				var bins = bins(thermostatIds);
+				aggregateHistory(chunk, bins, cancelled, deadline);
+				return bins;
+			}, historyExecutor);
+			parts.add(part);
+			merged = merged.thenCombine(part, TemperatureRepository::combine);         // merged in order as each completes
+		}
+		var result = merged.thenApply(TemperatureRepository::histories);
+		result.whenComplete((histories, e) -> {
+			if (e != null) {                                                           // failed, timed out or cancelled...
+				cancelled.set(true);                                                   //     stop reading running chunks
+				parts.forEach(part -> part.cancel(false));                             //     and skip those not started
+			}
+		});
+		return result;
+	}
+
+	/*
+	 * gets the instant from which the given tier is used for history queries
+	 *
+	 * a tier is used until its retention period runs out, or earlier if the next coarser tier
+	 * has been compacted past that point - the TTL of a tier is held back until compaction
+	 * catches up (see TemperatureCompactor) so every instant is covered by exactly one tier
+	 *
+	 * the hour tier is never held back, so it is used from the first whole hour it still holds
+	 * and the archive before that
+	 */
+	private Instant coverageStart(TemperatureTier tier, Instant now) {
+		if (tier == TemperatureTier.HOUR) {
+			return tier.truncate(now.minus(hourRetention)).plus(1, ChronoUnit.HOURS);
+		}
+		var coarser = TemperatureTier.values()[tier.ordinal() + 1];
+		var start = earliest(now.minus(retention(tier)), getWatermark(coarser).orElse(Instant.EPOCH));
+		if (tier == TemperatureTier.MINUTE) {
+			start = earliest(start, coverageStart(TemperatureTier.RAW, now));
+		}
+		return coarser.truncate(start);
+	}
+
+	/*
+	 * splits the period read from one tier, or the archive if the tier is null,
+	 * into chunks ending on 15 minute bin boundaries
+	 */
+	private void split(TemperatureTier tier, Instant from, Instant to, List<HistoryChunk> chunks) {
+		for (var start = from; start.isBefore(to);) {
+			var end = earliest(to, TemperatureBins.end(start.plus(historyChunkSize).minusMillis(1))); // the boundary at or after
+			chunks.add(new HistoryChunk(tier, start, end));
+			start = end;
+		}
+	}
+
+	/*
+	 * aggregates one chunk into the weighted totals of each 15 minute bin of each thermostat keyed in the
+	 * given bins, giving up once cancelled or past the deadline - failures are thrown as a CompletionException
+	 */
+	private void aggregateHistory(HistoryChunk chunk, Map<String, TemperatureBins> bins, AtomicBoolean cancelled,
+			long deadline) {
+		var tier = chunk.tier;
+		var from = chunk.from;
+		var to = chunk.to;
+		if (bins.isEmpty()) {
+			return;
+		}
+		if (cancelled.get()) {
+			throw new CancellationException();
+		}
+		var remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+		if (remaining <= 0) {
+			throw timedOut();
+		}
+		if (tier == null) {
+			archive.addHistory(from, to, bins);
+			return;
+		}
 		var unit = "minute";
 		var binSize = 15;
+		var raw = tier == TemperatureTier.RAW;
 		/*
-		 * match all documents for the given thermostatId within the time period
-		 * 
-		 * { $match: { $and: [ { $eq:  [ "thermostatId", thermostatId ] },
-		 *                     { $gte: [ "timestamp",    from         ] },
-		 *                     { $lt:  [ "timestamp",    to           ] } ] } }
-		 */
-		var match = match(and(eq("thermostatId", thermostatId), gte("timestamp", from), lt("timestamp", to)));
-		/*
-		 * exclude the _id field, include termparature and round timestamp up to the next 15 minute boundary
-		 * 
-		 * { $project: { _id: 0,
-		 *               temperature: 1,
-		 *               timestamp: {
-		 *                   $dateAdd: {
-		 *                       startDate: {
-		 *                           $dateTrunc: {
-		 *                               date: "$timestamp",
-		 *                               unit: "minute",
-		 *                               binSize: 15
-		 *                           },
-		 *                       },
-		 *                       unit: "minute",
-		 *                       amount: 15
-		 *                   }
-		 *               } } }
+		 * match all documents for the given thermostatIds within the time period
+		 *
+		 * { $match: { $and: [ { $in:  [ "thermostatId", thermostatIds ] },
+		 *                     { $gte: [ "timestamp",    from          ] },
+		 *                     { $lt:  [ "timestamp",    to            ] } ] } }
 		 */
-		var project = project(fields(excludeId(), include("temperature"), computed("timestamp", computed("$dateAdd",
-				new BasicDBObject("startDate", computed("$dateTrunc",
-						new BasicDBObject("date", "$timestamp").append("unit", unit).append("binSize", binSize)))
-								.append("unit", unit).append("amount", binSize)))));
+		var ids = in("thermostatId", bins.keySet());
+		var match = match(raw
+				? and(ids, gte("timestamp", from), lt("timestamp", to), ne("temperature", null))
+				: and(ids, gte("timestamp", from), lt("timestamp", to)));
 		/*
-		 * average all temperatures from the same 15 minute interval
-		 * 
-		 * { $group: { _id: "$timestamp",
-		 *             temperature: { $avg: "$temperature" } } }
+		 * round timestamp up to the next 15 minute boundary and average all temperatures
+		 * of each thermostat from the same 15 minute interval, keeping the weighted sums
+		 * and total weights so that bins which straddle two tiers can be combined - heater
+		 * runtime is summed from the runtime accumulated by each sample (see TemperatureSampler)
+		 *
+		 * a summary is stamped with the start of the period it covers, so it is binned by the
+		 * end of that period instead (the last millisecond of it) - otherwise an hour would be
+		 * plotted in the bin after its first quarter rather than the bin its last quarter ends
+		 *
+		 * { $group: { _id: {
+		 *                 thermostatId: "$thermostatId",
+		 *                 timestamp: {
+		 *                     $dateAdd: {
+		 *                         startDate: {
+		 *                             $dateTrunc: {
+		 *                                 date: "$timestamp",   // raw samples, or for summaries
+		 *                                                       // { $add: [ "$timestamp", unitMillis - 1 ] }
+		 *                                 unit: "minute",
+		 *                                 binSize: 15
+		 *                             },
+		 *                         },
+		 *                         unit: "minute",
+		 *                         amount: 15
+		 *                     }
+		 *                 }
+		 *             },
+		 *             sum: { $sum: { $multiply: [ "$temperature", rawWeight ] } },
+		 *             weight: { $sum: rawWeight },
+		 *             heaterOn: { $sum: "$heaterOnDuration" },
+		 *             heaterWeight: { $sum: rawHeaterWeight },
+		 *             desiredSum: { $sum: rawDesiredSum },
+		 *             desiredWeight: { $sum: rawDesiredWeight } } }
 		 */
-		var group = group("$timestamp", avg("temperature", "$temperature"));
+		var date = raw ? "$timestamp"
+				: new BasicDBObject("$add", List.of("$timestamp", tier.unit().getDuration().toMillis() - 1));
+		var group = group(new BasicDBObject("thermostatId", "$thermostatId")
+				.append("timestamp", computed("$dateAdd",
+						new BasicDBObject("startDate", computed("$dateTrunc",
+								new BasicDBObject("date", date).append("unit", unit).append("binSize", binSize)))
+										.append("unit", unit).append("amount", binSize))),
+				totals(raw));
 		/*
-		 * sort by _id (timestamp)
-		 * 
+		 * sort by _id (thermostatId, timestamp)
+		 *
 		 * { $sort: { _id: 1 } }
 		 */
 		var sort = sort(include("_id"));
-		var documents = mongoCollection().aggregate(List.of(match, project, group, sort), Document.class);
-		return TemperatureHistory.of(documents, "_id", "temperature");
+		try (var cursor = collection(tier).aggregate(List.of(match, group, sort))
+				.maxTime(remaining, TimeUnit.MILLISECONDS)
+				.iterator()) {                                                   // closed early if cancelled
+			while (cursor.hasNext()) {
+				if (cancelled.get()) {
+					throw new CancellationException();
+				}
+				var document = cursor.next();
+				var id = document.get("_id", Document.class);
+				bins.get(id.getString("thermostatId")).add(id.getDate("timestamp").toInstant(),
+						number(document, "sum"), number(document, "weight"),
+						number(document, "heaterOn"), number(document, "heaterWeight"),
+						number(document, "desiredSum"), number(document, "desiredWeight"));
+			}
+		} catch (MongoExecutionTimeoutException e) {
+			throw timedOut();
+		}
+	}
+
+	private CompletionException timedOut() {
+		return new CompletionException(new TimeoutException("temperature history query exceeded " + historyMaxTime));
+	}
+
+	private static Map<String, TemperatureBins> bins(Collection<String> thermostatIds) {
+		var bins = new LinkedHashMap<String, TemperatureBins>();
+		thermostatIds.forEach(thermostatId -> bins.put(thermostatId, new TemperatureBins()));
+		return bins;
+	}
+
+	private static Map<String, TemperatureBins> combine(Map<String, TemperatureBins> merged,
+			Map<String, TemperatureBins> part) {
+		merged.forEach((thermostatId, bins) -> bins.addAll(part.get(thermostatId)));
+		return merged;
+	}
+
+	private static Map<String, TemperatureHistory> histories(Map<String, TemperatureBins> bins) {
+		var histories = new LinkedHashMap<String, TemperatureHistory>();
+		bins.forEach((thermostatId, thermostatBins) -> histories.put(thermostatId, thermostatBins.toHistory()));
+		return histories;
+	}
+
+	/*
+	 * the accumulators summing the weighted totals of a tier - summaries compacted before heater
+	 * runtime and desired temperature were captured lack those fields, which $sum treats as zero
+	 */
+	private static List<BsonField> totals(boolean raw) {
+		return List.of(
+				sum("sum", raw ? RAW_SUM : "$sum"),
+				sum("weight", raw ? RAW_WEIGHT : "$weight"),
+				sum("heaterOn", raw ? "$heaterOnDuration" : "$heaterOn"),
+				sum("heaterWeight", raw ? RAW_HEATER_WEIGHT : "$heaterWeight"),
+				sum("desiredSum", raw ? RAW_DESIRED_SUM : "$desiredSum"),
+				sum("desiredWeight", raw ? RAW_DESIRED_WEIGHT : "$desiredWeight"));
+	}
+
+	private static double number(Document document, String key) {
+		var value = (Number) document.get(key);
+		return value == null ? 0 : value.doubleValue();
+	}
+
+	private MongoCollection<Document> collection(TemperatureTier tier) {
+		return mongoDatabase().getCollection(tier.collection());
+	}
+
+	private MongoCollection<Document> compactionCollection() {
+		return mongoDatabase().getCollection(COMPACTION_COLLECTION);
+	}
+
+	private static Instant earliest(Instant a, Instant b) {
+		return a.isBefore(b) ? a : b;
+	}
+
+	private static Instant latest(Instant a, Instant b) {
+		return a.isAfter(b) ? a : b;
 	}
 
 	private static <T> boolean contains(Iterable<T> iterable, T match) {
@@ -120,4 +650,19 @@ public class TemperatureRepository implements PanacheMongoRepository<Temperature
 		}
 		return false;
 	}
+
+	/*
+	 * part of a history query read from a single tier
+	 */
+	private static final class HistoryChunk {
+		final TemperatureTier tier; // null for the archive
+		final Instant from;
+		final Instant to;
+
+		HistoryChunk(TemperatureTier tier, Instant from, Instant to) {
+			this.tier = tier;
+			this.from = from;
+			this.to = to;
+		}
+	}
 }
@@ -0,0 +1,205 @@
+package edu.snhu.erik.mattheis.thermostat.db;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.bson.types.ObjectId;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * decides which ambient temperature readings are stored in the time-series collection
+ *
+ * readings are held until the temperature moves by more than the deadband from the last stored reading,
+ * the heater turns on or off, the desired temperature changes, or the heartbeat interval has passed -
+ * at which point a single sample is stored holding the time-weighted average temperature since the
+ * previous sample and the duration it covers
+ *
+ * each reading is weighted by how long it was held until the next reading, so
+ * averaging samples by duration gives the same result as averaging every reading
+ *
+ * each sample also accumulates how long the heater was on and the time-weighted average desired
+ * temperature over its duration - samples never straddle a {@link TemperatureBins history bin},
+ * so the heater runtime of a bin is the sum of its samples and duty-cycle queries never need
+ * to reconstruct on/off intervals from individual readings
+ *
+ * the latest values are held no longer than {@code thermostat.health.stale-after} after the latest reading -
+ * the rest of a longer silence is left out of the history rather than counted as the last known temperature
+ * and heater state, and the next reading is stored as is, like the first
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@ApplicationScoped
+public class TemperatureSampler {
+
+	private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+	@ConfigProperty(name = "thermostat.sampling.deadband", defaultValue = "0.1")
+	float deadband;
+
+	@ConfigProperty(name = "thermostat.sampling.heartbeat", defaultValue = "5m")
+	Duration heartbeat;
+
+	@ConfigProperty(name = "thermostat.health.stale-after", defaultValue = "3m")
+	Duration staleAfter;
+
+	/**
+	 * produces samples for the readings held in any partially filled windows
+	 *
+	 * @return the samples to store
+	 */
+	public List<Temperature> flush() {
+		return windows.values().stream().map(window -> {
+			synchronized (window) {
+				return window.last == null ? Optional.<Temperature>empty() : window.flush(window.last);
+			}
+		}).flatMap(Optional::stream).collect(Collectors.toList());
+	}
+
+	/**
+	 * offers the latest ambient temperature of the thermostat,
+	 * producing samples if the thermostat's sampling policy calls for them
+	 *
+	 * @param state the latest thermostat state
+	 * @return the samples to store in order - more than one if the reading closes more than one bin,
+	 *         or none if the reading is held
+	 */
+	public List<Temperature> sample(ThermostatState state) {
+		if (state.getAmbientTemperature() == null || state.getLastUpdate() == null) {
+			return List.of();
+		}
+		var thermostatId = state.getId().toHexString();
+		var window = windows.computeIfAbsent(thermostatId, Window::new);
+		synchronized (window) {
+			return window.offer(state.getLastUpdate(), state.getAmbientTemperature(),
+					state.getHeaterOn(), state.getDesiredTemperature(),
+					state.getSampleDeadband() == null ? deadband : state.getSampleDeadband(),
+					state.getSampleHeartbeatSeconds() == null ? heartbeat : Duration.ofSeconds(state.getSampleHeartbeatSeconds()),
+					staleAfter);
+		}
+	}
+
+	/**
+	 * discards any held readings for the given thermostat
+	 *
+	 * @param thermostatId the id of the thermostat being removed
+	 */
+	public void discard(ObjectId thermostatId) {
+		windows.remove(thermostatId.toHexString());
+	}
+
+	/*
+	 * the readings of one thermostat since its last stored sample
+	 */
+	private static class Window {
+		private final String thermostatId;
+		private Instant start;          // timestamp of the last stored sample
+		private float anchor;           // reading at the time of the last stored sample
+		private Instant last;           // timestamp of the latest reading
+		private float value;            // the latest reading
+		private Boolean heaterOn;       // the latest heater state
+		private Float desired;          // the latest desired temperature
+		private long millis;            // milliseconds accumulated since start
+		private double area;            // sum of reading * milliseconds held since start
+		private long heaterMillis;      // milliseconds the heater was on since start
+		private boolean heaterKnown;    // whether the heater state was known at any point since start
+		private double desiredArea;     // sum of desired temperature * milliseconds held since start
+		private long desiredMillis;     // milliseconds the desired temperature was known since start
+
+		Window(String thermostatId) {
+			this.thermostatId = thermostatId;
+		}
+
+		List<Temperature> offer(Instant timestamp, float reading, Boolean heater, Float desiredTemperature,
+				float deadband, Duration heartbeat, Duration staleAfter) {
+			if (last != null && !timestamp.isAfter(last)) {             // ignore repeated or out of order readings
+				return List.of();
+			}
+			var samples = new ArrayList<Temperature>();
+			if (last != null && timestamp.isAfter(last.plus(staleAfter))) {
+				holdUntil(last.plus(staleAfter), samples);               // silent too long - hold only until stale
+				flush(last).ifPresent(samples::add);
+				last = null;                                            // and leave out the rest of the gap
+			}
+			if (last == null) {                                         // the first reading is stored as is
+				start = last = timestamp;
+				anchor = value = reading;
+				heaterOn = heater;
+				desired = desiredTemperature;
+				samples.add(Temperature.of(thermostatId, timestamp, reading, 1,
+						heater == null ? null : heater ? 1L : 0L, desiredTemperature));
+				return samples;
+			}
+			holdUntil(timestamp, samples);
+			var changed = !Objects.equals(heater, heaterOn) || !Objects.equals(desiredTemperature, desired);
+			value = reading;
+			heaterOn = heater;
+			desired = desiredTemperature;
+			if (samples.isEmpty() && (changed || Math.abs(reading - anchor) > deadband
+					|| !timestamp.isBefore(start.plus(heartbeat)))) {
+				flush(timestamp).ifPresent(samples::add);
+				start = timestamp;
+			}
+			if (!samples.isEmpty()) {
+				anchor = reading;
+			}
+			return samples;
+		}
+
+		/*
+		 * holds the latest values until the given instant, closing every bin boundary crossed on the way
+		 * with a sample stamped inside the bin it covers
+		 */
+		void holdUntil(Instant until, List<Temperature> samples) {
+			for (var boundary = TemperatureBins.end(last); !boundary.isAfter(until);
+					boundary = TemperatureBins.end(boundary)) {
+				hold(boundary);
+				flush(boundary.minusMillis(1)).ifPresent(samples::add);
+				start = boundary;
+			}
+			hold(until);
+		}
+
+		/*
+		 * accumulates the latest values as held from the latest reading until the given instant
+		 */
+		void hold(Instant until) {
+			var held = Duration.between(last, until).toMillis();
+			if (held <= 0) {
+				return;
+			}
+			millis += held;
+			area += (double) value * held;
+			if (heaterOn != null) {
+				heaterKnown = true;
+				heaterMillis += heaterOn ? held : 0;
+			}
+			if (desired != null) {
+				desiredArea += (double) desired * held;
+				desiredMillis += held;
+			}
+			last = until;
+		}
+
+		Optional<Temperature> flush(Instant timestamp) {
+			if (millis <= 0) {
+				return Optional.empty();
+			}
+			var sample = Temperature.of(thermostatId, timestamp, (float) (area / millis), millis,
+					heaterKnown ? heaterMillis : null,
+					desiredMillis > 0 ? (float) (desiredArea / desiredMillis) : null);
+			millis = heaterMillis = desiredMillis = 0;
+			area = desiredArea = 0;
+			heaterKnown = false;
+			return Optional.of(sample);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package edu.snhu.erik.mattheis.thermostat.db;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.client.model.IndexModel;
+
+/**
+ * the retention tiers of the temperature history, from finest to coarsest
+ *
+ * raw samples are stored in the {@link Temperature} time-series collection,
+ * summary tiers are stored in regular collections with documents of the form:
+ *
+ * <pre>
+ * {
+ *     _id: { thermostatId: "614e59d4fb04a00ca2b7a984", timestamp: ISODate("2021-10-16T01:20:00Z") },
+ *     thermostatId: "614e59d4fb04a00ca2b7a984",
+ *     timestamp: ISODate("2021-10-16T01:20:00Z"),
+ *     sum: 1511250.0,
+ *     weight: 60000,
+ *     heaterOn: 30000,
+ *     heaterWeight: 60000,
+ *     desiredSum: 1200000.0,
+ *     desiredWeight: 60000,
+ *     min: 25.125,
+ *     max: 25.25
+ * }
+ * </pre>
+ *
+ * where {@code timestamp} is the start of the bin, {@code sum} is the weighted sum of temperatures
+ * and {@code weight} is the total weight of the samples summarized by the document - the weight
+ * of a raw sample is the number of milliseconds it covers (see {@link TemperatureSampler})
+ *
+ * {@code heaterOn} is the milliseconds the heater was on out of the {@code heaterWeight} milliseconds
+ * with a known heater state, and {@code desiredSum} and {@code desiredWeight} are the weighted sum
+ * and total weight of desired temperatures
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+public enum TemperatureTier {
+	/**
+	 * every sample as received from the thermostats
+	 */
+	RAW(Temperature.COLLECTION, ChronoUnit.MILLIS, "millisecond", Duration.ZERO),
+	/**
+	 * one summary per thermostat per minute, compacted an hour at a time
+	 */
+	MINUTE("temperature_minute", ChronoUnit.MINUTES, "minute", Duration.ofHours(1)),
+	/**
+	 * one summary per thermostat per hour, compacted a day at a time
+	 */
+	HOUR("temperature_hour", ChronoUnit.HOURS, "hour", Duration.ofDays(1));
+
+	/**
+	 * the indexes to create on summary collections - the TTL index is managed separately
+	 *
+	 * <pre>
+	 * { thermostatId: 1, timestamp: 1 }
+	 * </pre>
+	 */
+	public static final List<IndexModel> INDEXES = List.of(
+			new IndexModel(new BasicDBObject("thermostatId", 1).append("timestamp", 1)));
+
+	private final String collection;
+	private final ChronoUnit unit;
+	private final String dateUnit;
+	private final Duration batch;
+
+	private TemperatureTier(String collection, ChronoUnit unit, String dateUnit, Duration batch) {
+		this.collection = collection;
+		this.unit = unit;
+		this.dateUnit = dateUnit;
+		this.batch = batch;
+	}
+
+	/**
+	 * gets the name of the collection in MongoDB
+	 *
+	 * @return the collection name
+	 */
+	public String collection() {
+		return collection;
+	}
+
+	/**
+	 * gets the size of the bins summarized by this tier
+	 *
+	 * @return the bin size
+	 */
+	public ChronoUnit unit() {
+		return unit;
+	}
+
+	/**
+	 * gets the size of the bins summarized by this tier as a MongoDB date unit
+	 *
+	 * @return the unit suitable for use with {@code $dateTrunc}
+	 */
+	public String dateUnit() {
+		return dateUnit;
+	}
+
+	/**
+	 * gets the span of time compacted into this tier by a single batch
+	 *
+	 * @return the batch span
+	 */
+	public Duration batch() {
+		return batch;
+	}
+
+	/**
+	 * gets the next finer tier which is compacted into this one
+	 *
+	 * @return the source tier or {@code null} for {@link #RAW}
+	 */
+	public TemperatureTier source() {
+		return ordinal() == 0 ? null : values()[ordinal() - 1];
+	}
+
+	/**
+	 * truncates the given instant to the start of its bin in this tier
+	 *
+	 * @param instant the instant to truncate
+	 * @return the start of the bin
+	 */
+	public Instant truncate(Instant instant) {
+		return instant.truncatedTo(unit);
+	}
+}
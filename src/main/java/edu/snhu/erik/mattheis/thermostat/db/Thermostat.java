@@ -43,11 +43,16 @@ public class Thermostat {
 	public ObjectId id; // _id in MongoDB
 	public String label;
 	public String port;
+	public String zone;                  // the name of the zone the thermostat belongs to, if any
 	public Instant lastUpdate;
 	public Float desiredTemperature;
 	public Float ambientTemperature;
 	public Boolean heaterOn;
 	public Boolean remoteUpdateDisabled;
+	public Float sampleDeadband;         // degrees C - overrides thermostat.sampling.deadband
+	public Long sampleHeartbeatSeconds;  // overrides thermostat.sampling.heartbeat
+	public Schedule schedule;
+	public Long version;                 // incremented every time the state is recorded
 
 	/**
 	 * factory for creating documents wiht the given label and port
@@ -64,4 +69,29 @@ public class Thermostat {
 		
 		return thermostat;
 	}
+
+	/**
+	 * creates a copy of this thermostat for storages which hold state in memory
+	 * 
+	 * @return a new instance with the same field values
+	 */
+	public Thermostat copy() {
+		Thermostat copy = new Thermostat();
+		
+		copy.id = id;
+		copy.label = label;
+		copy.port = port;
+		copy.zone = zone;
+		copy.lastUpdate = lastUpdate;
+		copy.desiredTemperature = desiredTemperature;
+		copy.ambientTemperature = ambientTemperature;
+		copy.heaterOn = heaterOn;
+		copy.remoteUpdateDisabled = remoteUpdateDisabled;
+		copy.sampleDeadband = sampleDeadband;
+		copy.sampleHeartbeatSeconds = sampleHeartbeatSeconds;
+		copy.schedule = schedule == null ? null : schedule.copy();
+		copy.version = version;
+		
+		return copy;
+	}
 }
@@ -1,10 +1,7 @@
 package edu.snhu.erik.mattheis.thermostat.db;
 
-import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
-import javax.inject.Inject;
 
-import edu.snhu.erik.mattheis.thermostat.websocket.ThermostatUpdateSocket;
 import io.quarkus.mongodb.panache.PanacheMongoRepository;
 
 /**
@@ -15,27 +12,10 @@ import io.quarkus.mongodb.panache.PanacheMongoRepository;
 @ApplicationScoped
 public class ThermostatRepository implements PanacheMongoRepository<Thermostat> {
 
-	@Inject
-	TemperatureRepository temperatureRepository;
-	
-	@Inject
-	ThermostatUpdateSocket updateSocket;
-
 	/**
-	 * ensure the collection has the necessary indexes before use
+	 * ensure the collection has the necessary indexes - safe to repeat, as existing indexes are left as they are
 	 */
-	@PostConstruct
-	void init() {
+	void bootstrap() {
 		mongoCollection().createIndexes(Thermostat.INDEXES);
 	}
-
-	/**
-	 * store the latest state of the thermostat
-	 */
-	@Override
-	public void update(Thermostat thermostat) {
-		PanacheMongoRepository.super.update(thermostat);
-		temperatureRepository.persist(Temperature.ambientOf(thermostat)); // store a snapshot in the tmperature time-series collection
-		updateSocket.broadcast(thermostat);                               // broadcast update to any connected front-end websockets
-	}
 }
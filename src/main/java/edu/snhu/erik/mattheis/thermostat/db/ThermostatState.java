@@ -0,0 +1,326 @@
+package edu.snhu.erik.mattheis.thermostat.db;
+
+import java.time.Instant;
+
+import org.bson.types.ObjectId;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * an immutable snapshot of the live state of a thermostat
+ * 
+ * the live state is replaced as a whole - never modified - so readers always see a consistent state
+ * without locking, while {@link Thermostat} is only used to store the state
+ * 
+ * <pre>
+ * {
+ *     "id": "614e59d4fb04a00ca2b7a984",
+ *     "label": "Prototype Board",
+ *     "port": "cu.usbmodemE00810101",
+ *     "zone": "Floor 2 East",
+ *     "lastUpdate": "2021-10-16T01:30:09.642500Z",
+ *     "desiredTemperature": 20.0,
+ *     "ambientTemperature": 25.0625,
+ *     "heaterOn": false,
+ *     "remoteUpdateDisabled": false,
+ *     "connection": "connected",
+ *     "version": 1042
+ * }
+ * </pre>
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@JsonInclude(Include.NON_NULL)
+public final class ThermostatState {
+
+	private final ObjectId id;
+	private final String label;
+	private final String port;
+	private final String zone;
+	private final Instant lastUpdate;
+	private final Float desiredTemperature;
+	private final Float ambientTemperature;
+	private final Boolean heaterOn;
+	private final Boolean remoteUpdateDisabled;
+	private final Float sampleDeadband;
+	private final Long sampleHeartbeatSeconds;
+	private final Schedule schedule;       // never modified - copied on the way in and out
+	private final ConnectionState connection; // not stored
+	private final long version;
+
+	private ThermostatState(ObjectId id, String label, String port, String zone, Instant lastUpdate, Float desiredTemperature,
+			Float ambientTemperature, Boolean heaterOn, Boolean remoteUpdateDisabled, Float sampleDeadband,
+			Long sampleHeartbeatSeconds, Schedule schedule, ConnectionState connection, long version) {
+		this.id = id;
+		this.label = label;
+		this.port = port;
+		this.zone = zone;
+		this.lastUpdate = lastUpdate;
+		this.desiredTemperature = desiredTemperature;
+		this.ambientTemperature = ambientTemperature;
+		this.heaterOn = heaterOn;
+		this.remoteUpdateDisabled = remoteUpdateDisabled;
+		this.sampleDeadband = sampleDeadband;
+		this.sampleHeartbeatSeconds = sampleHeartbeatSeconds;
+		this.schedule = schedule;
+		this.connection = connection;
+		this.version = version;
+	}
+
+	/**
+	 * factory for creating the state held in a stored thermostat
+	 * 
+	 * @param thermostat the stored thermostat
+	 * @return the state of the thermostat
+	 */
+	public static ThermostatState of(Thermostat thermostat) {
+		return new ThermostatState(thermostat.id, thermostat.label, thermostat.port, thermostat.zone,
+				thermostat.lastUpdate, thermostat.desiredTemperature, thermostat.ambientTemperature, thermostat.heaterOn,
+				thermostat.remoteUpdateDisabled, thermostat.sampleDeadband, thermostat.sampleHeartbeatSeconds,
+				thermostat.schedule == null ? null : thermostat.schedule.copy(), null,
+				thermostat.version == null ? 0 : thermostat.version);
+	}
+
+	/**
+	 * creates the document used to store this state
+	 * 
+	 * @return a new thermostat document
+	 */
+	public Thermostat toEntity() {
+		Thermostat thermostat = Thermostat.create(label, port);
+
+		thermostat.id = id;
+		thermostat.zone = zone;
+		thermostat.lastUpdate = lastUpdate;
+		thermostat.desiredTemperature = desiredTemperature;
+		thermostat.ambientTemperature = ambientTemperature;
+		thermostat.heaterOn = heaterOn;
+		thermostat.remoteUpdateDisabled = remoteUpdateDisabled;
+		thermostat.sampleDeadband = sampleDeadband;
+		thermostat.sampleHeartbeatSeconds = sampleHeartbeatSeconds;
+		thermostat.schedule = getSchedule();
+		thermostat.version = version;
+
+		return thermostat;
+	}
+
+	/**
+	 * creates a copy of this state with the values reported by the thermostat - a {@code null} value
+	 * means the value was not reported and is left unchanged
+	 * 
+	 * @param desiredTemperature the reported desired temperature
+	 * @param ambientTemperature the reported ambient temperature
+	 * @param heaterOn the reported heater state
+	 * @param remoteUpdateDisabled the reported remote lock state
+	 * @param lastUpdate the time of the report
+	 * @return the new state
+	 */
+	public ThermostatState withReport(Float desiredTemperature, Float ambientTemperature, Boolean heaterOn,
+			Boolean remoteUpdateDisabled, Instant lastUpdate) {
+		return new ThermostatState(id, label, port, zone, lastUpdate,
+				desiredTemperature == null ? this.desiredTemperature : desiredTemperature,
+				ambientTemperature == null ? this.ambientTemperature : ambientTemperature,
+				heaterOn == null ? this.heaterOn : heaterOn,
+				remoteUpdateDisabled == null ? this.remoteUpdateDisabled : remoteUpdateDisabled,
+				sampleDeadband, sampleHeartbeatSeconds, schedule, connection, version);
+	}
+
+	/**
+	 * creates a copy of this state with the given label
+	 * 
+	 * @param label a descriptive name for the thermostat
+	 * @return the new state
+	 */
+	public ThermostatState withLabel(String label) {
+		return new ThermostatState(id, label, port, zone, lastUpdate, desiredTemperature, ambientTemperature, heaterOn,
+				remoteUpdateDisabled, sampleDeadband, sampleHeartbeatSeconds, schedule, connection, version);
+	}
+
+	/**
+	 * creates a copy of this state in the given zone
+	 * 
+	 * @param zone the name of the zone, or {@code null} for none
+	 * @return the new state
+	 */
+	public ThermostatState withZone(String zone) {
+		return new ThermostatState(id, label, port, zone, lastUpdate, desiredTemperature, ambientTemperature, heaterOn,
+				remoteUpdateDisabled, sampleDeadband, sampleHeartbeatSeconds, schedule, connection, version);
+	}
+
+	/**
+	 * creates a copy of this state with the given temperature sampling policy
+	 * 
+	 * @param sampleDeadband the change in degrees C which causes a sample to be stored, or {@code null} for the default
+	 * @param sampleHeartbeatSeconds the maximum number of seconds between samples, or {@code null} for the default
+	 * @return the new state
+	 */
+	public ThermostatState withSampling(Float sampleDeadband, Long sampleHeartbeatSeconds) {
+		return new ThermostatState(id, label, port, zone, lastUpdate, desiredTemperature, ambientTemperature, heaterOn,
+				remoteUpdateDisabled, sampleDeadband, sampleHeartbeatSeconds, schedule, connection, version);
+	}
+
+	/**
+	 * creates a copy of this state with the given setpoint schedule
+	 * 
+	 * @param schedule the schedule, or {@code null} for none
+	 * @return the new state
+	 */
+	public ThermostatState withSchedule(Schedule schedule) {
+		return new ThermostatState(id, label, port, zone, lastUpdate, desiredTemperature, ambientTemperature, heaterOn,
+				remoteUpdateDisabled, sampleDeadband, sampleHeartbeatSeconds, schedule == null ? null : schedule.copy(),
+				connection, version);
+	}
+
+	/**
+	 * creates a copy of this state with the given connection state
+	 * 
+	 * @param connection whether the server is connected to the thermostat
+	 * @return the new state
+	 */
+	public ThermostatState withConnection(ConnectionState connection) {
+		return new ThermostatState(id, label, port, zone, lastUpdate, desiredTemperature, ambientTemperature, heaterOn,
+				remoteUpdateDisabled, sampleDeadband, sampleHeartbeatSeconds, schedule, connection, version);
+	}
+
+	/**
+	 * creates a copy of this state with the given version
+	 * 
+	 * @param version the version of the new state
+	 * @return the new state
+	 */
+	public ThermostatState withVersion(long version) {
+		return new ThermostatState(id, label, port, zone, lastUpdate, desiredTemperature, ambientTemperature, heaterOn,
+				remoteUpdateDisabled, sampleDeadband, sampleHeartbeatSeconds, schedule, connection, version);
+	}
+
+	/**
+	 * gets the id of the thermostat
+	 * 
+	 * @return the thermostat id
+	 */
+	public ObjectId getId() {
+		return id;
+	}
+
+	/**
+	 * gets the descriptive name for the thermostat
+	 * 
+	 * @return the label
+	 */
+	public String getLabel() {
+		return label;
+	}
+
+	/**
+	 * gets the system identifier for the port the thermostat is connected to
+	 * 
+	 * @return the port
+	 */
+	public String getPort() {
+		return port;
+	}
+
+	/**
+	 * gets the name of the zone the thermostat belongs to
+	 * 
+	 * @return the zone, or {@code null} if the thermostat is not in a zone
+	 */
+	public String getZone() {
+		return zone;
+	}
+
+	/**
+	 * gets the time the thermostat last reported its state
+	 * 
+	 * @return the time of the last report
+	 */
+	public Instant getLastUpdate() {
+		return lastUpdate;
+	}
+
+	/**
+	 * gets the desired temperature reported by the thermostat
+	 * 
+	 * @return the desired temperature in degrees C
+	 */
+	public Float getDesiredTemperature() {
+		return desiredTemperature;
+	}
+
+	/**
+	 * gets the ambient temperature reported by the thermostat
+	 * 
+	 * @return the ambient temperature in degrees C
+	 */
+	public Float getAmbientTemperature() {
+		return ambientTemperature;
+	}
+
+	/**
+	 * gets whether the heater is on
+	 * 
+	 * @return {@code true} if the heater is on
+	 */
+	public Boolean getHeaterOn() {
+		return heaterOn;
+	}
+
+	/**
+	 * gets whether remote updates are disabled by the thermostat
+	 * 
+	 * @return {@code true} if remote updates are disabled
+	 */
+	public Boolean getRemoteUpdateDisabled() {
+		return remoteUpdateDisabled;
+	}
+
+	/**
+	 * gets the change in temperature which causes a sample to be stored
+	 * 
+	 * @return the deadband in degrees C, or {@code null} for the default
+	 */
+	public Float getSampleDeadband() {
+		return sampleDeadband;
+	}
+
+	/**
+	 * gets the maximum time between stored temperature samples
+	 * 
+	 * @return the heartbeat in seconds, or {@code null} for the default
+	 */
+	public Long getSampleHeartbeatSeconds() {
+		return sampleHeartbeatSeconds;
+	}
+
+	/**
+	 * gets the setpoint schedule - left out of the JSON encoding, which is pushed
+	 * on every change, and served separately by the schedule resource instead
+	 * 
+	 * @return a copy of the schedule, or {@code null} if there is none
+	 */
+	@JsonIgnore
+	public Schedule getSchedule() {
+		return schedule == null ? null : schedule.copy();
+	}
+
+	/**
+	 * gets whether the server is connected to the thermostat
+	 * 
+	 * @return the connection state, or {@code null} if the thermostat has not been registered yet
+	 */
+	public ConnectionState getConnection() {
+		return connection;
+	}
+
+	/**
+	 * gets the version of the state, which is incremented every time the state is recorded -
+	 * states stored before versioning was introduced are version 0
+	 * 
+	 * @return the version
+	 */
+	public long getVersion() {
+		return version;
+	}
+}
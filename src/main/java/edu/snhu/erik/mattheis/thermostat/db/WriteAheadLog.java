@@ -0,0 +1,318 @@
+package edu.snhu.erik.mattheis.thermostat.db;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * a local, segmented, memory-mapped log of opaque records
+ *
+ * records are appended to fixed size segment files named by sequence number and
+ * are read back in order from a committed position which is stored in a checkpoint
+ * file - consumers read a batch, process it, then commit the end of the batch,
+ * so records are delivered at least once across crashes
+ *
+ * each record is framed as:
+ *
+ * <pre>
+ * [ length: int ][ crc32: int ][ payload: length bytes ]
+ * </pre>
+ *
+ * a zero length, a frame which does not fit in the segment or a checksum mismatch marks
+ * the end of a segment - on open the last segment is scanned to find the end of the last
+ * complete record and anything after it (such as a torn write) is zeroed
+ *
+ * disk usage is bounded by the number of segments - when a new segment would exceed the
+ * limit, the oldest segment is deleted along with any unread records it holds
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class WriteAheadLog implements Closeable {
+
+	private static final int HEADER = Integer.BYTES * 2;
+	private static final String SUFFIX = ".wal";
+	private static final String CHECKPOINT = "checkpoint";
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final Path directory;
+	private final int segmentSize;
+	private final int maxSegments;
+	private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+
+	private long writeSegment;
+	private int writeOffset;
+	private long readSegment;
+	private int readOffset;
+
+	/**
+	 * a batch of records read from the log
+	 */
+	static class Batch {
+		private final List<ByteBuffer> records;
+		private final long segment;
+		private final int offset;
+
+		private Batch(List<ByteBuffer> records, long segment, int offset) {
+			this.records = records;
+			this.segment = segment;
+			this.offset = offset;
+		}
+
+		/**
+		 * gets the payloads of the records in the batch, in the order they were appended
+		 *
+		 * @return the record payloads
+		 */
+		List<ByteBuffer> records() {
+			return records;
+		}
+	}
+
+	/**
+	 * opens the log in the given directory, recovering any existing segments
+	 *
+	 * @param directory   the directory to store segments in - created if necessary
+	 * @param segmentSize the size of each segment file in bytes
+	 * @param maxSegments the maximum number of segment files to keep
+	 * @throws IOException if the log cannot be opened
+	 */
+	WriteAheadLog(Path directory, int segmentSize, int maxSegments) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxSegments = maxSegments;
+		Files.createDirectories(directory);
+		List<Long> existing;
+		try (var files = Files.list(directory)) {
+			existing = files.map(file -> file.getFileName().toString())
+					.filter(name -> name.endsWith(SUFFIX))
+					.map(name -> Long.valueOf(name.substring(0, name.length() - SUFFIX.length())))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+		for (var segment : existing) {
+			segments.put(segment, map(segment));
+		}
+		if (segments.isEmpty()) {
+			segments.put(0L, map(0L));
+		}
+		writeSegment = segments.lastKey();
+		writeOffset = recover(segments.lastEntry().getValue());
+		readCheckpoint();
+	}
+
+	/**
+	 * appends a record to the log
+	 *
+	 * @param payload the record payload
+	 * @throws IOException if a new segment cannot be created
+	 * @throws IllegalArgumentException if the record is larger than a segment
+	 */
+	synchronized void append(byte[] payload) throws IOException {
+		var length = HEADER + payload.length;
+		if (length > segmentSize) {
+			throw new IllegalArgumentException("record larger than segment");
+		}
+		if (writeOffset + length > segmentSize) {
+			roll();
+		}
+		var crc = new CRC32();
+		crc.update(payload);
+		var buffer = segments.get(writeSegment).duplicate();
+		buffer.position(writeOffset + Integer.BYTES);
+		buffer.putInt((int) crc.getValue());
+		buffer.put(payload);
+		buffer.putInt(writeOffset, payload.length); // written last so a torn record has no length
+		writeOffset += length;
+	}
+
+	/**
+	 * reads up to the given number of records from the committed position without advancing it
+	 *
+	 * @param max the maximum number of records to read
+	 * @return the batch of records, which is empty if the log is empty
+	 */
+	synchronized Batch read(int max) {
+		var records = new ArrayList<ByteBuffer>();
+		var segment = readSegment;
+		var offset = readOffset;
+		while (records.size() < max && (segment < writeSegment || offset < writeOffset)) {
+			var record = recordAt(segments.get(segment), offset);
+			if (record == null) {                      // end of segment
+				var next = segments.higherKey(segment);
+				if (next == null) {
+					break;
+				}
+				segment = next;
+				offset = 0;
+				continue;
+			}
+			records.add(record);
+			offset += HEADER + record.remaining();
+		}
+		return new Batch(records, segment, offset);
+	}
+
+	/**
+	 * advances the committed position to the end of the given batch,
+	 * deleting any segments which have been completely read
+	 *
+	 * @param batch a batch previously returned by {@link #read(int)}
+	 * @throws IOException if the checkpoint cannot be written
+	 */
+	synchronized void commit(Batch batch) throws IOException {
+		if (batch.segment < readSegment || (batch.segment == readSegment && batch.offset <= readOffset)) {
+			return; // the batch was overtaken by segments dropped to bound disk usage
+		}
+		readSegment = batch.segment;
+		readOffset = batch.offset;
+		writeCheckpoint();
+		while (segments.firstKey() < readSegment) {
+			delete(segments.firstKey());
+		}
+	}
+
+	/**
+	 * determines whether every appended record has been committed
+	 *
+	 * @return {@code true} if there are no records to read
+	 */
+	synchronized boolean isEmpty() {
+		return read(1).records.isEmpty();
+	}
+
+	/**
+	 * flushes appended records to disk
+	 */
+	synchronized void force() {
+		segments.get(writeSegment).force();
+	}
+
+	/**
+	 * flushes appended records to disk and releases the segments
+	 */
+	@Override
+	public synchronized void close() {
+		force();
+		segments.clear();
+	}
+
+	private void roll() throws IOException {
+		segments.get(writeSegment).force();
+		writeSegment += 1;
+		writeOffset = 0;
+		segments.put(writeSegment, map(writeSegment));
+		while (segments.size() > maxSegments) {
+			var oldest = segments.firstKey();
+			if (oldest >= readSegment) {
+				log.error("write-ahead log full, discarding unread records in segment {}", oldest);
+				readSegment = segments.higherKey(oldest);
+				readOffset = 0;
+				writeCheckpoint();
+			}
+			delete(oldest);
+		}
+	}
+
+	/*
+	 * finds the end of the last complete record in a segment and zeroes anything after it
+	 */
+	private int recover(MappedByteBuffer buffer) {
+		var offset = 0;
+		ByteBuffer record;
+		while ((record = recordAt(buffer, offset)) != null) {
+			offset += HEADER + record.remaining();
+		}
+		for (var i = offset; i < segmentSize; ++i) {
+			buffer.put(i, (byte) 0);
+		}
+		buffer.force();
+		return offset;
+	}
+
+	/*
+	 * gets the payload of the record at the given offset, or null if there is no valid record
+	 */
+	private ByteBuffer recordAt(ByteBuffer buffer, int offset) {
+		if (offset + HEADER > segmentSize) {
+			return null;
+		}
+		var length = buffer.getInt(offset);
+		if (length <= 0 || offset + HEADER + length > segmentSize) {
+			return null;
+		}
+		var payload = buffer.duplicate();
+		payload.limit(offset + HEADER + length).position(offset + HEADER);
+		var crc = new CRC32();
+		crc.update(payload.duplicate());
+		if ((int) crc.getValue() != buffer.getInt(offset + Integer.BYTES)) {
+			return null;
+		}
+		return payload.slice().asReadOnlyBuffer();
+	}
+
+	private void readCheckpoint() throws IOException {
+		readSegment = segments.firstKey();
+		readOffset = 0;
+		var file = directory.resolve(CHECKPOINT);
+		if (Files.exists(file)) {
+			var buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+			if (buffer.remaining() == Long.BYTES + Integer.BYTES) {
+				var segment = buffer.getLong();
+				var offset = buffer.getInt();
+				if (segments.containsKey(segment)) {   // otherwise the segment was already consumed or dropped
+					readSegment = segment;
+					readOffset = offset;
+				} else if (segment > segments.lastKey()) {
+					readSegment = writeSegment;
+					readOffset = writeOffset;
+				}
+			}
+		}
+		if (readSegment == writeSegment && readOffset > writeOffset) { // checkpoint ahead of a torn tail
+			readOffset = writeOffset;
+		}
+	}
+
+	private void writeCheckpoint() throws IOException {
+		var buffer = ByteBuffer.allocate(Long.BYTES + Integer.BYTES).putLong(readSegment).putInt(readOffset).flip();
+		var temp = directory.resolve(CHECKPOINT + ".tmp");
+		try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			channel.write(buffer);
+			channel.force(true);
+		}
+		Files.move(temp, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private MappedByteBuffer map(long segment) throws IOException {
+		try (var channel = FileChannel.open(file(segment), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			return channel.map(MapMode.READ_WRITE, 0, segmentSize);
+		}
+	}
+
+	private void delete(long segment) throws IOException {
+		segments.remove(segment);
+		Files.deleteIfExists(file(segment));
+	}
+
+	private Path file(long segment) {
+		return directory.resolve(String.format("%020d%s", segment, SUFFIX));
+	}
+}
@@ -0,0 +1,25 @@
+package edu.snhu.erik.mattheis.thermostat.health;
+
+/**
+ * the unhealthy conditions detected by the {@link HealthMonitor}
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+public enum HealthCondition {
+	/**
+	 * no update has been received from the thermostat for longer than expected
+	 */
+	STALE,
+	/**
+	 * the ambient temperature has not changed at all while the heater has been running
+	 */
+	STUCK_SENSOR,
+	/**
+	 * the heater is running well above the desired temperature, or the temperature is rising too fast
+	 */
+	RUNAWAY_HEATING,
+	/**
+	 * the ambient temperature has stayed well below the desired temperature for too long
+	 */
+	NOT_CONVERGING
+}
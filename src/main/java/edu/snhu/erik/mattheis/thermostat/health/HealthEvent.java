@@ -0,0 +1,101 @@
+package edu.snhu.erik.mattheis.thermostat.health;
+
+import java.time.Instant;
+
+import org.bson.types.ObjectId;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * an unhealthy condition being raised or cleared for a thermostat
+ * 
+ * <pre>
+ * {
+ *     "thermostatId": "614e59d4fb04a00ca2b7a984",
+ *     "label": "Prototype Board",
+ *     "condition": "RUNAWAY_HEATING",
+ *     "active": true,
+ *     "timestamp": "2021-10-16T01:30:09.642500Z",
+ *     "detail": "heater on at 23.41 with desired temperature 20.00, rising 0.12 per minute"
+ * }
+ * </pre>
+ * 
+ * the detail is omitted when a condition is cleared
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@JsonInclude(Include.NON_NULL)
+public final class HealthEvent {
+
+	private final ObjectId thermostatId;
+	private final String label;
+	private final HealthCondition condition;
+	private final boolean active;
+	private final Instant timestamp;
+	private final String detail;
+
+	HealthEvent(ObjectId thermostatId, String label, HealthCondition condition, boolean active, Instant timestamp,
+			String detail) {
+		this.thermostatId = thermostatId;
+		this.label = label;
+		this.condition = condition;
+		this.active = active;
+		this.timestamp = timestamp;
+		this.detail = detail;
+	}
+
+	/**
+	 * gets the id of the thermostat
+	 * 
+	 * @return the thermostat id
+	 */
+	public ObjectId getThermostatId() {
+		return thermostatId;
+	}
+
+	/**
+	 * gets the label of the thermostat when the event occurred
+	 * 
+	 * @return the thermostat label
+	 */
+	public String getLabel() {
+		return label;
+	}
+
+	/**
+	 * gets the condition raised or cleared
+	 * 
+	 * @return the condition
+	 */
+	public HealthCondition getCondition() {
+		return condition;
+	}
+
+	/**
+	 * determines whether the condition was raised or cleared
+	 * 
+	 * @return {@code true} if raised, {@code false} if cleared
+	 */
+	public boolean isActive() {
+		return active;
+	}
+
+	/**
+	 * gets the time the condition was raised or cleared
+	 * 
+	 * @return the event time
+	 */
+	public Instant getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * gets a human readable description of what was detected
+	 * 
+	 * @return the detail or {@code null} if the condition was cleared
+	 */
+	public String getDetail() {
+		return detail;
+	}
+}
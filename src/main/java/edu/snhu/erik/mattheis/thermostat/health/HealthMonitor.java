@@ -0,0 +1,279 @@
+package edu.snhu.erik.mattheis.thermostat.health;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import org.bson.types.ObjectId;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.snhu.erik.mattheis.thermostat.comm.ThermostatChanges;
+import edu.snhu.erik.mattheis.thermostat.comm.ThermostatManager;
+import edu.snhu.erik.mattheis.thermostat.db.ThermostatState;
+import edu.snhu.erik.mattheis.thermostat.websocket.HealthAlertSocket;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+
+/**
+ * watches the stream of thermostat changes for unhealthy conditions, raising an event when
+ * a condition is detected and another when it clears (see {@link HealthCondition})
+ *
+ * changes are handed off to a bounded queue and processed on a dedicated thread, so the frame
+ * path only pays for an offer to the queue - if the monitor falls behind, changes are dropped
+ * rather than holding up ingestion, which only delays detection as every change carries the
+ * full state of the thermostat
+ *
+ * each thermostat keeps {@link ThermostatStatistics} updated in constant time per reading,
+ * and staleness is checked against the live state of every thermostat on a fixed interval
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@ApplicationScoped
+public class HealthMonitor {
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final Map<ObjectId, ThermostatStatistics> statistics = new ConcurrentHashMap<>();
+	private final Map<ObjectId, Map<HealthCondition, HealthEvent>> alerts = new ConcurrentHashMap<>();
+	private final Deque<HealthEvent> recent = new ArrayDeque<>();              // guarded by itself
+	private final AtomicLong dropped = new AtomicLong();
+	private final Consumer<ThermostatState> subscriber = this::offer;
+
+	private volatile BlockingQueue<ThermostatState> queue;
+	private volatile Thread worker;
+	private volatile Instant started;
+
+	@Inject
+	ThermostatChanges changes;
+
+	@Inject
+	ThermostatManager manager;
+
+	@Inject
+	HealthAlertSocket alertSocket;
+
+	@ConfigProperty(name = "thermostat.health.queue-size", defaultValue = "4096")
+	int queueSize;
+
+	@ConfigProperty(name = "thermostat.health.recent-size", defaultValue = "256")
+	int recentSize;
+
+	@ConfigProperty(name = "thermostat.health.check-interval", defaultValue = "15s")
+	Duration checkInterval;
+
+	@ConfigProperty(name = "thermostat.health.time-constant", defaultValue = "5m")
+	Duration timeConstant;
+
+	@ConfigProperty(name = "thermostat.health.stale-after", defaultValue = "3m")
+	Duration staleAfter;
+
+	@ConfigProperty(name = "thermostat.health.stuck-after", defaultValue = "30m")
+	Duration stuckAfter;
+
+	@ConfigProperty(name = "thermostat.health.runaway-margin", defaultValue = "2.0")
+	float runawayMargin;
+
+	@ConfigProperty(name = "thermostat.health.runaway-rate", defaultValue = "1.0")
+	float runawayRate;
+
+	@ConfigProperty(name = "thermostat.health.converge-tolerance", defaultValue = "1.0")
+	float convergeTolerance;
+
+	@ConfigProperty(name = "thermostat.health.converge-timeout", defaultValue = "1h")
+	Duration convergeTimeout;
+
+	/**
+	 * starts the monitor thread and subscribes to thermostat changes
+	 *
+	 * @param startup the Quarkus startup event
+	 */
+	void onStartup(@Observes StartupEvent startup) {
+		started = Instant.now();
+		queue = new ArrayBlockingQueue<>(queueSize);
+		worker = new Thread(this::run, "thermostat-health");
+		worker.setDaemon(true);
+		worker.setPriority(Thread.MIN_PRIORITY);
+		worker.start();
+		changes.subscribe(subscriber, null, 0, List::of);
+	}
+
+	/**
+	 * unsubscribes from thermostat changes and stops the monitor thread
+	 *
+	 * @param shutdown the Quarkus shutdown event
+	 */
+	void onShutdown(@Observes ShutdownEvent shutdown) {
+		changes.unsubscribe(subscriber);
+		if (worker != null) {
+			worker.interrupt();
+		}
+	}
+
+	/**
+	 * gets the statistics and active alerts of every thermostat
+	 *
+	 * @return the health of each thermostat
+	 */
+	public List<HealthReport> getReports() {
+		return manager.listThermostats().stream().map(this::report).collect(Collectors.toUnmodifiableList());
+	}
+
+	/**
+	 * gets the statistics and active alerts of the thermostat with the given id
+	 *
+	 * @param id the id of the thermostat
+	 * @return the health of the thermostat or {@link Optional#empty()} if not found
+	 */
+	public Optional<HealthReport> getReport(ObjectId id) {
+		return manager.getThermostat(id).map(this::report);
+	}
+
+	/**
+	 * gets every condition currently raised
+	 *
+	 * @return the active alerts
+	 */
+	public List<HealthEvent> getActiveAlerts() {
+		return alerts.values().stream()
+				.flatMap(conditions -> conditions.values().stream())
+				.collect(Collectors.toUnmodifiableList());
+	}
+
+	/**
+	 * gets the most recent events, both raised and cleared, oldest first
+	 *
+	 * @return the recent events
+	 */
+	public List<HealthEvent> getRecentEvents() {
+		synchronized (recent) {
+			return List.copyOf(recent);
+		}
+	}
+
+	/*
+	 * called on the frame path for every change - must never block
+	 */
+	private void offer(ThermostatState state) {
+		if (!queue.offer(state) && dropped.incrementAndGet() % 1000 == 1) {
+			log.warn("health monitor behind, {} changes dropped so far", dropped.get());
+		}
+	}
+
+	private void run() {
+		var nextCheck = System.nanoTime() + checkInterval.toNanos();
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				var state = queue.poll(Math.max(0, nextCheck - System.nanoTime()), TimeUnit.NANOSECONDS);
+				if (state != null) {
+					observe(state);
+				}
+				if (System.nanoTime() - nextCheck >= 0) {
+					check();
+					nextCheck = System.nanoTime() + checkInterval.toNanos();
+				}
+			} catch (InterruptedException e) {
+				break;
+			} catch (Exception e) {
+				log.error("problem monitoring thermostat health", e);
+			}
+		}
+	}
+
+	/*
+	 * adds the reading of a change to the statistics of the thermostat and evaluates the conditions it affects
+	 */
+	private void observe(ThermostatState state) {
+		var stats = statistics.computeIfAbsent(state.getId(),
+				id -> new ThermostatStatistics(timeConstant, convergeTolerance));
+		if (!stats.add(state)) {
+			return;
+		}
+		var timestamp = state.getLastUpdate();
+		var mean = stats.getMean();
+		var rate = stats.getRate();
+		var desired = stats.getDesiredTemperature();
+		var heating = Boolean.TRUE.equals(stats.getHeaterOn());
+		update(state, HealthCondition.STALE, false, null);
+		var unchangedHeating = stats.getUnchangedHeating();
+		update(state, HealthCondition.STUCK_SENSOR, unchangedHeating.compareTo(stuckAfter) >= 0,
+				() -> String.format("reading unchanged at %.2f since %s with the heater on for %d minutes",
+						stats.getReading(), stats.getUnchangedSince(), unchangedHeating.toMinutes()));
+		update(state, HealthCondition.RUNAWAY_HEATING,
+				(heating && desired != null && mean > desired + runawayMargin) || rate > runawayRate,
+				() -> String.format("heater %s at %.2f with desired temperature %s, rising %.2f per minute",
+						heating ? "on" : "off", mean, desired, rate));
+		var belowSince = stats.getBelowSince();
+		update(state, HealthCondition.NOT_CONVERGING,
+				belowSince != null && !belowSince.plus(convergeTimeout).isAfter(timestamp),
+				() -> String.format("%.2f below desired temperature %s since %s", mean, desired, belowSince));
+	}
+
+	/*
+	 * raises staleness for thermostats without a recent update and forgets thermostats which have been removed
+	 */
+	private void check() {
+		var now = Instant.now();
+		var live = manager.listThermostats();
+		var ids = live.stream().map(ThermostatState::getId).collect(Collectors.toSet());
+		statistics.keySet().retainAll(ids);
+		alerts.keySet().retainAll(ids);
+		for (var state : live) {
+			var lastUpdate = state.getLastUpdate();
+			var since = lastUpdate == null || lastUpdate.isBefore(started) ? started : lastUpdate; // grace after startup
+			update(state, HealthCondition.STALE, !since.plus(staleAfter).isAfter(now),
+					() -> lastUpdate == null ? "no update received" : "no update since " + lastUpdate);
+		}
+	}
+
+	/*
+	 * raises or clears a condition, emitting an event only when it changes
+	 */
+	private void update(ThermostatState state, HealthCondition condition, boolean raised, Supplier<String> detail) {
+		var conditions = alerts.computeIfAbsent(state.getId(), id -> new ConcurrentHashMap<>());
+		var current = conditions.get(condition);
+		if (raised == (current != null)) {
+			return;
+		}
+		var event = new HealthEvent(state.getId(), state.getLabel(), condition, raised, Instant.now(),
+				raised ? detail.get() : null);
+		if (raised) {
+			conditions.put(condition, event);
+			log.warn("thermostat '{}' raised {}: {}", state.getLabel(), condition, event.getDetail());
+		} else {
+			conditions.remove(condition);
+			log.info("thermostat '{}' cleared {}", state.getLabel(), condition);
+		}
+		synchronized (recent) {
+			recent.addLast(event);
+			while (recent.size() > recentSize) {
+				recent.removeFirst();
+			}
+		}
+		alertSocket.broadcast(event);
+	}
+
+	private HealthReport report(ThermostatState state) {
+		var active = List.copyOf(alerts.getOrDefault(state.getId(), Map.of()).values());
+		var stats = statistics.get(state.getId());
+		return stats == null
+				? new HealthReport(state.getId(), state.getLabel(), null, 0, null, null, null, active)
+				: stats.report(state, active);
+	}
+}
@@ -0,0 +1,126 @@
+package edu.snhu.erik.mattheis.thermostat.health;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * the running statistics and active alerts of a thermostat
+ * 
+ * <pre>
+ * {
+ *     "id": "614e59d4fb04a00ca2b7a984",
+ *     "label": "Prototype Board",
+ *     "lastUpdate": "2021-10-16T01:30:09.642500Z",
+ *     "samples": 5120,
+ *     "mean": 21.9375,
+ *     "standardDeviation": 0.0625,
+ *     "ratePerMinute": 0.012,
+ *     "alerts": []
+ * }
+ * </pre>
+ * 
+ * the statistics are omitted until the first reading is received
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@JsonInclude(Include.NON_NULL)
+public final class HealthReport {
+
+	private final ObjectId id;
+	private final String label;
+	private final Instant lastUpdate;
+	private final long samples;
+	private final Double mean;
+	private final Double standardDeviation;
+	private final Double ratePerMinute;
+	private final List<HealthEvent> alerts;
+
+	HealthReport(ObjectId id, String label, Instant lastUpdate, long samples, Double mean, Double standardDeviation,
+			Double ratePerMinute, List<HealthEvent> alerts) {
+		this.id = id;
+		this.label = label;
+		this.lastUpdate = lastUpdate;
+		this.samples = samples;
+		this.mean = mean;
+		this.standardDeviation = standardDeviation;
+		this.ratePerMinute = ratePerMinute;
+		this.alerts = List.copyOf(alerts);
+	}
+
+	/**
+	 * gets the id of the thermostat
+	 * 
+	 * @return the thermostat id
+	 */
+	public ObjectId getId() {
+		return id;
+	}
+
+	/**
+	 * gets the label of the thermostat
+	 * 
+	 * @return the thermostat label
+	 */
+	public String getLabel() {
+		return label;
+	}
+
+	/**
+	 * gets the time of the latest reading included in the statistics
+	 * 
+	 * @return the time of the latest reading
+	 */
+	public Instant getLastUpdate() {
+		return lastUpdate;
+	}
+
+	/**
+	 * gets the number of readings included in the statistics
+	 * 
+	 * @return the number of readings
+	 */
+	public long getSamples() {
+		return samples;
+	}
+
+	/**
+	 * gets the moving average of the ambient temperature
+	 * 
+	 * @return the mean (degrees C)
+	 */
+	public Double getMean() {
+		return mean;
+	}
+
+	/**
+	 * gets the moving standard deviation of the ambient temperature
+	 * 
+	 * @return the standard deviation (degrees C)
+	 */
+	public Double getStandardDeviation() {
+		return standardDeviation;
+	}
+
+	/**
+	 * gets the moving average rate of change of the ambient temperature
+	 * 
+	 * @return the rate of change (degrees C per minute)
+	 */
+	public Double getRatePerMinute() {
+		return ratePerMinute;
+	}
+
+	/**
+	 * gets the conditions currently raised for the thermostat
+	 * 
+	 * @return the active alerts
+	 */
+	public List<HealthEvent> getAlerts() {
+		return alerts;
+	}
+}
@@ -0,0 +1,144 @@
+package edu.snhu.erik.mattheis.thermostat.health;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import edu.snhu.erik.mattheis.thermostat.db.ThermostatState;
+
+/**
+ * running statistics of the ambient temperature of one thermostat, updated in constant time and space per reading
+ *
+ * the mean, variance and rate of change are exponentially weighted moving averages with a time constant
+ * rather than a fixed smoothing factor, so irregularly spaced readings are weighted by the time between them:
+ *
+ * <pre>
+ * alpha    = 1 - exp(-dt / timeConstant)
+ * diff     = reading - mean
+ * mean     = mean + alpha * diff
+ * variance = (1 - alpha) * (variance + alpha * diff * diff)
+ * rate     = rate + alpha * ((reading - previous) / dt - rate)
+ * </pre>
+ *
+ * alongside these it tracks how long the reading has been unchanged while the heater was on, and since when
+ * the temperature has been below the desired temperature by more than the tolerance
+ *
+ * updated only by the monitor thread - reads from other threads go through {@link #report}
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class ThermostatStatistics {
+
+	private final double timeConstant;   // milliseconds
+	private final float tolerance;
+
+	private long samples;
+	private Instant lastUpdate;
+	private float reading;               // the latest reading
+	private double mean;
+	private double variance;
+	private double rate;                 // degrees per minute
+	private Boolean heaterOn;
+	private Float desiredTemperature;
+	private long unchangedHeating;       // milliseconds the heater was on since the reading last changed
+	private Instant unchangedSince;      // when the reading last changed
+	private Instant belowSince;          // when the temperature fell below the tolerance, null if not below
+
+	/**
+	 * creates empty statistics
+	 *
+	 * @param timeConstant the time constant of the moving averages
+	 * @param tolerance    how far below the desired temperature is still considered converged
+	 */
+	ThermostatStatistics(Duration timeConstant, float tolerance) {
+		this.timeConstant = timeConstant.toMillis();
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * adds the ambient temperature of a new state
+	 *
+	 * @param state the new state
+	 * @return {@code false} if the state holds no new reading
+	 */
+	synchronized boolean add(ThermostatState state) {
+		var timestamp = state.getLastUpdate();
+		var ambient = state.getAmbientTemperature();
+		if (timestamp == null || ambient == null || (lastUpdate != null && !timestamp.isAfter(lastUpdate))) {
+			return false;
+		}
+		if (samples == 0) {
+			mean = reading = ambient;
+			unchangedSince = timestamp;
+		} else {
+			var elapsed = Duration.between(lastUpdate, timestamp).toMillis();
+			var alpha = 1 - Math.exp(-elapsed / timeConstant);
+			var diff = ambient - mean;
+			mean += alpha * diff;
+			variance = (1 - alpha) * (variance + alpha * diff * diff);
+			rate += alpha * ((ambient - reading) * 60000.0 / Math.max(elapsed, 1) - rate);
+			if (ambient != reading) {
+				unchangedHeating = 0;
+				unchangedSince = timestamp;
+			} else if (Boolean.TRUE.equals(heaterOn)) {
+				unchangedHeating += elapsed;  // the heater was on for the time the previous reading was held
+			}
+			reading = ambient;
+		}
+		heaterOn = state.getHeaterOn();
+		desiredTemperature = state.getDesiredTemperature();
+		if (desiredTemperature == null || mean >= desiredTemperature - tolerance) {
+			belowSince = null;
+		} else if (belowSince == null) {
+			belowSince = timestamp;
+		}
+		lastUpdate = timestamp;
+		++samples;
+		return true;
+	}
+
+	synchronized double getMean() {
+		return mean;
+	}
+
+	synchronized double getRate() {
+		return rate;
+	}
+
+	synchronized float getReading() {
+		return reading;
+	}
+
+	synchronized Boolean getHeaterOn() {
+		return heaterOn;
+	}
+
+	synchronized Float getDesiredTemperature() {
+		return desiredTemperature;
+	}
+
+	synchronized Duration getUnchangedHeating() {
+		return Duration.ofMillis(unchangedHeating);
+	}
+
+	synchronized Instant getUnchangedSince() {
+		return unchangedSince;
+	}
+
+	synchronized Instant getBelowSince() {
+		return belowSince;
+	}
+
+	/**
+	 * copies the statistics into a report
+	 *
+	 * @param state  the current state of the thermostat
+	 * @param alerts the active alerts of the thermostat
+	 * @return the report
+	 */
+	synchronized HealthReport report(ThermostatState state, List<HealthEvent> alerts) {
+		return new HealthReport(state.getId(), state.getLabel(), lastUpdate, samples,
+				samples == 0 ? null : mean, samples == 0 ? null : Math.sqrt(variance), samples == 0 ? null : rate,
+				alerts);
+	}
+}
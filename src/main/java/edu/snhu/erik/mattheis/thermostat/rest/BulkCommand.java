@@ -0,0 +1,54 @@
+package edu.snhu.erik.mattheis.thermostat.rest;
+
+import org.bson.types.ObjectId;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * represents a command for a single thermostat in a bulk update request
+ * 
+ * <pre>
+ * {
+ *     "id": "614e59d4fb04a00ca2b7a984",
+ *     "desiredTemperature": 18.0
+ * }
+ * </pre>
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+public class BulkCommand {
+
+	private final ObjectId id;
+	private final Float desiredTemperature;
+
+	/**
+	 * creates a new instance with the given id and desired temperature
+	 * 
+	 * @param id the id of the thermostat to update
+	 * @param desiredTemperature the desired temperature to set, in degrees celsius
+	 */
+	@JsonCreator
+	public BulkCommand(@JsonProperty("id") ObjectId id, @JsonProperty("desiredTemperature") Float desiredTemperature) {
+		this.id = id;
+		this.desiredTemperature = desiredTemperature;
+	}
+
+	/**
+	 * gets the id of the thermostat to update
+	 * 
+	 * @return the thermostat id
+	 */
+	public ObjectId getId() {
+		return id;
+	}
+
+	/**
+	 * gets the desired temperature to set
+	 * 
+	 * @return the desired temperature in degrees celsius
+	 */
+	public Float getDesiredTemperature() {
+		return desiredTemperature;
+	}
+}
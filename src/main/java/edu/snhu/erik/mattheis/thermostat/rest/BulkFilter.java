@@ -0,0 +1,67 @@
+package edu.snhu.erik.mattheis.thermostat.rest;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import edu.snhu.erik.mattheis.thermostat.db.ThermostatState;
+
+/**
+ * selects the thermostats targeted by a bulk update request
+ * 
+ * <pre>
+ * {
+ *     "labelPrefix": "Floor 2",
+ *     "zone": "Floor 2 East"
+ * }
+ * </pre>
+ * 
+ * all fields are optional - an empty filter selects every thermostat
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+public class BulkFilter {
+
+	private final String labelPrefix;
+	private final String zone;
+
+	/**
+	 * creates a new instance with the given criteria
+	 * 
+	 * @param labelPrefix the prefix of the labels to select, or {@code null} for any label
+	 * @param zone the name of the zone to select, or {@code null} for any zone
+	 */
+	@JsonCreator
+	public BulkFilter(@JsonProperty("labelPrefix") String labelPrefix, @JsonProperty("zone") String zone) {
+		this.labelPrefix = labelPrefix;
+		this.zone = zone;
+	}
+
+	/**
+	 * gets the prefix of the labels to select
+	 * 
+	 * @return the label prefix
+	 */
+	public String getLabelPrefix() {
+		return labelPrefix;
+	}
+
+	/**
+	 * gets the name of the zone to select
+	 * 
+	 * @return the zone name
+	 */
+	public String getZone() {
+		return zone;
+	}
+
+	/**
+	 * determines whether the filter selects the given thermostat
+	 * 
+	 * @param thermostat the thermostat to test
+	 * @return {@code true} if the thermostat matches every criterion
+	 */
+	public boolean matches(ThermostatState thermostat) {
+		return (labelPrefix == null || (thermostat.getLabel() != null && thermostat.getLabel().startsWith(labelPrefix)))
+				&& (zone == null || zone.equals(thermostat.getZone()));
+	}
+}
@@ -0,0 +1,89 @@
+package edu.snhu.erik.mattheis.thermostat.rest;
+
+import org.bson.types.ObjectId;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+import edu.snhu.erik.mattheis.thermostat.db.ThermostatState;
+
+/**
+ * represents the outcome of a bulk update for a single thermostat
+ * 
+ * <pre>
+ * {
+ *     "id": "614e59d4fb04a00ca2b7a984",
+ *     "status": 200,
+ *     "thermostat": { ... }
+ * }
+ * 
+ * {
+ *     "id": "614e59d4fb04a00ca2b7a985",
+ *     "status": 504,
+ *     "error": "no update from thermostat within 5 seconds"
+ * }
+ * </pre>
+ * 
+ * the status is the HTTP status the single thermostat update endpoint would have returned
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@JsonInclude(Include.NON_NULL)
+public class BulkResult {
+
+	private final ObjectId id;
+	private final int status;
+	private final String error;
+	private final ThermostatState thermostat;
+
+	/**
+	 * creates a new instance with the given outcome
+	 * 
+	 * @param id the id of the thermostat
+	 * @param status the HTTP status of the update
+	 * @param error a description of the failure, or {@code null} on success
+	 * @param thermostat the updated state of the thermostat, or {@code null} on failure
+	 */
+	public BulkResult(ObjectId id, int status, String error, ThermostatState thermostat) {
+		this.id = id;
+		this.status = status;
+		this.error = error;
+		this.thermostat = thermostat;
+	}
+
+	/**
+	 * gets the id of the thermostat
+	 * 
+	 * @return the thermostat id
+	 */
+	public ObjectId getId() {
+		return id;
+	}
+
+	/**
+	 * gets the HTTP status of the update
+	 * 
+	 * @return the status code
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * gets a description of the failure
+	 * 
+	 * @return the error or {@code null} on success
+	 */
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * gets the updated state of the thermostat
+	 * 
+	 * @return the thermostat or {@code null} on failure
+	 */
+	public ThermostatState getThermostat() {
+		return thermostat;
+	}
+}
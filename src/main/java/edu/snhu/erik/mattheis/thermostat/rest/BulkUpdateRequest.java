@@ -0,0 +1,75 @@
+package edu.snhu.erik.mattheis.thermostat.rest;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * represents a request to update many thermostats at once
+ * 
+ * <pre>
+ * {
+ *     "commands": [
+ *         { "id": "614e59d4fb04a00ca2b7a984", "desiredTemperature": 18.0 },
+ *         { "id": "614e59d4fb04a00ca2b7a985", "desiredTemperature": 19.5 }
+ *     ],
+ *     "filter": { "zone": "Floor 2 East" },
+ *     "desiredTemperature": 17.0
+ * }
+ * </pre>
+ * 
+ * thermostats are targeted by explicit {@code commands}, by a {@code filter} with a shared
+ * {@code desiredTemperature}, or both - an explicit command wins over the filter for the same thermostat
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+public class BulkUpdateRequest {
+
+	private final List<BulkCommand> commands;
+	private final BulkFilter filter;
+	private final Float desiredTemperature;
+
+	/**
+	 * creates a new instance with the given commands and filter
+	 * 
+	 * @param commands the commands for individual thermostats
+	 * @param filter selects thermostats to set to {@code desiredTemperature}
+	 * @param desiredTemperature the desired temperature for thermostats selected by the filter, in degrees celsius
+	 */
+	@JsonCreator
+	public BulkUpdateRequest(@JsonProperty("commands") List<BulkCommand> commands,
+			@JsonProperty("filter") BulkFilter filter,
+			@JsonProperty("desiredTemperature") Float desiredTemperature) {
+		this.commands = commands == null ? List.of() : commands;
+		this.filter = filter;
+		this.desiredTemperature = desiredTemperature;
+	}
+
+	/**
+	 * gets the commands for individual thermostats
+	 * 
+	 * @return the commands, which may be empty
+	 */
+	public List<BulkCommand> getCommands() {
+		return commands;
+	}
+
+	/**
+	 * gets the filter selecting thermostats to set to the shared desired temperature
+	 * 
+	 * @return the filter or {@code null} if only explicit commands are used
+	 */
+	public BulkFilter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * gets the desired temperature for thermostats selected by the filter
+	 * 
+	 * @return the desired temperature in degrees celsius
+	 */
+	public Float getDesiredTemperature() {
+		return desiredTemperature;
+	}
+}
@@ -0,0 +1,103 @@
+package edu.snhu.erik.mattheis.thermostat.rest;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+import edu.snhu.erik.mattheis.thermostat.comm.ConnectionProgress;
+
+/**
+ * represents the progress of connecting to configured thermostats
+ * 
+ * <pre>
+ * {
+ *     "startup": {
+ *         "started": "2021-10-16T01:20:27.747Z",
+ *         "completed": "2021-10-16T01:20:29.112Z",
+ *         "total": 24,
+ *         "connected": 24,
+ *         "failed": 0,
+ *         "pending": 0,
+ *         "elapsedMillis": 1365
+ *     },
+ *     "latest": { ... },
+ *     "allConnectedMillis": 1365,
+ *     "registryLoadedMillis": 912,
+ *     "firstUsefulResponseMillis": 1034
+ * }
+ * </pre>
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@JsonInclude(Include.NON_NULL)
+public class ConnectionStatus {
+
+	private final ConnectionProgress startup;
+	private final ConnectionProgress latest;
+	private final Long allConnectedMillis;
+	private final Long registryLoadedMillis;
+	private final Long firstUsefulResponseMillis;
+
+	/**
+	 * creates a new instance with the given progress
+	 * 
+	 * @param startup the progress of connections made at startup
+	 * @param latest the progress of the most recent round of connections
+	 * @param allConnectedMillis the time from startup until all thermostats were connected, or {@code null}
+	 * @param registryLoadedMillis the time from JVM start until the thermostats were loaded, or {@code null}
+	 * @param firstUsefulResponseMillis the time from JVM start until the first list of loaded thermostats
+	 *                                  was served, or {@code null}
+	 */
+	public ConnectionStatus(ConnectionProgress startup, ConnectionProgress latest, Long allConnectedMillis,
+			Long registryLoadedMillis, Long firstUsefulResponseMillis) {
+		this.startup = startup;
+		this.latest = latest;
+		this.allConnectedMillis = allConnectedMillis;
+		this.registryLoadedMillis = registryLoadedMillis;
+		this.firstUsefulResponseMillis = firstUsefulResponseMillis;
+	}
+
+	/**
+	 * gets the progress of connections made at startup
+	 * 
+	 * @return the startup progress
+	 */
+	public ConnectionProgress getStartup() {
+		return startup;
+	}
+
+	/**
+	 * gets the progress of the most recent round of connections
+	 * 
+	 * @return the latest progress
+	 */
+	public ConnectionProgress getLatest() {
+		return latest;
+	}
+
+	/**
+	 * gets the time from startup until all configured thermostats were first connected
+	 * 
+	 * @return the elapsed time in milliseconds or {@code null} if not all thermostats have connected
+	 */
+	public Long getAllConnectedMillis() {
+		return allConnectedMillis;
+	}
+
+	/**
+	 * gets the time from JVM start until the configured thermostats were loaded with their last known state
+	 * 
+	 * @return the elapsed time in milliseconds or {@code null} if the thermostats have not been loaded
+	 */
+	public Long getRegistryLoadedMillis() {
+		return registryLoadedMillis;
+	}
+
+	/**
+	 * gets the time from JVM start until the first list of loaded thermostats was served
+	 * 
+	 * @return the elapsed time in milliseconds or {@code null} if no such list has been served
+	 */
+	public Long getFirstUsefulResponseMillis() {
+		return firstUsefulResponseMillis;
+	}
+}
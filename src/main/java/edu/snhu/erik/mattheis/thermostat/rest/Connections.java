@@ -0,0 +1,42 @@
+package edu.snhu.erik.mattheis.thermostat.rest;
+
+import java.time.Duration;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import edu.snhu.erik.mattheis.thermostat.comm.ThermostatManager;
+
+/**
+ * JAX-RS resource for the connections endpoint
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@Path("/connections")
+@ApplicationScoped
+public class Connections {
+
+	@Inject
+	ThermostatManager manager;
+
+	/**
+	 * gets the progress of connecting to configured thermostats
+	 * at startup and during the most recent poll, along with how
+	 * soon after JVM start the thermostats could be listed
+	 * 
+	 * @return the connection status
+	 */
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public ConnectionStatus getConnectionStatus() {
+		return new ConnectionStatus(manager.getStartupProgress().orElse(null),
+				manager.getLastProgress().orElse(null),
+				manager.getTimeUntilAllConnected().map(Duration::toMillis).orElse(null),
+				manager.getTimeUntilRegistryLoaded().map(Duration::toMillis).orElse(null),
+				manager.getTimeUntilFirstUsefulResponse().map(Duration::toMillis).orElse(null));
+	}
+}
@@ -0,0 +1,199 @@
+package edu.snhu.erik.mattheis.thermostat.rest;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+
+import org.bson.types.ObjectId;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.snhu.erik.mattheis.thermostat.comm.ThermostatChanges;
+import edu.snhu.erik.mattheis.thermostat.comm.ThermostatManager;
+import edu.snhu.erik.mattheis.thermostat.db.ThermostatState;
+
+/**
+ * JAX-RS resource for streaming thermostat updates as server-sent events,
+ * for clients which cannot use the websocket endpoint
+ * 
+ * <pre>
+ * event: thermostat
+ * id: 614e59d4fb04a00ca2b7a984:1042
+ * data: {"id":"614e59d4fb04a00ca2b7a984","label":"Prototype Board",...,"version":1042}
+ * </pre>
+ * 
+ * each event id is the thermostat id and the version of its state - a client reconnecting with a
+ * {@code Last-Event-ID} header is sent the buffered changes it missed, or the current state of every
+ * thermostat it follows if the buffer no longer reaches back that far (as on first connecting)
+ * 
+ * each stream has its own queue of at most {@code thermostat.events.queue-size} changes, drained by
+ * a thread of its own while it has anything to send, so a slow client holds up neither the thermostat
+ * updates feeding the queue nor the other streams - a stream whose queue overflows is closed, and the
+ * client resumes from the last event it received when it reconnects
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@Path("/thermostats/events")
+@ApplicationScoped
+public class ThermostatEvents {
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	@Inject
+	ThermostatManager manager;
+
+	@Inject
+	ThermostatChanges changes;
+
+	@ConfigProperty(name = "thermostat.events.queue-size", defaultValue = "4096")
+	int queueSize;
+
+	private volatile ExecutorService senders;
+
+	/**
+	 * starts the pool of threads which send events, one per stream with events waiting
+	 */
+	@PostConstruct
+	void init() {
+		var threads = new AtomicInteger();
+		senders = Executors.newCachedThreadPool(runnable -> {
+			var thread = new Thread(runnable, "thermostat-events-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * stops sending events, abandoning any still queued
+	 */
+	@PreDestroy
+	void destroy() {
+		senders.shutdownNow();
+	}
+
+	/**
+	 * streams updates of the thermostats with the given ids, or of all thermostats if none are given
+	 * 
+	 * @param ids the ids of the thermostats to follow
+	 * @param lastEventId the id of the last event received before reconnecting
+	 * @param sink the event sink for the connection
+	 * @param sse the factory for events
+	 */
+	@GET
+	@Produces(MediaType.SERVER_SENT_EVENTS)
+	public void streamEvents(@QueryParam("id") List<ObjectId> ids,
+			@HeaderParam(HttpHeaders.LAST_EVENT_ID_HEADER) String lastEventId,
+			@Context SseEventSink sink, @Context Sse sse) {
+		var followed = ids == null || ids.isEmpty() ? null : Set.copyOf(ids);
+		var subscriber = new EventStream(sink, sse) {
+			@Override
+			public void accept(ThermostatState thermostat) {
+				if (followed == null || followed.contains(thermostat.getId())) {
+					super.accept(thermostat);
+				}
+			}
+		};
+		ObjectId lastId = null;
+		var lastVersion = 0L;
+		if (lastEventId != null) {
+			var separator = lastEventId.indexOf(':');
+			try {
+				lastId = new ObjectId(lastEventId.substring(0, separator));
+				lastVersion = Long.parseLong(lastEventId.substring(separator + 1));
+			} catch (RuntimeException e) {
+				lastId = null;                                   // unrecognised, so start afresh
+			}
+		}
+		changes.subscribe(subscriber, lastId, lastVersion, manager::listThermostats);
+	}
+
+	/*
+	 * a subscriber queueing changes for one stream - only the hand-off to the queue happens on the
+	 * thread reporting the change
+	 */
+	private class EventStream implements Consumer<ThermostatState> {
+		private final BlockingQueue<ThermostatState> queue = new ArrayBlockingQueue<>(queueSize);
+		private final AtomicBoolean draining = new AtomicBoolean();
+		private final SseEventSink sink;
+		private final Sse sse;
+
+		private volatile boolean overflowed;
+
+		EventStream(SseEventSink sink, Sse sse) {
+			this.sink = sink;
+			this.sse = sse;
+		}
+
+		@Override
+		public void accept(ThermostatState thermostat) {
+			if (!queue.offer(thermostat)) {
+				overflowed = true;                              // closed by the sending thread
+			}
+			if (draining.compareAndSet(false, true)) {
+				senders.execute(this::drain);
+			}
+		}
+
+		/*
+		 * sends queued events until the queue is empty, waiting for each to be written
+		 */
+		private void drain() {
+			do {
+				ThermostatState next;
+				while ((next = queue.poll()) != null) {
+					if (overflowed || sink.isClosed()) {
+						close(overflowed ? "client not keeping up" : "client disconnected");
+						return;                                 // leaves draining set, so nothing more is queued
+					}
+					try {
+						send(next);
+					} catch (RuntimeException e) {
+						close(e.getMessage());
+						return;
+					}
+				}
+				draining.set(false);
+			} while (!queue.isEmpty() && draining.compareAndSet(false, true));
+		}
+
+		private void send(ThermostatState thermostat) {
+			sink.send(sse.newEventBuilder()
+					.name("thermostat")
+					.id(thermostat.getId().toHexString() + ":" + thermostat.getVersion())
+					.mediaType(MediaType.APPLICATION_JSON_TYPE)
+					.data(ThermostatState.class, thermostat)
+					.build())
+					.toCompletableFuture()
+					.join();
+		}
+
+		private void close(String reason) {
+			log.info("closing event stream: {}", reason);
+			changes.unsubscribe(this);
+			queue.clear();
+			sink.close();
+		}
+	}
+}
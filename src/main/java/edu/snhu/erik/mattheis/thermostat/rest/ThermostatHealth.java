@@ -0,0 +1,81 @@
+package edu.snhu.erik.mattheis.thermostat.rest;
+
+import java.util.List;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.bson.types.ObjectId;
+
+import edu.snhu.erik.mattheis.thermostat.health.HealthEvent;
+import edu.snhu.erik.mattheis.thermostat.health.HealthMonitor;
+import edu.snhu.erik.mattheis.thermostat.health.HealthReport;
+
+/**
+ * JAX-RS resource for the health of thermostats - events are also pushed
+ * as they occur on the {@code /api/thermostats/alerts} websocket endpoint
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@Path("/thermostats/health")
+@ApplicationScoped
+public class ThermostatHealth {
+
+	@Inject
+	HealthMonitor monitor;
+
+	/**
+	 * gets the running statistics and active alerts of every thermostat
+	 * 
+	 * @return the health of each thermostat
+	 */
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<HealthReport> getReports() {
+		return monitor.getReports();
+	}
+
+	/**
+	 * gets every condition currently raised across all thermostats
+	 * 
+	 * @return the active alerts
+	 */
+	@GET
+	@Path("/alerts")
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<HealthEvent> getActiveAlerts() {
+		return monitor.getActiveAlerts();
+	}
+
+	/**
+	 * gets the most recent events, both raised and cleared, oldest first
+	 * 
+	 * @return the recent events
+	 */
+	@GET
+	@Path("/events")
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<HealthEvent> getRecentEvents() {
+		return monitor.getRecentEvents();
+	}
+
+	/**
+	 * gets the running statistics and active alerts of the thermostat with the given id
+	 * 
+	 * @param id the id of the thermostat
+	 * @return the health of the thermostat
+	 * @throws NotFoundException if no thermostat was found with the given id
+	 */
+	@GET
+	@Path("/{id}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public HealthReport getReport(@PathParam("id") ObjectId id) {
+		return monitor.getReport(id).orElseThrow(NotFoundException::new);
+	}
+}
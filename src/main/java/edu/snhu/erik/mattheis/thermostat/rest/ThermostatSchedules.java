@@ -0,0 +1,119 @@
+package edu.snhu.erik.mattheis.thermostat.rest;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.bson.types.ObjectId;
+
+import edu.snhu.erik.mattheis.thermostat.comm.ThermostatManager;
+import edu.snhu.erik.mattheis.thermostat.db.Schedule;
+import edu.snhu.erik.mattheis.thermostat.schedule.ScheduleEngine;
+
+/**
+ * JAX-RS resource for the setpoint schedule of a thermostat
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@Path("/thermostats/{id}/schedule")
+@ApplicationScoped
+public class ThermostatSchedules {
+
+	@Inject
+	ThermostatManager manager;
+
+	@Inject
+	ScheduleEngine engine;
+
+	/**
+	 * gets the schedule of the thermostat with the given id
+	 * 
+	 * <pre>
+	 * {
+	 *     "zone": "America/New_York",
+	 *     "weekly": [
+	 *         { "days": [ "MONDAY", "TUESDAY", "WEDNESDAY", "THURSDAY", "FRIDAY" ], "time": "22:00", "desiredTemperature": 17.0 }
+	 *     ],
+	 *     "overrides": [
+	 *         { "from": "2021-12-24T05:00:00Z", "until": "2021-12-27T05:00:00Z", "desiredTemperature": 15.0 }
+	 *     ]
+	 * }
+	 * </pre>
+	 * 
+	 * @param id the id of the thermostat
+	 * @return the schedule, empty if the thermostat has none
+	 * @throws NotFoundException if no thermostat was found with the given ID
+	 */
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public Schedule getSchedule(@PathParam("id") ObjectId id) {
+		var schedule = manager.getThermostat(id).orElseThrow(NotFoundException::new).getSchedule();
+		return schedule == null ? new Schedule() : schedule;
+	}
+
+	/**
+	 * replaces the schedule of the thermostat with the given id, taking effect from the next change
+	 * 
+	 * @param id the id of the thermostat
+	 * @param schedule the new schedule
+	 * @return the stored schedule
+	 * @throws NotFoundException if no thermostat was found with the given ID
+	 * @throws BadRequestException if the schedule is invalid
+	 */
+	@PUT
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public Schedule setSchedule(@PathParam("id") ObjectId id, Schedule schedule) {
+		if (schedule == null) {
+			throw new BadRequestException("schedule is required");
+		}
+		try {
+			return engine.setSchedule(id, schedule).orElseThrow(NotFoundException::new).getSchedule();
+		} catch (IllegalArgumentException e) {
+			throw new BadRequestException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * removes the schedule of the thermostat with the given id, leaving its desired temperature as it is
+	 * 
+	 * @param id the id of the thermostat
+	 * @throws NotFoundException if no thermostat was found with the given ID
+	 */
+	@DELETE
+	public void deleteSchedule(@PathParam("id") ObjectId id) {
+		engine.setSchedule(id, null).orElseThrow(NotFoundException::new);
+	}
+
+	/**
+	 * gets the next change scheduled for the thermostat with the given id
+	 * 
+	 * <pre>
+	 * {
+	 *     "at": "2021-10-18T02:00:00Z",
+	 *     "desiredTemperature": 17.0
+	 * }
+	 * </pre>
+	 * 
+	 * @param id the id of the thermostat
+	 * @return the next change, or {@code 204 No Content} if none is scheduled
+	 * @throws NotFoundException if no thermostat was found with the given ID
+	 */
+	@GET
+	@Path("/next")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getNextChange(@PathParam("id") ObjectId id) {
+		manager.getThermostat(id).orElseThrow(NotFoundException::new);
+		return engine.getNextChange(id).map(Response::ok).orElseGet(Response::noContent).build();
+	}
+}
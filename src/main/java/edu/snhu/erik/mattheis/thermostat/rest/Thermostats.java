@@ -1,12 +1,28 @@
 package edu.snhu.erik.mattheis.thermostat.rest;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.ForbiddenException;
@@ -20,20 +36,34 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.ServerErrorException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.bson.types.ObjectId;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fazecast.jSerialComm.SerialPortInvalidPortException;
-import com.mongodb.MongoWriteException;
 
+import edu.snhu.erik.mattheis.thermostat.comm.EncodedThermostat;
+import edu.snhu.erik.mattheis.thermostat.comm.ThermostatChanges;
 import edu.snhu.erik.mattheis.thermostat.comm.ThermostatManager;
+import edu.snhu.erik.mattheis.thermostat.comm.ThermostatPage;
+import edu.snhu.erik.mattheis.thermostat.comm.ThermostatQuery;
+import edu.snhu.erik.mattheis.thermostat.comm.ThermostatQuery.Sort;
 import edu.snhu.erik.mattheis.thermostat.db.TemperatureHistory;
-import edu.snhu.erik.mattheis.thermostat.db.TemperatureRepository;
-import edu.snhu.erik.mattheis.thermostat.db.Thermostat;
+import edu.snhu.erik.mattheis.thermostat.db.ThermostatState;
+import edu.snhu.erik.mattheis.thermostat.store.DuplicateThermostatException;
+import edu.snhu.erik.mattheis.thermostat.store.ThermostatStorage;
+import edu.snhu.erik.mattheis.thermostat.trace.HistoryEvent;
+import io.vertx.core.http.HttpServerResponse;
 
 /**
  * JAX-RS resource for the thermostats endpoint
@@ -44,11 +74,33 @@ import edu.snhu.erik.mattheis.thermostat.db.Thermostat;
 @ApplicationScoped
 public class Thermostats {
 
+	/**
+	 * media type for newline delimited JSON
+	 */
+	public static final String NDJSON = "application/x-ndjson";
+
+	private static final int MAX_LIMIT = 1000;
+
 	@Inject
 	ThermostatManager manager;
 	
 	@Inject
-	TemperatureRepository temperatureRepository;
+	ThermostatStorage storage;
+
+	@Inject
+	ObjectMapper objectMapper;
+
+	@Inject
+	ThermostatChanges changes;
+
+	@ConfigProperty(name = "thermostat.long-poll.timeout", defaultValue = "30s")
+	Duration longPollTimeout;
+
+	@ConfigProperty(name = "thermostat.health.stale-after", defaultValue = "3m")
+	Duration staleAfter;
+
+	@Context
+	Request request;
 
 	/**
 	 * gets the state of all configured thermostats
@@ -68,12 +120,64 @@ public class Thermostats {
 	 * ]
 	 * </pre>
 	 * 
+	 * the list is written from the pre-encoded snapshot kept by the manager, which holds the last known
+	 * state of every configured thermostat from startup onwards, with {@code "connection"} telling whether
+	 * it is still {@code "connecting"}, {@code "connected"} or {@code "disconnected"}
+	 * 
+	 * given any query parameter, the list is instead served from secondary indexes kept by the manager -
+	 * it can be filtered, sorted (on {@code label}, {@code lastUpdate} or {@code ambientTemperature},
+	 * descending with a leading {@code -}) and limited, in which case a {@code Link} header with
+	 * {@code rel="next"} gives the URI of the following page:
+	 * 
+	 * <pre>
+	 * GET /api/thermostats?labelPrefix=Floor%202&amp;heaterOn=true&amp;sort=-lastUpdate&amp;limit=50&amp;fields=label,ambientTemperature
+	 * 
+	 * Link: &lt;http://localhost:8080/api/thermostats?...&amp;cursor=bGFzdFVwZGF0ZTo2MTRl...&gt;; rel="next"
+	 * 
+	 * [ { "id": "614e59d4fb04a00ca2b7a984", "label": "Floor 2 East", "ambientTemperature": 21.5 }, ... ]
+	 * </pre>
+	 * 
+	 * @param uriInfo     context information supplied by the container - used to generate the next page link
+	 * @param labelPrefix the prefix of the labels to list
+	 * @param port        the port of the thermostat to list
+	 * @param heaterOn    whether to list thermostats with the heater on or off
+	 * @param stale       whether to list thermostats which have or have not gone without an update for
+	 *                    {@code thermostat.health.stale-after}
+	 * @param sort        the field to sort on, with a leading {@code -} to sort descending - {@code label} by default
+	 * @param cursor      the cursor from the link to the next page
+	 * @param limit       the most thermostats to list, from 1 to 1000
+	 * @param fields      a comma separated list of the fields to include, always including {@code id}
 	 * @return the list of thermostat states 
+	 * @throws BadRequestException if a parameter is invalid
 	 */
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)
-	public List<Thermostat> listThermostats() {
-		return manager.listThermostats();
+	public Response listThermostats(@Context UriInfo uriInfo, @QueryParam("labelPrefix") String labelPrefix,
+			@QueryParam("port") String port, @QueryParam("heaterOn") Boolean heaterOn,
+			@QueryParam("stale") Boolean stale, @QueryParam("sort") String sort, @QueryParam("cursor") String cursor,
+			@QueryParam("limit") Integer limit, @QueryParam("fields") String fields) {
+		manager.responding();
+		if (uriInfo.getQueryParameters().isEmpty()) {
+			return Response.ok(manager.getSnapshot().getJson()).build();
+		}
+		if (limit != null && (limit < 1 || limit > MAX_LIMIT)) {
+			throw new BadRequestException("limit must be from 1 to " + MAX_LIMIT);
+		}
+		ThermostatPage page;
+		try {
+			var descending = sort != null && sort.startsWith("-");
+			page = manager.queryThermostats(new ThermostatQuery(labelPrefix, port, heaterOn, stale,
+					Instant.now().minus(staleAfter),
+					sort == null ? Sort.LABEL : Sort.of(descending ? sort.substring(1) : sort), descending,
+					cursor, limit));
+		} catch (IllegalArgumentException e) {
+			throw new BadRequestException(e.getMessage());
+		}
+		var response = Response.ok(encode(page.getThermostats(), fields));
+		if (page.getNext() != null) {
+			response.link(uriInfo.getRequestUriBuilder().replaceQueryParam("cursor", page.getNext()).build(), "next");
+		}
+		return response.build();
 	}
 
 	/**
@@ -91,10 +195,10 @@ public class Thermostats {
 			var thermostat = manager.connectThermostat(request.getLabel(), request.getPort());
 			var location = uriInfo.getAbsolutePathBuilder()
 					.path(Thermostats.class, "getThermostat")
-					.build(thermostat.id);
+					.build(thermostat.getId());
 			return Response.seeOther(location).build();
-		} catch (MongoWriteException e) {
-			return Response.status(Status.CONFLICT).entity(e.getError().getMessage()).build();
+		} catch (DuplicateThermostatException e) {
+			return Response.status(Status.CONFLICT).entity(e.getMessage()).build();
 		} catch (IllegalArgumentException | SerialPortInvalidPortException e) {
 			return Response.status(Status.BAD_REQUEST).entity(e.getMessage()).build();
 		} catch (IOException e) {
@@ -114,19 +218,39 @@ public class Thermostats {
 	 *     "desiredTemperature": 20.0,
 	 *     "ambientTemperature": 25.0625,
 	 *     "heaterOn": false,
-	 *     "remoteUpdateDisabled": false
+	 *     "remoteUpdateDisabled": false,
+	 *     "version": 1042
 	 * }
 	 * </pre>
 	 * 
+	 * the response carries the version as its ETag, so a request with a matching
+	 * {@code If-None-Match} header gets {@code 304 Not Modified} - with {@code waitForChangeAfter}
+	 * the request is parked without holding a thread until the version passes the given one,
+	 * responding {@code 304 Not Modified} if it has not changed by {@code thermostat.long-poll.timeout}
+	 * 
 	 * @param id the id of the thermostat to get
+	 * @param waitForChangeAfter the latest version the caller has seen, or {@code null} to respond immediately
 	 * @return the state of the matching thermostat
 	 * @throws NotFoundException if no thermostat was found with the given ID
 	 */
 	@GET
 	@Path("/{id}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Thermostat getThermostat(@PathParam("id") ObjectId id) {
-		return manager.getThermostat(id).orElseThrow(NotFoundException::new);
+	public CompletionStage<Response> getThermostat(@PathParam("id") ObjectId id,
+			@QueryParam("waitForChangeAfter") Long waitForChangeAfter) {
+		if (waitForChangeAfter == null) {
+			var encoded = manager.getSnapshot().getThermostat(id).orElseThrow(NotFoundException::new);
+			var etag = etag(encoded.getState());
+			var notModified = request.evaluatePreconditions(etag);
+			return CompletableFuture.completedFuture(notModified != null
+					? notModified.build()
+					: Response.ok(encoded.getJson()).tag(etag).build());
+		}
+		var initial = manager.getThermostat(id).orElseThrow(NotFoundException::new);
+		return changes.awaitChange(id, () -> manager.getThermostat(id).orElse(null), waitForChangeAfter, longPollTimeout)
+				.thenApply(changed -> changed
+						.map(state -> Response.ok(encoded(state)).tag(etag(state)).build())
+						.orElseGet(() -> Response.notModified(etag(manager.getThermostat(id).orElse(initial))).build()));
 	}
 
 	/**
@@ -155,7 +279,11 @@ public class Thermostats {
 	@Path("/{id}")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Thermostat updateThermostat(@PathParam("id") ObjectId id, UpdateThermostatRequest request) {
+	public ThermostatState updateThermostat(@PathParam("id") ObjectId id, UpdateThermostatRequest request) {
+		if (request.hasSampling()) {
+			manager.setThermostatSampling(id, request.getSampleDeadband(), request.getSampleHeartbeatSeconds())
+					.orElseThrow(NotFoundException::new);
+		}
 		if (request.getDesiredTemperature() != null) {
 			try {
 				return manager.setThermostatDesiredTemperature(id, request.getDesiredTemperature())
@@ -164,11 +292,79 @@ public class Thermostats {
 				throw new ForbiddenException(e);
 			} catch (TimeoutException e) {
 				throw new ServerErrorException(Status.GATEWAY_TIMEOUT, e);
-			} catch (IOException | InterruptedException e) {
+			} catch (InterruptedException e) {
 				throw new InternalServerErrorException(e);
 			}
 		}
-		return getThermostat(id);
+		return manager.getThermostat(id).orElseThrow(NotFoundException::new);
+	}
+
+	/**
+	 * sets the desired temperature of many thermostats concurrently,
+	 * returns the outcome for each thermostat in the order they were targeted
+	 * 
+	 * <pre>
+	 * [
+	 *     {
+	 *         "id": "614e59d4fb04a00ca2b7a984",
+	 *         "status": 200,
+	 *         "thermostat": { ... }
+	 *     },
+	 *     {
+	 *         "id": "614e59d4fb04a00ca2b7a985",
+	 *         "status": 504,
+	 *         "error": "no update from thermostat within 5 seconds"
+	 *     }
+	 * ]
+	 * </pre>
+	 * 
+	 * @param request the updates to perform
+	 * @return the outcome for each thermostat
+	 * @throws BadRequestException if the request targets no thermostats or a temperature is missing
+	 */
+	@POST
+	@Path("/bulk")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<BulkResult> bulkUpdateThermostats(BulkUpdateRequest request) {
+		return startBulkUpdate(request).entrySet().stream() // every update is already running, so joining in order is fine
+				.map(update -> update.getValue().handle((thermostat, e) -> toBulkResult(update.getKey(), thermostat, e)).join())
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * sets the desired temperature of many thermostats concurrently, streaming the outcome for each
+	 * thermostat as newline delimited JSON in the order the thermostats acknowledge the update
+	 * 
+	 * <pre>
+	 * { "id": "614e59d4fb04a00ca2b7a985", "status": 404, "error": "not found" }
+	 * { "id": "614e59d4fb04a00ca2b7a984", "status": 200, "thermostat": { ... } }
+	 * </pre>
+	 * 
+	 * @param request the updates to perform
+	 * @return the stream of outcomes
+	 * @throws BadRequestException if the request targets no thermostats or a temperature is missing
+	 */
+	@POST
+	@Path("/bulk")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(NDJSON)
+	public StreamingOutput streamBulkUpdateThermostats(BulkUpdateRequest request) {
+		var updates = startBulkUpdate(request);
+		BlockingQueue<BulkResult> results = new LinkedBlockingQueue<>();
+		updates.forEach((id, update) -> update.handle((thermostat, e) -> results.add(toBulkResult(id, thermostat, e))));
+		return output -> {
+			try {
+				for (var i = 0; i < updates.size(); ++i) {
+					output.write(objectMapper.writeValueAsString(results.take()).getBytes(StandardCharsets.UTF_8));
+					output.write('\n');
+					output.flush();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted streaming bulk update results", e);
+			}
+		};
 	}
 
 	/**
@@ -189,6 +385,9 @@ public class Thermostats {
 	 * gets the temperature history for the given thermostat
 	 * using average temperatures over 15 minute intervals
 	 * 
+	 * each interval also reports the fraction of time the heater was on and the average
+	 * desired temperature, or {@code null} for intervals recorded before these were captured
+	 * 
 	 * <pre>
 	 * {
 	 *     "timestamps": [
@@ -204,19 +403,213 @@ public class Thermostats {
 	 *         25.1875,25.
 	 *         12215909090909,
 	 *         25.069196428571427
+	 *     ],
+	 *     "dutyCycles": [
+	 *         null,
+	 *         0.42,
+	 *         0.0,
+	 *         0.1875,
+	 *         0.6
+	 *     ],
+	 *     "desiredTemperatures": [
+	 *         null,
+	 *         25.0,
+	 *         25.0,
+	 *         24.5,
+	 *         25.5
 	 *     ]
 	 * }
 	 * </pre>
 	 * 
+	 * the query is abandoned if the client disconnects before it completes
+	 * 
 	 * @param id the ID of the thermostat to get the temperature history for
 	 * @param from the start fo the time period to report on
 	 * @param to the end of the time period to report on
+	 * @param response the Vert.x response - used to notice the client disconnecting
 	 * @return the temperature history
+	 * @throws BadRequestException if from or to is missing
+	 * @throws ServerErrorException with 504 (Gateway Timeout) if the query takes too long
 	 */
 	@GET
 	@Path("/{id}/temperature/history")
 	@Produces(MediaType.APPLICATION_JSON)
-	public TemperatureHistory getThermostatTemperatureHistory(@PathParam("id") String id, @QueryParam("from") Instant from, @QueryParam("to") Instant to) {
-		return temperatureRepository.getTemperatureHistory(id, from, to);
+	public CompletionStage<TemperatureHistory> getThermostatTemperatureHistory(@PathParam("id") String id,
+			@QueryParam("from") Instant from, @QueryParam("to") Instant to, @Context HttpServerResponse response) {
+		return history(List.of(id), from, to, response).thenApply(histories -> histories.get(id));
+	}
+
+	/**
+	 * gets the temperature history for several thermostats at once
+	 * using average temperatures over 15 minute intervals
+	 * 
+	 * <pre>
+	 * {
+	 *     "614e59d4fb04a00ca2b7a984": {
+	 *         "timestamps": [ 1634337900000, 1634338800000 ],
+	 *         "temperatures": [ 25.09375, 25.234375 ],
+	 *         "dutyCycles": [ 0.42, 0.0 ],
+	 *         "desiredTemperatures": [ 25.0, 25.0 ]
+	 *     },
+	 *     "614e59d4fb04a00ca2b7a985": {
+	 *         "timestamps": [ 1634337900000 ],
+	 *         "temperatures": [ 21.5 ],
+	 *         "dutyCycles": [ 1.0 ],
+	 *         "desiredTemperatures": [ 22.0 ]
+	 *     }
+	 * }
+	 * </pre>
+	 * 
+	 * the query is abandoned if the client disconnects before it completes
+	 * 
+	 * @param ids the IDs of the thermostats to get the temperature history for
+	 * @param from the start fo the time period to report on
+	 * @param to the end of the time period to report on
+	 * @param response the Vert.x response - used to notice the client disconnecting
+	 * @return the temperature history of each thermostat keyed by ID
+	 * @throws BadRequestException if no IDs are given or from or to is missing
+	 * @throws ServerErrorException with 504 (Gateway Timeout) if the query takes too long
+	 */
+	@GET
+	@Path("/temperature/history")
+	@Produces(MediaType.APPLICATION_JSON)
+	public CompletionStage<Map<String, TemperatureHistory>> getTemperatureHistories(@QueryParam("id") List<String> ids,
+			@QueryParam("from") Instant from, @QueryParam("to") Instant to, @Context HttpServerResponse response) {
+		if (ids == null || ids.isEmpty()) {
+			throw new BadRequestException("at least one id is required");
+		}
+		return history(new LinkedHashSet<>(ids), from, to, response);
+	}
+
+	/*
+	 * starts a history query which is cancelled if the client disconnects before it completes
+	 */
+	private CompletableFuture<Map<String, TemperatureHistory>> history(Collection<String> ids, Instant from,
+			Instant to, HttpServerResponse response) {
+		if (from == null || to == null) {
+			throw new BadRequestException("from and to are required");
+		}
+		var event = new HistoryEvent();
+		event.begin();
+		var query = storage.getTemperatureHistoriesAsync(ids, from, to);
+		response.closeHandler(closed -> query.cancel(false));
+		return query.handle((histories, e) -> {
+			if (e instanceof CompletionException && e.getCause() != null) {
+				e = e.getCause();
+			}
+			if (e instanceof TimeoutException) {
+				throw new ServerErrorException(e.getMessage(), Status.GATEWAY_TIMEOUT);
+			} else if (e != null) {
+				throw new CompletionException(e);
+			}
+			commit(event, from, to, histories.values());
+			return histories;
+		});
+	}
+
+	/*
+	 * resolves the thermostats targeted by a bulk update and starts updating them all
+	 */
+	private Map<ObjectId, CompletableFuture<Optional<ThermostatState>>> startBulkUpdate(BulkUpdateRequest request) {
+		var targets = new LinkedHashMap<ObjectId, Float>();
+		if (request.getFilter() != null) {
+			if (request.getDesiredTemperature() == null) {
+				throw new BadRequestException("desiredTemperature is required with filter");
+			}
+			manager.listThermostats().stream()
+					.filter(request.getFilter()::matches)
+					.forEach(thermostat -> targets.put(thermostat.getId(), request.getDesiredTemperature()));
+		}
+		for (var command : request.getCommands()) {
+			if (command.getId() == null || command.getDesiredTemperature() == null) {
+				throw new BadRequestException("id and desiredTemperature are required for each command");
+			}
+			targets.put(command.getId(), command.getDesiredTemperature());
+		}
+		if (targets.isEmpty()) {
+			throw new BadRequestException("no thermostats targeted");
+		}
+		var updates = new LinkedHashMap<ObjectId, CompletableFuture<Optional<ThermostatState>>>();
+		targets.forEach((id, desiredTemperature) ->
+				updates.put(id, manager.setThermostatDesiredTemperatureAsync(id, desiredTemperature)));
+		return updates;
+	}
+
+	/*
+	 * maps the outcome of a single update to the status the single update endpoint would return
+	 */
+	private static BulkResult toBulkResult(ObjectId id, Optional<ThermostatState> thermostat, Throwable e) {
+		if (e instanceof CompletionException && e.getCause() != null) {
+			e = e.getCause();
+		}
+		if (e == null) {
+			return thermostat.map(updated -> new BulkResult(id, Status.OK.getStatusCode(), null, updated))
+					.orElseGet(() -> new BulkResult(id, Status.NOT_FOUND.getStatusCode(), "not found", null));
+		} else if (e instanceof IllegalStateException) {
+			return new BulkResult(id, Status.FORBIDDEN.getStatusCode(), e.getMessage(), null);
+		} else if (e instanceof TimeoutException) {
+			return new BulkResult(id, Status.GATEWAY_TIMEOUT.getStatusCode(), e.getMessage(), null);
+		}
+		return new BulkResult(id, Status.INTERNAL_SERVER_ERROR.getStatusCode(), e.getMessage(), null);
+	}
+
+	/*
+	 * records a history aggregation for the flight recorder, whatever the storage in use
+	 */
+	private static void commit(HistoryEvent event, Instant from, Instant to, Collection<TemperatureHistory> histories) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.from = from == null ? 0 : from.toEpochMilli();
+			event.to = to == null ? 0 : to.toEpochMilli();
+			event.thermostats = histories.size();
+			event.bins = histories.stream().mapToInt(history -> history.getTimestamps().size()).sum();
+			event.commit();
+		}
+	}
+
+	private static EntityTag etag(ThermostatState thermostat) {
+		return new EntityTag(Long.toString(thermostat.getVersion()));
+	}
+
+	/*
+	 * joins the pre-encoded states into a list, unless only some fields are wanted
+	 */
+	private byte[] encode(List<EncodedThermostat> thermostats, String fields) {
+		if (fields == null || fields.isBlank()) {
+			var buffer = new ByteArrayOutputStream();
+			buffer.write('[');
+			for (var i = 0; i < thermostats.size(); ++i) {
+				if (i > 0) {
+					buffer.write(',');
+				}
+				buffer.writeBytes(thermostats.get(i).getJson());
+			}
+			buffer.write(']');
+			return buffer.toByteArray();
+		}
+		var names = new HashSet<String>();
+		names.add("id");
+		for (var field : fields.split(",")) {
+			names.add(field.trim());
+		}
+		var list = objectMapper.createArrayNode();
+		for (var thermostat : thermostats) {
+			list.add(objectMapper.<ObjectNode>valueToTree(thermostat.getState()).retain(names));
+		}
+		try {
+			return objectMapper.writeValueAsBytes(list);
+		} catch (JsonProcessingException e) {
+			throw new InternalServerErrorException("problem encoding thermostats", e);
+		}
+	}
+
+	/*
+	 * gets the pre-encoded state if the snapshot holds the same version, otherwise the state to be encoded
+	 */
+	private Object encoded(ThermostatState state) {
+		return manager.getSnapshot().getThermostat(state.getId())
+				.filter(encoded -> encoded.getState().getVersion() == state.getVersion())
+				.<Object>map(EncodedThermostat::getJson)
+				.orElse(state);
 	}
 }
@@ -8,24 +8,38 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  * 
  * <pre>
  * {
- *     "desiredTemperature": 23.0
+ *     "desiredTemperature": 23.0,
+ *     "sampleDeadband": 0.25,
+ *     "sampleHeartbeatSeconds": 600
  * }
  * </pre>
  * 
+ * all fields are optional - the sampling policy is only updated when
+ * {@code sampleDeadband} or {@code sampleHeartbeatSeconds} is present,
+ * in which case an absent sampling field reverts to the server default
+ * 
  * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
  */
 public class UpdateThermostatRequest {
 
 	private final Float desiredTemperature;
+	private final Float sampleDeadband;
+	private final Long sampleHeartbeatSeconds;
 
 	/**
-	 * creates a new instance with the given desired temperature
+	 * creates a new instance with the given desired temperature and sampling policy
 	 * 
 	 * @param desiredTemperature the desired temperature to set, in degrees celsius
+	 * @param sampleDeadband the change in degrees celsius which causes a temperature sample to be stored
+	 * @param sampleHeartbeatSeconds the maximum number of seconds between temperature samples
 	 */
 	@JsonCreator
-	public UpdateThermostatRequest(@JsonProperty("desiredTemperature") Float desiredTemperature) {
+	public UpdateThermostatRequest(@JsonProperty("desiredTemperature") Float desiredTemperature,
+			@JsonProperty("sampleDeadband") Float sampleDeadband,
+			@JsonProperty("sampleHeartbeatSeconds") Long sampleHeartbeatSeconds) {
 		this.desiredTemperature = desiredTemperature;
+		this.sampleDeadband = sampleDeadband;
+		this.sampleHeartbeatSeconds = sampleHeartbeatSeconds;
 	}
 
 	/**
@@ -36,4 +50,31 @@ public class UpdateThermostatRequest {
 	public Float getDesiredTemperature() {
 		return desiredTemperature;
 	}
+
+	/**
+	 * gets the change in temperature which causes a sample to be stored
+	 * 
+	 * @return the deadband in degrees celsius
+	 */
+	public Float getSampleDeadband() {
+		return sampleDeadband;
+	}
+
+	/**
+	 * gets the maximum time between stored temperature samples
+	 * 
+	 * @return the heartbeat in seconds
+	 */
+	public Long getSampleHeartbeatSeconds() {
+		return sampleHeartbeatSeconds;
+	}
+
+	/**
+	 * determines whether the request updates the sampling policy
+	 * 
+	 * @return {@code true} if either sampling field is present
+	 */
+	public boolean hasSampling() {
+		return sampleDeadband != null || sampleHeartbeatSeconds != null;
+	}
 }
@@ -0,0 +1,133 @@
+package edu.snhu.erik.mattheis.thermostat.rest;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.bson.types.ObjectId;
+
+import edu.snhu.erik.mattheis.thermostat.comm.ThermostatManager;
+import edu.snhu.erik.mattheis.thermostat.db.ThermostatState;
+import edu.snhu.erik.mattheis.thermostat.zone.ZoneAggregates;
+import edu.snhu.erik.mattheis.thermostat.zone.ZoneState;
+
+/**
+ * JAX-RS resource for zones of thermostats - changes to the aggregate state of zones are also
+ * pushed as they occur on the {@code /api/zones/updates} websocket endpoint, and bulk updates
+ * can target a zone with {@code "filter": { "zone": "..." }}
+ * 
+ * a zone exists while it has at least one thermostat
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@Path("/zones")
+@ApplicationScoped
+public class Zones {
+
+	@Inject
+	ThermostatManager manager;
+
+	@Inject
+	ZoneAggregates aggregates;
+
+	/**
+	 * gets the aggregate state of every zone
+	 * 
+	 * <pre>
+	 * [
+	 *     {
+	 *         "name": "Floor 2 East",
+	 *         "thermostats": 12,
+	 *         "reporting": 11,
+	 *         "heatersOn": 4,
+	 *         "stale": 1,
+	 *         "averageAmbientTemperature": 21.284090909090907,
+	 *         "averageDesiredTemperature": 21.0,
+	 *         "version": 5281
+	 *     }
+	 * ]
+	 * </pre>
+	 * 
+	 * @return the zones in order of name
+	 */
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<ZoneState> listZones() {
+		return aggregates.getZones();
+	}
+
+	/**
+	 * gets the aggregate state of the zone with the given name
+	 * 
+	 * @param name the name of the zone
+	 * @return the state of the zone
+	 * @throws NotFoundException if the zone has no thermostats
+	 */
+	@GET
+	@Path("/{name}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public ZoneState getZone(@PathParam("name") String name) {
+		return aggregates.getZone(name).orElseThrow(NotFoundException::new);
+	}
+
+	/**
+	 * gets the state of the thermostats in the zone with the given name
+	 * 
+	 * @param name the name of the zone
+	 * @return the thermostat states
+	 */
+	@GET
+	@Path("/{name}/thermostats")
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<ThermostatState> listZoneThermostats(@PathParam("name") String name) {
+		return manager.listThermostats().stream()
+				.filter(thermostat -> name.equals(thermostat.getZone()))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * moves the thermostat with the given id into the zone, out of any zone it was in
+	 * 
+	 * @param name the name of the zone
+	 * @param id the id of the thermostat
+	 * @return the updated state of the thermostat
+	 * @throws NotFoundException if no thermostat was found with the given ID
+	 * @throws BadRequestException if the name is blank
+	 */
+	@PUT
+	@Path("/{name}/thermostats/{id}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public ThermostatState addThermostat(@PathParam("name") String name, @PathParam("id") ObjectId id) {
+		if (name.isBlank()) {
+			throw new BadRequestException("name is required");
+		}
+		return manager.setThermostatZone(id, name).orElseThrow(NotFoundException::new);
+	}
+
+	/**
+	 * removes the thermostat with the given id from the zone
+	 * 
+	 * @param name the name of the zone
+	 * @param id the id of the thermostat
+	 * @throws NotFoundException if no thermostat in the zone was found with the given ID
+	 */
+	@DELETE
+	@Path("/{name}/thermostats/{id}")
+	public void removeThermostat(@PathParam("name") String name, @PathParam("id") ObjectId id) {
+		manager.getThermostat(id)
+				.filter(thermostat -> name.equals(thermostat.getZone()))
+				.flatMap(thermostat -> manager.setThermostatZone(id, null))
+				.orElseThrow(NotFoundException::new);
+	}
+}
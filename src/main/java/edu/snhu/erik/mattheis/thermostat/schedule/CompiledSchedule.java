@@ -0,0 +1,232 @@
+package edu.snhu.erik.mattheis.thermostat.schedule;
+
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.snhu.erik.mattheis.thermostat.db.Schedule;
+import edu.snhu.erik.mattheis.thermostat.db.ScheduleOverride;
+
+/**
+ * a validated {@link Schedule} with its times parsed and its weekly program indexed by day,
+ * so that the next change can be found by looking at no more than eight days of entries
+ * 
+ * compiled once when a schedule is loaded or edited - finding the next change of one
+ * schedule never involves any other schedule
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+final class CompiledSchedule {
+
+	private final ZoneId zone;
+	private final Map<DayOfWeek, List<Change>> weekly = new EnumMap<>(DayOfWeek.class); // sorted by time of day
+	private final List<ScheduleOverride> overrides = new ArrayList<>();
+
+	private CompiledSchedule(ZoneId zone) {
+		this.zone = zone;
+	}
+
+	/**
+	 * validates and compiles a schedule
+	 * 
+	 * @param schedule    the schedule to compile
+	 * @param defaultZone the time zone of schedules which do not specify one
+	 * @return the compiled schedule
+	 * @throws IllegalArgumentException if the schedule is invalid
+	 */
+	static CompiledSchedule of(Schedule schedule, ZoneId defaultZone) {
+		CompiledSchedule compiled;
+		try {
+			compiled = new CompiledSchedule(schedule.zone == null ? defaultZone : ZoneId.of(schedule.zone));
+		} catch (DateTimeException e) {
+			throw new IllegalArgumentException("invalid zone " + schedule.zone, e);
+		}
+		if (schedule.weekly != null) {
+			for (var entry : schedule.weekly) {
+				if (entry == null || entry.days == null || entry.days.isEmpty() || entry.time == null
+						|| entry.desiredTemperature == null) {
+					throw new IllegalArgumentException("days, time and desiredTemperature are required for each weekly entry");
+				}
+				LocalTime time;
+				try {
+					time = LocalTime.parse(entry.time);
+				} catch (DateTimeParseException e) {
+					throw new IllegalArgumentException("invalid time " + entry.time, e);
+				}
+				for (var day : entry.days) {
+					try {
+						compiled.weekly.computeIfAbsent(DayOfWeek.valueOf(day), d -> new ArrayList<>())
+								.add(new Change(time, entry.desiredTemperature));
+					} catch (IllegalArgumentException | NullPointerException e) {
+						throw new IllegalArgumentException("invalid day " + day, e);
+					}
+				}
+			}
+			compiled.weekly.values().forEach(changes -> changes.sort(Comparator.comparing(change -> change.time)));
+		}
+		if (schedule.overrides != null) {
+			for (var override : schedule.overrides) {
+				if (override == null || override.from == null || override.desiredTemperature == null) {
+					throw new IllegalArgumentException("from and desiredTemperature are required for each override");
+				}
+				if (override.until != null && !override.until.isAfter(override.from)) {
+					throw new IllegalArgumentException("until must be after from");
+				}
+				compiled.overrides.add(override.copy());
+			}
+		}
+		return compiled;
+	}
+
+	/**
+	 * finds the first change strictly after the given time
+	 * 
+	 * @param after the time to search from
+	 * @return the next change, or {@code null} if the schedule never changes again
+	 */
+	ScheduledSetpoint next(Instant after) {
+		ScheduledSetpoint next = null;
+		for (var override : overrides) {
+			if (override.from.isAfter(after)) {
+				next = earlier(next, new ScheduledSetpoint(override.from, override.desiredTemperature));
+			}
+			if (override.until != null && override.until.isAfter(after)) {
+				var resumed = programAt(override.until);
+				if (resumed != null) {
+					next = earlier(next, new ScheduledSetpoint(override.until, resumed));
+				}
+			}
+		}
+		var search = after;
+		for (var change = nextProgramChange(search); change != null; change = nextProgramChange(search)) {
+			var suppressedUntil = suppressedUntil(change.getAt());
+			if (suppressedUntil == null) {
+				return earlier(next, change);
+			}
+			search = suppressedUntil.minusNanos(1); // the program resumes at the end of the override
+		}
+		return next;
+	}
+
+	/**
+	 * finds the desired temperature in effect at the given time - set by the latest override or program
+	 * change at or before it, so an override which has already started (such as one from now until later
+	 * today, which is a little in the past by the time it is compiled) is reported rather than skipped
+	 * 
+	 * an override with an end holds until then - one without an end holds until the next program change
+	 * 
+	 * @param at the time
+	 * @return the setpoint in effect, due at the given time, or {@code null} if nothing has set one
+	 */
+	ScheduledSetpoint inEffect(Instant at) {
+		ScheduleOverride active = null;
+		for (var override : overrides) {
+			if (!override.from.isAfter(at) && (override.until == null || override.until.isAfter(at))
+					&& (active == null || override.from.isAfter(active.from))) {
+				active = override;
+			}
+		}
+		var program = programChangeAt(at);
+		if (active != null && (active.until != null || program == null || !programSince(program, at).isAfter(active.from))) {
+			return new ScheduledSetpoint(at, active.desiredTemperature);
+		}
+		return program == null ? null : new ScheduledSetpoint(at, program.getDesiredTemperature());
+	}
+
+	/*
+	 * when the weekly program last took effect at or before the given time - at its latest change,
+	 * or at the end of a later override which suppressed that change
+	 */
+	private Instant programSince(ScheduledSetpoint change, Instant at) {
+		var since = change.getAt();
+		for (var override : overrides) {
+			if (override.until != null && !override.until.isAfter(at) && override.until.isAfter(since)) {
+				since = override.until;
+			}
+		}
+		return since;
+	}
+
+	/*
+	 * the first change of the weekly program strictly after the given time, ignoring overrides
+	 */
+	private ScheduledSetpoint nextProgramChange(Instant after) {
+		if (weekly.isEmpty()) {
+			return null;
+		}
+		var start = LocalDate.ofInstant(after, zone);
+		for (var day = 0; day <= 7; ++day) {
+			var date = start.plusDays(day);
+			for (var change : weekly.getOrDefault(date.getDayOfWeek(), List.of())) {
+				var at = date.atTime(change.time).atZone(zone).toInstant();
+				if (at.isAfter(after)) {
+					return new ScheduledSetpoint(at, change.desiredTemperature);
+				}
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * the desired temperature of the weekly program in effect at the given time, ignoring overrides
+	 */
+	private Float programAt(Instant at) {
+		var change = programChangeAt(at);
+		return change == null ? null : change.getDesiredTemperature();
+	}
+
+	/*
+	 * the latest change of the weekly program at or before the given time, ignoring overrides
+	 */
+	private ScheduledSetpoint programChangeAt(Instant at) {
+		var start = LocalDate.ofInstant(at, zone);
+		for (var day = 0; day <= 7; ++day) {
+			var date = start.minusDays(day);
+			var changes = weekly.getOrDefault(date.getDayOfWeek(), List.of());
+			for (var i = changes.size() - 1; i >= 0; --i) {
+				var changedAt = date.atTime(changes.get(i).time).atZone(zone).toInstant();
+				if (!changedAt.isAfter(at)) {
+					return new ScheduledSetpoint(changedAt, changes.get(i).desiredTemperature);
+				}
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * the latest end of an override with an end which covers the given time, or null if none does
+	 */
+	private Instant suppressedUntil(Instant at) {
+		Instant until = null;
+		for (var override : overrides) {
+			if (override.until != null && !at.isBefore(override.from) && at.isBefore(override.until)
+					&& (until == null || override.until.isAfter(until))) {
+				until = override.until;
+			}
+		}
+		return until;
+	}
+
+	private static ScheduledSetpoint earlier(ScheduledSetpoint current, ScheduledSetpoint candidate) {
+		return current == null || candidate.getAt().isBefore(current.getAt()) ? candidate : current;
+	}
+
+	private static final class Change {
+		final LocalTime time;
+		final float desiredTemperature;
+
+		Change(LocalTime time, float desiredTemperature) {
+			this.time = time;
+			this.desiredTemperature = desiredTemperature;
+		}
+	}
+}
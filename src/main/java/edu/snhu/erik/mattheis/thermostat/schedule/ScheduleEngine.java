@@ -0,0 +1,343 @@
+package edu.snhu.erik.mattheis.thermostat.schedule;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import org.bson.types.ObjectId;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.snhu.erik.mattheis.thermostat.comm.ThermostatManager;
+import edu.snhu.erik.mattheis.thermostat.db.Schedule;
+import edu.snhu.erik.mattheis.thermostat.db.Thermostat;
+import edu.snhu.erik.mattheis.thermostat.db.ThermostatState;
+import edu.snhu.erik.mattheis.thermostat.store.ThermostatStorage;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+
+/**
+ * sets the desired temperature of thermostats according to their schedules (see {@link Schedule})
+ *
+ * every schedule has exactly one pending change in a single priority queue ordered by time, and a single
+ * thread sleeps until the earliest change is due - so the cost of waiting does not grow with the number of
+ * schedules, and editing a schedule only recomputes the next change of that schedule
+ *
+ * due changes are taken from the queue in batches of at most {@code thermostat.schedule.batch-size} and sent
+ * through {@link ThermostatManager#setThermostatDesiredTemperatureAsync(ObjectId, float)}, which bounds how
+ * many wait for their thermostat at once - the next batch is taken once every change in the batch has been
+ * acknowledged or failed, and a failed change is retried after {@code thermostat.schedule.retry-delay}
+ * unless the schedule changes again first
+ *
+ * when a schedule is loaded or edited, the setpoint already in effect (such as an override from now
+ * until later today) is queued as due immediately, then the schedule continues from its next change
+ *
+ * a change replaced in the queue by an edit is left where it is and skipped when it reaches the head,
+ * rather than searching the queue for it
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@ApplicationScoped
+public class ScheduleEngine {
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final Lock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	private final PriorityQueue<Pending> queue = new PriorityQueue<>(Comparator.comparing(Pending::getAt)); // guarded by lock
+	private final Map<ObjectId, Pending> pending = new HashMap<>();                                     // guarded by lock
+	private final Object edits = new Object();
+
+	private volatile Thread worker;
+
+	@Inject
+	ThermostatManager manager;
+
+	@Inject
+	ThermostatStorage storage;
+
+	@ConfigProperty(name = "thermostat.schedule.zone")
+	Optional<ZoneId> zone;
+
+	@ConfigProperty(name = "thermostat.schedule.batch-size", defaultValue = "256")
+	int batchSize;
+
+	@ConfigProperty(name = "thermostat.schedule.retry-delay", defaultValue = "1m")
+	Duration retryDelay;
+
+	/**
+	 * starts the schedule thread, which loads the schedules of all stored thermostats before running them
+	 * - so storage being unavailable never holds up startup
+	 *
+	 * @param startup the Quarkus startup event
+	 */
+	void onStartup(@Observes StartupEvent startup) {
+		worker = new Thread(this::run, "thermostat-schedule");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * stops the schedule thread - changes already sent are left to complete
+	 *
+	 * @param shutdown the Quarkus shutdown event
+	 */
+	void onShutdown(@Observes ShutdownEvent shutdown) {
+		if (worker != null) {
+			worker.interrupt();
+		}
+	}
+
+	/**
+	 * replaces the schedule of the thermostat with the given id and recomputes its next change
+	 *
+	 * @param id       the id of the thermostat to update
+	 * @param schedule the new schedule, or {@code null} to remove it
+	 * @return the updated state of the matching thermostat or {@link Optional#empty()} if no thermostat matches the id
+	 * @throws IllegalArgumentException if the schedule is invalid
+	 */
+	public Optional<ThermostatState> setSchedule(ObjectId id, Schedule schedule) {
+		var compiled = schedule == null ? null : CompiledSchedule.of(schedule, defaultZone()); // validate before storing
+		synchronized (edits) {                                                                   // keep the queue in the order edits are stored
+			var updated = manager.setThermostatSchedule(id, schedule);
+			updated.ifPresent(state -> reschedule(id, compiled, Instant.now()));
+			return updated;
+		}
+	}
+
+	/**
+	 * gets the next change scheduled for the thermostat with the given id
+	 *
+	 * @param id the id of the thermostat
+	 * @return the next change or {@link Optional#empty()} if none is scheduled
+	 */
+	public Optional<ScheduledSetpoint> getNextChange(ObjectId id) {
+		lock.lock();
+		try {
+			return Optional.ofNullable(pending.get(id)).map(next -> next.setpoint);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * replaces the pending change of a thermostat with the setpoint of the schedule in effect at the given
+	 * time, due immediately - or if nothing is in effect yet, with the first change after it
+	 */
+	private void reschedule(ObjectId id, CompiledSchedule schedule, Instant now) {
+		var setpoint = schedule == null ? null : schedule.inEffect(now);
+		if (setpoint == null && schedule != null) {
+			setpoint = schedule.next(now);
+		}
+		lock.lock();
+		try {
+			if (setpoint == null) {
+				pending.remove(id);
+			} else {
+				enqueue(new Pending(id, schedule, setpoint));
+			}
+			if (queue.size() > 2 * pending.size() + 1024) {           // too many replaced changes waiting to be skipped
+				queue.removeIf(this::replaced);
+			}
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void run() {
+		try {
+			while (!load()) {
+				Thread.sleep(retryDelay.toMillis());
+			}
+		} catch (InterruptedException e) {
+			return;
+		}
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				dispatch(takeDue());
+			} catch (InterruptedException e) {
+				break;
+			} catch (Exception e) {
+				log.error("problem running thermostat schedules", e);
+			}
+		}
+	}
+
+	/*
+	 * loads the schedules of all stored thermostats, returning false if storage is unavailable - edits
+	 * wait for the load so that an older stored schedule cannot replace a newer edit
+	 */
+	private boolean load() {
+		synchronized (edits) {
+			List<Thermostat> thermostats;
+			try {
+				thermostats = storage.listThermostats();
+			} catch (RuntimeException e) {
+				log.warn("problem loading thermostat schedules, retrying in {}: {}", retryDelay, e.toString());
+				return false;
+			}
+			var now = Instant.now();
+			var loaded = 0;
+			for (var thermostat : thermostats) {
+				if (thermostat.schedule != null) {
+					try {
+						reschedule(thermostat.id, CompiledSchedule.of(thermostat.schedule, defaultZone()), now);
+						++loaded;
+					} catch (IllegalArgumentException e) {
+						log.error("ignoring invalid schedule of thermostat '{}'", thermostat.label, e);
+					}
+				}
+			}
+			log.info("loaded {} thermostat schedules", loaded);
+			return true;
+		}
+	}
+
+	/*
+	 * waits until at least one change is due, then takes up to a batch of due changes, queueing the
+	 * following change of each schedule in its place
+	 */
+	private List<Pending> takeDue() throws InterruptedException {
+		lock.lock();
+		try {
+			while (true) {
+				var head = queue.peek();
+				if (head == null) {
+					changed.await();
+				} else if (replaced(head)) {
+					queue.poll();
+				} else {
+					var wait = Duration.between(Instant.now(), head.getAt()).toNanos();
+					if (wait <= 0) {
+						break;
+					}
+					changed.awaitNanos(wait);
+				}
+			}
+			var now = Instant.now();
+			var due = new ArrayList<Pending>();
+			while (due.size() < batchSize && !queue.isEmpty() && !queue.peek().getAt().isAfter(now)) {
+				var next = queue.poll();
+				if (replaced(next)) {
+					continue;
+				}
+				due.add(next);
+				var following = next.schedule.next(next.getAt());
+				if (following == null) {
+					pending.remove(next.id);
+				} else {
+					enqueue(new Pending(next.id, next.schedule, following));
+				}
+			}
+			return due;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * sends a batch of due changes and waits for every one of them to be acknowledged or fail
+	 */
+	private void dispatch(List<Pending> due) {
+		var failed = new AtomicInteger();
+		CompletableFuture.allOf(due.stream()
+				.map(change -> manager.setThermostatDesiredTemperatureAsync(change.id, change.setpoint.getDesiredTemperature())
+						.handle((updated, e) -> {
+							if (e != null) {
+								failed.incrementAndGet();
+								log.warn("problem setting scheduled temperature of thermostat {}: {}", change.id,
+										(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e).toString());
+								retry(change);
+							} else if (updated.isEmpty()) {
+								forget(change);
+							}
+							return null;
+						}))
+				.toArray(CompletableFuture[]::new)).join();
+		log.info("set {} scheduled temperatures, {} failed", due.size() - failed.get(), failed.get());
+	}
+
+	/*
+	 * queues a failed change again after the retry delay, unless the schedule has been edited
+	 * or the following change is due before then
+	 */
+	private void retry(Pending change) {
+		var at = Instant.now().plus(retryDelay);
+		lock.lock();
+		try {
+			var following = pending.get(change.id);
+			if (following != null && following.schedule == change.schedule && following.getAt().isAfter(at)) {
+				enqueue(new Pending(change.id, change.schedule, new ScheduledSetpoint(at, change.setpoint.getDesiredTemperature())));
+				changed.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * drops the schedule of a thermostat which has been removed, unless it has been edited since
+	 */
+	private void forget(Pending change) {
+		lock.lock();
+		try {
+			var following = pending.get(change.id);
+			if (following != null && following.schedule == change.schedule) {
+				pending.remove(change.id);
+				log.info("dropped schedule of removed thermostat {}", change.id);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void enqueue(Pending next) {
+		pending.put(next.id, next);
+		queue.add(next);
+	}
+
+	private boolean replaced(Pending change) {
+		return pending.get(change.id) != change;
+	}
+
+	private ZoneId defaultZone() {
+		return zone.orElseGet(ZoneId::systemDefault);
+	}
+
+	/*
+	 * a change waiting in the queue, along with the schedule to find the following change from
+	 */
+	private static final class Pending {
+		final ObjectId id;
+		final CompiledSchedule schedule;
+		final ScheduledSetpoint setpoint;
+
+		Pending(ObjectId id, CompiledSchedule schedule, ScheduledSetpoint setpoint) {
+			this.id = id;
+			this.schedule = schedule;
+			this.setpoint = setpoint;
+		}
+
+		Instant getAt() {
+			return setpoint.getAt();
+		}
+	}
+}
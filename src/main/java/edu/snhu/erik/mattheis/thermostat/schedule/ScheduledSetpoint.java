@@ -0,0 +1,50 @@
+package edu.snhu.erik.mattheis.thermostat.schedule;
+
+import java.time.Instant;
+
+/**
+ * a desired temperature to be set by a schedule at a given time
+ * 
+ * <pre>
+ * {
+ *     "at": "2021-10-18T02:00:00Z",
+ *     "desiredTemperature": 17.0
+ * }
+ * </pre>
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+public class ScheduledSetpoint {
+
+	private final Instant at;
+	private final float desiredTemperature;
+
+	/**
+	 * creates a new instance
+	 * 
+	 * @param at                 when the desired temperature is to be set
+	 * @param desiredTemperature the desired temperature in degrees C
+	 */
+	ScheduledSetpoint(Instant at, float desiredTemperature) {
+		this.at = at;
+		this.desiredTemperature = desiredTemperature;
+	}
+
+	/**
+	 * gets when the desired temperature is to be set
+	 * 
+	 * @return the time of the change
+	 */
+	public Instant getAt() {
+		return at;
+	}
+
+	/**
+	 * gets the desired temperature to set
+	 * 
+	 * @return the desired temperature in degrees C
+	 */
+	public float getDesiredTemperature() {
+		return desiredTemperature;
+	}
+}
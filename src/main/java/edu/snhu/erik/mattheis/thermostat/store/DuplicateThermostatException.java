@@ -0,0 +1,21 @@
+package edu.snhu.erik.mattheis.thermostat.store;
+
+/**
+ * thrown when storing a thermostat whose label or port is already used by another thermostat
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+public class DuplicateThermostatException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * creates a new instance with the given message
+	 * 
+	 * @param message the detail message
+	 * @param cause the underlying cause, or {@code null}
+	 */
+	public DuplicateThermostatException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
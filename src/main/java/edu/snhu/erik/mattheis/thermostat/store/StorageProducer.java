@@ -0,0 +1,52 @@
+package edu.snhu.erik.mattheis.thermostat.store;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.enterprise.inject.Produces;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import edu.snhu.erik.mattheis.thermostat.db.MongoStorage;
+import edu.snhu.erik.mattheis.thermostat.store.embedded.EmbeddedStorage;
+import edu.snhu.erik.mattheis.thermostat.store.memory.MemoryStorage;
+
+/**
+ * produces the {@link ThermostatStorage} implementation selected by the {@code thermostat.storage} property
+ * 
+ * <ul>
+ * <li>{@code mongo} - MongoDB collections (default)</li>
+ * <li>{@code embedded} - memory-mapped files in a local directory</li>
+ * <li>{@code memory} - in memory only, for benchmarks and testing</li>
+ * </ul>
+ * 
+ * implementations are typed to their own class so that only the selected one is ever instantiated
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@ApplicationScoped
+public class StorageProducer {
+
+	/**
+	 * the value of {@code thermostat.storage} selecting MongoDB
+	 */
+	public static final String MONGO = "mongo";
+
+	@ConfigProperty(name = "thermostat.storage", defaultValue = MONGO)
+	String storage;
+
+	@Produces
+	@ApplicationScoped
+	ThermostatStorage storage(Instance<MongoStorage> mongo, Instance<EmbeddedStorage> embedded,
+			Instance<MemoryStorage> memory) {
+		switch (storage) {
+			case MONGO:
+				return mongo.get();
+			case "embedded":
+				return embedded.get();
+			case "memory":
+				return memory.get();
+			default:
+				throw new IllegalArgumentException("unknown thermostat.storage: " + storage);
+		}
+	}
+}
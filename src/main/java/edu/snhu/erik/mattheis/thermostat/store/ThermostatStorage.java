@@ -0,0 +1,109 @@
+package edu.snhu.erik.mattheis.thermostat.store;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import edu.snhu.erik.mattheis.thermostat.db.Temperature;
+import edu.snhu.erik.mattheis.thermostat.db.TemperatureHistory;
+import edu.snhu.erik.mattheis.thermostat.db.Thermostat;
+
+/**
+ * service provider interface for storing thermostat state and temperature samples
+ * 
+ * the implementation is selected by the {@code thermostat.storage} property (see {@link StorageProducer})
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+public interface ThermostatStorage {
+
+	/**
+	 * gets the stored state of all thermostats
+	 * 
+	 * @return the list of thermostat states - changes to the list or its elements are not stored
+	 */
+	List<Thermostat> listThermostats();
+
+	/**
+	 * stores a new thermostat, assigning its ID
+	 * 
+	 * @param thermostat the thermostat to store
+	 * @throws DuplicateThermostatException if another thermostat has the same label or port
+	 */
+	void createThermostat(Thermostat thermostat);
+
+	/**
+	 * stores the latest state of a thermostat along with a temperature sample
+	 * 
+	 * @param thermostat the latest state of the thermostat
+	 * @param sample the temperature sample to store, or {@code null} if there is none
+	 * @throws DuplicateThermostatException if another thermostat has the same label or port
+	 */
+	void updateThermostat(Thermostat thermostat, Temperature sample);
+
+	/**
+	 * removes a thermostat - its temperature history is kept until it expires
+	 * 
+	 * @param thermostat the thermostat to remove
+	 */
+	void deleteThermostat(Thermostat thermostat);
+
+	/**
+	 * stores a temperature sample
+	 * 
+	 * @param sample the sample to store
+	 */
+	void recordTemperature(Temperature sample);
+
+	/**
+	 * queries aggregated temperature history using duration-weighted average temperatures over 15 minute intervals
+	 * 
+	 * @param thermostatId the ID of the thermostat to report on
+	 * @param from the start fo the time period to report on
+	 * @param to the end of the time period to report on
+	 * @return the aggregated results in a format suitable for graphing on the front-end
+	 */
+	TemperatureHistory getTemperatureHistory(String thermostatId, Instant from, Instant to);
+
+	/**
+	 * queries aggregated temperature history for several thermostats at once
+	 * 
+	 * the default implementation queries each thermostat in turn - storages which can
+	 * answer for many thermostats in a single pass should override it
+	 * 
+	 * @param thermostatIds the IDs of the thermostats to report on
+	 * @param from the start fo the time period to report on
+	 * @param to the end of the time period to report on
+	 * @return the aggregated results of each thermostat, in the order requested
+	 */
+	default Map<String, TemperatureHistory> getTemperatureHistories(Collection<String> thermostatIds, Instant from,
+			Instant to) {
+		var histories = new LinkedHashMap<String, TemperatureHistory>();
+		thermostatIds.forEach(thermostatId -> histories.put(thermostatId, getTemperatureHistory(thermostatId, from, to)));
+		return histories;
+	}
+
+	/**
+	 * queries aggregated temperature history for several thermostats at once without tying up the caller,
+	 * abandoning the query as far as possible if the returned future is cancelled
+	 * 
+	 * the default implementation runs {@link #getTemperatureHistories} on the calling thread - storages which
+	 * can split a long period into parts queried concurrently should override it
+	 * 
+	 * @param thermostatIds the IDs of the thermostats to report on
+	 * @param from the start fo the time period to report on
+	 * @param to the end of the time period to report on
+	 * @return the aggregated results of each thermostat, in the order requested
+	 */
+	default CompletableFuture<Map<String, TemperatureHistory>> getTemperatureHistoriesAsync(
+			Collection<String> thermostatIds, Instant from, Instant to) {
+		try {
+			return CompletableFuture.completedFuture(getTemperatureHistories(thermostatIds, from, to));
+		} catch (RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+}
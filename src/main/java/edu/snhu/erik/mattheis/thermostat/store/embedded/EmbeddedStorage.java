@@ -0,0 +1,287 @@
+package edu.snhu.erik.mattheis.thermostat.store.embedded;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Typed;
+import javax.inject.Inject;
+
+import org.bson.types.ObjectId;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.snhu.erik.mattheis.thermostat.db.Temperature;
+import edu.snhu.erik.mattheis.thermostat.db.TemperatureBins;
+import edu.snhu.erik.mattheis.thermostat.db.TemperatureHistory;
+import edu.snhu.erik.mattheis.thermostat.db.Thermostat;
+import edu.snhu.erik.mattheis.thermostat.store.DuplicateThermostatException;
+import edu.snhu.erik.mattheis.thermostat.store.ThermostatStorage;
+
+/**
+ * stores thermostats and temperature samples in files in a local directory - no database required
+ *
+ * the thermostats are held in memory and written to a JSON snapshot, immediately when a thermostat is
+ * created or deleted and periodically when only its state has changed, since the thermostat reports its
+ * state again after a restart - temperature samples are appended to a {@link TemperatureSeries} per
+ * thermostat and segments older than the retention period are deleted every hour
+ *
+ * since a crash loses the states written since the last snapshot, the version of each thermostat could go
+ * backwards and be reused for different content - so every start increments a boot epoch, stored before
+ * any version is exposed, and moves each loaded version up to at least the epoch in its high 32 bits,
+ * past any version handed out before the restart
+ *
+ * <pre>
+ * data/
+ *     epoch
+ *     thermostats.json
+ *     temperature/
+ *         614e59d4fb04a00ca2b7a984/
+ *             00000001634337900000.seg
+ * </pre>
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@ApplicationScoped
+@Typed(EmbeddedStorage.class)
+public class EmbeddedStorage implements ThermostatStorage {
+
+	private static final String SNAPSHOT = "thermostats.json";
+	private static final String EPOCH = "epoch";
+	private static final String TEMPERATURE = "temperature";
+	private static final int EPOCH_SHIFT = 32;         // versions a thermostat may reach in one boot
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final Map<ObjectId, Thermostat> thermostats = new ConcurrentHashMap<>();
+	private final Map<String, TemperatureSeries> series = new ConcurrentHashMap<>();
+	private final Timer timer = new Timer("embedded-storage", true);
+
+	private volatile boolean dirty;
+
+	@Inject
+	ObjectMapper objectMapper;
+
+	@ConfigProperty(name = "thermostat.embedded.directory", defaultValue = "data")
+	Path directory;
+
+	@ConfigProperty(name = "thermostat.embedded.segment-records", defaultValue = "65536")
+	int segmentRecords;
+
+	@ConfigProperty(name = "thermostat.embedded.retention", defaultValue = "P365D")
+	Duration retention;
+
+	@ConfigProperty(name = "thermostat.embedded.flush-interval", defaultValue = "5s")
+	Duration flushInterval;
+
+	/**
+	 * starts a new boot epoch, loads the thermostat snapshot and starts the flush and retention tasks
+	 */
+	@PostConstruct
+	void init() {
+		try {
+			Files.createDirectories(directory.resolve(TEMPERATURE));
+			var base = nextEpoch() << EPOCH_SHIFT;
+			var snapshot = directory.resolve(SNAPSHOT);
+			if (Files.exists(snapshot)) {
+				List<Thermostat> loaded = objectMapper.readValue(snapshot.toFile(), new TypeReference<List<Thermostat>>() {});
+				loaded.forEach(thermostat -> {
+					thermostat.version = Math.max(thermostat.version == null ? 0 : thermostat.version, base);
+					thermostats.put(thermostat.id, thermostat);
+				});
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("problem opening embedded storage", e);
+		}
+		timer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, flushInterval.toMillis(), flushInterval.toMillis());
+		timer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				expire();
+			}
+		}, 0, Duration.ofHours(1).toMillis());
+	}
+
+	/**
+	 * writes the final snapshot and releases the temperature series
+	 */
+	@PreDestroy
+	void destroy() {
+		timer.cancel();
+		flush();
+		series.values().forEach(TemperatureSeries::close);
+	}
+
+	@Override
+	public List<Thermostat> listThermostats() {
+		return thermostats.values().stream().map(Thermostat::copy).collect(Collectors.toList());
+	}
+
+	@Override
+	public synchronized void createThermostat(Thermostat thermostat) {
+		checkUnique(thermostat);
+		thermostat.id = new ObjectId();
+		thermostats.put(thermostat.id, thermostat.copy());
+		writeSnapshot();
+	}
+
+	@Override
+	public void updateThermostat(Thermostat thermostat, Temperature sample) {
+		var stored = thermostats.get(thermostat.id);
+		if (stored != null && !Objects.equals(stored.label, thermostat.label)) {
+			synchronized (this) {                                   // only label changes need the uniqueness check
+				checkUnique(thermostat);
+				thermostats.replace(thermostat.id, thermostat.copy());
+				writeSnapshot();
+			}
+		} else if (stored != null) {
+			thermostats.replace(thermostat.id, thermostat.copy());
+			dirty = true;
+		}
+		if (sample != null) {
+			recordTemperature(sample);
+		}
+	}
+
+	@Override
+	public synchronized void deleteThermostat(Thermostat thermostat) {
+		thermostats.remove(thermostat.id);
+		writeSnapshot();
+	}
+
+	@Override
+	public void recordTemperature(Temperature sample) {
+		try {
+			series(sample.thermostatId).append(sample.timestamp.toEpochMilli(), sample.temperature,
+					(int) Math.min(sample.duration == null ? 1 : sample.duration, Integer.MAX_VALUE),
+					sample.heaterOnDuration == null ? -1 : (int) Math.min(sample.heaterOnDuration, Integer.MAX_VALUE),
+					sample.desiredTemperature == null ? Float.NaN : sample.desiredTemperature);
+		} catch (IOException e) {
+			log.error("problem storing temperature sample for thermostat {}", sample.thermostatId, e);
+		}
+	}
+
+	@Override
+	public TemperatureHistory getTemperatureHistory(String thermostatId, Instant from, Instant to) {
+		var bins = new TemperatureBins();
+		if (ObjectId.isValid(thermostatId)) {                      // the ID names a directory so is never trusted
+			try {
+				series(thermostatId).scan(from.toEpochMilli(), to.toEpochMilli(),
+						(timestamp, temperature, duration, heaterOn, desiredTemperature) ->
+								bins.addSample(Instant.ofEpochMilli(timestamp), temperature, duration,
+										heaterOn < 0 ? null : Long.valueOf(heaterOn),
+										Float.isNaN(desiredTemperature) ? null : desiredTemperature));
+			} catch (IOException e) {
+				throw new UncheckedIOException("problem reading temperature history", e);
+			}
+		}
+		return bins.toHistory();
+	}
+
+	private TemperatureSeries series(String thermostatId) throws IOException {
+		try {
+			return series.computeIfAbsent(thermostatId, key -> {
+				try {
+					return new TemperatureSeries(directory.resolve(TEMPERATURE).resolve(key), segmentRecords);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/*
+	 * writes the snapshot if any state has changed, and flushes the latest samples to disk
+	 */
+	private void flush() {
+		if (dirty) {
+			synchronized (this) {
+				writeSnapshot();
+			}
+		}
+		series.values().forEach(TemperatureSeries::force);
+	}
+
+	/*
+	 * deletes temperature segments older than the retention period
+	 */
+	private void expire() {
+		var before = Instant.now().minus(retention).toEpochMilli();
+		try (var directories = Files.list(directory.resolve(TEMPERATURE))) {
+			for (var thermostatId : directories.map(path -> path.getFileName().toString()).collect(Collectors.toList())) {
+				var expired = series(thermostatId).expire(before);
+				if (expired > 0) {
+					log.info("expired {} temperature segments of thermostat {}", expired, thermostatId);
+				}
+			}
+		} catch (IOException e) {
+			log.error("problem expiring temperature history", e);
+		}
+	}
+
+	/*
+	 * writes every thermostat to a temporary file then moves it over the snapshot, must hold the monitor
+	 */
+	/*
+	 * increments and stores the boot epoch, returning the new one
+	 */
+	private long nextEpoch() throws IOException {
+		var file = directory.resolve(EPOCH);
+		var epoch = Files.exists(file) ? Long.parseLong(Files.readString(file).trim()) + 1 : 1;
+		var temp = directory.resolve(EPOCH + ".tmp");
+		Files.writeString(temp, Long.toString(epoch));
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return epoch;
+	}
+
+	private void writeSnapshot() {
+		dirty = false;
+		var temp = directory.resolve(SNAPSHOT + ".tmp");
+		try {
+			objectMapper.writeValue(temp.toFile(), List.copyOf(thermostats.values()));
+			Files.move(temp, directory.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			dirty = true;
+			log.error("problem writing thermostat snapshot", e);
+		}
+	}
+
+	private void checkUnique(Thermostat thermostat) {
+		for (var other : thermostats.values()) {
+			if (other.id.equals(thermostat.id)) {
+				continue;
+			}
+			if (Objects.equals(other.label, thermostat.label)) {
+				throw new DuplicateThermostatException("label already in use: " + thermostat.label, null);
+			}
+			if (Objects.equals(other.port, thermostat.port)) {
+				throw new DuplicateThermostatException("port already in use: " + thermostat.port, null);
+			}
+		}
+	}
+}
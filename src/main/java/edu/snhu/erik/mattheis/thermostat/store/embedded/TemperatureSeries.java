@@ -0,0 +1,221 @@
+package edu.snhu.erik.mattheis.thermostat.store.embedded;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * the temperature samples of one thermostat, stored in append-only memory-mapped segment files
+ *
+ * each segment holds a fixed number of fixed size records in timestamp order and is named by the
+ * timestamp of its first record - the segments are indexed by that timestamp so a range query only
+ * touches the segments which overlap it, then binary searches for the start within the first one
+ *
+ * each record is laid out as:
+ *
+ * <pre>
+ * [ timestamp: long (epoch millis) ][ temperature: float ][ duration: int (millis) ]
+ * [ heater on: int (millis, -1 if unknown) ][ desired temperature: float (NaN if unknown) ]
+ * </pre>
+ *
+ * the timestamp is written last, so a record torn by a crash has no timestamp and
+ * the number of records in a segment is found by searching for the first zero timestamp
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class TemperatureSeries implements Closeable {
+
+	static final int RECORD = Long.BYTES + Float.BYTES + Integer.BYTES + Integer.BYTES + Float.BYTES;
+
+	private static final String SUFFIX = ".seg";
+
+	private final Path directory;
+	private final int segmentRecords;
+	private final TreeMap<Long, Segment> segments = new TreeMap<>(); // time index: first timestamp -> segment
+
+	/**
+	 * receives the records found by a range query
+	 */
+	@FunctionalInterface
+	interface SampleConsumer {
+		void accept(long timestamp, float temperature, int duration, int heaterOn, float desiredTemperature);
+	}
+
+	/*
+	 * a mapped segment file
+	 */
+	private static class Segment {
+		private final Path file;
+		private final MappedByteBuffer buffer;
+		private final long first;
+		private final int capacity;
+		private int count;
+
+		Segment(Path file, MappedByteBuffer buffer, long first) {
+			this.file = file;
+			this.buffer = buffer;
+			this.first = first;
+			this.capacity = buffer.capacity() / RECORD;
+			this.count = lowerBound(Long.MAX_VALUE);  // zeroed records sort after every real timestamp
+		}
+
+		long timestamp(int index) {
+			var timestamp = buffer.getLong(index * RECORD);
+			return timestamp == 0 ? Long.MAX_VALUE : timestamp;
+		}
+
+		long last() {
+			return timestamp(count - 1);
+		}
+
+		/*
+		 * finds the index of the first record at or after the given timestamp
+		 */
+		int lowerBound(long timestamp) {
+			var low = 0;
+			var high = count == 0 ? capacity : count;
+			while (low < high) {
+				var middle = (low + high) >>> 1;
+				if (timestamp(middle) < timestamp) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+
+	/**
+	 * opens the series stored in the given directory, mapping any existing segments
+	 *
+	 * @param directory the directory to store segments in - created if necessary
+	 * @param segmentRecords the number of records in each new segment
+	 * @throws IOException if the segments cannot be opened
+	 */
+	TemperatureSeries(Path directory, int segmentRecords) throws IOException {
+		this.directory = directory;
+		this.segmentRecords = segmentRecords;
+		Files.createDirectories(directory);
+		List<Path> files;
+		try (var stream = Files.list(directory)) {
+			files = stream.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).collect(Collectors.toList());
+		}
+		for (var file : files) {
+			var name = file.getFileName().toString();
+			var first = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+			var segment = new Segment(file, map(file, Files.size(file)), first);
+			if (segment.count == 0) {
+				Files.delete(file);
+			} else {
+				segments.put(first, segment);
+			}
+		}
+	}
+
+	/**
+	 * appends a sample to the series, ignoring samples older than the latest stored sample
+	 *
+	 * @param timestamp the epoch millisecond timestamp of the sample
+	 * @param temperature the temperature
+	 * @param duration the milliseconds of history represented by the sample
+	 * @param heaterOn the milliseconds of the duration the heater was on, or -1 if unknown
+	 * @param desiredTemperature the average desired temperature, or {@link Float#NaN} if unknown
+	 * @throws IOException if a new segment cannot be created
+	 */
+	synchronized void append(long timestamp, float temperature, int duration, int heaterOn, float desiredTemperature)
+			throws IOException {
+		var tail = segments.isEmpty() ? null : segments.lastEntry().getValue();
+		if (tail != null && timestamp < tail.last()) {
+			return;
+		}
+		if (tail == null || tail.count == tail.capacity) {
+			var file = directory.resolve(String.format("%020d%s", timestamp, SUFFIX));
+			tail = new Segment(file, map(file, (long) segmentRecords * RECORD), timestamp);
+			segments.put(timestamp, tail);
+		}
+		var offset = tail.count * RECORD;
+		tail.buffer.putFloat(offset + Long.BYTES, temperature);
+		tail.buffer.putInt(offset + Long.BYTES + Float.BYTES, duration);
+		tail.buffer.putInt(offset + Long.BYTES + Float.BYTES + Integer.BYTES, heaterOn);
+		tail.buffer.putFloat(offset + Long.BYTES + Float.BYTES + Integer.BYTES * 2, desiredTemperature);
+		tail.buffer.putLong(offset, timestamp);                // written last so a torn record has no timestamp
+		tail.count += 1;
+	}
+
+	/**
+	 * passes every sample in the given range to the consumer in timestamp order
+	 *
+	 * @param from the inclusive start of the range in epoch millis
+	 * @param to the exclusive end of the range in epoch millis
+	 * @param consumer receives each sample
+	 */
+	synchronized void scan(long from, long to, SampleConsumer consumer) {
+		var start = segments.floorKey(from);
+		for (var segment : (start == null ? segments : segments.tailMap(start, true)).values()) {
+			if (segment.first >= to) {
+				break;
+			}
+			for (var i = segment.lowerBound(from); i < segment.count; ++i) {
+				var offset = i * RECORD;
+				var timestamp = segment.buffer.getLong(offset);
+				if (timestamp >= to) {
+					return;
+				}
+				consumer.accept(timestamp, segment.buffer.getFloat(offset + Long.BYTES),
+						segment.buffer.getInt(offset + Long.BYTES + Float.BYTES),
+						segment.buffer.getInt(offset + Long.BYTES + Float.BYTES + Integer.BYTES),
+						segment.buffer.getFloat(offset + Long.BYTES + Float.BYTES + Integer.BYTES * 2));
+			}
+		}
+	}
+
+	/**
+	 * deletes every segment holding only samples before the given time
+	 *
+	 * @param before the epoch millisecond cut off
+	 * @return the number of segments deleted
+	 * @throws IOException if a segment cannot be deleted
+	 */
+	synchronized int expire(long before) throws IOException {
+		var expired = 0;
+		while (!segments.isEmpty() && segments.firstEntry().getValue().last() < before) {
+			Files.deleteIfExists(segments.pollFirstEntry().getValue().file);
+			++expired;
+		}
+		return expired;
+	}
+
+	/**
+	 * flushes appended samples to disk
+	 */
+	synchronized void force() {
+		if (!segments.isEmpty()) {
+			segments.lastEntry().getValue().buffer.force();
+		}
+	}
+
+	/**
+	 * flushes appended samples to disk and releases the segments
+	 */
+	@Override
+	public synchronized void close() {
+		force();
+		segments.clear();
+	}
+
+	private static MappedByteBuffer map(Path file, long size) throws IOException {
+		try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			return channel.map(MapMode.READ_WRITE, 0, size);
+		}
+	}
+}
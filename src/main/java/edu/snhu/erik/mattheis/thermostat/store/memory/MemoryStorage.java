@@ -0,0 +1,100 @@
+package edu.snhu.erik.mattheis.thermostat.store.memory;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Typed;
+
+import org.bson.types.ObjectId;
+
+import edu.snhu.erik.mattheis.thermostat.db.Temperature;
+import edu.snhu.erik.mattheis.thermostat.db.TemperatureBins;
+import edu.snhu.erik.mattheis.thermostat.db.TemperatureHistory;
+import edu.snhu.erik.mattheis.thermostat.db.Thermostat;
+import edu.snhu.erik.mattheis.thermostat.store.DuplicateThermostatException;
+import edu.snhu.erik.mattheis.thermostat.store.ThermostatStorage;
+
+/**
+ * stores thermostats and temperature samples in memory only - nothing survives a restart,
+ * which makes it suitable for benchmarks and for running without MongoDB
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@ApplicationScoped
+@Typed(MemoryStorage.class)
+public class MemoryStorage implements ThermostatStorage {
+
+	private final Map<ObjectId, Thermostat> thermostats = new ConcurrentHashMap<>();
+	private final Map<String, NavigableMap<Instant, Temperature>> temperatures = new ConcurrentHashMap<>();
+
+	@Override
+	public List<Thermostat> listThermostats() {
+		return thermostats.values().stream().map(Thermostat::copy).collect(Collectors.toList());
+	}
+
+	@Override
+	public synchronized void createThermostat(Thermostat thermostat) {
+		checkUnique(thermostat);
+		thermostat.id = new ObjectId();
+		thermostats.put(thermostat.id, thermostat.copy());
+	}
+
+	@Override
+	public void updateThermostat(Thermostat thermostat, Temperature sample) {
+		var stored = thermostats.get(thermostat.id);
+		if (stored != null && !Objects.equals(stored.label, thermostat.label)) {
+			synchronized (this) {                                   // only label changes need the uniqueness check
+				checkUnique(thermostat);
+				thermostats.replace(thermostat.id, thermostat.copy());
+			}
+		} else if (stored != null) {
+			thermostats.replace(thermostat.id, thermostat.copy());
+		}
+		if (sample != null) {
+			recordTemperature(sample);
+		}
+	}
+
+	@Override
+	public void deleteThermostat(Thermostat thermostat) {
+		thermostats.remove(thermostat.id);
+	}
+
+	@Override
+	public void recordTemperature(Temperature sample) {
+		temperatures.computeIfAbsent(sample.thermostatId, key -> new ConcurrentSkipListMap<>())
+				.put(sample.timestamp, sample);
+	}
+
+	@Override
+	public TemperatureHistory getTemperatureHistory(String thermostatId, Instant from, Instant to) {
+		var bins = new TemperatureBins();
+		var samples = temperatures.get(thermostatId);
+		if (samples != null && from.isBefore(to)) {
+			samples.subMap(from, to).values().forEach(sample -> bins.addSample(sample.timestamp, sample.temperature,
+					sample.duration == null ? 1 : sample.duration, sample.heaterOnDuration, sample.desiredTemperature));
+		}
+		return bins.toHistory();
+	}
+
+	private void checkUnique(Thermostat thermostat) {
+		for (var other : thermostats.values()) {
+			if (other.id.equals(thermostat.id)) {
+				continue;
+			}
+			if (Objects.equals(other.label, thermostat.label)) {
+				throw new DuplicateThermostatException("label already in use: " + thermostat.label, null);
+			}
+			if (Objects.equals(other.port, thermostat.port)) {
+				throw new DuplicateThermostatException("port already in use: " + thermostat.port, null);
+			}
+		}
+	}
+}
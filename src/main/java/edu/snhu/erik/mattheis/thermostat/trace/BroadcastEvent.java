@@ -0,0 +1,39 @@
+package edu.snhu.erik.mattheis.thermostat.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * a message broadcast to the sessions of a websocket endpoint - the event spans encoding the message and
+ * handing it to every session, while the sends themselves complete asynchronously
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@Name("edu.snhu.erik.mattheis.thermostat.Broadcast")
+@Label("Websocket Broadcast")
+@Category({ "Thermostat", "Websocket" })
+@Description("A message broadcast to websocket sessions")
+public class BroadcastEvent extends Event {
+
+	@Label("Update Id")
+	public long updateId;
+
+	@Label("Endpoint")
+	public String endpoint;
+
+	@Label("Sessions")
+	public int sessions;
+
+	@Label("Size")
+	@DataAmount
+	public int size;
+
+	@Label("Encode Time")
+	@Timespan
+	public long encodeTime;
+}
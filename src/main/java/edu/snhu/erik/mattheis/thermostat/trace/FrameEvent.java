@@ -0,0 +1,40 @@
+package edu.snhu.erik.mattheis.thermostat.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * a report received from a thermostat - the event spans parsing the report and recording the update it
+ * produces, including storing and publishing it, while the parse time covers only decoding the report
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@Name("edu.snhu.erik.mattheis.thermostat.Frame")
+@Label("Thermostat Frame")
+@Category({ "Thermostat", "Serial" })
+@Description("A report received from a thermostat and the update it produced")
+public class FrameEvent extends Event {
+
+	@Label("Update Id")
+	public long updateId;
+
+	@Label("Thermostat Id")
+	public String thermostatId;
+
+	@Label("Binary")
+	@Description("Whether the report arrived in a binary frame rather than an ASCII line")
+	public boolean binary;
+
+	@Label("Size")
+	@DataAmount
+	public int size;
+
+	@Label("Parse Time")
+	@Timespan
+	public long parseTime;
+}
@@ -0,0 +1,35 @@
+package edu.snhu.erik.mattheis.thermostat.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timestamp;
+
+/**
+ * an aggregation of temperature history for one or more thermostats
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@Name("edu.snhu.erik.mattheis.thermostat.History")
+@Label("Temperature History")
+@Category({ "Thermostat", "Storage" })
+@Description("An aggregation of temperature history")
+public class HistoryEvent extends Event {
+
+	@Label("From")
+	@Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+	public long from;
+
+	@Label("To")
+	@Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+	public long to;
+
+	@Label("Thermostats")
+	public int thermostats;
+
+	@Label("Bins")
+	@Description("The number of 15 minute bins returned across all thermostats")
+	public int bins;
+}
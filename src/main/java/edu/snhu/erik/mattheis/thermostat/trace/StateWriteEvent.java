@@ -0,0 +1,32 @@
+package edu.snhu.erik.mattheis.thermostat.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * a write of the state of a thermostat to MongoDB, or to the write-ahead log in its place
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@Name("edu.snhu.erik.mattheis.thermostat.StateWrite")
+@Label("Thermostat State Write")
+@Category({ "Thermostat", "Storage" })
+@Description("A write of the state of a thermostat")
+public class StateWriteEvent extends Event {
+
+	@Label("Update Id")
+	public long updateId;
+
+	@Label("Thermostat Id")
+	public String thermostatId;
+
+	@Label("Version")
+	public long version;
+
+	@Label("Path")
+	@Description("direct, write-ahead log or replay")
+	public String path;
+}
@@ -0,0 +1,33 @@
+package edu.snhu.erik.mattheis.thermostat.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * an insert of temperature samples into MongoDB, or an append to the write-ahead log in its place
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@Name("edu.snhu.erik.mattheis.thermostat.TemperatureInsert")
+@Label("Temperature Insert")
+@Category({ "Thermostat", "Storage" })
+@Description("An insert of temperature samples")
+public class TemperatureInsertEvent extends Event {
+
+	@Label("Update Id")
+	public long updateId;
+
+	@Label("Thermostat Id")
+	@Description("The thermostat of the sample, or empty for a replayed batch")
+	public String thermostatId;
+
+	@Label("Samples")
+	public int samples;
+
+	@Label("Path")
+	@Description("direct, write-ahead log or replay")
+	public String path;
+}
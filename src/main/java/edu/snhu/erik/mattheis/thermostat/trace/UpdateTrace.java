@@ -0,0 +1,62 @@
+package edu.snhu.erik.mattheis.thermostat.trace;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * correlates the flight recorder events of a single thermostat update with an update id
+ * 
+ * an update is handled start to finish on one thread - frame, store, publish, broadcast - so the id
+ * is held in a thread local rather than passed through every layer; opening a trace while one is
+ * already open joins it, so an update started by a frame keeps the id of the frame
+ * 
+ * <pre>
+ * var previous = UpdateTrace.open();
+ * try {
+ *     ...
+ * } finally {
+ *     UpdateTrace.close(previous);
+ * }
+ * </pre>
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+public final class UpdateTrace {
+
+	private static final AtomicLong IDS = new AtomicLong();
+	private static final ThreadLocal<long[]> CURRENT = ThreadLocal.withInitial(() -> new long[1]);
+
+	private UpdateTrace() {
+	}
+
+	/**
+	 * opens a trace on the current thread unless one is already open
+	 * 
+	 * @return the id to restore when the trace is closed
+	 */
+	public static long open() {
+		var current = CURRENT.get();
+		var previous = current[0];
+		if (previous == 0) {
+			current[0] = IDS.incrementAndGet();
+		}
+		return previous;
+	}
+
+	/**
+	 * closes a trace opened by {@link #open()}
+	 * 
+	 * @param previous the id returned when the trace was opened
+	 */
+	public static void close(long previous) {
+		CURRENT.get()[0] = previous;
+	}
+
+	/**
+	 * gets the id of the update being handled on the current thread
+	 * 
+	 * @return the update id, or 0 if no update is being handled
+	 */
+	public static long current() {
+		return CURRENT.get()[0];
+	}
+}
@@ -0,0 +1,107 @@
+package edu.snhu.erik.mattheis.thermostat.websocket;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.websocket.OnClose;
+import javax.websocket.OnError;
+import javax.websocket.OnOpen;
+import javax.websocket.Session;
+import javax.websocket.server.ServerEndpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.snhu.erik.mattheis.thermostat.health.HealthEvent;
+import edu.snhu.erik.mattheis.thermostat.trace.BroadcastEvent;
+import edu.snhu.erik.mattheis.thermostat.trace.UpdateTrace;
+
+/**
+ * a websocket server endpoint for providing thermostat health events as they are raised and cleared
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@ServerEndpoint("/api/thermostats/alerts")
+@ApplicationScoped
+public class HealthAlertSocket {
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+
+	@Inject
+	ObjectMapper objectMapper;
+
+	/**
+	 * stores the session
+	 *
+	 * @param session the opened websocket session
+	 */
+	@OnOpen
+	public void onOpen(Session session) {
+		sessions.add(session);
+		log.info("alert session {} opened", session.getId());
+	}
+
+	/**
+	 * removes the session
+	 *
+	 * @param session the closed session
+	 */
+	@OnClose
+	public void onClose(Session session) {
+		sessions.remove(session);
+		log.info("alert session {} closed", session.getId());
+	}
+
+	/**
+	 * removes the session
+	 *
+	 * @param session the errored session
+	 */
+	@OnError
+	public void onError(Session session, Throwable throwable) {
+		sessions.remove(session);
+		log.error("alert session {} errored", session.getId(), throwable);
+	}
+
+	/**
+	 * sends the provided event as a JSON payload to all sessions - the event
+	 * is encoded once and the same text is sent to every session
+	 *
+	 * @param event the health event to send
+	 */
+	public void broadcast(HealthEvent event) {
+		if (sessions.isEmpty()) {
+			return;
+		}
+		var broadcast = new BroadcastEvent();
+		broadcast.begin();
+		var start = System.nanoTime();
+		String json;
+		try {
+			json = objectMapper.writeValueAsString(event);
+		} catch (JsonProcessingException e) {
+			log.error("problem encoding health event", e);
+			return;
+		}
+		broadcast.encodeTime = System.nanoTime() - start;
+		sessions.forEach(session -> session.getAsyncRemote().sendText(json, result -> {
+			if (!result.isOK()) {
+				log.error("failed to send health event to session {}", session.getId(), result.getException());
+			}
+		}));
+		broadcast.end();
+		if (broadcast.shouldCommit()) {
+			broadcast.updateId = UpdateTrace.current();
+			broadcast.endpoint = "/api/thermostats/alerts";
+			broadcast.sessions = sessions.size();
+			broadcast.size = json.length();
+			broadcast.commit();
+		}
+	}
+}
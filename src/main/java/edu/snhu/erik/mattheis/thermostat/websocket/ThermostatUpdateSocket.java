@@ -1,7 +1,6 @@
 package edu.snhu.erik.mattheis.thermostat.websocket;
 
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -16,14 +15,14 @@ import javax.websocket.server.ServerEndpoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import edu.snhu.erik.mattheis.thermostat.db.Thermostat;
+import edu.snhu.erik.mattheis.thermostat.comm.EncodedThermostat;
 
 /**
  * a websocket server endpoint for providing thermostat updates
  * 
  * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
  */
-@ServerEndpoint(value = "/api/thermostats/{id}/updates", encoders = JsonEncoder.class)
+@ServerEndpoint("/api/thermostats/{id}/updates")
 @ApplicationScoped
 public class ThermostatUpdateSocket {
 
@@ -68,21 +67,28 @@ public class ThermostatUpdateSocket {
 
 	/**
 	 * sends the provided thermostat state as a JSON payload to all
-	 * sessions linked to the correspoinding ID
+	 * sessions linked to the correspoinding ID - the state is encoded
+	 * once by the caller and the same text is sent to every session
 	 * 
-	 * @param thermostat the thermostat state to send
+	 * @param thermostat the encoded thermostat state to send
+	 * @return the number of sessions the state was sent to
 	 */
-	public void broadcast(Thermostat thermostat) {
-		var thermostatId = thermostat.id.toHexString();
-		Optional.ofNullable(thermostatSessions.get(thermostatId)).stream().flatMap(Set::stream)
-				.forEach(session -> session.getAsyncRemote().sendObject(thermostat, result -> {
-					var sessionId = session.getId();
-					if (result.isOK()) {
-						log.info("updated session {} for thermostat {}", sessionId, thermostatId);
-					} else {
-						var exception = result.getException();
-						log.error("failed to update session {} for thermostat {}", sessionId, thermostatId, exception);
-					}
-				}));
+	public int broadcast(EncodedThermostat thermostat) {
+		var thermostatId = thermostat.getState().getId().toHexString();
+		var sessions = thermostatSessions.get(thermostatId);
+		if (sessions == null || sessions.isEmpty()) {
+			return 0;
+		}
+		var json = thermostat.getJsonText();
+		sessions.forEach(session -> session.getAsyncRemote().sendText(json, result -> {
+			var sessionId = session.getId();
+			if (result.isOK()) {
+				log.info("updated session {} for thermostat {}", sessionId, thermostatId);
+			} else {
+				var exception = result.getException();
+				log.error("failed to update session {} for thermostat {}", sessionId, thermostatId, exception);
+			}
+		}));
+		return sessions.size();
 	}
 }
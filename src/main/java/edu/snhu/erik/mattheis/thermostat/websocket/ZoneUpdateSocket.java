@@ -0,0 +1,107 @@
+package edu.snhu.erik.mattheis.thermostat.websocket;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.websocket.OnClose;
+import javax.websocket.OnError;
+import javax.websocket.OnOpen;
+import javax.websocket.Session;
+import javax.websocket.server.ServerEndpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.snhu.erik.mattheis.thermostat.trace.BroadcastEvent;
+import edu.snhu.erik.mattheis.thermostat.trace.UpdateTrace;
+import edu.snhu.erik.mattheis.thermostat.zone.ZoneState;
+
+/**
+ * a websocket server endpoint for providing the aggregate state of zones as it changes
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@ServerEndpoint("/api/zones/updates")
+@ApplicationScoped
+public class ZoneUpdateSocket {
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+
+	@Inject
+	ObjectMapper objectMapper;
+
+	/**
+	 * stores the session
+	 *
+	 * @param session the opened websocket session
+	 */
+	@OnOpen
+	public void onOpen(Session session) {
+		sessions.add(session);
+		log.info("zone session {} opened", session.getId());
+	}
+
+	/**
+	 * removes the session
+	 *
+	 * @param session the closed session
+	 */
+	@OnClose
+	public void onClose(Session session) {
+		sessions.remove(session);
+		log.info("zone session {} closed", session.getId());
+	}
+
+	/**
+	 * removes the session
+	 *
+	 * @param session the errored session
+	 */
+	@OnError
+	public void onError(Session session, Throwable throwable) {
+		sessions.remove(session);
+		log.error("zone session {} errored", session.getId(), throwable);
+	}
+
+	/**
+	 * sends the provided zone state as a JSON payload to all sessions - the state
+	 * is encoded once and the same text is sent to every session
+	 *
+	 * @param zone the zone state to send
+	 */
+	public void broadcast(ZoneState zone) {
+		if (sessions.isEmpty()) {
+			return;
+		}
+		var event = new BroadcastEvent();
+		event.begin();
+		var start = System.nanoTime();
+		String json;
+		try {
+			json = objectMapper.writeValueAsString(zone);
+		} catch (JsonProcessingException e) {
+			log.error("problem encoding zone '{}'", zone.getName(), e);
+			return;
+		}
+		event.encodeTime = System.nanoTime() - start;
+		sessions.forEach(session -> session.getAsyncRemote().sendText(json, result -> {
+			if (!result.isOK()) {
+				log.error("failed to update zone session {}", session.getId(), result.getException());
+			}
+		}));
+		event.end();
+		if (event.shouldCommit()) {
+			event.updateId = UpdateTrace.current();
+			event.endpoint = "/api/zones/updates";
+			event.sessions = sessions.size();
+			event.size = json.length();
+			event.commit();
+		}
+	}
+}
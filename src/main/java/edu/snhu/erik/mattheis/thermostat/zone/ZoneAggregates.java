@@ -0,0 +1,226 @@
+package edu.snhu.erik.mattheis.thermostat.zone;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import org.bson.types.ObjectId;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.snhu.erik.mattheis.thermostat.comm.ThermostatChanges;
+import edu.snhu.erik.mattheis.thermostat.comm.ThermostatManager;
+import edu.snhu.erik.mattheis.thermostat.db.ThermostatState;
+import edu.snhu.erik.mattheis.thermostat.websocket.ZoneUpdateSocket;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+
+/**
+ * maintains the aggregate state of every zone as thermostats change (see {@link ZoneState})
+ *
+ * every change moves the previous contribution of the thermostat out of the totals of its zone and
+ * the new one in, so each change costs the same however many thermostats share the zone - a change
+ * which leaves the contribution as it was is not pushed at all
+ *
+ * staleness depends on the passing of time rather than on changes, so it is checked on a fixed interval,
+ * along with picking up thermostats which have not changed since startup and dropping removed ones
+ *
+ * zones exist while they have members - a thermostat joins a zone by having it set on its state - and
+ * share a single version counter, so the version of a zone never goes backwards even if it empties
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@ApplicationScoped
+public class ZoneAggregates {
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final Lock lock = new ReentrantLock();
+	private final Map<ObjectId, ZoneMember> members = new HashMap<>(); // guarded by lock
+	private final Map<String, ZoneTotals> zones = new TreeMap<>();     // guarded by lock, by name
+	private final Consumer<ThermostatState> subscriber = this::changed;
+	private final Timer timer = new Timer("zone-aggregates", true);
+
+	private long version;                                              // guarded by lock, shared by all zones
+
+	@Inject
+	ThermostatChanges changes;
+
+	@Inject
+	ThermostatManager manager;
+
+	@Inject
+	ZoneUpdateSocket zoneSocket;
+
+	@ConfigProperty(name = "thermostat.health.stale-after", defaultValue = "3m")
+	Duration staleAfter;
+
+	@ConfigProperty(name = "thermostat.zones.check-interval", defaultValue = "15s")
+	Duration checkInterval;
+
+	/**
+	 * subscribes to thermostat changes and starts the periodic check
+	 *
+	 * @param startup the Quarkus startup event
+	 */
+	void onStartup(@Observes StartupEvent startup) {
+		changes.subscribe(subscriber, null, 0, manager::listThermostats);
+		timer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					check();
+				} catch (Exception e) {
+					log.error("problem checking zones", e);
+				}
+			}
+		}, checkInterval.toMillis(), checkInterval.toMillis());
+	}
+
+	/**
+	 * unsubscribes from thermostat changes and stops the periodic check
+	 *
+	 * @param shutdown the Quarkus shutdown event
+	 */
+	void onShutdown(@Observes ShutdownEvent shutdown) {
+		changes.unsubscribe(subscriber);
+		timer.cancel();
+	}
+
+	/**
+	 * gets the aggregate state of every zone
+	 *
+	 * @return the zones in order of name
+	 */
+	public List<ZoneState> getZones() {
+		lock.lock();
+		try {
+			return zones.values().stream().map(ZoneTotals::toState).collect(Collectors.toUnmodifiableList());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * gets the aggregate state of the zone with the given name
+	 *
+	 * @param name the name of the zone
+	 * @return the zone or {@link Optional#empty()} if it has no members
+	 */
+	public Optional<ZoneState> getZone(String name) {
+		lock.lock();
+		try {
+			return Optional.ofNullable(zones.get(name)).map(ZoneTotals::toState);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * called with every change on the thread reporting it - only touches the totals of one or two zones
+	 */
+	private void changed(ThermostatState state) {
+		var updated = new LinkedHashMap<String, ZoneState>();
+		lock.lock();
+		try {
+			apply(state, Instant.now(), updated);
+		} finally {
+			lock.unlock();
+		}
+		updated.values().forEach(zoneSocket::broadcast);
+	}
+
+	/*
+	 * picks up thermostats not yet seen, drops removed ones and updates staleness
+	 */
+	private void check() {
+		var now = Instant.now();
+		var live = manager.listThermostats();
+		var updated = new LinkedHashMap<String, ZoneState>();
+		lock.lock();
+		try {
+			var ids = live.stream().map(ThermostatState::getId).collect(Collectors.toSet());
+			for (var state : live) {
+				var member = members.get(state.getId());
+				if (member == null || member.version < state.getVersion()) {
+					apply(state, now, updated);
+				}
+			}
+			for (var iterator = members.entrySet().iterator(); iterator.hasNext();) {
+				var member = iterator.next();
+				if (!ids.contains(member.getKey())) {
+					iterator.remove();
+					move(member.getValue(), null, updated);
+				} else {
+					var stale = stale(member.getValue().lastUpdate, now);
+					if (stale != member.getValue().stale) {
+						var replacement = member.getValue().withStale(stale);
+						member.setValue(replacement);
+						move(member.getValue(), replacement, updated);
+					}
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		updated.values().forEach(zoneSocket::broadcast);
+	}
+
+	private void apply(ThermostatState state, Instant now, Map<String, ZoneState> updated) {
+		var previous = members.get(state.getId());
+		if (previous != null && previous.version > state.getVersion()) {
+			return;                                                   // never replace a newer state
+		}
+		var member = ZoneMember.of(state, stale(state.getLastUpdate(), now));
+		members.put(state.getId(), member);
+		move(previous, member, updated);
+	}
+
+	/*
+	 * moves the contribution of a thermostat from its previous values to its current ones,
+	 * recording the new state of each zone affected
+	 */
+	private void move(ZoneMember previous, ZoneMember current, Map<String, ZoneState> updated) {
+		if (previous != null && current != null && Objects.equals(previous.zone, current.zone)
+				&& Objects.equals(previous.ambientTemperature, current.ambientTemperature)
+				&& Objects.equals(previous.desiredTemperature, current.desiredTemperature)
+				&& previous.heaterOn == current.heaterOn && previous.stale == current.stale) {
+			return;                                                   // nothing aggregated has changed
+		}
+		if (previous != null && previous.zone != null) {
+			var totals = zones.get(previous.zone);
+			totals.add(previous, -1);
+			totals.touch(++version);
+			updated.put(previous.zone, totals.toState());
+			if (totals.isEmpty()) {
+				zones.remove(previous.zone);
+			}
+		}
+		if (current != null && current.zone != null) {
+			var totals = zones.computeIfAbsent(current.zone, ZoneTotals::new);
+			totals.add(current, 1);
+			totals.touch(++version);
+			updated.put(current.zone, totals.toState());
+		}
+	}
+
+	private boolean stale(Instant lastUpdate, Instant now) {
+		return lastUpdate == null || !lastUpdate.plus(staleAfter).isAfter(now);
+	}
+}
@@ -0,0 +1,41 @@
+package edu.snhu.erik.mattheis.thermostat.zone;
+
+import java.time.Instant;
+
+import edu.snhu.erik.mattheis.thermostat.db.ThermostatState;
+
+/**
+ * the values a thermostat last contributed to the totals of its zone
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class ZoneMember {
+
+	final String zone;
+	final Float ambientTemperature;
+	final Float desiredTemperature;
+	final boolean heaterOn;
+	final boolean stale;
+	final Instant lastUpdate;
+	final long version;
+
+	private ZoneMember(String zone, Float ambientTemperature, Float desiredTemperature, boolean heaterOn,
+			boolean stale, Instant lastUpdate, long version) {
+		this.zone = zone;
+		this.ambientTemperature = ambientTemperature;
+		this.desiredTemperature = desiredTemperature;
+		this.heaterOn = heaterOn;
+		this.stale = stale;
+		this.lastUpdate = lastUpdate;
+		this.version = version;
+	}
+
+	static ZoneMember of(ThermostatState state, boolean stale) {
+		return new ZoneMember(state.getZone(), state.getAmbientTemperature(), state.getDesiredTemperature(),
+				Boolean.TRUE.equals(state.getHeaterOn()), stale, state.getLastUpdate(), state.getVersion());
+	}
+
+	ZoneMember withStale(boolean stale) {
+		return new ZoneMember(zone, ambientTemperature, desiredTemperature, heaterOn, stale, lastUpdate, version);
+	}
+}
@@ -0,0 +1,122 @@
+package edu.snhu.erik.mattheis.thermostat.zone;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * an immutable snapshot of the aggregate state of the thermostats in a zone
+ * 
+ * <pre>
+ * {
+ *     "name": "Floor 2 East",
+ *     "thermostats": 12,
+ *     "reporting": 11,
+ *     "heatersOn": 4,
+ *     "stale": 1,
+ *     "averageAmbientTemperature": 21.284090909090907,
+ *     "averageDesiredTemperature": 21.0,
+ *     "version": 5281
+ * }
+ * </pre>
+ * 
+ * {@code reporting} counts the thermostats which have reported an ambient temperature, and the averages
+ * are left out when no thermostat has reported - the version increases every time the aggregates change
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+@JsonInclude(Include.NON_NULL)
+public class ZoneState {
+
+	private final String name;
+	private final int thermostats;
+	private final int reporting;
+	private final int heatersOn;
+	private final int stale;
+	private final Double averageAmbientTemperature;
+	private final Double averageDesiredTemperature;
+	private final long version;
+
+	ZoneState(String name, int thermostats, int reporting, int heatersOn, int stale, Double averageAmbientTemperature,
+			Double averageDesiredTemperature, long version) {
+		this.name = name;
+		this.thermostats = thermostats;
+		this.reporting = reporting;
+		this.heatersOn = heatersOn;
+		this.stale = stale;
+		this.averageAmbientTemperature = averageAmbientTemperature;
+		this.averageDesiredTemperature = averageDesiredTemperature;
+		this.version = version;
+	}
+
+	/**
+	 * gets the name of the zone
+	 * 
+	 * @return the zone name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * gets the number of thermostats in the zone
+	 * 
+	 * @return the thermostat count
+	 */
+	public int getThermostats() {
+		return thermostats;
+	}
+
+	/**
+	 * gets the number of thermostats in the zone which have reported an ambient temperature
+	 * 
+	 * @return the reporting thermostat count
+	 */
+	public int getReporting() {
+		return reporting;
+	}
+
+	/**
+	 * gets the number of thermostats in the zone with the heater on
+	 * 
+	 * @return the heater count
+	 */
+	public int getHeatersOn() {
+		return heatersOn;
+	}
+
+	/**
+	 * gets the number of thermostats in the zone which have not reported within {@code thermostat.health.stale-after}
+	 * 
+	 * @return the stale thermostat count
+	 */
+	public int getStale() {
+		return stale;
+	}
+
+	/**
+	 * gets the average ambient temperature of the reporting thermostats
+	 * 
+	 * @return the average in degrees C, or {@code null} if none has reported
+	 */
+	public Double getAverageAmbientTemperature() {
+		return averageAmbientTemperature;
+	}
+
+	/**
+	 * gets the average desired temperature of the thermostats which have reported one
+	 * 
+	 * @return the average in degrees C, or {@code null} if none has reported
+	 */
+	public Double getAverageDesiredTemperature() {
+		return averageDesiredTemperature;
+	}
+
+	/**
+	 * gets the version of the aggregates
+	 * 
+	 * @return the version
+	 */
+	public long getVersion() {
+		return version;
+	}
+}
@@ -0,0 +1,78 @@
+package edu.snhu.erik.mattheis.thermostat.zone;
+
+/**
+ * running totals of the thermostats in a zone - each thermostat is added when it joins or changes and
+ * subtracted with exactly the values it was added with when it leaves or changes again, so that no
+ * update ever needs to look at the other members
+ * 
+ * guarded by the lock of {@link ZoneAggregates}
+ * 
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class ZoneTotals {
+
+	private final String name;
+
+	private int thermostats;
+	private int reporting;
+	private int heatersOn;
+	private int stale;
+	private int desiring;          // thermostats which have reported a desired temperature
+	private double ambientSum;
+	private double desiredSum;
+	private long version;
+
+	ZoneTotals(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * adds or subtracts the contribution of a member
+	 * 
+	 * @param member the member
+	 * @param sign   1 to add or -1 to subtract
+	 */
+	void add(ZoneMember member, int sign) {
+		thermostats += sign;
+		if (member.ambientTemperature != null) {
+			reporting += sign;
+			ambientSum += sign * (double) member.ambientTemperature;
+		}
+		if (member.desiredTemperature != null) {
+			desiring += sign;
+			desiredSum += sign * (double) member.desiredTemperature;
+		}
+		if (member.heaterOn) {
+			heatersOn += sign;
+		}
+		if (member.stale) {
+			stale += sign;
+		}
+		if (reporting == 0) {
+			ambientSum = 0;        // drop any rounding left over from the members which have left
+		}
+		if (desiring == 0) {
+			desiredSum = 0;
+		}
+	}
+
+	/**
+	 * marks the totals as changed
+	 * 
+	 * @param version the new version of the totals
+	 */
+	void touch(long version) {
+		this.version = version;
+	}
+
+	boolean isEmpty() {
+		return thermostats == 0;
+	}
+
+	ZoneState toState() {
+		return new ZoneState(name, thermostats, reporting, heatersOn, stale,
+				reporting == 0 ? null : ambientSum / reporting,
+				desiring == 0 ? null : desiredSum / desiring,
+				version);
+	}
+}
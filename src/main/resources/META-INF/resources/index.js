@@ -199,13 +199,28 @@ function subscribeToUpdates(id) {
   };
 }
 
-// on document load, make AJAX request to API for configured thermostats
-$(document).ready(function() {
-  $.get('api/thermostats', function(thermostats) {
+/**
+ * makes an AJAX request to the API for a page of configured thermostats,
+ * fetching only the fields displayed, then renders the page and requests the
+ * next one - so the first cards appear without waiting for the whole fleet
+ *
+ * @param url - the URL of the page, from the Link header of the previous page
+ */
+function loadThermostats(url) {
+  $.get(url, function(thermostats, status, xhr) {
     for (var i = 0; i < thermostats.length; ++i) { // for each configured thermostat...
       addThermostatCard(thermostats[i]);           //     display thermostat
       updateTemperatureHistory(thermostats[i].id); //     begin polling for temperature history
       subscribeToUpdates(thermostats[i].id);       //     listen for thermostat updates
     }
+    var next = /<([^>]*)>\s*;\s*rel="next"/.exec(xhr.getResponseHeader('Link') || '');
+    if (next) {
+      loadThermostats(next[1]);
+    }
   });
+}
+
+// on document load, start loading the configured thermostats
+$(document).ready(function() {
+  loadThermostats('api/thermostats?limit=24&fields=label,ambientTemperature,desiredTemperature,heaterOn,remoteUpdateDisabled');
 });
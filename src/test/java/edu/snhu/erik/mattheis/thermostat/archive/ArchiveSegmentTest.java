@@ -0,0 +1,113 @@
+package edu.snhu.erik.mattheis.thermostat.archive;
+
+import static edu.snhu.erik.mattheis.thermostat.archive.SampleCodecTest.collector;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.snhu.erik.mattheis.thermostat.db.Temperature;
+
+/**
+ * writing, committing and reading back the archive of a day with {@link ArchiveSegment}
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class ArchiveSegmentTest {
+
+	private static final LocalDate DAY = LocalDate.parse("2021-10-18");
+	private static final Instant START = Instant.parse("2021-10-18T00:00:00Z");
+	private static final String FIRST = "614e59d4fb04a00ca2b7a984";
+	private static final String SECOND = "614e59d4fb04a00ca2b7a985";
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void readsBackEachThermostatAfterCommit() throws IOException {
+		var first = samples(FIRST, 1440, 21f);
+		var second = samples(SECOND, 720, 18f);
+		try (var writer = new ArchiveSegment.Writer(directory, DAY)) {
+			for (var sample : first) {
+				writer.add(sample);
+			}
+			for (var sample : second) {
+				writer.add(sample);
+			}
+			writer.commit();
+			assertEquals(first.size() + second.size(), writer.getSamples());
+		}
+
+		var segment = ArchiveSegment.open(directory, DAY);
+		assertEquals(values(first), read(segment, FIRST, START, START.plusSeconds(86400)));
+		assertEquals(values(second), read(segment, SECOND, START, START.plusSeconds(86400)));
+		assertEquals(List.of(), read(segment, "614e59d4fb04a00ca2b7a986", START, START.plusSeconds(86400)));
+	}
+
+	@Test
+	void readsOnlySamplesWithinPeriod() throws IOException {
+		var samples = samples(FIRST, 1440, 21f);
+		try (var writer = new ArchiveSegment.Writer(directory, DAY)) {
+			for (var sample : samples) {
+				writer.add(sample);
+			}
+			writer.commit();
+		}
+
+		var from = START.plusSeconds(3600);
+		var to = START.plusSeconds(7200);
+		var within = samples.stream()
+				.filter(sample -> !sample.timestamp.isBefore(from) && sample.timestamp.isBefore(to))
+				.collect(Collectors.toList());
+		assertEquals(60, within.size());
+		assertEquals(values(within), read(ArchiveSegment.open(directory, DAY), FIRST, from, to));
+	}
+
+	@Test
+	void leavesNothingBehindWithoutCommit() throws IOException {
+		try (var writer = new ArchiveSegment.Writer(directory, DAY)) {
+			writer.add(samples(FIRST, 10, 21f).get(0));
+		}
+		assertFalse(Files.exists(ArchiveSegment.index(directory, DAY)));
+		try (var files = Files.list(directory)) {
+			assertTrue(files.findAny().isEmpty());
+		}
+	}
+
+	/*
+	 * a sample a minute, the heater on for the first half of each hour
+	 */
+	private static List<Temperature> samples(String thermostatId, int count, float desired) {
+		var samples = new ArrayList<Temperature>();
+		for (var i = 0; i < count; ++i) {
+			var heaterOn = i % 60 < 30;
+			samples.add(Temperature.of(thermostatId, START.plusSeconds(60L * i),
+					desired - 1 + (i % 60) / 32f, 60_000L, heaterOn ? 60_000L : 0L, desired));
+		}
+		return samples;
+	}
+
+	private static List<Temperature> read(ArchiveSegment segment, String thermostatId, Instant from, Instant to) {
+		var read = new ArrayList<Temperature>();
+		segment.read(thermostatId, from, to, collector(read));
+		return read;
+	}
+
+	private static List<Temperature> values(List<Temperature> samples) {
+		return samples.stream()
+				.map(sample -> SampleCodecTest.sample(sample.timestamp, sample.temperature, sample.duration,
+						sample.heaterOnDuration, sample.desiredTemperature))
+				.collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,161 @@
+package edu.snhu.erik.mattheis.thermostat.archive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.junit.jupiter.api.Test;
+
+import edu.snhu.erik.mattheis.thermostat.db.Temperature;
+
+/**
+ * round trips through {@link SampleCodec} - every column must decode to exactly the bits encoded,
+ * whichever prefix or window each value was written with
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class SampleCodecTest {
+
+	private static final Instant START = Instant.parse("2021-10-18T00:00:00Z");
+
+	@Test
+	void steadySamplesRoundTripInFewBits() {
+		var samples = new ArrayList<Temperature>();
+		for (var i = 0; i < 1000; ++i) {
+			samples.add(sample(START.plusSeconds(60L * i), 21.5f, 60_000L, 0L, 21f));
+		}
+		var bytes = SampleCodec.encode(samples);
+		assertEquals(samples, decode(bytes, samples.size()));
+		assertTrue(bytes.length < samples.size(), "expected under a byte per sample, was " + bytes.length);
+	}
+
+	@Test
+	void unknownValuesRoundTrip() {
+		var samples = List.of(
+				sample(START, 20f, null, null, null),
+				sample(START.plusSeconds(60), 20.25f, 60_000L, 15_000L, 21f),
+				sample(START.plusSeconds(120), 20.5f, null, null, null),
+				sample(START.plusSeconds(180), Float.NaN, 0L, 0L, Float.NaN));
+		assertEquals(samples, decode(SampleCodec.encode(samples), samples.size()));
+	}
+
+	@Test
+	void largeDeltasUseSixtyFourBitEscape() {
+		var samples = List.of(
+				sample(START, 20f, 1L, 1L, 21f),
+				sample(START.plusSeconds(60), 20f, 60_000L, 0L, 21f),
+				sample(START.plusSeconds(7 * 24 * 3600), 20f, 3_600_000_000L, 3_600_000_000L, 21f), // a week's gap
+				sample(START.plusSeconds(7 * 24 * 3600 + 60), 20f, 60_000L, 0L, 21f),
+				sample(Instant.ofEpochMilli(Long.MAX_VALUE / 2), 20f, Long.MAX_VALUE - 1, 0L, 21f));
+		assertEquals(samples, decode(SampleCodec.encode(samples), samples.size()));
+	}
+
+	@Test
+	void xorWindowIsReusedAndReplaced() {
+		var temperatures = new float[] {
+				20.0f, 20.5f, 20.0f, 20.5f,   // the same XOR again, within the window
+				20.25f, 20.0f,                // a narrower XOR, still within the window
+				-40.0f, 85.0f, 1e-30f,        // wider XORs, each starting a new window
+				Float.MIN_VALUE, -0.0f, 0.0f, Float.MAX_VALUE };
+		var samples = new ArrayList<Temperature>();
+		for (var i = 0; i < temperatures.length; ++i) {
+			samples.add(sample(START.plusSeconds(60L * i), temperatures[i], 60_000L, 0L, temperatures[i]));
+		}
+		assertEquals(samples, decode(SampleCodec.encode(samples), samples.size()));
+	}
+
+	@Test
+	void decodesFromOffsetInBuffer() {
+		var samples = List.of(sample(START, 20f, 60_000L, 0L, 21f), sample(START.plusSeconds(61), 20.1f, 61_000L, 61_000L, 21f));
+		var bytes = SampleCodec.encode(samples);
+		var buffer = ByteBuffer.allocate(bytes.length + 3);
+		buffer.position(3);
+		buffer.put(bytes);
+		var decoded = new ArrayList<Temperature>();
+		SampleCodec.decode(buffer, 3, samples.size(), collector(decoded));
+		assertEquals(samples, decoded);
+	}
+
+	@Test
+	void bitsRoundTripAcrossByteBoundaries() {
+		var out = new BitOutput();
+		out.writeBit(true);
+		out.writeBits(0x5, 3);
+		out.writeBits(-1L, 64);
+		out.writeBits(0x123, 12);
+		out.writeBits(Long.MIN_VALUE, 64);
+		out.writeBit(false);
+		out.writeBit(true);
+		var in = new BitInput(ByteBuffer.wrap(out.toByteArray()), 0);
+		assertTrue(in.readBit());
+		assertEquals(0x5, in.readBits(3));
+		assertEquals(-1L, in.readBits(64));
+		assertEquals(0x123, in.readBits(12));
+		assertEquals(Long.MIN_VALUE, in.readBits(64));
+		assertEquals(false, in.readBit());
+		assertTrue(in.readBit());
+	}
+
+	private static List<Temperature> decode(byte[] bytes, int count) {
+		var decoded = new ArrayList<Temperature>();
+		SampleCodec.decode(ByteBuffer.wrap(bytes), 0, count, collector(decoded));
+		return decoded;
+	}
+
+	/*
+	 * collects decoded samples as comparable values
+	 */
+	static SampleCodec.SampleConsumer collector(List<Temperature> samples) {
+		return (timestamp, temperature, duration, heaterOn, desiredTemperature) -> samples.add(sample(
+				Instant.ofEpochMilli(timestamp), temperature, duration < 0 ? null : duration,
+				heaterOn < 0 ? null : heaterOn, Float.isNaN(desiredTemperature) ? null : desiredTemperature));
+	}
+
+	static Temperature sample(Instant timestamp, float temperature, Long duration, Long heaterOn, Float desired) {
+		return new Sample(timestamp, temperature, duration, heaterOn, desired);
+	}
+
+	/*
+	 * a sample compared by the values archived, with floats compared by their bits
+	 */
+	private static final class Sample extends Temperature {
+
+		Sample(Instant timestamp, float temperature, Long duration, Long heaterOn, Float desired) {
+			this.thermostatId = "614e59d4fb04a00ca2b7a984";
+			this.timestamp = timestamp;
+			this.temperature = temperature;
+			this.duration = duration;
+			this.heaterOnDuration = heaterOn;
+			this.desiredTemperature = desired != null && Float.isNaN(desired) ? null : desired;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Temperature)) {
+				return false;
+			}
+			var that = (Temperature) other;
+			return timestamp.equals(that.timestamp)
+					&& Float.floatToRawIntBits(temperature) == Float.floatToRawIntBits(that.temperature)
+					&& Objects.equals(duration, that.duration)
+					&& Objects.equals(heaterOnDuration, that.heaterOnDuration)
+					&& Objects.equals(desiredTemperature == null ? null : Float.floatToRawIntBits(desiredTemperature),
+							that.desiredTemperature == null ? null : Float.floatToRawIntBits(that.desiredTemperature));
+		}
+
+		@Override
+		public int hashCode() {
+			return timestamp.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return timestamp + " " + temperature + " " + duration + " " + heaterOnDuration + " " + desiredTemperature;
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package edu.snhu.erik.mattheis.thermostat.comm;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * encoding of {@link BinaryFrame binary frames} and their checksum
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class BinaryFrameTest {
+
+	@Test
+	void crc16MatchesCcittFalseCheckValue() {
+		var data = "123456789".getBytes(US_ASCII);
+		assertEquals(0x29B1, BinaryFrame.crc16(data, 0, data.length));
+	}
+
+	@Test
+	void encodesHeaderPayloadAndChecksum() {
+		var frame = BinaryFrame.setDesiredTemperature(22.5f);              // 2250 = 0x08CA
+		assertEquals(BinaryFrame.HEADER + 2 + BinaryFrame.TRAILER, frame.length);
+		assertEquals(BinaryFrame.SYNC, frame[0]);
+		assertEquals(2, frame[1]);
+		assertEquals(BinaryFrame.SET_DESIRED_TEMPERATURE, frame[2]);
+		assertArrayEquals(new byte[] { 0x08, (byte) 0xCA }, new byte[] { frame[3], frame[4] });
+		var crc = BinaryFrame.crc16(frame, 1, frame.length - 1 - BinaryFrame.TRAILER);
+		assertEquals(crc, ((frame[5] & 0xFF) << 8) | (frame[6] & 0xFF));
+	}
+
+	@Test
+	void convertsTemperaturesToFixedPointAndBack() {
+		assertEquals(22.5f, BinaryFrame.fromFixed(BinaryFrame.toFixed(22.5f)));
+		assertEquals(-10.25f, BinaryFrame.fromFixed(BinaryFrame.toFixed(-10.25f)));
+		assertEquals(Short.MAX_VALUE, BinaryFrame.toFixed(1000f));           // clamped
+		assertEquals(Short.MIN_VALUE, BinaryFrame.toFixed(-1000f));
+	}
+}
@@ -0,0 +1,116 @@
+package edu.snhu.erik.mattheis.thermostat.comm;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * splitting of the bytes received from a thermostat by {@link FrameDecoder}, including
+ * resynchronizing after corrupt frames and noticing a thermostat which reverts to ASCII
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class FrameDecoderTest {
+
+	private final List<String> messages = new ArrayList<>();
+	private FrameDecoder decoder;
+
+	@BeforeEach
+	void createDecoder() {
+		decoder = new FrameDecoder(new FrameDecoder.Handler() {
+			@Override
+			public void line(String line) {
+				messages.add("line " + line);
+			}
+
+			@Override
+			public void frame(int type, ByteBuffer payload) {
+				var desired = BinaryFrame.fromFixed(payload.getShort());
+				var ambient = BinaryFrame.fromFixed(payload.getShort());
+				messages.add("frame " + type + " " + desired + " " + ambient + " " + payload.get());
+			}
+
+			@Override
+			public void corrupt() {
+				messages.add("corrupt");
+			}
+		});
+		decoder.setBinary(true);
+	}
+
+	@Test
+	void decodesEncodedFrame() {
+		decoder.feed(report(22.5f, 19.75f, BinaryFrame.FLAG_HEATER_ON));
+		assertEquals(List.of("frame 1 22.5 19.75 1"), messages);
+	}
+
+	@Test
+	void decodesFrameSplitAcrossReads() {
+		var frame = report(22.5f, 19.75f, 0);
+		for (var b : frame) {
+			decoder.feed(new byte[] { b });
+		}
+		assertEquals(List.of("frame 1 22.5 19.75 0"), messages);
+	}
+
+	@Test
+	void dropsCorruptFrameAndDecodesNextOne() {
+		var bad = report(22.5f, 19.75f, 0);
+		bad[4] ^= 0x01;                                                    // flip a payload bit
+		decoder.feed(concat(bad, report(21f, 20f, BinaryFrame.FLAG_REMOTE_LOCK)));
+		assertEquals(List.of("corrupt", "frame 1 21.0 20.0 2"), messages);
+	}
+
+	@Test
+	void resynchronizesAfterCorruptLength() {
+		var bad = report(22.5f, 19.75f, 0);
+		bad[1] = (byte) 200;                                               // swallows the frames which follow
+		var stream = new ByteArrayOutputStream();
+		stream.writeBytes(bad);
+		var expected = new ArrayList<String>();
+		expected.add("corrupt");
+		for (var i = 0; i < 25; ++i) {
+			stream.writeBytes(report(20f + i, 18f, 0));
+			expected.add("frame 1 " + (20f + i) + " 18.0 0");
+		}
+		decoder.feed(stream.toByteArray());
+		assertEquals(expected, messages);
+	}
+
+	@Test
+	void deliversAsciiLineInBinaryMode() {
+		decoder.feed(concat(report(22.5f, 19.75f, 0), "D:22.500000\n".getBytes(US_ASCII),
+				report(21f, 20f, 0)));
+		assertEquals(List.of("frame 1 22.5 19.75 0", "line D:22.500000", "frame 1 21.0 20.0 0"), messages);
+	}
+
+	@Test
+	void discardsBinaryNoiseBeforeAsciiLine() {
+		decoder.feed(concat(new byte[] { 0x01, (byte) 0xFF }, BinaryFrame.negotiate()));
+		assertEquals(List.of(), messages);                                // noise and line share a line
+		decoder.feed(BinaryFrame.negotiate());
+		assertEquals(List.of("line " + BinaryFrame.NEGOTIATE), messages);
+	}
+
+	private static byte[] report(float desired, float ambient, int flags) {
+		var desiredFixed = BinaryFrame.toFixed(desired);
+		var ambientFixed = BinaryFrame.toFixed(ambient);
+		return BinaryFrame.encode(BinaryFrame.REPORT, (byte) (desiredFixed >> 8), (byte) desiredFixed,
+				(byte) (ambientFixed >> 8), (byte) ambientFixed, (byte) flags);
+	}
+
+	private static byte[] concat(byte[]... parts) {
+		var stream = new ByteArrayOutputStream();
+		for (var part : parts) {
+			stream.writeBytes(part);
+		}
+		return stream.toByteArray();
+	}
+}
@@ -0,0 +1,114 @@
+package edu.snhu.erik.mattheis.thermostat.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * samples from {@link TemperatureSampler} never straddle a history bin and never hold a reading
+ * across a silence longer than the stale threshold
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class TemperatureSamplerTest {
+
+	private static final Instant MIDNIGHT = Instant.parse("2021-10-18T00:00:00Z");
+
+	private TemperatureSampler sampler;
+	private ThermostatState state;
+
+	@BeforeEach
+	void setUp() {
+		sampler = new TemperatureSampler();
+		sampler.deadband = 0.1f;
+		sampler.heartbeat = Duration.ofMinutes(5);
+		sampler.staleAfter = Duration.ofMinutes(3);
+		var thermostat = Thermostat.create("test", "COM1");
+		thermostat.id = new ObjectId();
+		state = ThermostatState.of(thermostat);
+	}
+
+	@Test
+	void heaterRuntimeStopsAtStaleAfterMultiBinGap() {
+		var samples = new ArrayList<Temperature>();
+		samples.addAll(report(minutes(12), true));
+		samples.addAll(report(minutes(13), true));
+		samples.addAll(report(minutes(120), false));                // silent for almost two hours
+
+		assertEquals(List.of(minutes(12), minutes(15).minusMillis(1), minutes(16), minutes(120)), timestamps(samples));
+		assertEquals(List.of(1L, 180_000L, 60_000L, 1L), durations(samples));
+		assertEquals(List.of(1L, 180_000L, 60_000L, 0L), heaterOn(samples));
+		assertWithinBins(samples);
+	}
+
+	@Test
+	void closesEveryBinCrossedWithinStaleAfter() {
+		sampler.staleAfter = Duration.ofHours(1);
+		var samples = new ArrayList<Temperature>();
+		samples.addAll(report(minutes(10), true));
+		samples.addAll(report(minutes(50), true));
+
+		assertEquals(List.of(minutes(10), minutes(15).minusMillis(1), minutes(30).minusMillis(1),
+				minutes(45).minusMillis(1)), timestamps(samples));
+		assertEquals(List.of(1L, 300_000L, 900_000L, 900_000L), durations(samples));
+		assertEquals(durations(samples), heaterOn(samples));
+		assertWithinBins(samples);
+
+		var held = sampler.flush();                                  // the rest of the last bin
+		assertEquals(List.of(minutes(50)), timestamps(held));
+		assertEquals(List.of(300_000L), durations(held));
+	}
+
+	@Test
+	void readingOnBoundaryClosesBin() {
+		var samples = new ArrayList<Temperature>();
+		samples.addAll(report(minutes(14), false));
+		samples.addAll(report(minutes(15), true));
+
+		assertEquals(List.of(minutes(14), minutes(15).minusMillis(1)), timestamps(samples));
+		assertEquals(List.of(0L, 0L), heaterOn(samples));
+		assertWithinBins(samples);
+	}
+
+	private List<Temperature> report(Instant timestamp, boolean heaterOn) {
+		state = state.withReport(20f, 20f, heaterOn, false, timestamp);
+		return sampler.sample(state);
+	}
+
+	private static Instant minutes(long minutes) {
+		return MIDNIGHT.plus(Duration.ofMinutes(minutes));
+	}
+
+	private static void assertWithinBins(List<Temperature> samples) {
+		for (var sample : samples) {
+			var covered = sample.timestamp.minusMillis(sample.duration - 1);   // the first millisecond it covers
+			assertEquals(TemperatureBins.end(sample.timestamp), TemperatureBins.end(covered),
+					"sample at " + sample.timestamp + " straddles a bin");
+		}
+	}
+
+	private static List<Instant> timestamps(List<Temperature> samples) {
+		var timestamps = new ArrayList<Instant>();
+		samples.forEach(sample -> timestamps.add(sample.timestamp));
+		return timestamps;
+	}
+
+	private static List<Long> durations(List<Temperature> samples) {
+		var durations = new ArrayList<Long>();
+		samples.forEach(sample -> durations.add(sample.duration));
+		return durations;
+	}
+
+	private static List<Long> heaterOn(List<Temperature> samples) {
+		var heaterOn = new ArrayList<Long>();
+		samples.forEach(sample -> heaterOn.add(sample.heaterOnDuration));
+		return heaterOn;
+	}
+}
@@ -0,0 +1,130 @@
+package edu.snhu.erik.mattheis.thermostat.db;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * crash recovery of {@link WriteAheadLog} - a torn tail is dropped on reopen and committed
+ * records are never replayed
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class WriteAheadLogTest {
+
+	private static final int SEGMENT_SIZE = 4096;
+	private static final int HEADER = Integer.BYTES * 2;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void replaysIntactRecordsAfterCorruptLastFrame() throws IOException {
+		append("one", "two", "three");
+		corrupt(frameOffset("one", "two") + HEADER);                  // flip a payload byte of "three"
+
+		try (var wal = open()) {
+			var batch = wal.read(10);
+			assertEquals(List.of("one", "two"), payloads(batch));
+			wal.commit(batch);
+		}
+		try (var wal = open()) {
+			assertTrue(wal.isEmpty());
+		}
+	}
+
+	@Test
+	void replaysIntactRecordsAfterTruncatedLastFrame() throws IOException {
+		append("one", "two", "three");
+		writeInt(frameOffset("one", "two"), SEGMENT_SIZE);            // length runs past the end of the segment
+
+		try (var wal = open()) {
+			var batch = wal.read(10);
+			assertEquals(List.of("one", "two"), payloads(batch));
+			wal.commit(batch);
+		}
+		try (var wal = open()) {
+			assertTrue(wal.isEmpty());
+		}
+	}
+
+	@Test
+	void replaysOnlyRecordsAppendedAfterCheckpoint() throws IOException {
+		append("one", "two", "three");
+		corrupt(frameOffset("one", "two") + HEADER);
+
+		try (var wal = open()) {
+			wal.commit(wal.read(10));
+			wal.append("four".getBytes(UTF_8));                       // written over the dropped tail
+		}
+		try (var wal = open()) {
+			var batch = wal.read(10);
+			assertEquals(List.of("four"), payloads(batch));
+			wal.commit(batch);
+		}
+		try (var wal = open()) {
+			assertTrue(wal.isEmpty());
+		}
+	}
+
+	private WriteAheadLog open() throws IOException {
+		return new WriteAheadLog(directory, SEGMENT_SIZE, 4);
+	}
+
+	private void append(String... payloads) throws IOException {
+		try (var wal = open()) {
+			for (var payload : payloads) {
+				wal.append(payload.getBytes(UTF_8));
+			}
+		}
+	}
+
+	/*
+	 * the offset of the frame following the given payloads in the first segment
+	 */
+	private static int frameOffset(String... preceding) {
+		var offset = 0;
+		for (var payload : preceding) {
+			offset += HEADER + payload.getBytes(UTF_8).length;
+		}
+		return offset;
+	}
+
+	private void corrupt(int offset) throws IOException {
+		try (var file = new RandomAccessFile(segment().toFile(), "rw")) {
+			file.seek(offset);
+			var value = file.read();
+			file.seek(offset);
+			file.write(value ^ 0xff);
+		}
+	}
+
+	private void writeInt(int offset, int value) throws IOException {
+		try (var file = new RandomAccessFile(segment().toFile(), "rw")) {
+			file.seek(offset);
+			file.writeInt(value);                                      // big endian, as the mapped buffer
+		}
+	}
+
+	private Path segment() {
+		return directory.resolve(String.format("%020d.wal", 0));
+	}
+
+	private static List<String> payloads(WriteAheadLog.Batch batch) {
+		return batch.records().stream().map(record -> {
+			var bytes = new byte[record.remaining()];
+			ByteBuffer.wrap(bytes).put(record.duplicate());
+			return new String(bytes, UTF_8);
+		}).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,87 @@
+package edu.snhu.erik.mattheis.thermostat.schedule;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import edu.snhu.erik.mattheis.thermostat.db.Schedule;
+import edu.snhu.erik.mattheis.thermostat.db.ScheduleEntry;
+import edu.snhu.erik.mattheis.thermostat.db.ScheduleOverride;
+
+/**
+ * the setpoint a {@link CompiledSchedule} has in effect and the change it makes next
+ *
+ * @author <a href="mailto:erik.mattheis@snhu.edu">Erik Mattheis</a>
+ */
+class CompiledScheduleTest {
+
+	private static final Instant MONDAY_NOON = Instant.parse("2021-10-18T12:00:00Z");
+
+	@Test
+	void overrideStartedJustBeforeCompilingIsInEffect() {
+		var schedule = compile(daily("07:00", 21f), daily("22:00", 17f),
+				override(MONDAY_NOON.minusMillis(5), Instant.parse("2021-10-18T18:00:00Z"), 23f));
+		var current = schedule.inEffect(MONDAY_NOON);
+		assertEquals(MONDAY_NOON, current.getAt());
+		assertEquals(23f, current.getDesiredTemperature());
+		var next = schedule.next(MONDAY_NOON);
+		assertEquals(Instant.parse("2021-10-18T18:00:00Z"), next.getAt());  // program resumes
+		assertEquals(21f, next.getDesiredTemperature());
+	}
+
+	@Test
+	void programEntryIsInEffectWithoutOverrides() {
+		var schedule = compile(daily("07:00", 21f), daily("22:00", 17f));
+		assertEquals(21f, schedule.inEffect(MONDAY_NOON).getDesiredTemperature());
+		assertEquals(17f, schedule.inEffect(Instant.parse("2021-10-18T03:00:00Z")).getDesiredTemperature());
+	}
+
+	@Test
+	void openEndedOverrideHoldsUntilNextProgramChange() {
+		var override = override(Instant.parse("2021-10-18T08:00:00Z"), null, 25f);
+		var schedule = compile(daily("07:00", 21f), daily("22:00", 17f), override);
+		assertEquals(25f, schedule.inEffect(MONDAY_NOON).getDesiredTemperature());
+		assertEquals(17f, schedule.inEffect(Instant.parse("2021-10-18T23:00:00Z")).getDesiredTemperature());
+	}
+
+	@Test
+	void nothingInEffectForEmptySchedule() {
+		assertNull(compile().inEffect(MONDAY_NOON));
+	}
+
+	private static CompiledSchedule compile(Object... parts) {
+		var schedule = new Schedule();
+		schedule.weekly = new ArrayList<>();
+		schedule.overrides = new ArrayList<>();
+		for (var part : parts) {
+			if (part instanceof ScheduleEntry) {
+				schedule.weekly.add((ScheduleEntry) part);
+			} else {
+				schedule.overrides.add((ScheduleOverride) part);
+			}
+		}
+		return CompiledSchedule.of(schedule, ZoneOffset.UTC);
+	}
+
+	private static ScheduleEntry daily(String time, float desiredTemperature) {
+		var entry = new ScheduleEntry();
+		entry.days = List.of("MONDAY", "TUESDAY", "WEDNESDAY", "THURSDAY", "FRIDAY", "SATURDAY", "SUNDAY");
+		entry.time = time;
+		entry.desiredTemperature = desiredTemperature;
+		return entry;
+	}
+
+	private static ScheduleOverride override(Instant from, Instant until, float desiredTemperature) {
+		var override = new ScheduleOverride();
+		override.from = from;
+		override.until = until;
+		override.desiredTemperature = desiredTemperature;
+		return override;
+	}
+}